@@ -0,0 +1,502 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import lombok.extern.java.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>CoAccessPrefetcher</b>
+ * <p>
+ *  Learns which resources are usually requested shortly after another one
+ *  (i.e. "A is followed by B within the time window" in the same thread) and,
+ *  when a resource is resolved, resolves its likely followers in the background
+ *  so that they are already cached when requested.
+ * </p>
+ * <p>
+ *  The memory is bounded : at most a maximum number of leading resources is tracked,
+ *  each one keeping only its most frequent followers (space-saving counters). The
+ *  prefetches which were actually requested afterwards (within the time window) are
+ *  counted so that the prefetch can be disabled automatically when the hit rate is poor.
+ *  Prefetches not requested within the time window expire as misses.
+ * </p>
+ */
+@Log
+public class CoAccessPrefetcher {
+
+    /** The default maximum number of leading resources tracked */
+    public static final int DEFAULT_MAX_LEADERS = 1024;
+
+    /** The default maximum number of followers tracked by leading resource */
+    public static final int DEFAULT_MAX_FOLLOWERS = 8;
+
+    /** The default ratio of accesses to a resource followed by the same follower */
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.5;
+
+    /** The default minimum number of times a follower must be observed */
+    public static final int DEFAULT_MIN_SUPPORT = 2;
+
+    /** The number of prefetches issued before checking the hit rate */
+    private static final int MIN_HIT_RATE_SAMPLES = 100;
+
+    /** The number of recent accesses kept by thread */
+    private static final int HISTORY_SIZE = 8;
+
+    /** The maximum number of pending prefetches */
+    private static final int MAX_PENDING = 64;
+
+    /** The function resolving the prefetched resources */
+    private final Function<String, ResourceInfo> resolver;
+
+    /** Checks whether a resource is already cached to avoid useless prefetches */
+    private final Predicate<String> cached;
+
+    /** The time window in nanoseconds */
+    private final long window;
+
+    /** The followers by leading resource */
+    private final Map<String, Followers> leaders = new ConcurrentHashMap<>();
+
+    /** The prefetched resources not yet requested nor expired and their prefetch time */
+    private final Map<String, Long> prefetched = new ConcurrentHashMap<>();
+
+    /** The recent accesses of the current thread */
+    private final ThreadLocal<History> history = ThreadLocal.withInitial(History::new);
+
+    /** The executor performing the prefetches */
+    private final ThreadPoolExecutor executor;
+
+    /** The number of prefetches issued */
+    private final LongAdder issuedCount = new LongAdder();
+
+    /** The number of prefetched resources requested afterwards */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The maximum number of leading resources tracked */
+    private volatile int maxLeaders = DEFAULT_MAX_LEADERS;
+
+    /** The maximum number of followers tracked by leading resource */
+    private volatile int maxFollowers = DEFAULT_MAX_FOLLOWERS;
+
+    /** The ratio of accesses to a resource followed by the same follower */
+    private volatile double minConfidence = DEFAULT_MIN_CONFIDENCE;
+
+    /** The minimum number of times a follower must be observed */
+    private volatile int minSupport = DEFAULT_MIN_SUPPORT;
+
+    /** The hit rate under which the prefetch is disabled (0 to never disable it) */
+    private volatile double minHitRate;
+
+    /** Whether the content of the prefetched resources is read */
+    private volatile boolean readContent;
+
+    /** Whether the prefetch is enabled */
+    private volatile boolean enabled = true;
+
+    /**
+     * Creates the prefetcher
+     *
+     * @param resolver the function resolving the prefetched resources
+     * @param cached checks whether a resource is already cached
+     * @param window the maximum time between a resource and its followers
+     * @param unit the time unit
+     */
+    public CoAccessPrefetcher(Function<String, ResourceInfo> resolver, Predicate<String> cached, long window, TimeUnit unit) {
+        requireNonNull(resolver);
+        requireNonNull(cached);
+        requireNonNull(unit);
+        if (window <= 0) {
+            throw new IllegalArgumentException("The time window must be positive");
+        }
+        this.resolver = resolver;
+        this.cached = cached;
+        this.window = unit.toNanos(window);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING), r -> {
+            Thread thread = new Thread(r, "rezolver-coaccess-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Records the access to the given resource learning it as a follower of
+     * the recent accesses of the current thread, and prefetches its own
+     * likely followers.
+     *
+     * @param resourcePath the path to the resource
+     * @param resourceInfo the resolved resource
+     */
+    public void accessed(String resourcePath, ResourceInfo resourceInfo) {
+        long now = System.nanoTime();
+        Long prefetchTime = prefetched.remove(resourcePath);
+        if ((prefetchTime != null) && (now - prefetchTime <= window)) {
+            hitCount.increment();
+        }
+        if (!resourceInfo.isResolved()) {
+            return;
+        }
+
+        History recent = history.get();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            String leader = recent.paths[i];
+            if ((leader != null) && (now - recent.times[i] <= window) && !leader.equals(resourcePath)) {
+                learn(leader, resourcePath);
+            }
+        }
+        recent.add(resourcePath, now);
+
+        Followers followers = leaders.get(resourcePath);
+        if (followers != null) {
+            followers.occurred();
+            if (enabled) {
+                prefetch(followers);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the likely followers of the given resource
+     *
+     * @param resourcePath the path to the resource
+     * @return the likely followers
+     */
+    public List<String> getFollowers(String resourcePath) {
+        Followers followers = leaders.get(resourcePath);
+        return (followers != null) ? followers.likely(minSupport, minConfidence) : new ArrayList<>();
+    }
+
+    /**
+     * Sets the memory limits
+     *
+     * @param maxLeaders the maximum number of leading resources tracked
+     * @param maxFollowers the maximum number of followers tracked by leading resource
+     */
+    public void setLimits(int maxLeaders, int maxFollowers) {
+        if ((maxLeaders <= 0) || (maxFollowers <= 0)) {
+            throw new IllegalArgumentException("The limits must be positive");
+        }
+        this.maxLeaders = maxLeaders;
+        this.maxFollowers = maxFollowers;
+    }
+
+    /**
+     * Sets the thresholds for a follower to be prefetched
+     *
+     * @param minSupport the minimum number of times the follower must be observed
+     * @param minConfidence the minimum ratio of accesses followed by the follower
+     */
+    public void setThresholds(int minSupport, double minConfidence) {
+        if ((minSupport <= 0) || (minConfidence < 0) || (minConfidence > 1)) {
+            throw new IllegalArgumentException("Invalid thresholds");
+        }
+        this.minSupport = minSupport;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Sets the hit rate under which the prefetch is automatically disabled
+     * once enough prefetches were issued. Learning goes on so that the prefetch
+     * can be enabled again.
+     *
+     * @param minHitRate the minimum hit rate (0 to never disable it)
+     */
+    public void setMinHitRate(double minHitRate) {
+        if ((minHitRate < 0) || (minHitRate > 1)) {
+            throw new IllegalArgumentException("The hit rate must be between 0 and 1");
+        }
+        this.minHitRate = minHitRate;
+    }
+
+    /**
+     * Sets whether the content of the prefetched resources is read
+     *
+     * @param readContent true to read the content, false otherwise
+     */
+    public void setReadContent(boolean readContent) {
+        this.readContent = readContent;
+    }
+
+    /**
+     * Enables or disables the prefetch resetting the hit rate
+     *
+     * @param enabled true to enable the prefetch, false otherwise
+     */
+    public void setEnabled(boolean enabled) {
+        issuedCount.reset();
+        hitCount.reset();
+        prefetched.clear();
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks whether the prefetch is enabled
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retrieves the number of prefetches issued
+     *
+     * @return the number of prefetches
+     */
+    public long getIssuedCount() {
+        return issuedCount.sum();
+    }
+
+    /**
+     * Retrieves the number of prefetched resources requested afterwards
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Retrieves the ratio of prefetched resources requested afterwards
+     *
+     * @return the hit rate or 0 if nothing was prefetched
+     */
+    public double getHitRate() {
+        long issued = issuedCount.sum();
+        return (issued > 0) ? (double) hitCount.sum() / issued : 0;
+    }
+
+    /**
+     * Retrieves the number of leading resources tracked
+     *
+     * @return the number of leading resources
+     */
+    public int size() {
+        return leaders.size();
+    }
+
+    /**
+     * Learns that the follower was accessed after the leader
+     *
+     * @param leader the leading resource
+     * @param follower the follower
+     */
+    private void learn(String leader, String follower) {
+        Followers followers = leaders.get(leader);
+        if (followers == null) {
+            followers = leaders.computeIfAbsent(leader, k -> new Followers());
+            if (leaders.size() > maxLeaders) {
+                evict(leader);
+            }
+        }
+        followers.add(follower, maxFollowers);
+    }
+
+    /**
+     * Evicts a leading resource (other than the given one)
+     * with the lowest number of occurrences among a few samples.
+     *
+     * @param keep the leading resource to keep
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Followers>> iterator = leaders.entrySet().iterator();
+        String victim = null;
+        long victimOccurrences = Long.MAX_VALUE;
+        for (int i = 0; (i < HISTORY_SIZE) && iterator.hasNext(); i++) {
+            Map.Entry<String, Followers> entry = iterator.next();
+            if (!entry.getKey().equals(keep) && (entry.getValue().occurrences < victimOccurrences)) {
+                victim = entry.getKey();
+                victimOccurrences = entry.getValue().occurrences;
+            }
+        }
+        if (victim != null) {
+            leaders.remove(victim);
+        }
+    }
+
+    /**
+     * Prefetches the likely followers not yet cached
+     *
+     * @param followers the followers
+     */
+    private void prefetch(Followers followers) {
+        double threshold = minHitRate;
+        long issued = issuedCount.sum();
+        if ((threshold > 0) && (issued >= MIN_HIT_RATE_SAMPLES) && ((double) hitCount.sum() / issued < threshold)) {
+            log.fine("Co-access prefetch disabled due to a poor hit rate");
+            enabled = false;
+            return;
+        }
+
+        for (String follower : followers.likely(minSupport, minConfidence)) {
+            if (cached.test(follower) || !hasPrefetchCapacity()) {
+                continue;
+            }
+            Long prefetchTime = System.nanoTime();
+            if (prefetched.putIfAbsent(follower, prefetchTime) != null) {
+                continue;
+            }
+            try {
+                executor.execute(() -> load(follower));
+                issuedCount.increment();
+            } catch (RejectedExecutionException e) {
+                // Too many pending prefetches, the follower is not prefetched
+                prefetched.remove(follower, prefetchTime);
+            }
+        }
+    }
+
+    /**
+     * Checks whether more prefetches can be tracked, discarding
+     * first the ones not requested within the time window.
+     *
+     * @return true if a prefetch can be tracked, false otherwise
+     */
+    private boolean hasPrefetchCapacity() {
+        if (prefetched.size() < maxLeaders) {
+            return true;
+        }
+        long now = System.nanoTime();
+        prefetched.values().removeIf(time -> now - time > window);
+        return prefetched.size() < maxLeaders;
+    }
+
+    /**
+     * Resolves the prefetched resource and reads its content if requested
+     *
+     * @param resourcePath the path to the resource
+     */
+    private void load(String resourcePath) {
+        try {
+            ResourceInfo resourceInfo = resolver.apply(resourcePath);
+            if (readContent && resourceInfo.isResolved()) {
+                Prefetcher.read(resourceInfo);
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.FINE, "Error prefetching resource " + resourcePath, e);
+        }
+    }
+
+    /**
+     * The most frequent followers of a resource (space-saving counters)
+     */
+    private static final class Followers {
+
+        /** The followers */
+        private final List<String> paths = new ArrayList<>();
+
+        /** The number of times each follower was observed */
+        private final List<Long> counts = new ArrayList<>();
+
+        /** The number of accesses to the leading resource */
+        private volatile long occurrences = 1;
+
+        /**
+         * Records an access to the leading resource
+         */
+        private synchronized void occurred() {
+            occurrences++;
+        }
+
+        /**
+         * Records an observation of the follower replacing the least
+         * frequent one (inheriting its count) if full.
+         *
+         * @param follower the follower
+         * @param maxFollowers the maximum number of followers
+         */
+        private synchronized void add(String follower, int maxFollowers) {
+            int index = paths.indexOf(follower);
+            if (index >= 0) {
+                counts.set(index, counts.get(index) + 1);
+                return;
+            }
+            if (paths.size() < maxFollowers) {
+                paths.add(follower);
+                counts.add(1L);
+                return;
+            }
+            int min = 0;
+            for (int i = 1; i < counts.size(); i++) {
+                if (counts.get(i) < counts.get(min)) {
+                    min = i;
+                }
+            }
+            paths.set(min, follower);
+            counts.set(min, counts.get(min) + 1);
+        }
+
+        /**
+         * Retrieves the followers observed often enough
+         *
+         * @param minSupport the minimum number of observations
+         * @param minConfidence the minimum ratio of accesses followed by the follower
+         * @return the likely followers
+         */
+        private synchronized List<String> likely(int minSupport, double minConfidence) {
+            List<String> likely = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                long count = counts.get(i);
+                if ((count >= minSupport) && (count >= minConfidence * occurrences)) {
+                    likely.add(paths.get(i));
+                }
+            }
+            return likely;
+        }
+    }
+
+    /**
+     * The recent accesses of a thread
+     */
+    private static final class History {
+
+        /** The paths of the recent accesses */
+        private final String[] paths = new String[HISTORY_SIZE];
+
+        /** The times of the recent accesses */
+        private final long[] times = new long[HISTORY_SIZE];
+
+        /** The position of the next access */
+        private int next;
+
+        /**
+         * Adds an access
+         *
+         * @param path the path
+         * @param time the time
+         */
+        private void add(String path, long time) {
+            paths[next] = path;
+            times[next] = time;
+            next = (next + 1) % HISTORY_SIZE;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import com.github.pnavais.rezolver.util.SingleFlight;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link DecodedCache} keeps the objects decoded from resolved resources
+ * (e.g. parsed properties, schemas or templates) by resource location and decoder,
+ * so that the same resource is not decoded again until it changes. Decoders should
+ * therefore be reused (e.g. kept in constants) rather than created on every call.
+ * <p>
+ * Every lookup validates the entry against the current modification time, size and
+ * entity tag of the resource, files being checked directly in the file system. Concurrent
+ * decodes of the same resource are coalesced. The cache is bounded both by its number of
+ * entries and by the total weight of the decoded objects (by default the size of their
+ * resources), evicting entries following a second-chance (CLOCK) policy.
+ * </p>
+ */
+public class DecodedCache {
+
+    /** The default maximum number of entries */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** The default maximum total weight */
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+    /** The default maximum time in milliseconds waiting for a concurrent decode */
+    public static final long DEFAULT_MAX_WAIT = TimeUnit.SECONDS.toMillis(10);
+
+    /** Weighs the decoded objects by the size of their resources (1 if unknown) */
+    public static final Weigher RESOURCE_SIZE = (resource, value) -> Math.max(1L, resource.getSize());
+
+    /** The maximum number of entries */
+    private final int maxEntries;
+
+    /** The maximum total weight */
+    private final long maxWeight;
+
+    /** The weigher of the decoded objects */
+    private final Weigher weigher;
+
+    /** The cached entries by resource location and decoder */
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The total weight of the cached entries */
+    private final AtomicLong weight = new AtomicLong();
+
+    /** The decodes in flight */
+    private final SingleFlight<Key, Entry> decodes = new SingleFlight<>(DEFAULT_MAX_WAIT, TimeUnit.MILLISECONDS);
+
+    /** Incremented on every invalidation to discard stale insertions */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Lock held by the thread performing the eviction */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The number of lookups served by the cache */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The number of decodes performed */
+    private final LongAdder decodeCount = new LongAdder();
+
+    /**
+     * Weighs the decoded objects to bound the cache
+     */
+    @FunctionalInterface
+    public interface Weigher {
+
+        /**
+         * Estimates the weight of the decoded object
+         *
+         * @param resource the decoded resource
+         * @param value the decoded object
+         * @return the weight (e.g. the estimated size in bytes)
+         */
+        long weigh(ResourceInfo resource, Object value);
+    }
+
+    /**
+     * Creates a cache with the default capacity
+     */
+    public DecodedCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, RESOURCE_SIZE);
+    }
+
+    /**
+     * Creates a cache with the given capacity weighing the
+     * decoded objects by the size of their resources.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param maxWeight the maximum total weight
+     */
+    public DecodedCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, RESOURCE_SIZE);
+    }
+
+    /**
+     * Creates a cache with the given capacity
+     *
+     * @param maxEntries the maximum number of entries
+     * @param maxWeight the maximum total weight
+     * @param weigher the weigher of the decoded objects
+     */
+    public DecodedCache(int maxEntries, long maxWeight, Weigher weigher) {
+        requireNonNull(weigher);
+        if ((maxEntries <= 0) || (maxWeight <= 0)) {
+            throw new IllegalArgumentException("The maximum number of entries and weight must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Retrieves the object decoded from the given resource, decoding
+     * it only if not cached or if the resource changed since then.
+     * Failed decodes are not cached.
+     *
+     * @param resource the resolved resource
+     * @param decoder the decoder
+     * @param <T> the type of the decoded object
+     * @return the decoded object
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ResourceInfo resource, Function<ResourceInfo, T> decoder) {
+        requireNonNull(resource);
+        requireNonNull(decoder);
+        if (!resource.isResolved()) {
+            throw new IllegalArgumentException("The resource is not resolved : " + resource.getSearchPath());
+        }
+
+        Key key = new Key(getLocation(resource), decoder);
+        Validator validator = Validator.of(resource);
+        Entry entry = entries.get(key);
+        if ((entry != null) && entry.validator.equals(validator)) {
+            entry.referenced = true;
+            hitCount.increment();
+            return (T) entry.value;
+        }
+        return (T) decodes.execute(key, () -> decode(key, resource, validator, decoder)).value;
+    }
+
+    /**
+     * Decodes the resource storing the result unless
+     * a concurrent decode already did.
+     *
+     * @param key the key
+     * @param resource the resource
+     * @param validator the validator of the resource
+     * @param decoder the decoder
+     * @return the entry
+     */
+    private Entry decode(Key key, ResourceInfo resource, Validator validator, Function<ResourceInfo, ?> decoder) {
+        Entry current = entries.get(key);
+        if ((current != null) && current.validator.equals(validator)) {
+            return current;
+        }
+
+        long expectedGeneration = generation.get();
+        decodeCount.increment();
+        Object value = decoder.apply(resource);
+        Entry entry = new Entry(value, validator, Math.max(0L, weigher.weigh(resource, value)));
+        if ((entry.weight > maxWeight) || (generation.get() != expectedGeneration)) {
+            return entry;
+        }
+
+        Entry previous = entries.put(key, entry);
+        weight.addAndGet(entry.weight - ((previous != null) ? previous.weight : 0L));
+
+        // Discard the entry if an invalidation raced with the insertion
+        if ((generation.get() != expectedGeneration) && entries.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+        }
+
+        if ((entries.size() > maxEntries) || (weight.get() > maxWeight)) {
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the objects decoded from the same
+     * resource than the given one.
+     *
+     * @param resource the resource
+     */
+    public void invalidate(ResourceInfo resource) {
+        requireNonNull(resource);
+        generation.incrementAndGet();
+        if (resource.isResolved()) {
+            String location = getLocation(resource);
+            removeIf(key -> key.location.equals(location));
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        removeIf(key -> true);
+    }
+
+    /**
+     * Retrieves the number of cached entries
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the total weight of the cached entries
+     *
+     * @return the total weight
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Retrieves the maximum number of entries
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Retrieves the maximum total weight
+     *
+     * @return the maximum total weight
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Retrieves the number of lookups served by the cache
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Retrieves the number of decodes performed
+     *
+     * @return the number of decodes
+     */
+    public long getDecodeCount() {
+        return decodeCount.sum();
+    }
+
+    /**
+     * Removes the entries whose keys match the given filter
+     *
+     * @param filter the filter of the keys
+     */
+    private void removeIf(Predicate<Key> filter) {
+        for (Map.Entry<Key, Entry> cached : entries.entrySet()) {
+            if (filter.test(cached.getKey()) && entries.remove(cached.getKey(), cached.getValue())) {
+                weight.addAndGet(-cached.getValue().weight);
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the capacity is respected giving
+     * a second chance to recently used entries. Only one thread
+     * performs the eviction at a time, others simply skip it.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries) || (weight.get() > maxWeight)) {
+                if (!iterator.hasNext()) {
+                    iterator = entries.entrySet().iterator();
+                    continue;
+                }
+                Map.Entry<Key, Entry> cached = iterator.next();
+                Entry entry = cached.getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else if (entries.remove(cached.getKey(), entry)) {
+                    weight.addAndGet(-entry.weight);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the location identifying the resource,
+     * i.e. its path or its URL.
+     *
+     * @param resource the resolved resource
+     * @return the location
+     */
+    private static String getLocation(ResourceInfo resource) {
+        Path path = resource.getPath();
+        return (path != null) ? path.toString() : resource.getURL().toExternalForm();
+    }
+
+    /**
+     * The key of a decoded object, i.e. the location
+     * of its resource and its decoder.
+     */
+    private static final class Key {
+
+        /** The location of the resource */
+        private final String location;
+
+        /** The decoder */
+        private final Function<ResourceInfo, ?> decoder;
+
+        /**
+         * Creates the key
+         *
+         * @param location the location of the resource
+         * @param decoder the decoder
+         */
+        private Key(String location, Function<ResourceInfo, ?> decoder) {
+            this.location = location;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return (decoder == key.decoder) && location.equals(key.location);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * location.hashCode()) + System.identityHashCode(decoder);
+        }
+    }
+
+    /**
+     * The state of a resource used to detect changes
+     */
+    private static final class Validator {
+
+        /** The last modification time */
+        private final long lastModified;
+
+        /** The size */
+        private final long size;
+
+        /** The entity tag */
+        private final String etag;
+
+        /**
+         * Creates the validator
+         *
+         * @param lastModified the last modification time
+         * @param size the size
+         * @param etag the entity tag
+         */
+        private Validator(long lastModified, long size, String etag) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.etag = etag;
+        }
+
+        /**
+         * Builds the validator of the resource reading the attributes
+         * of files from the file system, as the resource information
+         * may come from a cached resolution.
+         *
+         * @param resource the resolved resource
+         * @return the validator
+         */
+        private static Validator of(ResourceInfo resource) {
+            Path path = resource.getPath();
+            if (path == null) {
+                URL url = resource.getURL();
+                if ("file".equals(url.getProtocol())) {
+                    try {
+                        path = Paths.get(url.toURI());
+                    } catch (URISyntaxException | RuntimeException e) {
+                        path = null;
+                    }
+                }
+            }
+            if (path != null) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    return new Validator(attributes.lastModifiedTime().toMillis(), attributes.size(), null);
+                } catch (IOException | RuntimeException e) {
+                    // Use the attributes of the resolution
+                }
+            }
+            return new Validator(resource.getLastModified(), resource.getSize(), resource.getETag());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Validator)) {
+                return false;
+            }
+            Validator validator = (Validator) other;
+            return (lastModified == validator.lastModified) && (size == validator.size)
+                    && Objects.equals(etag, validator.etag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size, etag);
+        }
+    }
+
+    /**
+     * A decoded object with the validator of its resource
+     */
+    private static final class Entry {
+
+        /** The decoded object */
+        private final Object value;
+
+        /** The validator of the decoded resource */
+        private final Validator validator;
+
+        /** The weight of the decoded object */
+        private final long weight;
+
+        /** Set on access, cleared by the eviction sweep */
+        private volatile boolean referenced;
+
+        /**
+         * Creates the entry
+         *
+         * @param value the decoded object
+         * @param validator the validator of the decoded resource
+         * @param weight the weight of the decoded object
+         */
+        private Entry(Object value, Validator validator, long weight) {
+            this.value = value;
+            this.validator = validator;
+            this.weight = weight;
+        }
+    }
+}
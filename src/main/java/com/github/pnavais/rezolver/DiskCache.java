@@ -0,0 +1,580 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver;
+
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>DiskCache</b>
+ * <p>
+ *  A persistent cache of remote resources. Contents are stored by their SHA-256 hash
+ *  (so identical contents are stored once) and an index maps every URL to its content
+ *  and validators (ETag and Last-Modified) allowing conditional requests.
+ * </p>
+ * <p>
+ *  All files are written to a temporary file and atomically moved into place, so several
+ *  JVMs can safely share the same cache directory. Once the contents exceed the maximum size
+ *  the least recently used entries are evicted.
+ * </p>
+ */
+@Log
+public class DiskCache {
+
+    /** The default maximum size in bytes of the cached contents */
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+    /** The time unreferenced contents are kept, as the index could be about to be written by another JVM */
+    private static final long ORPHAN_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    /** The directory containing the contents */
+    private static final String CONTENT_DIR = "content";
+
+    /** The directory containing the index entries */
+    private static final String INDEX_DIR = "index";
+
+    /** The extension of the index entries */
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /** The cache directory */
+    private final Path directory;
+
+    /** The directory containing the contents */
+    private final Path contentDir;
+
+    /** The directory containing the index entries */
+    private final Path indexDir;
+
+    /** The maximum size in bytes of the cached contents */
+    private final long maxSize;
+
+    /** The estimated size of the cached contents, refreshed on eviction */
+    private final AtomicLong size = new AtomicLong();
+
+    /** Lock held by the thread performing the eviction */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Creates a disk cache with the default maximum size
+     *
+     * @param directory the cache directory
+     * @throws IOException if the directory cannot be created
+     */
+    public DiskCache(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a disk cache
+     *
+     * @param directory the cache directory
+     * @param maxSize the maximum size in bytes of the cached contents
+     * @throws IOException if the directory cannot be created
+     */
+    public DiskCache(Path directory, long maxSize) throws IOException {
+        requireNonNull(directory);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive");
+        }
+        this.directory = directory;
+        this.contentDir = Files.createDirectories(directory.resolve(CONTENT_DIR));
+        this.indexDir = Files.createDirectories(directory.resolve(INDEX_DIR));
+        this.maxSize = maxSize;
+        this.size.set(computeSize());
+    }
+
+    /**
+     * Retrieves the cache entry of the given URL marking it
+     * as recently used.
+     *
+     * @param url the URL
+     * @return the cache entry or null if not cached
+     */
+    public Entry get(String url) {
+        requireNonNull(url);
+        Path indexFile = getIndexFile(url);
+        Entry entry = readEntry(indexFile);
+        if ((entry == null) || !url.equals(entry.getUrl())) {
+            return null;
+        }
+        if (!Files.exists(entry.getContentPath())) {
+            remove(url);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // The entry was evicted meanwhile, the content is still readable
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the content of the given URL along with its validators
+     *
+     * @param url the URL
+     * @param content the content stream (not closed)
+     * @param etag the ETag or null if unknown
+     * @param lastModified the last modification time or {@link ResourceInfo#UNKNOWN_ATTRIBUTE}
+     * @param contentType the content type or null if unknown
+     * @return the cache entry
+     * @throws IOException if the content cannot be read or stored
+     */
+    public Entry store(String url, InputStream content, String etag, long lastModified, String contentType) throws IOException {
+        requireNonNull(url);
+        requireNonNull(content);
+
+        // Write the content computing its hash
+        Path tmpFile = Files.createTempFile(contentDir, "rez", ".tmp");
+        String hash;
+        long contentSize;
+        try {
+            MessageDigest digest = newDigest();
+            try (DigestInputStream in = new DigestInputStream(content, digest)) {
+                contentSize = Files.copy(in, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            hash = toHex(digest.digest());
+            Path contentPath = contentDir.resolve(hash);
+            if (Files.exists(contentPath)) {
+                Files.delete(tmpFile);
+            } else {
+                moveAtomically(tmpFile, contentPath);
+                size.addAndGet(contentSize);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+
+        // Write the index entry
+        Entry entry = new Entry(url, hash, contentDir.resolve(hash), contentSize, etag, lastModified, contentType);
+        writeEntry(getIndexFile(url), entry);
+
+        if (size.get() > maxSize) {
+            evict();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Removes the entry of the given URL. The content is
+     * deleted on the next eviction if no longer referenced.
+     *
+     * @param url the URL
+     */
+    public void remove(String url) {
+        requireNonNull(url);
+        try {
+            Files.deleteIfExists(getIndexFile(url));
+        } catch (IOException e) {
+            log.log(Level.FINE, "Error removing cache entry for " + url, e);
+        }
+    }
+
+    /**
+     * Removes all the entries and contents
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    public void clear() throws IOException {
+        for (Path dir : Arrays.asList(indexDir, contentDir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        size.set(0);
+    }
+
+    /**
+     * Evicts the least recently used entries until the contents fit
+     * the maximum size and deletes the contents no longer referenced.
+     * Only one thread performs the eviction at a time, others simply skip it.
+     */
+    public void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Path> indexFiles = listFiles(indexDir);
+            Map<Path, FileTime> accessTimes = new HashMap<>();
+            for (Path indexFile : indexFiles) {
+                accessTimes.put(indexFile, getLastModifiedTime(indexFile));
+            }
+            indexFiles.sort(Comparator.comparing(accessTimes::get));
+
+            // Count the references of every content
+            Map<Path, Entry> entries = new LinkedHashMap<>();
+            Map<String, Integer> references = new HashMap<>();
+            for (Path indexFile : indexFiles) {
+                Entry entry = readEntry(indexFile);
+                if (entry != null) {
+                    entries.put(indexFile, entry);
+                    references.merge(entry.getHash(), 1, Integer::sum);
+                }
+            }
+
+            long currentSize = computeSize();
+            for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+                if (currentSize <= maxSize) {
+                    break;
+                }
+                Files.deleteIfExists(e.getKey());
+                String hash = e.getValue().getHash();
+                if (references.merge(hash, -1, Integer::sum) == 0) {
+                    references.remove(hash);
+                    if (Files.deleteIfExists(e.getValue().getContentPath())) {
+                        currentSize -= e.getValue().getSize();
+                    }
+                }
+            }
+
+            // Remove orphan contents
+            long now = System.currentTimeMillis();
+            for (Path contentFile : listFiles(contentDir)) {
+                String name = contentFile.getFileName().toString();
+                if (!references.containsKey(name)
+                        && ((now - getLastModifiedTime(contentFile).toMillis()) > ORPHAN_GRACE_PERIOD)) {
+                    Files.deleteIfExists(contentFile);
+                }
+            }
+
+            size.set(computeSize());
+        } catch (IOException e) {
+            log.log(Level.FINE, "Error evicting cache entries", e);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the estimated size of the cached contents
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Retrieves the maximum size of the cached contents
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Retrieves the cache directory
+     *
+     * @return the cache directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Retrieves the index file of the given URL
+     *
+     * @param url the URL
+     * @return the index file
+     */
+    private Path getIndexFile(String url) {
+        MessageDigest digest = newDigest();
+        return indexDir.resolve(toHex(digest.digest(url.getBytes(StandardCharsets.UTF_8))) + INDEX_EXTENSION);
+    }
+
+    /**
+     * Reads the entry from the given index file
+     *
+     * @param indexFile the index file
+     * @return the entry or null if not found or corrupted
+     */
+    private Entry readEntry(Path indexFile) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            String hash = properties.getProperty("hash");
+            return new Entry(properties.getProperty("url"), hash, contentDir.resolve(hash),
+                    Long.parseLong(properties.getProperty("size")),
+                    properties.getProperty("etag"),
+                    Long.parseLong(properties.getProperty("lastModified")),
+                    properties.getProperty("contentType"));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes atomically the entry to the given index file
+     *
+     * @param indexFile the index file
+     * @param entry the entry
+     * @throws IOException if the entry cannot be written
+     */
+    private void writeEntry(Path indexFile, Entry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", entry.getUrl());
+        properties.setProperty("hash", entry.getHash());
+        properties.setProperty("size", String.valueOf(entry.getSize()));
+        properties.setProperty("lastModified", String.valueOf(entry.getLastModified()));
+        if (entry.getETag() != null) {
+            properties.setProperty("etag", entry.getETag());
+        }
+        if (entry.getContentType() != null) {
+            properties.setProperty("contentType", entry.getContentType());
+        }
+
+        Path tmpFile = Files.createTempFile(indexDir, "rez", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            moveAtomically(tmpFile, indexFile);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Computes the size of the cached contents
+     *
+     * @return the size in bytes
+     */
+    private long computeSize() {
+        long total = 0;
+        try {
+            for (Path contentFile : listFiles(contentDir)) {
+                try {
+                    total += Files.size(contentFile);
+                } catch (IOException e) {
+                    // Deleted meanwhile
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Error computing the cache size", e);
+        }
+        return total;
+    }
+
+    /**
+     * Lists the files in the given directory skipping temporary files
+     *
+     * @param dir the directory
+     * @return the files
+     * @throws IOException if the directory cannot be read
+     */
+    private static List<Path> listFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Retrieves the last modification time of the file
+     *
+     * @param file the file
+     * @return the last modification time or the epoch if deleted meanwhile
+     */
+    private static FileTime getLastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Moves the file atomically if supported by the file system
+     *
+     * @param source the source file
+     * @param target the target file
+     * @throws IOException if the file cannot be moved
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates a new SHA-256 digest
+     *
+     * @return the digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Converts the bytes to its hexadecimal representation
+     *
+     * @param bytes the bytes
+     * @return the hexadecimal string
+     */
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * An entry of the cache index
+     */
+    public static final class Entry {
+
+        /** The URL */
+        private final String url;
+
+        /** The hash of the content */
+        private final String hash;
+
+        /** The path to the content */
+        private final Path contentPath;
+
+        /** The size of the content */
+        private final long size;
+
+        /** The ETag */
+        private final String etag;
+
+        /** The last modification time */
+        private final long lastModified;
+
+        /** The content type */
+        private final String contentType;
+
+        /**
+         * Creates the entry
+         *
+         * @param url the URL
+         * @param hash the hash of the content
+         * @param contentPath the path to the content
+         * @param size the size of the content
+         * @param etag the ETag
+         * @param lastModified the last modification time
+         * @param contentType the content type
+         */
+        private Entry(String url, String hash, Path contentPath, long size, String etag, long lastModified, String contentType) {
+            this.url = url;
+            this.hash = hash;
+            this.contentPath = contentPath;
+            this.size = size;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Retrieves the URL
+         *
+         * @return the URL
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Retrieves the hash of the content
+         *
+         * @return the content hash
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Retrieves the path to the cached content
+         *
+         * @return the content path
+         */
+        public Path getContentPath() {
+            return contentPath;
+        }
+
+        /**
+         * Retrieves the size of the content
+         *
+         * @return the size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Retrieves the ETag
+         *
+         * @return the ETag or null if unknown
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * Retrieves the last modification time
+         *
+         * @return the last modification time or {@link ResourceInfo#UNKNOWN_ATTRIBUTE}
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Retrieves the content type
+         *
+         * @return the content type or null if unknown
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
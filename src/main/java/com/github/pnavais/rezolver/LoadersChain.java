@@ -16,10 +16,12 @@
 
 package com.github.pnavais.rezolver;
 
+import com.github.pnavais.rezolver.loader.IIndexedLoader;
 import com.github.pnavais.rezolver.loader.IResourceLoader;
 
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
@@ -35,6 +37,11 @@ public class LoadersChain {
      */
     private Collection<IResourceLoader> chain;
 
+    /**
+     * Incremented on every change of the chain
+     */
+    private volatile int version;
+
     /**
      * Instantiates a new Loaders chain.
      */
@@ -59,6 +66,7 @@ public class LoadersChain {
      */
     public LoadersChain add(IResourceLoader loader) {
         this.chain.add(loader);
+        this.version++;
         return this;
     }
 
@@ -69,6 +77,7 @@ public class LoadersChain {
      */
     public void remove(IResourceLoader loader) {
         this.chain.remove(loader);
+        this.version++;
     }
 
     /**
@@ -84,22 +93,38 @@ public class LoadersChain {
     /**
      * Handles the request by passing the resourcePath
      * through the loaders in the chain stopping at the first
-     * match found.
+     * match found. Indexed loaders ruling out the path are skipped.
      *
      * @param resourcePath the path to the resource to be resolved
      * @return the resource information
      */
     public ResourceInfo process(String resourcePath) {
-        ResourceInfo resInfo = null;
+        return process(resourcePath, ResolutionContext.DEFAULT);
+    }
 
+    /**
+     * Handles the request by passing the resourcePath and the
+     * context through the loaders in the chain stopping at the
+     * first match found. Indexed loaders ruling out the path
+     * are skipped.
+     *
+     * @param resourcePath the path to the resource to be resolved
+     * @param context the resolution context
+     * @return the resource information
+     */
+    public ResourceInfo process(String resourcePath, ResolutionContext context) {
+        requireNonNull(context);
         for (IResourceLoader loader : chain) {
-            resInfo = loader.resolve(resourcePath);
+            if (IIndexedLoader.excludes(loader, resourcePath, context)) {
+                continue;
+            }
+            ResourceInfo resInfo = loader.resolve(resourcePath, context);
             if (resInfo.isResolved()) {
-                break;
+                return resInfo;
             }
         }
 
-        return resInfo;
+        return ResourceInfo.unresolved(resourcePath);
     }
 
     /**
@@ -107,5 +132,34 @@ public class LoadersChain {
      */
     public void clear() {
         Optional.ofNullable(this.chain).ifPresent(Collection::clear);
+        this.version++;
+    }
+
+    /**
+     * Retrieves the loaders in the chain
+     *
+     * @return the loaders
+     */
+    public Collection<IResourceLoader> getLoaders() {
+        return Collections.unmodifiableCollection(chain);
+    }
+
+    /**
+     * Retrieves the number of loaders in the chain
+     *
+     * @return the number of loaders
+     */
+    public int size() {
+        return chain.size();
+    }
+
+    /**
+     * Retrieves the version of the chain, incremented
+     * on every change made through the chain.
+     *
+     * @return the version
+     */
+    public int getVersion() {
+        return version;
     }
 }
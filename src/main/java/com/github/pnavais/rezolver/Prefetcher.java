@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import com.github.pnavais.rezolver.util.BoundedExecutor;
+import lombok.extern.java.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>Prefetcher</b>
+ * <p>
+ *  Warms up a {@link Rezolver} resolving a list of resources in the
+ *  background with bounded parallelism, so that jar files are opened,
+ *  directory entries are cached by the OS, remote connections are established
+ *  and any resolution cache is filled before the first actual request.
+ *  Optionally the content of the resources is read as well.
+ * </p>
+ * <p>
+ *  The list can be loaded from a manifest file containing one resource
+ *  path per line. Blank lines and lines starting with '#' are ignored.
+ * </p>
+ * <p>
+ *  For large batches of remote resources each resource can be resolved on
+ *  its own virtual thread (on Java 21 or later), the parallelism being then
+ *  the maximum number of resolutions in flight.
+ * </p>
+ */
+@Log
+public class Prefetcher {
+
+    /** The default number of resources prefetched concurrently */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /** The size of the buffer used to read the content */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The prefix of comment lines in manifests */
+    private static final String COMMENT_PREFIX = "#";
+
+    /** The rezolver used to resolve the resources */
+    private final Rezolver rezolver;
+
+    /** The number of resources prefetched concurrently */
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /** Whether the content of the resources is read */
+    private boolean readContent;
+
+    /** Whether each resource is resolved on its own virtual thread */
+    private boolean virtualThreads;
+
+    /**
+     * Creates the prefetcher for the given rezolver
+     *
+     * @param rezolver the rezolver
+     */
+    public Prefetcher(Rezolver rezolver) {
+        requireNonNull(rezolver);
+        this.rezolver = rezolver;
+    }
+
+    /**
+     * Sets the number of resources prefetched concurrently
+     *
+     * @param parallelism the number of resources prefetched concurrently
+     * @return this prefetcher
+     */
+    public Prefetcher withParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets whether the content of the resolved resources is read
+     *
+     * @param readContent true to read the content, false otherwise
+     * @return this prefetcher
+     */
+    public Prefetcher withContent(boolean readContent) {
+        this.readContent = readContent;
+        return this;
+    }
+
+    /**
+     * Sets whether each resource is resolved on its own thread, a virtual
+     * one when supported (see {@link BoundedExecutor}), instead of using a
+     * pool of workers. The parallelism limits then the number of resolutions
+     * in flight, so it can be raised to thousands for blocking remote lookups.
+     *
+     * @param virtualThreads true to use a thread per resource, false otherwise
+     * @return this prefetcher
+     */
+    public Prefetcher withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Prefetches the resources listed in the given manifest
+     *
+     * @param manifest the manifest file
+     * @return the future completed with the resolved resources by path
+     * @throws IOException if the manifest cannot be read
+     */
+    public CompletableFuture<Map<String, ResourceInfo>> prefetch(Path manifest) throws IOException {
+        return prefetch(readManifest(manifest));
+    }
+
+    /**
+     * Prefetches the given resources in the background. The returned
+     * future is always completed normally once every resource has been
+     * processed, resources failing to resolve are reported as unresolved.
+     *
+     * @param resourcePaths the paths to the resources
+     * @return the future completed with the resolved resources by path
+     */
+    public CompletableFuture<Map<String, ResourceInfo>> prefetch(Collection<String> resourcePaths) {
+        requireNonNull(resourcePaths);
+        List<String> paths = new ArrayList<>(resourcePaths);
+        paths.forEach(Objects::requireNonNull);
+        if (paths.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        ResourceInfo[] results = new ResourceInfo[paths.size()];
+        CompletableFuture<?>[] futures = virtualThreads ? prefetchPerThread(paths, results)
+                : prefetchPooled(paths, results);
+
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            Map<String, ResourceInfo> resources = new LinkedHashMap<>();
+            for (int i = 0; i < results.length; i++) {
+                resources.put(paths.get(i), results[i]);
+            }
+            return resources;
+        });
+    }
+
+    /**
+     * Prefetches the resources using a pool of workers taking
+     * the next pending resource
+     *
+     * @param paths the paths to the resources
+     * @param results the resolved resources
+     * @return the futures of the workers
+     */
+    private CompletableFuture<?>[] prefetchPooled(List<String> paths, ResourceInfo[] results) {
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(parallelism, paths.size());
+        ExecutorService executor = newExecutor(workers);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < paths.size()) {
+                    results[index] = load(paths.get(index));
+                }
+            }, executor);
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    /**
+     * Prefetches every resource on its own thread with
+     * at most the parallelism in flight
+     *
+     * @param paths the paths to the resources
+     * @param results the resolved resources
+     * @return the futures of the resources
+     */
+    private CompletableFuture<?>[] prefetchPerThread(List<String> paths, ResourceInfo[] results) {
+        BoundedExecutor executor = new BoundedExecutor("rezolver-prefetch-", parallelism, Integer.MAX_VALUE);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[paths.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int index = i;
+            futures[i] = CompletableFuture.runAsync(() -> results[index] = load(paths.get(index)), executor);
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    /**
+     * Reads the resource paths listed in the manifest
+     *
+     * @param manifest the manifest file
+     * @return the resource paths
+     * @throws IOException if the manifest cannot be read
+     */
+    public static List<String> readManifest(Path manifest) throws IOException {
+        requireNonNull(manifest);
+        List<String> paths = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith(COMMENT_PREFIX)) {
+                    paths.add(line);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Resolves the resource and reads its content if requested
+     *
+     * @param resourcePath the path to the resource
+     * @return the resource information
+     */
+    private ResourceInfo load(String resourcePath) {
+        try {
+            ResourceInfo resourceInfo = rezolver.resolve(resourcePath);
+            if (readContent && resourceInfo.isResolved()) {
+                read(resourceInfo);
+            }
+            return resourceInfo;
+        } catch (RuntimeException e) {
+            log.log(Level.FINE, "Error prefetching resource " + resourcePath, e);
+            return ResourceInfo.unresolved(resourcePath);
+        }
+    }
+
+    /**
+     * Reads the whole content of the resource discarding it
+     *
+     * @param resourceInfo the resolved resource
+     */
+    static void read(ResourceInfo resourceInfo) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = resourceInfo.getURL().openStream()) {
+            while (in.read(buffer) != -1) {
+                // Only warming up
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Error reading prefetched resource " + resourceInfo.getSearchPath(), e);
+        }
+    }
+
+    /**
+     * Creates the pool of daemon threads performing the prefetch
+     *
+     * @param workers the number of threads
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(int workers) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "rezolver-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
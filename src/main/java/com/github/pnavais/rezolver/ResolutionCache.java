@@ -0,0 +1,445 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver;
+
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ResolutionCache} keeps the resolved resources by search path
+ * up to a maximum number of entries. Lookups are lock-free and the eviction
+ * follows a second-chance (CLOCK) policy approximating LRU.
+ * Only resolved resources are cached.
+ * <p>
+ * The entries can be saved to a {@link ResolutionSnapshot} and loaded on
+ * restart, snapshot entries being revalidated when first looked up.
+ * </p>
+ */
+@Log
+public class ResolutionCache implements AutoCloseable {
+
+    /** The maximum number of entries */
+    private final int maxEntries;
+
+    /** The cached entries by search path */
+    private final Map<String, Entry> entries;
+
+    /** Incremented on every invalidation to discard stale insertions */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Lock held by the thread performing the eviction */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The number of cache hits */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** The number of cache misses */
+    private final LongAdder missCount = new LongAdder();
+
+    /** The loaded snapshot whose entries are restored on first use (if any) */
+    private volatile ResolutionSnapshot snapshot;
+
+    /** The snapshot file saved on shutdown (if persisted) */
+    private volatile Path persistedFile;
+
+    /** The hook saving the snapshot on shutdown (if persisted) */
+    private Thread shutdownHook;
+
+    /**
+     * Creates a cache with the given capacity
+     *
+     * @param maxEntries the maximum number of entries
+     */
+    public ResolutionCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of entries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Retrieves a copy of the cached resource for the given search path
+     * so that callers cannot modify the cached entry.
+     *
+     * @param searchPath the search path
+     * @return the cached resource or null if not cached
+     */
+    public ResourceInfo get(String searchPath) {
+        Entry entry = entries.get(searchPath);
+        if (entry == null) {
+            ResourceInfo restored = restore(searchPath);
+            if (restored != null) {
+                hitCount.increment();
+                return restored;
+            }
+            missCount.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hitCount.increment();
+        return entry.resource.copy();
+    }
+
+    /**
+     * Checks whether the given search path is cached without
+     * counting it as a lookup.
+     *
+     * @param searchPath the search path
+     * @return true if cached, false otherwise
+     */
+    public boolean contains(String searchPath) {
+        return entries.containsKey(searchPath);
+    }
+
+    /**
+     * Retrieves the current generation of the cache. Callers resolving
+     * a resource should read it before the resolution and supply it
+     * when storing the result so that results computed before an
+     * invalidation are discarded.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores the resource in the cache if resolved
+     *
+     * @param searchPath the search path
+     * @param resource the resource
+     */
+    public void put(String searchPath, ResourceInfo resource) {
+        put(searchPath, resource, generation.get());
+    }
+
+    /**
+     * Stores a copy of the resource in the cache if resolved and no
+     * invalidation took place since the given generation.
+     *
+     * @param searchPath the search path
+     * @param resource the resource
+     * @param expectedGeneration the generation read before resolving the resource
+     */
+    public void put(String searchPath, ResourceInfo resource, long expectedGeneration) {
+        requireNonNull(searchPath);
+        requireNonNull(resource);
+        if (!resource.isResolved() || (generation.get() != expectedGeneration)) {
+            return;
+        }
+
+        Entry entry = new Entry(resource.copy());
+        entries.put(searchPath, entry);
+
+        // Discard the entry if an invalidation raced with the insertion
+        if (generation.get() != expectedGeneration) {
+            entries.remove(searchPath, entry);
+        }
+
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the entry for the given search path
+     *
+     * @param searchPath the search path
+     */
+    public void invalidate(String searchPath) {
+        generation.incrementAndGet();
+        entries.remove(searchPath);
+        ResolutionSnapshot current = snapshot;
+        if (current != null) {
+            current.forget(searchPath);
+        }
+    }
+
+    /**
+     * Removes all entries referring to the same resource
+     * than the given one (i.e. same search path, same file system path
+     * or same URL).
+     *
+     * @param resource the resource
+     */
+    public void invalidate(ResourceInfo resource) {
+        requireNonNull(resource);
+        generation.incrementAndGet();
+        entries.entrySet().removeIf(e -> Objects.equals(e.getKey(), resource.getSearchPath())
+                || isSameResource(e.getValue().resource, resource));
+        ResolutionSnapshot current = snapshot;
+        if (current != null) {
+            current.forget(resource);
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        snapshot = null;
+        entries.clear();
+    }
+
+    /**
+     * Saves the cached entries (including the still valid
+     * entries of the loaded snapshot) to the given file.
+     *
+     * @param file the snapshot file
+     * @return the number of saved entries
+     * @throws IOException if the snapshot cannot be written
+     */
+    public int save(Path file) throws IOException {
+        restoreSnapshot();
+        Map<String, ResourceInfo> resolutions = new HashMap<>();
+        entries.forEach((searchPath, entry) -> resolutions.put(searchPath, entry.resource));
+        return ResolutionSnapshot.write(resolutions, file);
+    }
+
+    /**
+     * Loads the snapshot saved in the given file. Its entries are
+     * revalidated and restored when first looked up or when calling
+     * {@link #restoreSnapshot()} (e.g. in the background).
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void load(Path file) throws IOException {
+        snapshot = ResolutionSnapshot.open(file);
+    }
+
+    /**
+     * Loads the snapshot saved in the given file (if any) and saves
+     * the cached entries to the same file when the JVM shuts down
+     * or the cache is closed. A single shutdown hook is registered
+     * per cache, persisting again only changes the file.
+     *
+     * @param file the snapshot file
+     */
+    public synchronized void persist(Path file) {
+        requireNonNull(file);
+        if (Files.exists(file)) {
+            try {
+                load(file);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Error loading resolution snapshot " + file, e);
+            }
+        }
+        persistedFile = file;
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::savePersisted, "rezolver-snapshot");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * Saves the cached entries to the persisted snapshot file (if any)
+     * and removes the shutdown hook.
+     */
+    @Override
+    public synchronized void close() {
+        if (shutdownHook == null) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, the hook saves the snapshot
+            return;
+        }
+        shutdownHook = null;
+        savePersisted();
+    }
+
+    /**
+     * Revalidates and restores all the pending entries of the loaded snapshot
+     *
+     * @return the number of restored entries
+     */
+    public int restoreSnapshot() {
+        ResolutionSnapshot current = snapshot;
+        if (current == null) {
+            return 0;
+        }
+        int restored = 0;
+        for (String searchPath : current.getPendingPaths()) {
+            if (restore(searchPath) != null) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Retrieves the loaded snapshot
+     *
+     * @return the snapshot or null if not loaded
+     */
+    public ResolutionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Retrieves the number of cached entries
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the maximum number of entries
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Retrieves the number of lookups served by the cache
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Retrieves the number of lookups not served by the cache
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Saves the cached entries to the persisted snapshot file
+     */
+    private void savePersisted() {
+        Path file = persistedFile;
+        try {
+            save(file);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Error saving resolution snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Restores the entry of the loaded snapshot for the given
+     * search path (if still valid) storing it in the cache.
+     *
+     * @param searchPath the search path
+     * @return the restored resource or null if not available
+     */
+    private ResourceInfo restore(String searchPath) {
+        ResolutionSnapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        long expectedGeneration = generation.get();
+        ResourceInfo restored = current.restore(searchPath);
+        if (restored != null) {
+            put(searchPath, restored, expectedGeneration);
+        }
+        return restored;
+    }
+
+    /**
+     * Evicts entries until the capacity is respected giving
+     * a second chance to recently used entries. Only one thread
+     * performs the eviction at a time, others simply skip it.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries) {
+                if (!iterator.hasNext()) {
+                    iterator = entries.values().iterator();
+                    continue;
+                }
+                Entry entry = iterator.next();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether both resources point to the same location
+     *
+     * @param cached the cached resource
+     * @param resource the resource to compare
+     * @return true if same location, false otherwise
+     */
+    private static boolean isSameResource(ResourceInfo cached, ResourceInfo resource) {
+        if (!resource.isResolved()) {
+            return false;
+        }
+        if ((cached.getPath() != null) && (resource.getPath() != null)) {
+            return cached.getPath().equals(resource.getPath());
+        }
+        return cached.getURL().toExternalForm().equals(resource.getURL().toExternalForm());
+    }
+
+    /**
+     * A cache entry with its reference bit
+     */
+    private static final class Entry {
+
+        /** The cached resource */
+        private final ResourceInfo resource;
+
+        /** Set on access, cleared by the eviction sweep */
+        private volatile boolean referenced;
+
+        /**
+         * Creates the entry
+         *
+         * @param resource the cached resource
+         */
+        private Entry(ResourceInfo resource) {
+            this.resource = resource;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import lombok.ToString;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ResolutionContext} carries the settings of a single resolution
+ * (i.e. the class loader, the file system and the base directory of relative
+ * paths) overriding the ones of the loaders, so that a shared {@link Rezolver}
+ * can serve several tenants concurrently without modifying its loaders.
+ * <p>
+ * Contexts are immutable. Resolutions in a named context are cached under
+ * its name (e.g. the tenant id), which must therefore identify the settings
+ * of the context. Resolutions in unnamed contexts other than the default
+ * one are not cached.
+ * </p>
+ */
+@ToString
+public final class ResolutionContext {
+
+    /** The default context using the settings of the loaders */
+    public static final ResolutionContext DEFAULT = new ResolutionContext(null, null, null, null);
+
+    /** The separator of the context name in the cache keys */
+    private static final char KEY_SEPARATOR = '\0';
+
+    /** The name of the context (if any) */
+    private final String name;
+
+    /** The class loader of class path lookups (if any) */
+    private final ClassLoader classLoader;
+
+    /** The file system of local lookups (if any) */
+    private final FileSystem fileSystem;
+
+    /** The directory of relative local lookups (if any) */
+    private final Path baseDirectory;
+
+    /**
+     * Creates the context
+     *
+     * @param name the name of the context
+     * @param classLoader the class loader of class path lookups
+     * @param fileSystem the file system of local lookups
+     * @param baseDirectory the directory of relative local lookups
+     */
+    private ResolutionContext(String name, ClassLoader classLoader, FileSystem fileSystem, Path baseDirectory) {
+        this.name = name;
+        this.classLoader = classLoader;
+        this.fileSystem = fileSystem;
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * Creates a new context with the given name whose
+     * resolutions are cached under that name.
+     *
+     * @param name the name of the context
+     * @return the context
+     */
+    public static ResolutionContext of(String name) {
+        requireNonNull(name);
+        return new ResolutionContext(name, null, null, null);
+    }
+
+    /**
+     * Creates a copy of the context using the given class loader
+     * for class path lookups.
+     *
+     * @param classLoader the class loader
+     * @return the new context
+     */
+    public ResolutionContext withClassLoader(ClassLoader classLoader) {
+        requireNonNull(classLoader);
+        return new ResolutionContext(name, classLoader, fileSystem, baseDirectory);
+    }
+
+    /**
+     * Creates a copy of the context using the given file system
+     * for local lookups.
+     *
+     * @param fileSystem the file system
+     * @return the new context
+     */
+    public ResolutionContext withFileSystem(FileSystem fileSystem) {
+        requireNonNull(fileSystem);
+        return new ResolutionContext(name, classLoader, fileSystem, baseDirectory);
+    }
+
+    /**
+     * Creates a copy of the context resolving relative local
+     * lookups against the given directory (and in its file system
+     * unless another one is set).
+     *
+     * @param baseDirectory the base directory
+     * @return the new context
+     */
+    public ResolutionContext withBaseDirectory(Path baseDirectory) {
+        requireNonNull(baseDirectory);
+        return new ResolutionContext(name, classLoader, fileSystem, baseDirectory);
+    }
+
+    /**
+     * Retrieves the name of the context
+     *
+     * @return the name or null if unnamed
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the class loader of class path lookups
+     *
+     * @return the class loader or null to use the one of the loader
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Retrieves the file system of local lookups, i.e. the one set
+     * or the one of the base directory.
+     *
+     * @return the file system or null to use the one of the loader
+     */
+    public FileSystem getFileSystem() {
+        if ((fileSystem == null) && (baseDirectory != null)) {
+            return baseDirectory.getFileSystem();
+        }
+        return fileSystem;
+    }
+
+    /**
+     * Retrieves the directory of relative local lookups
+     *
+     * @return the base directory or null if not set
+     */
+    public Path getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * Checks whether the context uses the settings of the loaders
+     *
+     * @return true if no setting is overridden, false otherwise
+     */
+    public boolean isDefault() {
+        return (classLoader == null) && (fileSystem == null) && (baseDirectory == null);
+    }
+
+    /**
+     * Retrieves the key of the resolutions of the given path in this context
+     * used for caching and coalescing. The key of the default context is the
+     * path itself.
+     *
+     * @param resourcePath the path to the resource
+     * @return the key or null if the resolutions cannot be shared
+     */
+    public String getKey(String resourcePath) {
+        if (isDefault() && (name == null)) {
+            return resourcePath;
+        }
+        return (name != null) ? name + KEY_SEPARATOR + resourcePath : null;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver;
+
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IIndexedLoader;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ResolutionPlan} is the compiled form of a {@link LoadersChain}. Fallback
+ * loaders are flattened into their individual steps with all prefixes already built,
+ * so the resolution only runs through a flat array of loaders. Indexed loaders
+ * ruling out the path are skipped.
+ * The plan records the versions of the chain and of the flattened loaders and
+ * must be compiled again once it is no longer current.
+ */
+public final class ResolutionPlan {
+
+    /** The compiled chain */
+    private final LoadersChain chain;
+
+    /** The version of the compiled chain */
+    private final int chainVersion;
+
+    /** The number of loaders in the compiled chain */
+    private final int chainSize;
+
+    /** The steps to execute in order */
+    private final IResourceLoader[] steps;
+
+    /** The end (exclusive) of each group of consecutive steps of the same cost class */
+    private final int[] stageEnds;
+
+    /** The cost class of each group of steps */
+    private final CostClass[] stageClasses;
+
+    /** The flattened fallback loaders */
+    private final FallbackLoader[] fallbackLoaders;
+
+    /** The compiled steps of the flattened fallback loaders */
+    private final FallbackLoader.Steps[] fallbackSteps;
+
+    /**
+     * Creates the plan
+     *
+     * @param chain the compiled chain
+     * @param chainVersion the version of the compiled chain
+     * @param chainSize the number of loaders in the compiled chain
+     * @param steps the steps to execute in order
+     * @param fallbackLoaders the flattened fallback loaders
+     * @param fallbackSteps the compiled steps of the flattened fallback loaders
+     */
+    private ResolutionPlan(LoadersChain chain, int chainVersion, int chainSize, IResourceLoader[] steps,
+                           FallbackLoader[] fallbackLoaders, FallbackLoader.Steps[] fallbackSteps) {
+        this.chain = chain;
+        this.chainVersion = chainVersion;
+        this.chainSize = chainSize;
+        this.steps = steps;
+        this.fallbackLoaders = fallbackLoaders;
+        this.fallbackSteps = fallbackSteps;
+
+        List<Integer> ends = new ArrayList<>();
+        List<CostClass> classes = new ArrayList<>();
+        for (int i = 0; i < steps.length; i++) {
+            CostClass costClass = (steps[i] != null) ? steps[i].getCostClass() : CostClass.LOCAL;
+            if (classes.isEmpty() || (classes.get(classes.size() - 1) != costClass)) {
+                classes.add(costClass);
+                ends.add(i + 1);
+            } else {
+                ends.set(ends.size() - 1, i + 1);
+            }
+        }
+        this.stageEnds = ends.stream().mapToInt(Integer::intValue).toArray();
+        this.stageClasses = classes.toArray(new CostClass[0]);
+    }
+
+    /**
+     * Compiles the given chain of loaders
+     *
+     * @param chain the chain of loaders
+     * @return the plan
+     */
+    public static ResolutionPlan compile(LoadersChain chain) {
+        requireNonNull(chain);
+        int version = chain.getVersion();
+        List<IResourceLoader> steps = new ArrayList<>();
+        List<FallbackLoader> fallbackLoaders = new ArrayList<>();
+        List<FallbackLoader.Steps> fallbackSteps = new ArrayList<>();
+
+        int size = 0;
+        for (IResourceLoader loader : chain.getLoaders()) {
+            // Only plain fallback loaders are flattened, subclasses may change the resolution
+            if ((loader != null) && (loader.getClass() == FallbackLoader.class)) {
+                FallbackLoader fallbackLoader = (FallbackLoader) loader;
+                FallbackLoader.Steps compiled = fallbackLoader.compile();
+                steps.addAll(compiled.getLoaders());
+                fallbackLoaders.add(fallbackLoader);
+                fallbackSteps.add(compiled);
+            } else {
+                steps.add(loader);
+            }
+            size++;
+        }
+
+        return new ResolutionPlan(chain, version, size, steps.toArray(new IResourceLoader[0]),
+                                  fallbackLoaders.toArray(new FallbackLoader[0]),
+                                  fallbackSteps.toArray(new FallbackLoader.Steps[0]));
+    }
+
+    /**
+     * Checks whether the plan is up to date with the chain
+     * and the flattened loaders.
+     *
+     * @param loadersChain the chain of loaders
+     * @return true if up to date, false otherwise
+     */
+    public boolean isCurrent(LoadersChain loadersChain) {
+        if ((loadersChain != chain) || (chain.getVersion() != chainVersion) || (chain.size() != chainSize)) {
+            return false;
+        }
+        for (int i = 0; i < fallbackLoaders.length; i++) {
+            if (!fallbackLoaders[i].isCurrent(fallbackSteps[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the steps of the plan stopping at
+     * the first match found.
+     *
+     * @param resourcePath the path to the resource to be resolved
+     * @return the resource information
+     */
+    public ResourceInfo process(String resourcePath) {
+        return process(resourcePath, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Executes the steps of the plan in the given
+     * context stopping at the first match found.
+     *
+     * @param resourcePath the path to the resource to be resolved
+     * @param context the resolution context
+     * @return the resource information
+     */
+    public ResourceInfo process(String resourcePath, ResolutionContext context) {
+        requireNonNull(context);
+        ResourceInfo resInfo = execute(0, steps.length, resourcePath, context);
+        return (resInfo != null) ? resInfo : ResourceInfo.unresolved(resourcePath);
+    }
+
+    /**
+     * Executes the steps of the plan asynchronously. Consecutive steps
+     * of the same cost class run as a single task in the executor of
+     * their class, the next group being scheduled only if needed.
+     *
+     * @param resourcePath the path to the resource to be resolved
+     * @param scheduler the scheduler
+     * @return the future completed with the resource information
+     */
+    public CompletableFuture<ResourceInfo> processAsync(String resourcePath, ResolutionScheduler scheduler) {
+        return processAsync(resourcePath, ResolutionContext.DEFAULT, scheduler);
+    }
+
+    /**
+     * Executes the steps of the plan asynchronously in the given context
+     * (see {@link #processAsync(String, ResolutionScheduler)}).
+     *
+     * @param resourcePath the path to the resource to be resolved
+     * @param context the resolution context
+     * @param scheduler the scheduler
+     * @return the future completed with the resource information
+     */
+    public CompletableFuture<ResourceInfo> processAsync(String resourcePath, ResolutionContext context,
+                                                        ResolutionScheduler scheduler) {
+        requireNonNull(context);
+        requireNonNull(scheduler);
+        return processStage(0, resourcePath, context, scheduler);
+    }
+
+    /**
+     * Schedules the given group of steps and the following ones if not resolved
+     *
+     * @param stage the index of the group of steps
+     * @param resourcePath the path to the resource to be resolved
+     * @param context the resolution context
+     * @param scheduler the scheduler
+     * @return the future completed with the resource information
+     */
+    private CompletableFuture<ResourceInfo> processStage(int stage, String resourcePath, ResolutionContext context,
+                                                         ResolutionScheduler scheduler) {
+        if (stage == stageClasses.length) {
+            return CompletableFuture.completedFuture(ResourceInfo.unresolved(resourcePath));
+        }
+        int from = (stage == 0) ? 0 : stageEnds[stage - 1];
+        return scheduler.submit(stageClasses[stage], () -> execute(from, stageEnds[stage], resourcePath, context))
+                        .thenCompose(r -> (r != null) ? CompletableFuture.completedFuture(r)
+                                                      : processStage(stage + 1, resourcePath, context, scheduler));
+    }
+
+    /**
+     * Executes the given range of steps stopping at the first match found
+     *
+     * @param from the first step
+     * @param to the last step (exclusive)
+     * @param resourcePath the path to the resource to be resolved
+     * @param context the resolution context
+     * @return the resource information or null if not resolved
+     */
+    private ResourceInfo execute(int from, int to, String resourcePath, ResolutionContext context) {
+        for (int i = from; i < to; i++) {
+            IResourceLoader step = steps[i];
+            if (IIndexedLoader.excludes(step, resourcePath, context)) {
+                continue;
+            }
+            ResourceInfo resInfo = step.resolve(resourcePath, context);
+            if (resInfo.isResolved()) {
+                return resInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the number of steps of the plan
+     *
+     * @return the number of steps
+     */
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    /**
+     * Retrieves the cost classes of the groups of consecutive
+     * steps scheduled together in asynchronous resolutions.
+     *
+     * @return the cost classes
+     */
+    public List<CostClass> getStageClasses() {
+        return Collections.unmodifiableList(Arrays.asList(stageClasses));
+    }
+}
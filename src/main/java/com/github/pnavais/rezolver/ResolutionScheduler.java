@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.util.BoundedExecutor;
+import com.github.pnavais.rezolver.util.LatencyStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ResolutionScheduler</b>
+ * <p>
+ *  Runs asynchronous lookups in a separate bounded executor for every
+ *  {@link CostClass}, so that slow remote lookups cannot starve the local ones.
+ *  Once the queue of a class is full further lookups of that class are
+ *  rejected right away (load shedding) instead of queuing up.
+ *  The queue depth and the time spent waiting in the queue are reported per class.
+ * </p>
+ * <p>
+ *  Alternatively (see {@link #ofVirtualThreads(int, int)}) remote lookups can run
+ *  each on its own virtual thread when running on Java 21 or later, their concurrency
+ *  being limited by a semaphore rather than by the size of a pool.
+ * </p>
+ */
+public class ResolutionScheduler implements AutoCloseable {
+
+    /** The default number of threads performing remote lookups */
+    public static final int DEFAULT_REMOTE_THREADS = 32;
+
+    /** The default capacity of the queues */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /** The executors by cost class */
+    private final Map<CostClass, Tier> tiers = new EnumMap<>(CostClass.class);
+
+    /**
+     * Creates the scheduler with as many local threads as processors and
+     * the default number of remote threads and queue capacities.
+     */
+    public ResolutionScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, DEFAULT_REMOTE_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates the scheduler
+     *
+     * @param localThreads the number of threads performing local lookups
+     * @param localQueueCapacity the maximum number of local lookups waiting
+     * @param remoteThreads the number of threads performing remote lookups
+     * @param remoteQueueCapacity the maximum number of remote lookups waiting
+     */
+    public ResolutionScheduler(int localThreads, int localQueueCapacity, int remoteThreads, int remoteQueueCapacity) {
+        this(Tier.ofPool("local", localThreads, localQueueCapacity), Tier.ofPool("remote", remoteThreads, remoteQueueCapacity));
+    }
+
+    /**
+     * Creates the scheduler with the given tiers
+     *
+     * @param localTier the tier of local lookups
+     * @param remoteTier the tier of remote lookups
+     */
+    private ResolutionScheduler(Tier localTier, Tier remoteTier) {
+        tiers.put(CostClass.LOCAL, localTier);
+        tiers.put(CostClass.REMOTE, remoteTier);
+    }
+
+    /**
+     * Creates a scheduler running every remote lookup on its own virtual
+     * thread (on Java 21 or later) with at most the given number of lookups
+     * in flight. Lookups beyond that limit wait in a queue and are rejected once
+     * the given number of waiting lookups is reached. Local lookups keep using a
+     * pool with as many threads as processors.
+     * <p>
+     * On earlier Java versions platform threads are used instead, so the
+     * concurrency limit should be kept in the order of hundreds.
+     * </p>
+     *
+     * @param maxRemoteLookups the maximum number of remote lookups in flight
+     * @param remoteQueueCapacity the maximum number of remote lookups waiting
+     * @return the scheduler
+     */
+    public static ResolutionScheduler ofVirtualThreads(int maxRemoteLookups, int remoteQueueCapacity) {
+        return new ResolutionScheduler(
+                Tier.ofPool("local", Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY),
+                Tier.ofBounded("remote", maxRemoteLookups, remoteQueueCapacity));
+    }
+
+    /**
+     * Checks whether the lookups of the given cost class run on virtual threads
+     *
+     * @param costClass the cost class
+     * @return true if using virtual threads, false otherwise
+     */
+    public boolean isVirtual(CostClass costClass) {
+        return getTier(costClass).virtual;
+    }
+
+    /**
+     * Submits a task to the executor of the given cost class
+     *
+     * @param costClass the cost class
+     * @param task the task
+     * @param <T> the type of the result
+     * @return the future completed with the result of the task, or exceptionally
+     * with a {@link RejectedExecutionException} if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(CostClass costClass, Supplier<T> task) {
+        requireNonNull(task);
+        return getTier(costClass).submit(task);
+    }
+
+    /**
+     * Retrieves the number of tasks waiting in the queue of the given cost class
+     *
+     * @param costClass the cost class
+     * @return the queue depth
+     */
+    public int getQueueDepth(CostClass costClass) {
+        return getTier(costClass).queueDepth.getAsInt();
+    }
+
+    /**
+     * Retrieves the number of tasks running for the given cost class
+     *
+     * @param costClass the cost class
+     * @return the number of running tasks
+     */
+    public int getActiveCount(CostClass costClass) {
+        return getTier(costClass).activeCount.getAsInt();
+    }
+
+    /**
+     * Retrieves the statistics of the time spent by the tasks of
+     * the given cost class waiting in the queue.
+     *
+     * @param costClass the cost class
+     * @return the waiting time statistics
+     */
+    public LatencyStats getWaitTime(CostClass costClass) {
+        return getTier(costClass).waitTime;
+    }
+
+    /**
+     * Retrieves the number of tasks of the given cost class rejected
+     * as the queue was full.
+     *
+     * @param costClass the cost class
+     * @return the number of rejected tasks
+     */
+    public long getRejectedCount(CostClass costClass) {
+        return getTier(costClass).rejectedCount.sum();
+    }
+
+    /**
+     * Stops the executors once the submitted tasks are done
+     */
+    @Override
+    public void close() {
+        tiers.values().forEach(t -> t.shutdown.run());
+    }
+
+    /**
+     * Retrieves the executor of the given cost class
+     *
+     * @param costClass the cost class
+     * @return the tier
+     */
+    private Tier getTier(CostClass costClass) {
+        requireNonNull(costClass);
+        return tiers.get(costClass);
+    }
+
+
+    /**
+     * The bounded executor of a cost class
+     */
+    private static final class Tier {
+
+        /** The executor */
+        private final Executor executor;
+
+        /** Retrieves the number of waiting tasks */
+        private final IntSupplier queueDepth;
+
+        /** Retrieves the number of running tasks */
+        private final IntSupplier activeCount;
+
+        /** Stops the executor once the submitted tasks are done */
+        private final Runnable shutdown;
+
+        /** Whether the tasks run on virtual threads */
+        private final boolean virtual;
+
+        /** The time spent by the tasks waiting in the queue */
+        private final LatencyStats waitTime = new LatencyStats();
+
+        /** The number of rejected tasks */
+        private final LongAdder rejectedCount = new LongAdder();
+
+        /** The name of the tier */
+        private final String name;
+
+        /**
+         * Creates the tier
+         *
+         * @param name the name of the tier
+         * @param executor the executor
+         * @param queueDepth retrieves the number of waiting tasks
+         * @param activeCount retrieves the number of running tasks
+         * @param shutdown stops the executor
+         * @param virtual whether the tasks run on virtual threads
+         */
+        private Tier(String name, Executor executor, IntSupplier queueDepth, IntSupplier activeCount,
+                     Runnable shutdown, boolean virtual) {
+            this.name = name;
+            this.executor = executor;
+            this.queueDepth = queueDepth;
+            this.activeCount = activeCount;
+            this.shutdown = shutdown;
+            this.virtual = virtual;
+        }
+
+        /**
+         * Creates a tier backed by a fixed pool of daemon threads
+         *
+         * @param name the name of the tier
+         * @param threads the number of threads
+         * @param queueCapacity the capacity of the queue
+         * @return the tier
+         */
+        private static Tier ofPool(String name, int threads, int queueCapacity) {
+            if ((threads <= 0) || (queueCapacity <= 0)) {
+                throw new IllegalArgumentException("The number of threads and the queue capacity must be positive");
+            }
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+                        Thread thread = new Thread(r, "rezolver-" + name + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            return new Tier(name, executor, () -> executor.getQueue().size(), executor::getActiveCount,
+                    executor::shutdown, false);
+        }
+
+        /**
+         * Creates a tier running each task on its own thread (virtual if
+         * supported) with the concurrency limited by a semaphore
+         *
+         * @param name the name of the tier
+         * @param maxConcurrency the maximum number of running tasks
+         * @param queueCapacity the maximum number of waiting tasks
+         * @return the tier
+         */
+        private static Tier ofBounded(String name, int maxConcurrency, int queueCapacity) {
+            if ((maxConcurrency <= 0) || (queueCapacity <= 0)) {
+                throw new IllegalArgumentException("The concurrency and the queue capacity must be positive");
+            }
+            BoundedExecutor executor = new BoundedExecutor("rezolver-" + name + "-", maxConcurrency, queueCapacity);
+            return new Tier(name, executor, executor::getWaitingCount, executor::getActiveCount,
+                    executor::shutdown, executor.isVirtual());
+        }
+
+        /**
+         * Submits the task recording its waiting time
+         *
+         * @param task the task
+         * @param <T> the type of the result
+         * @return the future completed with the result of the task
+         */
+        private <T> CompletableFuture<T> submit(Supplier<T> task) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            long submitted = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    waitTime.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    try {
+                        future.complete(task.get());
+                    } catch (RuntimeException | Error e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejectedCount.increment();
+                future.completeExceptionally(new RejectedExecutionException("The " + name + " lookups queue is full", e));
+            }
+            return future;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import lombok.extern.java.Log;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ResolutionSnapshot</b>
+ * <p>
+ *  A compact binary snapshot of the resolutions kept by a {@link ResolutionCache}
+ *  (search path, location, loader and validators) allowing to restart warm.
+ *  The snapshot file is memory mapped and only the search paths and locations are
+ *  read when opened, every entry being decoded and revalidated when first restored :
+ * </p>
+ * <ul>
+ *  <li>File system resources (including <code>file:</code> URLs) are valid if the file
+ *      still has the same size and modification time.</li>
+ *  <li>Resources inside jar files are valid if the jar file has the same modification time.</li>
+ *  <li>Any other resource (e.g. remote) is restored as is, remote resources being
+ *      revalidated by the {@link DiskCache} or the resource watcher if used.</li>
+ * </ul>
+ */
+@Log
+public class ResolutionSnapshot {
+
+    /** The magic number identifying snapshot files ("RZSN") */
+    static final int MAGIC = 0x525A534E;
+
+    /** The version of the file format */
+    static final int VERSION = 1;
+
+    /** Entry of a resource in the default file system */
+    private static final byte KIND_PATH = 0;
+
+    /** Entry of a resource inside a local jar file */
+    private static final byte KIND_JAR = 1;
+
+    /** Entry of any other resource */
+    private static final byte KIND_URL = 2;
+
+    /** The prefix of jar URLs */
+    private static final String JAR_PREFIX = "jar:";
+
+    /** The separator of the jar file and the entry in jar URLs */
+    private static final String JAR_SEPARATOR = "!/";
+
+    /** The mapped content of the snapshot */
+    private final ByteBuffer buffer;
+
+    /** The offsets of the entries not yet restored by search path */
+    private final Map<String, Integer> pending;
+
+    /** The search paths of the entries by location (absolute path or URL) */
+    private final Map<String, List<String>> searchPathsByLocation;
+
+    /** The creation time of the snapshot in milliseconds since the epoch */
+    private final long createdAt;
+
+    /**
+     * Creates the snapshot
+     *
+     * @param buffer the mapped content
+     * @param pending the offsets of the entries by search path
+     * @param searchPathsByLocation the search paths of the entries by location
+     * @param createdAt the creation time
+     */
+    private ResolutionSnapshot(ByteBuffer buffer, Map<String, Integer> pending,
+                               Map<String, List<String>> searchPathsByLocation, long createdAt) {
+        this.buffer = buffer;
+        this.pending = pending;
+        this.searchPathsByLocation = searchPathsByLocation;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Writes the snapshot of the given resolutions. The file
+     * is replaced atomically.
+     *
+     * @param resolutions the resolved resources by search path
+     * @param file the snapshot file
+     * @return the number of entries written
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static int write(Map<String, ResourceInfo> resolutions, Path file) throws IOException {
+        requireNonNull(resolutions);
+        requireNonNull(file);
+        Path parent = file.toAbsolutePath().getParent();
+        Path tmpFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        int count = 0;
+        try {
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(entries)) {
+                for (Map.Entry<String, ResourceInfo> resolution : resolutions.entrySet()) {
+                    if (writeEntry(out, resolution.getKey(), resolution.getValue())) {
+                        count++;
+                    }
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeLong(System.currentTimeMillis());
+                entries.writeTo(out);
+            }
+            DiskCache.moveAtomically(tmpFile, file);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        return count;
+    }
+
+    /**
+     * Opens the given snapshot mapping it in memory
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the snapshot cannot be read or is not valid
+     */
+    public static ResolutionSnapshot open(Path file) throws IOException {
+        requireNonNull(file);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+            int count = buffer.getInt();
+            long createdAt = buffer.getLong();
+            Map<String, Integer> pending = new ConcurrentHashMap<>(Math.max(16, count * 2));
+            Map<String, List<String>> searchPathsByLocation = new ConcurrentHashMap<>(Math.max(16, count * 2));
+            for (int i = 0; i < count; i++) {
+                int offset = buffer.position();
+                String searchPath = readString(buffer);
+                String location = readString(buffer);
+                skipString(buffer); // Source entity
+                buffer.position(buffer.position() + 1 + 3 * Long.BYTES);
+                skipString(buffer); // Entity tag
+                skipString(buffer); // Content type
+                pending.put(searchPath, offset);
+                searchPathsByLocation.computeIfAbsent(location, l -> new ArrayList<>(1)).add(searchPath);
+            }
+            return new ResolutionSnapshot(buffer, pending, searchPathsByLocation, createdAt);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated snapshot file " + file, e);
+        }
+    }
+
+    /**
+     * Restores the entry of the given search path if still valid.
+     * Every entry is restored at most once.
+     *
+     * @param searchPath the search path
+     * @return the resource or null if not in the snapshot or no longer valid
+     */
+    public ResourceInfo restore(String searchPath) {
+        Integer offset = pending.remove(searchPath);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            return readEntry(searchPath, offset);
+        } catch (RuntimeException | MalformedURLException e) {
+            log.log(Level.FINE, "Error restoring snapshot entry " + searchPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Discards the entry of the given search path
+     *
+     * @param searchPath the search path
+     */
+    public void forget(String searchPath) {
+        pending.remove(searchPath);
+    }
+
+    /**
+     * Discards the entries of the search path of the given resource
+     * and the entries of the same resource (i.e. same file system path
+     * or same URL) without decoding them.
+     *
+     * @param resource the resource
+     */
+    public void forget(ResourceInfo resource) {
+        requireNonNull(resource);
+        if (resource.getSearchPath() != null) {
+            pending.remove(resource.getSearchPath());
+        }
+        String location = getLocation(resource);
+        List<String> searchPaths = (location != null) ? searchPathsByLocation.remove(location) : null;
+        if (searchPaths != null) {
+            searchPaths.forEach(pending::remove);
+        }
+    }
+
+    /**
+     * Retrieves the search paths of the entries not yet restored
+     *
+     * @return the search paths
+     */
+    public Iterable<String> getPendingPaths() {
+        return pending.keySet();
+    }
+
+    /**
+     * Retrieves the number of entries not yet restored
+     *
+     * @return the number of pending entries
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Retrieves the creation time of the snapshot
+     *
+     * @return the creation time in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Writes the entry of the given resource
+     *
+     * @param out the output
+     * @param searchPath the search path
+     * @param resource the resource
+     * @return true if written, false if the resource cannot be persisted (e.g. entries
+     * of nested archives, whose URLs can only be opened by the handler of the archive)
+     * @throws IOException if the entry cannot be written
+     */
+    private static boolean writeEntry(DataOutputStream out, String searchPath, ResourceInfo resource) throws IOException {
+        if (!resource.isResolved()) {
+            return false;
+        }
+
+        byte kind;
+        String location;
+        long validator;
+        long size = resource.getSize();
+        Path path = getLocalPath(resource);
+        if (path != null) {
+            if (path.getFileSystem() != FileSystems.getDefault()) {
+                return false;
+            }
+            BasicFileAttributes attributes = readAttributes(path);
+            if (attributes == null) {
+                return false;
+            }
+            kind = KIND_PATH;
+            location = getLocation(path);
+            validator = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } else {
+            location = resource.getURL().toExternalForm();
+            if (isNested(location)) {
+                return false;
+            }
+            BasicFileAttributes attributes = readAttributes(getJarFile(location));
+            kind = (attributes != null) ? KIND_JAR : KIND_URL;
+            validator = (attributes != null) ? attributes.lastModifiedTime().toMillis() : ResourceInfo.UNKNOWN_ATTRIBUTE;
+        }
+
+        writeString(out, searchPath);
+        writeString(out, location);
+        writeString(out, resource.getSourceEntity());
+        out.writeByte(kind);
+        out.writeLong(validator);
+        out.writeLong(size);
+        out.writeLong(resource.getLastModified());
+        writeString(out, resource.getETag());
+        writeString(out, resource.getContentType());
+        return true;
+    }
+
+    /**
+     * Reads and validates the entry at the given offset
+     *
+     * @param searchPath the search path
+     * @param offset the offset of the entry
+     * @return the resource or null if no longer valid
+     * @throws MalformedURLException if the location is not valid
+     */
+    private ResourceInfo readEntry(String searchPath, int offset) throws MalformedURLException {
+        Decoded decoded = decode(searchPath, offset);
+        ResourceInfo resource = decoded.resource;
+        if (decoded.kind == KIND_PATH) {
+            BasicFileAttributes attributes = readAttributes(resource.getPath());
+            return ((attributes != null) && (attributes.lastModifiedTime().toMillis() == decoded.validator)
+                    && (attributes.size() == resource.getSize())) ? resource : null;
+        } else if (decoded.kind == KIND_JAR) {
+            BasicFileAttributes attributes = readAttributes(getJarFile(decoded.location));
+            return ((attributes != null) && (attributes.lastModifiedTime().toMillis() == decoded.validator)) ? resource : null;
+        }
+        return resource;
+    }
+
+    /**
+     * Decodes the entry at the given offset
+     *
+     * @param searchPath the search path
+     * @param offset the offset of the entry
+     * @return the decoded entry
+     * @throws MalformedURLException if the location is not valid
+     */
+    private Decoded decode(String searchPath, int offset) throws MalformedURLException {
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(offset);
+        skipString(entry);
+        String location = readString(entry);
+        String source = readString(entry);
+        byte kind = entry.get();
+        long validator = entry.getLong();
+
+        ResourceInfo resource = (kind == KIND_PATH) ? ResourceInfo.resolved(searchPath, Paths.get(location), source)
+                                                    : ResourceInfo.resolved(searchPath, new URL(location), source);
+        resource.setSize(entry.getLong());
+        resource.setLastModified(entry.getLong());
+        resource.setETag(readString(entry));
+        resource.setContentType(readString(entry));
+        return new Decoded(resource, kind, validator, location);
+    }
+
+    /**
+     * Retrieves the location under which the given resource is
+     * written to the snapshot
+     *
+     * @param resource the resource
+     * @return the absolute path or URL of the resource, null if not available
+     */
+    private static String getLocation(ResourceInfo resource) {
+        Path path = getLocalPath(resource);
+        if (path != null) {
+            return (path.getFileSystem() == FileSystems.getDefault()) ? getLocation(path) : null;
+        }
+        return (resource.getURL() != null) ? resource.getURL().toExternalForm() : null;
+    }
+
+    /**
+     * Retrieves the location under which the given file is written
+     * to the snapshot
+     *
+     * @param path the path
+     * @return the absolute path
+     */
+    private static String getLocation(Path path) {
+        return path.toAbsolutePath().toString();
+    }
+
+    /**
+     * Retrieves the file system path of the given resource either
+     * directly or from its <code>file:</code> URL
+     *
+     * @param resource the resource
+     * @return the path or null if not a file system resource
+     */
+    private static Path getLocalPath(ResourceInfo resource) {
+        if (resource.getPath() != null) {
+            return resource.getPath();
+        }
+        URL url = resource.getURL();
+        if ((url == null) || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the given URL is the entry of a nested archive
+     * (e.g. jar:file:/app.jar!/lib/lib.jar!/resource.nfo)
+     *
+     * @param location the URL
+     * @return true if nested, false otherwise
+     */
+    private static boolean isNested(String location) {
+        int separator = location.indexOf(JAR_SEPARATOR);
+        return (separator >= 0) && (location.indexOf(JAR_SEPARATOR, separator + JAR_SEPARATOR.length()) >= 0);
+    }
+
+    /**
+     * Retrieves the local jar file of the given jar URL
+     *
+     * @param location the URL
+     * @return the jar file or null if not a local jar URL
+     */
+    private static Path getJarFile(String location) {
+        int separator = location.indexOf(JAR_SEPARATOR);
+        if (!location.startsWith(JAR_PREFIX) || (separator < 0)) {
+            return null;
+        }
+        try {
+            URL jarURL = new URL(location.substring(JAR_PREFIX.length(), separator));
+            return "file".equals(jarURL.getProtocol()) ? Paths.get(jarURL.toURI()) : null;
+        } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the attributes of the given file
+     *
+     * @param path the path
+     * @return the attributes or null if not available
+     */
+    private static BasicFileAttributes readAttributes(Path path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a nullable string as its length followed by its UTF-8 bytes
+     *
+     * @param out the output
+     * @param value the value
+     * @throws IOException if the value cannot be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a nullable string
+     *
+     * @param buffer the buffer
+     * @return the value
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips a nullable string
+     *
+     * @param buffer the buffer
+     */
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    /**
+     * A decoded entry along with its validator
+     */
+    private static final class Decoded {
+
+        /** The resource */
+        private final ResourceInfo resource;
+
+        /** The kind of entry */
+        private final byte kind;
+
+        /** The modification time used to validate the entry */
+        private final long validator;
+
+        /** The location of the resource */
+        private final String location;
+
+        /**
+         * Creates the decoded entry
+         *
+         * @param resource the resource
+         * @param kind the kind of entry
+         * @param validator the validator
+         * @param location the location
+         */
+        private Decoded(ResourceInfo resource, byte kind, long validator, String location) {
+            this.resource = resource;
+            this.kind = kind;
+            this.validator = validator;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ResolutionTrace} records every candidate location attempted
+ * by the loaders while resolving a resource, along with the loader,
+ * the outcome and the elapsed time of each attempt.
+ * <p>
+ * Entries are kept in preallocated arrays of fixed capacity so recording
+ * does not allocate, attempts beyond the capacity are only counted.
+ * Loaders obtain the trace of the current resolution through {@link #current()}
+ * which, while no trace is active in any thread, costs a single volatile read.
+ * </p>
+ */
+public class ResolutionTrace {
+
+    /** The default maximum number of recorded attempts */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /** The number of traces currently active in any thread */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /** The trace active in the current thread */
+    private static final ThreadLocal<ResolutionTrace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The outcome of an attempt
+     */
+    public enum Outcome {
+        /** The loader resolved the candidate */
+        RESOLVED,
+        /** The loader did not find the candidate */
+        NOT_FOUND,
+        /** The loader failed while looking up the candidate */
+        FAILED,
+        /** The loader was skipped as it definitely does not have the candidate */
+        SKIPPED
+    }
+
+    /** The path whose resolution is traced */
+    private final String searchPath;
+
+    /** The attempted candidate locations */
+    private final String[] locations;
+
+    /** The loaders of each attempt */
+    private final String[] loaders;
+
+    /** The outcomes of each attempt */
+    private final Outcome[] outcomes;
+
+    /** The elapsed nanoseconds of each attempt */
+    private final long[] elapsedNanos;
+
+    /** The number of recorded attempts */
+    private int size;
+
+    /** The number of attempts not recorded due to the capacity */
+    private int dropped;
+
+    /** The start time of the resolution in nanoseconds */
+    private long startNanos;
+
+    /** The total elapsed nanoseconds of the resolution (-1 while in progress) */
+    private long totalNanos = -1L;
+
+    /** The trace active in the thread before this one started */
+    private ResolutionTrace previous;
+
+    /**
+     * Creates a trace for the given path
+     *
+     * @param searchPath the path whose resolution is traced
+     * @param capacity the maximum number of recorded attempts
+     */
+    public ResolutionTrace(String searchPath, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.searchPath = searchPath;
+        this.locations = new String[capacity];
+        this.loaders = new String[capacity];
+        this.outcomes = new Outcome[capacity];
+        this.elapsedNanos = new long[capacity];
+    }
+
+    /**
+     * Retrieves the trace of the resolution in progress in the
+     * current thread.
+     *
+     * @return the trace or null if the resolution is not traced
+     */
+    public static ResolutionTrace current() {
+        return (ACTIVE.get() == 0) ? null : CURRENT.get();
+    }
+
+    /**
+     * Starts recording the attempts performed in the current thread
+     * until {@link #stop()} is called. Traces can be nested, the
+     * enclosing one being restored on stop.
+     *
+     * @return this trace
+     */
+    public ResolutionTrace start() {
+        previous = CURRENT.get();
+        CURRENT.set(this);
+        ACTIVE.incrementAndGet();
+        startNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Stops recording the attempts in the current thread
+     * restoring the enclosing trace (if any).
+     */
+    public void stop() {
+        totalNanos = System.nanoTime() - startNanos;
+        if (previous != null) {
+            CURRENT.set(previous);
+            previous = null;
+        } else {
+            CURRENT.remove();
+        }
+        ACTIVE.decrementAndGet();
+    }
+
+    /**
+     * Records an attempt
+     *
+     * @param loader the name of the loader
+     * @param location the candidate location
+     * @param outcome the outcome
+     * @param nanos the elapsed nanoseconds
+     */
+    public void record(String loader, String location, Outcome outcome, long nanos) {
+        if (size == locations.length) {
+            dropped++;
+            return;
+        }
+        loaders[size] = loader;
+        locations[size] = location;
+        outcomes[size] = outcome;
+        elapsedNanos[size] = nanos;
+        size++;
+    }
+
+    /**
+     * Records an attempt given the resource information found
+     *
+     * @param loader the name of the loader
+     * @param location the candidate location
+     * @param resourceInfo the resource information found
+     * @param startNanos the start time of the attempt in nanoseconds
+     */
+    public void record(String loader, String location, ResourceInfo resourceInfo, long startNanos) {
+        record(loader, location, resourceInfo.isResolved() ? Outcome.RESOLVED : Outcome.NOT_FOUND,
+                System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Retrieves the path whose resolution is traced
+     *
+     * @return the search path
+     */
+    public String getSearchPath() {
+        return searchPath;
+    }
+
+    /**
+     * Retrieves the number of recorded attempts
+     *
+     * @return the number of attempts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of attempts not recorded
+     * as the capacity was exceeded
+     *
+     * @return the number of dropped attempts
+     */
+    public int getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Retrieves the candidate location of the given attempt
+     *
+     * @param index the index of the attempt
+     * @return the location
+     */
+    public String getLocation(int index) {
+        return locations[checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the loader of the given attempt
+     *
+     * @param index the index of the attempt
+     * @return the loader name
+     */
+    public String getLoader(int index) {
+        return loaders[checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the outcome of the given attempt
+     *
+     * @param index the index of the attempt
+     * @return the outcome
+     */
+    public Outcome getOutcome(int index) {
+        return outcomes[checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the elapsed time of the given attempt
+     *
+     * @param index the index of the attempt
+     * @return the elapsed nanoseconds
+     */
+    public long getElapsedNanos(int index) {
+        return elapsedNanos[checkIndex(index)];
+    }
+
+    /**
+     * Retrieves the total elapsed time of the resolution
+     *
+     * @return the elapsed nanoseconds or -1 if still in progress
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Checks that the index refers to a recorded attempt
+     *
+     * @param index the index
+     * @return the index
+     */
+    private int checkIndex(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ResolutionTrace[").append(searchPath).append(']');
+        if (totalNanos >= 0) {
+            builder.append(" in ").append(TimeUnit.NANOSECONDS.toMicros(totalNanos)).append(" us");
+        }
+        for (int i = 0; i < size; i++) {
+            builder.append(System.lineSeparator()).append("  ").append(i + 1).append(". ")
+                   .append(loaders[i]).append(" ").append(locations[i]).append(" -> ").append(outcomes[i])
+                   .append(" (").append(elapsedNanos[i]).append(" ns)");
+        }
+        if (dropped > 0) {
+            builder.append(System.lineSeparator()).append("  ... ").append(dropped).append(" more");
+        }
+        return builder.toString();
+    }
+}
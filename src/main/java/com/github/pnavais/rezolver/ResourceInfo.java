@@ -18,7 +18,12 @@ package com.github.pnavais.rezolver;
 
 import lombok.ToString;
 
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * A {@link ResourceInfo} is a basic container to store the resolved
@@ -28,18 +33,49 @@ import java.net.URL;
 @ToString
 public class ResourceInfo {
 
+    /** The source entity name used when the resource is not resolved */
+    public static final String UNKNOWN_SOURCE = "Unknown";
+
+    /** The value of numeric attributes not available for the resource */
+    public static final long UNKNOWN_ATTRIBUTE = -1L;
+
+    /**
+     * Shared immutable result returned by loaders on a miss.
+     * Any attempt to modify it will be rejected.
+     */
+    public static final ResourceInfo UNRESOLVED = new UnresolvedResourceInfo();
+
     /** The path that triggered the search */
     private String searchPath;
 
     /** The resource resolution status */
     private boolean isResolved;
 
-    /** The resource's resolved URL (if available)*/
-    private URL url;
+    /** The resource's resolved URL (if available or already materialized)*/
+    private volatile URL url;
+
+    /** The resource's path in the file system (if resolved from a file system) */
+    private Path path;
 
     /** The source entity that resolved the resource */
     private String sourceEntity;
 
+    /** The size of the resource in bytes (-1 if unknown) */
+    private long size = UNKNOWN_ATTRIBUTE;
+
+    /** The last modification time in milliseconds since the epoch (-1 if unknown) */
+    private long lastModified = UNKNOWN_ATTRIBUTE;
+
+    /** The content type of the resource (if known) */
+    private String contentType;
+
+    /** The entity tag of the resource (if known) */
+    private String etag;
+
+    /** The trace of the resolution (if traced) */
+    @ToString.Exclude
+    private ResolutionTrace trace;
+
     /**
      * This class is kept private to
      * avoid instantiation. The builder
@@ -47,6 +83,91 @@ public class ResourceInfo {
      */
     private ResourceInfo() { }
 
+    /**
+     * Creates the information of a resource resolved
+     * by the given source entity.
+     *
+     * @param searchPath the path that triggered the search
+     * @param url the resolved URL
+     * @param sourceEntity the source entity
+     * @return the resource information
+     */
+    public static ResourceInfo resolved(String searchPath, URL url, String sourceEntity) {
+        requireNonNull(url);
+        ResourceInfo info = new ResourceInfo();
+        info.searchPath = searchPath;
+        info.url = url;
+        info.isResolved = true;
+        info.sourceEntity = sourceEntity;
+        return info;
+    }
+
+    /**
+     * Creates the information of a resource resolved in a file system
+     * by the given source entity. The URL will be built lazily
+     * upon first request.
+     *
+     * @param searchPath the path that triggered the search
+     * @param path the resolved path
+     * @param sourceEntity the source entity
+     * @return the resource information
+     */
+    public static ResourceInfo resolved(String searchPath, Path path, String sourceEntity) {
+        requireNonNull(path);
+        ResourceInfo info = new ResourceInfo();
+        info.searchPath = searchPath;
+        info.path = path;
+        info.isResolved = true;
+        info.sourceEntity = sourceEntity;
+        return info;
+    }
+
+    /**
+     * Creates the information of a resource that could not
+     * be resolved keeping the path that triggered the search.
+     *
+     * @param searchPath the path that triggered the search
+     * @return the resource information
+     */
+    public static ResourceInfo unresolved(String searchPath) {
+        ResourceInfo info = new ResourceInfo();
+        info.searchPath = searchPath;
+        info.sourceEntity = UNKNOWN_SOURCE;
+        return info;
+    }
+
+    /**
+     * Creates a copy of the resource information (e.g. to hand out
+     * a shared resource). The trace is not copied.
+     *
+     * @return the copy
+     */
+    public ResourceInfo copy() {
+        return copy(searchPath);
+    }
+
+    /**
+     * Creates a copy of the resource information for the given
+     * search path (e.g. to hand out a cached resource). The trace
+     * is not copied.
+     *
+     * @param searchPath the path that triggered the search
+     * @return the copy
+     */
+    public ResourceInfo copy(String searchPath) {
+        ResourceInfo info = new ResourceInfo();
+        info.searchPath = searchPath;
+        info.isResolved = isResolved;
+        info.url = url;
+        info.path = path;
+        info.sourceEntity = sourceEntity;
+        info.size = size;
+        info.lastModified = lastModified;
+        info.contentType = contentType;
+        info.etag = etag;
+        return info;
+    }
+
     /**
      * Sets the search path
      *
@@ -86,21 +207,45 @@ public class ResourceInfo {
 
     /**
      * Retrieves the resource's resolved
-     * URL or null if not resolved.
+     * URL or null if not resolved. In case the resource
+     * was resolved from a file system path, the URL is
+     * built upon the first call and cached afterwards.
      *
      * @return the resolved URL
      */
     public URL getURL() {
-        return url;
+        URL resURL = url;
+        if ((resURL == null) && (path != null)) {
+            try {
+                resURL = path.toUri().toURL();
+                url = resURL;
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException("Cannot convert path [" + path + "] to URL", e);
+            }
+        }
+        return resURL;
     }
 
     /**
-     * Sets the resource's resolved URL
+     * Sets the resource's resolved URL discarding
+     * any file system path previously set.
      *
      * @param resURL the resolved URL
      */
     public void setURL(URL resURL) {
         this.url = resURL;
+        this.path = null;
+    }
+
+    /**
+     * Retrieves the resource's path in the file system
+     * or null if the resource was not resolved from a file
+     * system.
+     *
+     * @return the resolved path
+     */
+    public Path getPath() {
+        return path;
     }
 
     /**
@@ -124,6 +269,108 @@ public class ResourceInfo {
         return sourceEntity;
     }
 
+    /**
+     * Retrieves the size of the resource in bytes
+     * or {@link #UNKNOWN_ATTRIBUTE} if not available.
+     *
+     * @return the size of the resource
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the size of the resource in bytes
+     *
+     * @param size the size of the resource
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Retrieves the last modification time of the resource
+     * in milliseconds since the epoch or {@link #UNKNOWN_ATTRIBUTE}
+     * if not available.
+     *
+     * @return the last modification time
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Sets the last modification time of the resource
+     * in milliseconds since the epoch.
+     *
+     * @param lastModified the last modification time
+     */
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Retrieves the content type of the resource. If the
+     * loader did not provide it, the content type is guessed
+     * from the resource name.
+     *
+     * @return the content type or null if not available
+     */
+    public String getContentType() {
+        String type = contentType;
+        if ((type == null) && isResolved) {
+            String name = (path != null) ? String.valueOf(path.getFileName()) : getURL().getPath();
+            type = URLConnection.guessContentTypeFromName(name);
+            contentType = type;
+        }
+        return type;
+    }
+
+    /**
+     * Sets the content type of the resource
+     *
+     * @param contentType the content type
+     */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Retrieves the entity tag of the resource
+     *
+     * @return the entity tag or null if not available
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Sets the entity tag of the resource
+     *
+     * @param etag the entity tag
+     */
+    public void setETag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * Retrieves the trace of the resolution
+     *
+     * @return the trace or null if the resolution was not traced
+     */
+    public ResolutionTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Sets the trace of the resolution
+     *
+     * @param trace the trace
+     */
+    public void setTrace(ResolutionTrace trace) {
+        this.trace = trace;
+    }
+
     /**
      * A builder for the resource info
      */
@@ -162,7 +409,7 @@ public class ResourceInfo {
         public ResourceInfoBuilder as(URL resourceURL) {
             instance.setURL(resourceURL);
             instance.setResolved(resourceURL!=null);
-            instance.setSourceEntity("Unknown");
+            instance.setSourceEntity(UNKNOWN_SOURCE);
             return this;
         }
 
@@ -174,7 +421,7 @@ public class ResourceInfo {
          * @return the resource info builder
          */
         public ResourceInfoBuilder from(String sourceEntity) {
-            instance.setSourceEntity(instance.isResolved() ? sourceEntity : "Unknown");
+            instance.setSourceEntity(instance.isResolved() ? sourceEntity : UNKNOWN_SOURCE);
             return this;
         }
     }
@@ -187,4 +434,68 @@ public class ResourceInfo {
     public static ResourceInfoBuilder builder() {
         return new ResourceInfoBuilder();
     }
+
+    /**
+     * The immutable unresolved resource information
+     * shared by all loaders.
+     */
+    private static final class UnresolvedResourceInfo extends ResourceInfo {
+
+        /**
+         * Creates the unresolved instance
+         */
+        private UnresolvedResourceInfo() {
+            super.setSourceEntity(UNKNOWN_SOURCE);
+        }
+
+        @Override
+        public ResourceInfo copy() {
+            return this;
+        }
+
+        @Override
+        public void setSearchPath(String searchPath) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setResolved(boolean resolved) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setURL(URL resURL) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setSourceEntity(String source) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setSize(long size) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setLastModified(long lastModified) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setETag(String etag) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+
+        @Override
+        public void setTrace(ResolutionTrace trace) {
+            throw new UnsupportedOperationException("The unresolved resource information is immutable");
+        }
+    }
 }
@@ -19,11 +19,22 @@ package com.github.pnavais.rezolver;
 
 import com.github.pnavais.rezolver.loader.IResourceLoader;
 import com.github.pnavais.rezolver.loader.impl.*;
+import com.github.pnavais.rezolver.util.SingleFlight;
+import com.github.pnavais.rezolver.watch.ResourceListener;
+import com.github.pnavais.rezolver.watch.ResourceWatcher;
+import com.github.pnavais.rezolver.watch.WatchHandle;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
@@ -61,6 +72,30 @@ public class Rezolver
     /** The chain of loaders */
     protected LoadersChain loadersChain;
 
+    /** The compiled chain of loaders */
+    private volatile ResolutionPlan plan;
+
+    /** The cache of resolutions (if enabled) */
+    protected ResolutionCache cache;
+
+    /** The resolutions in flight (if coalescing is enabled) */
+    protected SingleFlight<String, ResourceInfo> singleFlight;
+
+    /** The fraction of resolutions traced (0 disables sampling) */
+    protected double traceSamplingRate;
+
+    /** The prefetcher of resources usually requested together (if enabled) */
+    protected CoAccessPrefetcher coAccessPrefetcher;
+
+    /** The scheduler of asynchronous resolutions (created on first use) */
+    private volatile ResolutionScheduler scheduler;
+
+    /** The watcher of resource changes (created on first use) */
+    private volatile ResourceWatcher watcher;
+
+    /** The cache of decoded resources (created on first use) */
+    private volatile DecodedCache decodedCache;
+
     /** The default loaders chain */
     public static final LoadersChain DEFAULT_CHAIN = LoadersChain.from(Arrays.asList(new LocalLoader(),
                                                                                FallbackLoader.of(new ClasspathLoader(), "META-INF"),
@@ -97,15 +132,372 @@ public class Rezolver
     }
 
     /**
-     * Resolves the resource using the default
-     * rezolver instance. This method is not
-     * thread-safe with regards to the context.
+     * Resolves the resource and decodes it, the decoded object being
+     * cached until the resource changes (see {@link DecodedCache}).
+     *
+     * @param resourcePath the path to the resource
+     * @param decoder the decoder of the resource
+     * @param <T> the type of the decoded object
+     * @return the decoded object or null if not resolved
+     */
+    public <T> T resolveAs(String resourcePath, Function<ResourceInfo, T> decoder) {
+        return resolveAs(resourcePath, ResolutionContext.DEFAULT, decoder);
+    }
+
+    /**
+     * Resolves the resource in the given context and decodes it, the
+     * decoded object being cached until the resource changes.
+     *
+     * @param resourcePath the path to the resource
+     * @param context the resolution context
+     * @param decoder the decoder of the resource
+     * @param <T> the type of the decoded object
+     * @return the decoded object or null if not resolved
+     */
+    public <T> T resolveAs(String resourcePath, ResolutionContext context, Function<ResourceInfo, T> decoder) {
+        requireNonNull(decoder);
+        ResourceInfo resource = resolve(resourcePath, context);
+        return resource.isResolved() ? getDecodedCache().get(resource, decoder) : null;
+    }
+
+    /**
+     * Resolves the resource with the settings of the loaders
+     * (see {@link #resolve(String, ResolutionContext)} to override them).
      *
      * @param resourcePath the path to the resource
      * @return the resolved URL
      */
     public ResourceInfo resolve(String resourcePath) {
-        return loadersChain.process(resourcePath);
+        ResourceInfo resourceInfo;
+        if ((traceSamplingRate > 0) && (ThreadLocalRandom.current().nextDouble() < traceSamplingRate)) {
+            resourceInfo = resolveTraced(resourcePath);
+        } else {
+            resourceInfo = resolveCached(resourcePath);
+        }
+
+        if (coAccessPrefetcher != null) {
+            coAccessPrefetcher.accessed(resourcePath, resourceInfo);
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Resolves the resource in the given context, whose settings (e.g. the class
+     * loader or the base directory) override the ones of the loaders without
+     * modifying them, so that concurrent resolutions can use different contexts.
+     * Resolutions in named contexts are cached and coalesced separately
+     * under the name of the context, the ones in unnamed contexts are not.
+     *
+     * @param resourcePath the path to the resource
+     * @param context the resolution context
+     * @return the resource information
+     */
+    public ResourceInfo resolve(String resourcePath, ResolutionContext context) {
+        requireNonNull(context);
+        if (context == ResolutionContext.DEFAULT) {
+            return resolve(resourcePath);
+        }
+        if ((traceSamplingRate > 0) && (ThreadLocalRandom.current().nextDouble() < traceSamplingRate)) {
+            return resolveTraced(resourcePath, context, ResolutionTrace.DEFAULT_CAPACITY);
+        }
+        return resolveCached(resourcePath, context);
+    }
+
+    /**
+     * Resolves the resource through the cache (if enabled)
+     *
+     * @param resourcePath the path to the resource
+     * @return the resource information
+     */
+    private ResourceInfo resolveCached(String resourcePath) {
+        return resolveCached(resourcePath, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Resolves the resource in the given context through the
+     * cache (if enabled and the context can be cached)
+     *
+     * @param resourcePath the path to the resource
+     * @param context the resolution context
+     * @return the resource information
+     */
+    private ResourceInfo resolveCached(String resourcePath, ResolutionContext context) {
+        String key = context.getKey(resourcePath);
+        if ((cache == null) || (key == null)) {
+            return process(resourcePath, key, context);
+        }
+
+        ResourceInfo resourceInfo = cache.get(key);
+        if (resourceInfo == null) {
+            long generation = cache.getGeneration();
+            resourceInfo = process(resourcePath, key, context);
+            cache.put(key, resourceInfo, generation);
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Resolves the resource recording every candidate location attempted
+     * by the loaders in a {@link ResolutionTrace} attached to the result.
+     * Traced resolutions bypass the cache and the coalescing of concurrent
+     * lookups so that the trace reflects an actual lookup.
+     *
+     * @param resourcePath the path to the resource
+     * @return the resource information with its trace
+     */
+    public ResourceInfo resolveTraced(String resourcePath) {
+        return resolveTraced(resourcePath, ResolutionTrace.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Resolves the resource recording up to the given number of
+     * attempts in a {@link ResolutionTrace} attached to the result.
+     *
+     * @param resourcePath the path to the resource
+     * @param capacity the maximum number of recorded attempts
+     * @return the resource information with its trace
+     */
+    public ResourceInfo resolveTraced(String resourcePath, int capacity) {
+        return resolveTraced(resourcePath, ResolutionContext.DEFAULT, capacity);
+    }
+
+    /**
+     * Resolves the resource in the given context recording up to the
+     * given number of attempts in a {@link ResolutionTrace} attached to the result.
+     *
+     * @param resourcePath the path to the resource
+     * @param context the resolution context
+     * @param capacity the maximum number of recorded attempts
+     * @return the resource information with its trace
+     */
+    public ResourceInfo resolveTraced(String resourcePath, ResolutionContext context, int capacity) {
+        requireNonNull(context);
+        ResolutionTrace trace = new ResolutionTrace(resourcePath, capacity).start();
+        ResourceInfo resourceInfo;
+        try {
+            resourceInfo = getPlan().process(resourcePath, context);
+        } finally {
+            trace.stop();
+        }
+        if (resourceInfo == ResourceInfo.UNRESOLVED) {
+            resourceInfo = ResourceInfo.unresolved(resourcePath);
+        }
+        resourceInfo.setTrace(trace);
+        return resourceInfo;
+    }
+
+    /**
+     * Resolves the resource asynchronously. Local and remote loaders
+     * run in separate executors (see {@link ResolutionScheduler}) so that
+     * local resolutions are not delayed by slow remote ones. Cached
+     * resources are returned right away.
+     *
+     * @param resourcePath the path to the resource
+     * @return the future completed with the resource information, or exceptionally
+     * with a {@link java.util.concurrent.RejectedExecutionException} if overloaded
+     */
+    public CompletableFuture<ResourceInfo> resolveAsync(String resourcePath) {
+        return resolveAsync(resourcePath, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Resolves the resource asynchronously in the given context
+     * (see {@link #resolveAsync(String)} and {@link #resolve(String, ResolutionContext)}).
+     *
+     * @param resourcePath the path to the resource
+     * @param context the resolution context
+     * @return the future completed with the resource information, or exceptionally
+     * with a {@link java.util.concurrent.RejectedExecutionException} if overloaded
+     */
+    public CompletableFuture<ResourceInfo> resolveAsync(String resourcePath, ResolutionContext context) {
+        requireNonNull(resourcePath);
+        requireNonNull(context);
+        String key = context.getKey(resourcePath);
+        if ((cache == null) || (key == null)) {
+            return getPlan().processAsync(resourcePath, context, getScheduler());
+        }
+
+        ResourceInfo resourceInfo = cache.get(key);
+        if (resourceInfo != null) {
+            return CompletableFuture.completedFuture(resourceInfo);
+        }
+        long generation = cache.getGeneration();
+        return getPlan().processAsync(resourcePath, context, getScheduler()).thenApply(r -> {
+            cache.put(key, r, generation);
+            return r;
+        });
+    }
+
+    /**
+     * Processes the resource path through the chain of loaders in the given
+     * context sharing the lookup with concurrent resolutions of the same
+     * key if coalescing is enabled.
+     *
+     * @param resourcePath the path to the resource
+     * @param key the key of the resolution in the context or null if not shared
+     * @param context the resolution context
+     * @return the resource information
+     */
+    private ResourceInfo process(String resourcePath, String key, ResolutionContext context) {
+        return ((singleFlight != null) && (key != null))
+                ? singleFlight.execute(key, () -> getPlan().process(resourcePath, context))
+                : getPlan().process(resourcePath, context);
+    }
+
+    /**
+     * Resolves the given resources in the background filling the
+     * cache (if enabled). See {@link Prefetcher} for further options.
+     *
+     * @param resourcePaths the paths to the resources
+     * @return the future completed with the resolved resources by path
+     */
+    public CompletableFuture<Map<String, ResourceInfo>> prefetch(Collection<String> resourcePaths) {
+        return new Prefetcher(this).prefetch(resourcePaths);
+    }
+
+    /**
+     * Resolves the resources listed in the given manifest in the
+     * background filling the cache (if enabled).
+     *
+     * @param manifest the manifest file with one resource path per line
+     * @return the future completed with the resolved resources by path
+     * @throws IOException if the manifest cannot be read
+     */
+    public CompletableFuture<Map<String, ResourceInfo>> prefetch(Path manifest) throws IOException {
+        return new Prefetcher(this).prefetch(manifest);
+    }
+
+    /**
+     * Retrieves the compiled chain of loaders, compiling
+     * it again if the chain changed.
+     *
+     * @return the resolution plan
+     */
+    public ResolutionPlan getPlan() {
+        ResolutionPlan current = plan;
+        if ((current == null) || !current.isCurrent(loadersChain)) {
+            current = ResolutionPlan.compile(loadersChain);
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * Subscribes the listener to the changes of the resource
+     * resolved for the given path. Any change invalidates the
+     * cached resolutions of the resource.
+     *
+     * @param resourcePath the path to the resource
+     * @param listener the listener
+     * @return the handle of the subscription
+     */
+    public WatchHandle watch(String resourcePath, ResourceListener listener) {
+        return getWatcher().watch(resourcePath, listener);
+    }
+
+    /**
+     * Discards any cached resolution of the given resource,
+     * including the state kept by the loaders of the chain.
+     *
+     * @param resource the resource
+     */
+    public void invalidate(ResourceInfo resource) {
+        requireNonNull(resource);
+        loadersChain.getLoaders().forEach(loader -> loader.invalidate(resource));
+        if (cache != null) {
+            cache.invalidate(resource);
+        }
+        DecodedCache decoded = decodedCache;
+        if (decoded != null) {
+            decoded.invalidate(resource);
+        }
+    }
+
+    /**
+     * Retrieves the resolution cache
+     *
+     * @return the cache or null if not enabled
+     */
+    public ResolutionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Retrieves the prefetcher of resources usually requested together
+     *
+     * @return the prefetcher or null if not enabled
+     */
+    public CoAccessPrefetcher getCoAccessPrefetcher() {
+        return coAccessPrefetcher;
+    }
+
+    /**
+     * Retrieves the group of resolutions in flight
+     *
+     * @return the resolutions in flight or null if coalescing is not enabled
+     */
+    public SingleFlight<String, ResourceInfo> getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Retrieves the scheduler of asynchronous resolutions
+     * creating it with the defaults on first use.
+     *
+     * @return the scheduler
+     */
+    public ResolutionScheduler getScheduler() {
+        ResolutionScheduler current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    current = new ResolutionScheduler();
+                    scheduler = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves the cache of decoded resources
+     * creating it with the defaults on first use.
+     *
+     * @return the decoded cache
+     */
+    public DecodedCache getDecodedCache() {
+        DecodedCache current = decodedCache;
+        if (current == null) {
+            synchronized (this) {
+                current = decodedCache;
+                if (current == null) {
+                    current = new DecodedCache();
+                    decodedCache = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves the watcher of resource changes
+     * creating it on first use.
+     *
+     * @return the watcher
+     */
+    public ResourceWatcher getWatcher() {
+        ResourceWatcher resourceWatcher = watcher;
+        if (resourceWatcher == null) {
+            synchronized (this) {
+                resourceWatcher = watcher;
+                if (resourceWatcher == null) {
+                    resourceWatcher = new ResourceWatcher(this);
+                    watcher = resourceWatcher;
+                }
+            }
+        }
+        return resourceWatcher;
     }
 
     /**
@@ -116,6 +508,9 @@ public class Rezolver
         /** The rezolver instance */
         private Rezolver instance = new Rezolver();
 
+        /** The alias manifest (if any) */
+        private String aliasManifest;
+
         /**
          * Setup the defaults for the rezolver
          * builder. (e.g. assign the default
@@ -140,6 +535,144 @@ public class Rezolver
             return this;
         }
 
+        /**
+         * Enables the caching of resolved resources
+         *
+         * @param maxEntries the maximum number of cached resources
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withCache(int maxEntries) {
+            instance.cache = new ResolutionCache(maxEntries);
+            return this;
+        }
+
+        /**
+         * Sets the capacity of the cache of decoded resources, weighing
+         * the decoded objects by the size of their resources.
+         *
+         * @param maxEntries the maximum number of decoded objects
+         * @param maxWeight the maximum total weight
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withDecodedCache(int maxEntries, long maxWeight) {
+            instance.decodedCache = new DecodedCache(maxEntries, maxWeight);
+            return this;
+        }
+
+        /**
+         * Sets the capacity of the cache of decoded resources
+         * weighing the decoded objects with the given weigher.
+         *
+         * @param maxEntries the maximum number of decoded objects
+         * @param maxWeight the maximum total weight
+         * @param weigher the weigher of the decoded objects
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withDecodedCache(int maxEntries, long maxWeight, DecodedCache.Weigher weigher) {
+            instance.decodedCache = new DecodedCache(maxEntries, maxWeight, weigher);
+            return this;
+        }
+
+        /**
+         * Restores the cache from the snapshot saved in the given file (if any)
+         * and saves it again when the JVM shuts down or the cache is closed. The cache must be enabled.
+         *
+         * @param file the snapshot file
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withCacheSnapshot(Path file) {
+            if (instance.cache == null) {
+                throw new IllegalStateException("The cache must be enabled");
+            }
+            instance.cache.persist(file);
+            return this;
+        }
+
+        /**
+         * Enables the coalescing of concurrent resolutions of the same
+         * path, so that only one lookup is performed and a copy of its result is
+         * handed to every caller. Callers waiting longer than the given time
+         * perform their own lookup.
+         *
+         * @param maxWait the maximum time waiting for a concurrent resolution
+         * @param unit the time unit
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withCoalescing(long maxWait, TimeUnit unit) {
+            instance.singleFlight = new SingleFlight<>(maxWait, unit, SingleFlight.DEFAULT_MAX_IN_FLIGHT, ResourceInfo::copy);
+            return this;
+        }
+
+        /**
+         * Enables the prefetch of the resources usually requested shortly
+         * after the resolved one. Better combined with the cache, see
+         * {@link CoAccessPrefetcher} for further options.
+         *
+         * @param window the maximum time between a resource and its followers
+         * @param unit the time unit
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withCoAccessPrefetch(long window, TimeUnit unit) {
+            Rezolver rezolver = instance;
+            instance.coAccessPrefetcher = new CoAccessPrefetcher(rezolver::resolveCached,
+                    path -> (rezolver.cache != null) && rezolver.cache.contains(path), window, unit);
+            return this;
+        }
+
+        /**
+         * Sets the scheduler of asynchronous resolutions
+         *
+         * @param scheduler the scheduler
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withScheduler(ResolutionScheduler scheduler) {
+            requireNonNull(scheduler);
+            instance.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Runs every asynchronous remote resolution on its own virtual thread
+         * (on Java 21 or later) with at most the given number of resolutions in
+         * flight (see {@link ResolutionScheduler#ofVirtualThreads(int, int)}).
+         *
+         * @param maxRemoteLookups the maximum number of remote resolutions in flight
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withVirtualThreads(int maxRemoteLookups) {
+            return withScheduler(ResolutionScheduler.ofVirtualThreads(maxRemoteLookups,
+                    ResolutionScheduler.DEFAULT_QUEUE_CAPACITY));
+        }
+
+        /**
+         * Enables the tracing of a fraction of the resolutions chosen
+         * at random (see {@link Rezolver#resolveTraced(String)}).
+         *
+         * @param rate the fraction of resolutions traced between 0 and 1
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withTraceSampling(double rate) {
+            if ((rate < 0) || (rate > 1)) {
+                throw new IllegalArgumentException("The sampling rate must be between 0 and 1");
+            }
+            instance.traceSamplingRate = rate;
+            return this;
+        }
+
+        /**
+         * Resolves the aliases declared in the given manifest before any other
+         * loader, their target locations being resolved once through the rest
+         * of the chain (see {@link AliasLoader}).
+         *
+         * @param manifest the path to the alias manifest
+         * @return the rezolver builder instance
+         */
+        public RezolverBuilder withAliases(String manifest) {
+            requireNonNull(manifest);
+            this.aliasManifest = manifest;
+            return this;
+        }
+
         /**
          * Adds the given loader at the end of the chain
          *
@@ -196,10 +729,32 @@ public class Rezolver
 
         /**
          * Retrieves the built Rezolver instance
+         * compiling its chain of loaders
          *
          * @return the instance
          */
-        public Rezolver build() { return instance; }
+        public Rezolver build() {
+            if (aliasManifest != null) {
+                LoadersChain targetChain = instance.loadersChain;
+                LoadersChain chain = new LoadersChain();
+                IResourceLoader targets = new IResourceLoader() {
+                    @Override
+                    public ResourceInfo resolve(String location) {
+                        return targetChain.process(location);
+                    }
+
+                    @Override
+                    public ResourceInfo resolve(String location, ResolutionContext context) {
+                        return targetChain.process(location, context);
+                    }
+                };
+                chain.add(AliasLoader.of(targets, aliasManifest));
+                targetChain.getLoaders().forEach(chain::add);
+                instance.loadersChain = chain;
+            }
+            instance.plan = ResolutionPlan.compile(instance.loadersChain);
+            return instance;
+        }
 
     }
 
@@ -245,4 +800,18 @@ public class Rezolver
         return RezolverHolder.instance.resolve(resourcePath);
     }
 
+    /**
+     * Retrieve the object decoded from the resource of a given resourcePath
+     * using the resolver chain. The decoded object is cached until the
+     * resource changes, so the same decoder instance should be reused.
+     *
+     * @param resourcePath the path to a resource
+     * @param decoder the decoder of the resource
+     * @param <T> the type of the decoded object
+     * @return the decoded object or null if not resolved
+     */
+    public static <T> T fetchAs(String resourcePath, Function<ResourceInfo, T> decoder) {
+        return RezolverHolder.instance.resolveAs(resourcePath, decoder);
+    }
+
 }
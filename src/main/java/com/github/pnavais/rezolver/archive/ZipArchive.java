@@ -0,0 +1,955 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.archive;
+
+import com.github.pnavais.rezolver.util.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ZipArchive</b>
+ * <p>
+ *  A zip (or jar) file whose central directory is memory mapped and indexed once
+ *  on open, so lookups do not touch the file system. Stored entries are returned as
+ *  read-only slices of the mapped file without copying and deflated entries are
+ *  inflated on demand. Zip64 archives are supported.
+ * </p>
+ * <p>
+ *  Archives nested in another one (e.g. the libraries of a fat jar) are opened as a
+ *  view of the region of the enclosing archive when stored, which is the usual case,
+ *  or inflated in memory otherwise. The URLs of the entries follow the nested jar
+ *  convention (<code>jar:file:/app.jar!/lib/nested.jar!/entry</code>) and are served
+ *  by the archive itself, so they cannot be parsed back from their external form.
+ * </p>
+ * <p>
+ *  Archives are expected not to change once opened.
+ * </p>
+ */
+public class ZipArchive implements Closeable {
+
+    /** The URL protocol of the archive entries */
+    public static final String PROTOCOL = "jar";
+
+    /** The separator between an archive and its entries in the URLs */
+    public static final String URL_SEPARATOR = "!/";
+
+    /** The compression method of stored entries */
+    public static final int STORED = 0;
+
+    /** The compression method of deflated entries */
+    public static final int DEFLATED = 8;
+
+    /** The signature of the end of central directory record */
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    /** The signature of the Zip64 end of central directory locator */
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /** The signature of the Zip64 end of central directory record */
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+    /** The signature of the central directory headers */
+    private static final int CEN_SIGNATURE = 0x02014b50;
+
+    /** The signature of the local file headers */
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    /** The size of the end of central directory record */
+    private static final int EOCD_SIZE = 22;
+
+    /** The size of the Zip64 end of central directory locator */
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    /** The size of the Zip64 end of central directory record (without extensible data) */
+    private static final int ZIP64_EOCD_SIZE = 56;
+
+    /** The size of the central directory headers (without variable fields) */
+    private static final int CEN_SIZE = 46;
+
+    /** The size of the local file headers (without variable fields) */
+    private static final int LOC_SIZE = 30;
+
+    /** The maximum length of the archive comment */
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    /** The identifier of the Zip64 extended information extra field */
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    /** The value of the 16 bits fields stored in the Zip64 records */
+    private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    /** The value of the 32 bits fields stored in the Zip64 records */
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /** The file containing the archive */
+    private final Path file;
+
+    /** The bytes of the archive */
+    private final Region region;
+
+    /** The prefix of the URLs of the entries */
+    private final String urlPrefix;
+
+    /** The entries by name */
+    private final Map<String, Entry> entries;
+
+    /** The handler of the entries URLs */
+    private final URLStreamHandler handler = new ArchiveURLStreamHandler();
+
+    /** The channel to close with the archive (if still open) */
+    private final Closeable channel;
+
+    /**
+     * Creates the archive indexing its central directory
+     *
+     * @param file the file containing the archive
+     * @param region the bytes of the archive
+     * @param urlPrefix the prefix of the URLs of the entries
+     * @param channel the channel to close with the archive (if any)
+     * @throws IOException if the archive is not valid
+     */
+    private ZipArchive(Path file, Region region, String urlPrefix, Closeable channel) throws IOException {
+        this.file = file;
+        this.region = region;
+        this.urlPrefix = urlPrefix;
+        this.channel = channel;
+        try {
+            this.entries = readCentralDirectory();
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted archive " + urlPrefix, e);
+        }
+    }
+
+    /**
+     * Opens the given zip file mapping its central directory in memory and indexing it.
+     * Archives up to 2 GB are mapped as a whole (pages being loaded on demand) and no file
+     * handle is kept open, larger ones keep the file open to read the headers and map
+     * the entries in windows on demand.
+     *
+     * @param file the zip file
+     * @return the archive
+     * @throws IOException if the archive cannot be read or is not valid
+     */
+    public static ZipArchive open(Path file) throws IOException {
+        requireNonNull(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            String urlPrefix = PROTOCOL + ":" + file.toUri() + URL_SEPARATOR;
+            if (size <= Integer.MAX_VALUE) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                channel.close();
+                return new ZipArchive(file, new BufferRegion(buffer), urlPrefix, null);
+            }
+            return new ZipArchive(file, new ChannelRegion(channel, size), urlPrefix, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the archive stored in the given entry of this archive
+     *
+     * @param name the name of the entry
+     * @return the nested archive
+     * @throws IOException if the entry is not found or is not a valid archive
+     */
+    public ZipArchive openNested(String name) throws IOException {
+        Entry entry = get(name);
+        if ((entry == null) || entry.isDirectory()) {
+            throw new FileNotFoundException("Nested archive not found " + urlPrefix + name);
+        }
+        return openNested(entry);
+    }
+
+    /**
+     * Opens the archive stored in the given entry of this archive. Stored
+     * entries are viewed in place while deflated ones are inflated in memory.
+     * The nested archive shares the resources of this one, and should not
+     * be used once this archive is closed.
+     *
+     * @param entry the entry
+     * @return the nested archive
+     * @throws IOException if the entry is not a valid archive
+     */
+    public ZipArchive openNested(Entry entry) throws IOException {
+        requireNonNull(entry);
+        String nestedPrefix = urlPrefix + entry.getName() + URL_SEPARATOR;
+        if (entry.getMethod() == STORED) {
+            return new ZipArchive(file, new SubRegion(region, getDataOffset(entry), entry.getCompressedSize()), nestedPrefix, null);
+        }
+        return new ZipArchive(file, new BufferRegion(ByteBuffer.wrap(readFully(entry))), nestedPrefix, null);
+    }
+
+    /**
+     * Retrieves the entry with the given name. Directories are found
+     * with or without the trailing slash.
+     *
+     * @param name the name of the entry
+     * @return the entry or null if not found
+     */
+    public Entry get(String name) {
+        Entry entry = entries.get(name);
+        if ((entry == null) && !name.isEmpty() && !name.endsWith("/")) {
+            entry = entries.get(name + "/");
+        }
+        return entry;
+    }
+
+    /**
+     * Retrieves the content of the given entry. Stored entries are returned as
+     * read-only slices of the mapped archive, deflated ones are inflated in memory.
+     *
+     * @param entry the entry
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    public ByteBuffer getContent(Entry entry) throws IOException {
+        requireNonNull(entry);
+        if (entry.getMethod() == STORED) {
+            return getRawContent(entry);
+        }
+        return ByteBuffer.wrap(readFully(entry)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Opens a stream reading the (uncompressed) content of the given entry
+     *
+     * @param entry the entry
+     * @return the input stream
+     * @throws IOException if the content cannot be read
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        requireNonNull(entry);
+        InputStream raw = new ByteBufferInputStream(getRawContent(entry));
+        switch (entry.getMethod()) {
+            case STORED:
+                return raw;
+            case DEFLATED:
+                Inflater inflater = new Inflater(true);
+                return new InflaterInputStream(raw, inflater) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            default:
+                throw new IOException("Unsupported compression method " + entry.getMethod() + " of " + urlPrefix + entry.getName());
+        }
+    }
+
+    /**
+     * Retrieves the URL of the given entry. The URL is handled by
+     * the archive itself and cannot be parsed back from its external form.
+     *
+     * @param entry the entry
+     * @return the URL
+     */
+    public URL getURL(Entry entry) {
+        requireNonNull(entry);
+        URL url = entry.url;
+        if (url == null) {
+            try {
+                url = new URL(PROTOCOL, "", -1, urlPrefix.substring(PROTOCOL.length() + 1) + entry.getName(), handler);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException("Error building the URL of " + entry.getName(), e);
+            }
+            entry.url = url;
+        }
+        return url;
+    }
+
+    /**
+     * Passes the names of all the entries to the given consumer
+     *
+     * @param sink the consumer of the names
+     */
+    public void forEachName(Consumer<String> sink) {
+        entries.keySet().forEach(sink);
+    }
+
+    /**
+     * Retrieves the names of the entries
+     *
+     * @return the names
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Retrieves the number of entries
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the file containing the archive (the enclosing
+     * archive file for nested archives).
+     *
+     * @return the file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Retrieves the prefix of the URLs of the entries
+     * (e.g. <code>jar:file:/app.jar!/lib/nested.jar!/</code>)
+     *
+     * @return the URL prefix
+     */
+    public String getUrlPrefix() {
+        return urlPrefix;
+    }
+
+    /**
+     * Closes the file kept open for large archives (if any). Mapped
+     * regions are released once no longer referenced.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Retrieves the raw (possibly compressed) data of the entry
+     *
+     * @param entry the entry
+     * @return the read-only data
+     * @throws IOException if the data cannot be mapped
+     */
+    private ByteBuffer getRawContent(Entry entry) throws IOException {
+        if (entry.getCompressedSize() > Integer.MAX_VALUE) {
+            throw new IOException("Entry too large " + urlPrefix + entry.getName());
+        }
+        return region.slice(getDataOffset(entry), (int) entry.getCompressedSize()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads the whole uncompressed content of the entry
+     *
+     * @param entry the entry
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    private byte[] readFully(Entry entry) throws IOException {
+        if (entry.getSize() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry too large " + urlPrefix + entry.getName());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(0, entry.getSize()));
+        byte[] buffer = new byte[8192];
+        try (InputStream in = getInputStream(entry)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Retrieves the offset of the data of the entry reading
+     * its local header on first use.
+     *
+     * @param entry the entry
+     * @return the offset of the data
+     * @throws IOException if the local header is not valid
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset < 0) {
+            ByteBuffer header = region.read(entry.localHeaderOffset, LOC_SIZE);
+            if (header.getInt(0) != LOC_SIGNATURE) {
+                throw new IOException("Invalid local header of " + urlPrefix + entry.getName());
+            }
+            dataOffset = entry.localHeaderOffset + LOC_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            if ((dataOffset + entry.getCompressedSize()) > region.size()) {
+                throw new IOException("Truncated entry " + urlPrefix + entry.getName());
+            }
+            entry.dataOffset = dataOffset;
+        }
+        return dataOffset;
+    }
+
+    /**
+     * Locates the central directory through the end of central
+     * directory records and reads its entries.
+     *
+     * @return the entries by name
+     * @throws IOException if the archive is not valid
+     */
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        long size = region.size();
+        if (size < EOCD_SIZE) {
+            throw new IOException("Invalid archive " + urlPrefix);
+        }
+
+        // The end record is followed by a comment of unknown length
+        int tailLength = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_LENGTH);
+        long tailOffset = size - tailLength;
+        ByteBuffer tail = region.read(tailOffset, tailLength);
+        int eocd = -1;
+        for (int i = tailLength - EOCD_SIZE; i >= 0; i--) {
+            if ((tail.getInt(i) == EOCD_SIGNATURE) && ((i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF)) == tailLength)) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("End of central directory not found in " + urlPrefix);
+        }
+
+        long recordOffset = tailOffset + eocd;
+        long entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+        if ((entryCount == ZIP64_MAGIC_SHORT) || (directorySize == ZIP64_MAGIC) || (directoryOffset == ZIP64_MAGIC)) {
+            long locatorOffset = recordOffset - ZIP64_LOCATOR_SIZE;
+            ByteBuffer locator = (locatorOffset >= 0) ? region.read(locatorOffset, ZIP64_LOCATOR_SIZE) : null;
+            if ((locator != null) && (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE)) {
+                long zip64Offset = locator.getLong(8);
+                ByteBuffer zip64 = region.read(zip64Offset, ZIP64_EOCD_SIZE);
+                if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                    throw new IOException("Invalid Zip64 end of central directory in " + urlPrefix);
+                }
+                entryCount = zip64.getLong(32);
+                directorySize = zip64.getLong(40);
+                directoryOffset = zip64.getLong(48);
+                recordOffset = zip64Offset;
+            }
+        }
+
+        // Data prepended to the archive (e.g. a launch script) shifts all the offsets
+        long shift = recordOffset - directorySize - directoryOffset;
+        if ((shift < 0) || (directorySize > Integer.MAX_VALUE) || (entryCount > Integer.MAX_VALUE)) {
+            throw new IOException("Invalid central directory in " + urlPrefix);
+        }
+
+        ByteBuffer directory = region.read(directoryOffset + shift, (int) directorySize);
+        Map<String, Entry> index = new HashMap<>(Math.max(16, (int) (entryCount / 0.75f) + 1));
+        int position = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CEN_SIGNATURE) {
+                throw new IOException("Invalid central directory header in " + urlPrefix);
+            }
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long lastModified = dosToJavaTime(directory.getShort(position + 12) & 0xFFFF, directory.getShort(position + 14) & 0xFFFF);
+            long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long uncompressedSize = directory.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer name = directory.duplicate();
+            name.position(position + CEN_SIZE);
+            name.get(nameBytes);
+
+            // Zip64 values are present only for the fields overflowing 32 bits, in this order
+            if ((uncompressedSize == ZIP64_MAGIC) || (compressedSize == ZIP64_MAGIC) || (localHeaderOffset == ZIP64_MAGIC)) {
+                int extra = position + CEN_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while ((extra + 4) <= extraEnd) {
+                    int id = directory.getShort(extra) & 0xFFFF;
+                    int length = directory.getShort(extra + 2) & 0xFFFF;
+                    if (id == ZIP64_EXTRA_ID) {
+                        int field = extra + 4;
+                        if (uncompressedSize == ZIP64_MAGIC) {
+                            uncompressedSize = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC) {
+                            compressedSize = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC) {
+                            localHeaderOffset = directory.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+
+            Entry entry = new Entry(new String(nameBytes, StandardCharsets.UTF_8), method, crc, compressedSize,
+                    uncompressedSize, localHeaderOffset + shift, lastModified);
+            index.putIfAbsent(entry.getName(), entry);
+            position += CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+        return index;
+    }
+
+    /**
+     * Converts an MS-DOS date and time to milliseconds since the epoch
+     *
+     * @param time the MS-DOS time
+     * @param date the MS-DOS date
+     * @return the milliseconds since the epoch or -1 if not valid
+     */
+    private static long dosToJavaTime(int time, int date) {
+        try {
+            LocalDateTime dateTime = LocalDateTime.of(((date >> 9) & 0x7F) + 1980, (date >> 5) & 0x0F, date & 0x1F,
+                    (time >> 11) & 0x1F, (time >> 5) & 0x3F, (time & 0x1F) * 2);
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * An entry of the archive
+     */
+    public static final class Entry {
+
+        /** The name of the entry */
+        private final String name;
+
+        /** The compression method */
+        private final int method;
+
+        /** The CRC-32 of the uncompressed content */
+        private final long crc;
+
+        /** The size of the compressed content */
+        private final long compressedSize;
+
+        /** The size of the uncompressed content */
+        private final long size;
+
+        /** The offset of the local header */
+        private final long localHeaderOffset;
+
+        /** The last modification time */
+        private final long lastModified;
+
+        /** The offset of the data, read from the local header on first use */
+        private volatile long dataOffset = -1;
+
+        /** The URL, built on demand */
+        private volatile URL url;
+
+        /**
+         * Creates the entry
+         *
+         * @param name the name of the entry
+         * @param method the compression method
+         * @param crc the CRC-32 of the uncompressed content
+         * @param compressedSize the size of the compressed content
+         * @param size the size of the uncompressed content
+         * @param localHeaderOffset the offset of the local header
+         * @param lastModified the last modification time
+         */
+        private Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset, long lastModified) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Retrieves the name of the entry
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieves the compression method
+         *
+         * @return the compression method
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * Retrieves the CRC-32 of the uncompressed content
+         *
+         * @return the CRC-32
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * Retrieves the size of the compressed content
+         *
+         * @return the compressed size
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Retrieves the size of the uncompressed content
+         *
+         * @return the size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Retrieves the offset of the local header in the archive
+         *
+         * @return the offset
+         */
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * Retrieves the last modification time
+         *
+         * @return the last modification time or -1 if unknown
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Checks whether the entry is a directory
+         *
+         * @return true if directory, false otherwise
+         */
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * The bytes of an archive
+     */
+    private interface Region {
+
+        /**
+         * Retrieves a little-endian view of the given bytes
+         *
+         * @param offset the offset of the bytes
+         * @param length the number of bytes
+         * @return the view
+         * @throws IOException if the bytes are out of the region or cannot be mapped
+         */
+        ByteBuffer slice(long offset, int length) throws IOException;
+
+        /**
+         * Retrieves a little-endian buffer with the given bytes, which
+         * can be a copy (e.g. headers read once)
+         *
+         * @param offset the offset of the bytes
+         * @param length the number of bytes
+         * @return the bytes
+         * @throws IOException if the bytes are out of the region or cannot be read
+         */
+        default ByteBuffer read(long offset, int length) throws IOException {
+            return slice(offset, length);
+        }
+
+        /**
+         * Retrieves the size of the region
+         *
+         * @return the size
+         */
+        long size();
+    }
+
+    /**
+     * A region held in a buffer (e.g. a whole mapped file)
+     */
+    private static final class BufferRegion implements Region {
+
+        /** The buffer */
+        private final ByteBuffer buffer;
+
+        /**
+         * Creates the region
+         *
+         * @param buffer the buffer
+         */
+        private BufferRegion(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public ByteBuffer slice(long offset, int length) throws IOException {
+            if ((offset < 0) || (length < 0) || ((offset + length) > buffer.limit())) {
+                throw new IOException("Offset out of the archive " + offset);
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit((int) (offset + length));
+            slice.position((int) offset);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public long size() {
+            return buffer.limit();
+        }
+    }
+
+    /**
+     * A region of a file too large to be mapped at once. Headers are read
+     * into heap buffers and the entries are sliced from windows of the
+     * file mapped on first use, every window overlapping the next one so
+     * that any slice up to the window size fits in a single window.
+     */
+    private static final class ChannelRegion implements Region {
+
+        /** The distance between the start of two consecutive windows */
+        private static final long WINDOW_SIZE = 1L << 26;
+
+        /** The channel of the file */
+        private final FileChannel channel;
+
+        /** The size of the file */
+        private final long size;
+
+        /** The mapped windows by index */
+        private final Map<Long, ByteBuffer> windows = new ConcurrentHashMap<>();
+
+        /**
+         * Creates the region
+         *
+         * @param channel the channel of the file
+         * @param size the size of the file
+         */
+        private ChannelRegion(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public ByteBuffer slice(long offset, int length) throws IOException {
+            checkBounds(offset, length);
+            if (length > WINDOW_SIZE) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            long index = offset / WINDOW_SIZE;
+            int start = (int) (offset - index * WINDOW_SIZE);
+            ByteBuffer slice = getWindow(index).duplicate();
+            slice.limit(start + length);
+            slice.position(start);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException {
+            checkBounds(offset, length);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of archive at " + (offset + buffer.position()));
+                }
+            }
+            buffer.flip();
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Retrieves the window with the given index mapping it on first use.
+         * Each window spans two times the window size (or up to the end of the file).
+         *
+         * @param index the index of the window
+         * @return the mapped window
+         * @throws IOException if the window cannot be mapped
+         */
+        private ByteBuffer getWindow(long index) throws IOException {
+            ByteBuffer window = windows.get(index);
+            if (window == null) {
+                long start = index * WINDOW_SIZE;
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(2 * WINDOW_SIZE, size - start));
+                window = windows.putIfAbsent(index, mapped);
+                if (window == null) {
+                    window = mapped;
+                }
+            }
+            return window;
+        }
+
+        /**
+         * Checks whether the given bytes are inside the file
+         *
+         * @param offset the offset of the bytes
+         * @param length the number of bytes
+         * @throws IOException if the bytes are out of the file
+         */
+        private void checkBounds(long offset, int length) throws IOException {
+            if ((offset < 0) || (length < 0) || ((offset + length) > size)) {
+                throw new IOException("Offset out of the archive " + offset);
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+
+    /**
+     * A region of another region (e.g. a stored nested archive)
+     */
+    private static final class SubRegion implements Region {
+
+        /** The enclosing region */
+        private final Region parent;
+
+        /** The offset in the enclosing region */
+        private final long base;
+
+        /** The size of the region */
+        private final long size;
+
+        /**
+         * Creates the region
+         *
+         * @param parent the enclosing region
+         * @param base the offset in the enclosing region
+         * @param size the size of the region
+         */
+        private SubRegion(Region parent, long base, long size) {
+            this.parent = parent;
+            this.base = base;
+            this.size = size;
+        }
+
+        @Override
+        public ByteBuffer slice(long offset, int length) throws IOException {
+            if ((offset < 0) || (length < 0) || ((offset + length) > size)) {
+                throw new IOException("Offset out of the archive " + offset);
+            }
+            return parent.slice(base + offset, length);
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException {
+            if ((offset < 0) || (length < 0) || ((offset + length) > size)) {
+                throw new IOException("Offset out of the archive " + offset);
+            }
+            return parent.read(base + offset, length);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+
+    /**
+     * Opens the connections to the archive entries
+     */
+    private final class ArchiveURLStreamHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            String spec = PROTOCOL + ":" + url.getFile();
+            Entry entry = spec.startsWith(urlPrefix) ? get(spec.substring(urlPrefix.length())) : null;
+            if (entry == null) {
+                throw new FileNotFoundException("Entry not found in archive " + url);
+            }
+            return new ArchiveURLConnection(url, entry);
+        }
+    }
+
+    /**
+     * A connection to an archive entry
+     */
+    private final class ArchiveURLConnection extends URLConnection {
+
+        /** The entry */
+        private final Entry entry;
+
+        /**
+         * Creates the connection
+         *
+         * @param url the URL
+         * @param entry the entry
+         */
+        private ArchiveURLConnection(URL url, Entry entry) {
+            super(url);
+            this.entry = entry;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return ZipArchive.this.getInputStream(entry);
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return entry.getSize();
+        }
+
+        @Override
+        public long getLastModified() {
+            return entry.getLastModified();
+        }
+
+        @Override
+        public String getContentType() {
+            return guessContentTypeFromName(entry.getName());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.loader;
+
+/**
+ * The cost class of the lookups performed by a loader, used to
+ * schedule them in separate executors so that slow lookups do not
+ * delay the fast ones.
+ */
+public enum CostClass {
+
+    /** CPU bound lookups or local I/O (e.g. file system, classpath) */
+    LOCAL,
+
+    /** Network I/O lookups */
+    REMOTE
+}
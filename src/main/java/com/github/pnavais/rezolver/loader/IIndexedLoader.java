@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.loader;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResolutionTrace;
+import com.github.pnavais.rezolver.util.MembershipFilter;
+
+/**
+ * Common interface for resource loaders able to rule out
+ * missing resources without resolving them (e.g. keeping
+ * a {@link MembershipFilter} of their contents).
+ */
+public interface IIndexedLoader extends IResourceLoader {
+
+    /**
+     * Checks whether the loader might resolve the given location
+     *
+     * @param location the resource location
+     * @return false if the loader definitely cannot resolve it, true otherwise
+     */
+    boolean mightContain(String location);
+
+    /**
+     * Checks whether the loader might resolve the given location in
+     * the given context. By default the context is ignored, loaders whose
+     * contents depend on any of its settings must override it.
+     *
+     * @param location the resource location
+     * @param context the resolution context
+     * @return false if the loader definitely cannot resolve it, true otherwise
+     */
+    default boolean mightContain(String location, ResolutionContext context) {
+        return mightContain(location);
+    }
+
+    /**
+     * Retrieves the membership filter of the loader
+     *
+     * @return the membership filter or null if not enabled
+     */
+    MembershipFilter getMembershipFilter();
+
+    /**
+     * Checks whether the given loader definitely cannot resolve the location
+     * recording the skipped attempt in the trace of the current resolution (if any).
+     *
+     * @param loader the loader
+     * @param location the resource location
+     * @return true if the loader can be skipped, false otherwise
+     */
+    static boolean excludes(IResourceLoader loader, String location) {
+        return excludes(loader, location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Checks whether the given loader definitely cannot resolve the location
+     * in the given context recording the skipped attempt in the trace of the
+     * current resolution (if any).
+     *
+     * @param loader the loader
+     * @param location the resource location
+     * @param context the resolution context
+     * @return true if the loader can be skipped, false otherwise
+     */
+    static boolean excludes(IResourceLoader loader, String location, ResolutionContext context) {
+        if ((loader instanceof IIndexedLoader) && !((IIndexedLoader) loader).mightContain(location, context)) {
+            ResolutionTrace trace = ResolutionTrace.current();
+            if (trace != null) {
+                trace.record(loader.getClass().getSimpleName(), location, ResolutionTrace.Outcome.SKIPPED, 0L);
+            }
+            return true;
+        }
+        return false;
+    }
+}
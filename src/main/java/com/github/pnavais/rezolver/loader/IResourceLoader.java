@@ -16,6 +16,7 @@
 
 package com.github.pnavais.rezolver.loader;
 
+import com.github.pnavais.rezolver.ResolutionContext;
 import com.github.pnavais.rezolver.ResourceInfo;
 
 /**
@@ -33,4 +34,38 @@ public interface IResourceLoader {
      */
     ResourceInfo resolve(String location);
 
+    /**
+     * Resolves the given resource location in the given context, whose
+     * settings override the ones of the loader. By default the context
+     * is ignored, loaders using any of its settings or decorating other
+     * loaders must override it.
+     *
+     * @param location the resource location
+     * @param context the resolution context
+     * @return the resolved resource
+     */
+    default ResourceInfo resolve(String location, ResolutionContext context) {
+        return resolve(location);
+    }
+
+    /**
+     * Retrieves the cost class of the lookups performed
+     * by the loader. By default lookups are considered local.
+     *
+     * @return the cost class
+     */
+    default CostClass getCostClass() {
+        return CostClass.LOCAL;
+    }
+
+    /**
+     * Discards any state kept by the loader about the given resource
+     * (e.g. cached resolutions) so that it is looked up again. By default
+     * nothing is kept, loaders decorating other loaders must forward it.
+     *
+     * @param resource the resource
+     */
+    default void invalidate(ResourceInfo resource) {
+    }
+
 }
@@ -16,8 +16,7 @@
 
 package com.github.pnavais.rezolver.loader;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Locale;
 
 public interface IUrlLoader extends IResourceLoader {
 
@@ -35,27 +34,56 @@ public interface IUrlLoader extends IResourceLoader {
      * @return the location without URL scheme
      */
     default String stripScheme(String location) {
-        return location.replaceFirst("^" + extractScheme(location) + ":", "");
+        String scheme = extractScheme(location);
+        int schemeLength = scheme.length();
+        boolean hasScheme = (schemeLength > 0) && (location.length() > schemeLength) && (location.charAt(schemeLength) == ':')
+                            && location.regionMatches(true, 0, scheme, 0, schemeLength);
+        return hasScheme ? location.substring(schemeLength + 1) : location;
     }
 
     /**
      * Retrieves the URL scheme used in the location URL if any
      *
      * @param location the location
-     * @return the URL scheme used in the location
+     * @return the URL scheme used in the location (lower case)
      */
     default String extractScheme(String location) {
-        String scheme = "";
-        try {
-            URL schemeURL = new URL(location);
-            scheme = schemeURL.getProtocol();
-        } catch (MalformedURLException e) {
-            // Last resort
-            if (location.contains(":")) {
-                scheme = location.substring(0, location.indexOf(':'));
+        int schemeLength = schemeLength(location);
+        return (schemeLength > 0) ? location.substring(0, schemeLength).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Parses the scheme of the location as defined in RFC 3986
+     * (i.e. a letter followed by letters, digits, "+", "-" or "."
+     * and terminated by ":") without throwing on invalid input.
+     *
+     * @param location the location
+     * @return the length of the scheme or 0 if the location has no scheme
+     */
+    static int schemeLength(String location) {
+        if ((location == null) || location.isEmpty() || !isAsciiLetter(location.charAt(0))) {
+            return 0;
+        }
+        for (int i = 1; i < location.length(); i++) {
+            char c = location.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!isAsciiLetter(c) && !((c >= '0') && (c <= '9')) && (c != '+') && (c != '-') && (c != '.')) {
+                return 0;
             }
         }
-        return scheme;
+        return 0;
+    }
+
+    /**
+     * Checks whether the character is an ASCII letter
+     *
+     * @param c the character
+     * @return true if ASCII letter, false otherwise
+     */
+    static boolean isAsciiLetter(char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
     }
 
 }
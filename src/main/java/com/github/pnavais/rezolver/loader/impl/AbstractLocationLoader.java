@@ -15,6 +15,8 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.CostClass;
 import com.github.pnavais.rezolver.loader.IFileSystemLoader;
 import com.github.pnavais.rezolver.loader.IResourceLoader;
 import com.github.pnavais.rezolver.loader.IUrlLoader;
@@ -57,17 +59,76 @@ public abstract class AbstractLocationLoader implements IResourceLoader  {
     protected String applyRootPath(String rootPath, String location) {
         requireNonNull(rootPath);
         requireNonNull(location);
+        return applyRootPrefix(buildRootPrefix(rootPath, getSeparator()), location);
+    }
+
+    /**
+     * Builds the prefix to apply to the locations for the given
+     * root path so that it can be computed once and reused
+     * (i.e. the URL scheme for URL loaders, the root path and the separator).
+     *
+     * @param rootPath the root path
+     * @param separator the separator
+     * @return the root prefix
+     */
+    protected String buildRootPrefix(String rootPath, String separator) {
+        return (this.loader instanceof IUrlLoader) ? ((IUrlLoader) this.loader).getUrlScheme() + ":" + rootPath + separator
+                                                   : rootPath + separator;
+    }
+
+    /**
+     * Modify the current location applying a prefix
+     * previously built with {@link #buildRootPrefix(String, String)}
+     *
+     * @param rootPrefix the root prefix
+     * @param location location to resolve
+     * @return the location updated with the prefix
+     */
+    protected String applyRootPrefix(String rootPrefix, String location) {
+        return (this.loader instanceof IUrlLoader) ? rootPrefix + ((IUrlLoader) this.loader).stripScheme(location)
+                                                   : rootPrefix + location;
+    }
+
+    /**
+     * Checks whether the location is already inside the given
+     * root path (i.e. starts with the root path followed by the separator)
+     * without building intermediate strings.
+     *
+     * @param rootPath the root path
+     * @param location the location
+     * @return true if the location starts with the root path, false otherwise
+     */
+    protected boolean startsWithRootPath(String rootPath, String location) {
+        return location.startsWith(rootPath) && location.startsWith(getSeparator(), rootPath.length());
+    }
 
-        String prefix = rootPath + getSeparator();
-        String newLocation = location;
+    /**
+     * Retrieves the cost class of the decorated loader
+     *
+     * @return the cost class
+     */
+    @Override
+    public CostClass getCostClass() {
+        return loader.getCostClass();
+    }
 
-        // Rearrange the scheme in case of URL Loaders
-        if (this.loader instanceof IUrlLoader) {
-            newLocation = ((IUrlLoader) this.loader).stripScheme(location);
-            prefix = ((IUrlLoader) this.loader).getUrlScheme() + ":" + prefix;
-        }
+    /**
+     * Forwards the invalidation to the decorated loader
+     *
+     * @param resource the resource
+     */
+    @Override
+    public void invalidate(ResourceInfo resource) {
+        loader.invalidate(resource);
+    }
 
-        return prefix + newLocation;
+    /**
+     * Retrieves the decorated loader
+     *
+     * @return the decorated loader
+     */
+    public IResourceLoader getLoader() {
+        return loader;
     }
 
     /**
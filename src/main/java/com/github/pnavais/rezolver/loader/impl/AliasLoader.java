@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResolutionTrace;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.util.MembershipFilter;
+import lombok.extern.java.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>AliasLoader</b>
+ * <p>
+ *     Resolves logical names (e.g. "logo" or "schema.orders.v3") to the locations
+ *     declared in a manifest, either a properties file or a binary file written with
+ *     {@link #writeManifest(Map, Path)}. Aliases are resolved with a single hash lookup,
+ *     the decorated loader being used only for the target location the first time
+ *     and the resolved resource kept with the alias afterwards.
+ * </p>
+ * <p>
+ *     The manifest is loaded again when its modification time changes, checking it
+ *     at most once per refresh interval. Reloading the manifest discards the resources
+ *     kept with the aliases.
+ * </p>
+ */
+@Log
+public class AliasLoader extends AbstractLocationLoader {
+
+    /** The magic number of binary manifests ("RZAL") */
+    public static final int MAGIC = 0x525A414C;
+
+    /** The version of the binary manifest format */
+    public static final int VERSION = 1;
+
+    /** The default interval between checks of the manifest in milliseconds */
+    public static final long DEFAULT_REFRESH_INTERVAL = 2000L;
+
+    /** The name of the loader reported as source entity */
+    private final String sourceName = getClass().getSimpleName();
+
+    /** The manifest file */
+    private final Path manifest;
+
+    /** The aliases by name */
+    private volatile Map<String, Alias> aliases;
+
+    /** The interval between checks of the manifest in nanoseconds */
+    private volatile long refreshInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REFRESH_INTERVAL);
+
+    /** The stamp of the manifest when loaded */
+    private volatile long stamp;
+
+    /** The time of the next check of the manifest */
+    private volatile long nextCheck;
+
+    /**
+     * Creates an {@link AliasLoader} loading the given manifest
+     * and decorating the given loader.
+     *
+     * @param loader the loader resolving the target locations
+     * @param manifest the manifest file
+     * @throws IOException if the manifest cannot be read
+     */
+    public AliasLoader(IResourceLoader loader, Path manifest) throws IOException {
+        super(loader);
+        requireNonNull(manifest);
+        this.manifest = manifest;
+        this.aliases = readManifest(manifest);
+        this.stamp = getManifestStamp();
+        this.nextCheck = System.nanoTime() + refreshInterval;
+    }
+
+    /**
+     * Resolves the alias using the resource kept with it or
+     * resolving its target location with the decorated loader.
+     *
+     * @param location the alias
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not an alias
+     */
+    @Override
+    public ResourceInfo resolve(String location) {
+        return resolve(location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Resolves the alias in the given context. The targets of aliases
+     * resolved in contexts other than the default one are not kept.
+     *
+     * @param location the alias
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not an alias
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        if (System.nanoTime() - nextCheck >= 0) {
+            checkManifest();
+        }
+        Alias alias = aliases.get(location);
+        if (alias == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        ResolutionTrace trace = ResolutionTrace.current();
+        long start = (trace != null) ? System.nanoTime() : 0L;
+        ResourceInfo resourceInfo = context.isDefault() ? find(location, alias) : find(location, alias, context);
+        if (trace != null) {
+            trace.record(sourceName, location, resourceInfo, start);
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Finds the resource of the alias resolving its target
+     * location only if not already resolved.
+     *
+     * @param name the alias
+     * @param alias the alias target
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if the target is not found
+     */
+    private ResourceInfo find(String name, Alias alias) {
+        ResourceInfo resolved = alias.resource;
+        if (resolved == null) {
+            resolved = loader.resolve(alias.target);
+            if (!resolved.isResolved()) {
+                return ResourceInfo.UNRESOLVED;
+            }
+            alias.resource = resolved;
+        }
+        return resolved.copy(name);
+    }
+
+    /**
+     * Resolves the target location of the alias in the given context
+     *
+     * @param name the alias
+     * @param alias the alias target
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if the target is not found
+     */
+    private ResourceInfo find(String name, Alias alias, ResolutionContext context) {
+        ResourceInfo resolved = loader.resolve(alias.target, context);
+        return resolved.isResolved() ? resolved.copy(name) : ResourceInfo.UNRESOLVED;
+    }
+
+    /**
+     * Retrieves the target location of the given alias
+     *
+     * @param name the alias
+     * @return the target location or null if not an alias
+     */
+    public String getTarget(String name) {
+        Alias alias = aliases.get(name);
+        return (alias != null) ? alias.target : null;
+    }
+
+    /**
+     * Retrieves the target locations by alias
+     *
+     * @return the target locations
+     */
+    public Map<String, String> getAliases() {
+        Map<String, String> targets = new HashMap<>();
+        aliases.forEach((name, alias) -> targets.put(name, alias.target));
+        return Collections.unmodifiableMap(targets);
+    }
+
+    /**
+     * Retrieves the number of aliases
+     *
+     * @return the number of aliases
+     */
+    public int size() {
+        return aliases.size();
+    }
+
+    /**
+     * Discards the resource kept with the given alias
+     * so that its target is resolved again.
+     *
+     * @param name the alias
+     */
+    public void invalidate(String name) {
+        Alias alias = aliases.get(name);
+        if (alias != null) {
+            alias.resource = null;
+        }
+    }
+
+    /**
+     * Discards the resources kept with the aliases of the given resource
+     * (i.e. the alias used as search path or any alias resolved to the
+     * same file or URL) and forwards the invalidation to the decorated loader.
+     *
+     * @param resource the resource
+     */
+    @Override
+    public void invalidate(ResourceInfo resource) {
+        requireNonNull(resource);
+        String searchPath = resource.getSearchPath();
+        if (searchPath != null) {
+            invalidate(searchPath);
+        }
+        if (resource.isResolved()) {
+            for (Alias alias : aliases.values()) {
+                ResourceInfo kept = alias.resource;
+                if ((kept != null) && isSameResource(kept, resource)) {
+                    alias.resource = null;
+                }
+            }
+        }
+        super.invalidate(resource);
+    }
+
+    /**
+     * Checks whether both resources refer to the same file or URL
+     *
+     * @param kept the resource kept with an alias
+     * @param resource the resolved resource
+     * @return true if same resource, false otherwise
+     */
+    private static boolean isSameResource(ResourceInfo kept, ResourceInfo resource) {
+        if ((kept.getPath() != null) && (resource.getPath() != null)) {
+            return kept.getPath().equals(resource.getPath());
+        }
+        return kept.getURL().toExternalForm().equals(resource.getURL().toExternalForm());
+    }
+
+    /**
+     * Loads the manifest again discarding the resources kept
+     * with the aliases. The current aliases are kept if the
+     * manifest cannot be read.
+     */
+    public synchronized void reload() {
+        long manifestStamp = getManifestStamp();
+        try {
+            aliases = readManifest(manifest);
+            stamp = manifestStamp;
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Error loading alias manifest " + manifest, e);
+        }
+        nextCheck = System.nanoTime() + refreshInterval;
+    }
+
+    /**
+     * Sets the interval between checks of the manifest
+     *
+     * @param interval the interval
+     * @param unit the time unit
+     */
+    public void setRefreshInterval(long interval, TimeUnit unit) {
+        requireNonNull(unit);
+        if (interval < 0) {
+            throw new IllegalArgumentException("The interval cannot be negative");
+        }
+        this.refreshInterval = unit.toNanos(interval);
+        this.nextCheck = System.nanoTime() + refreshInterval;
+    }
+
+    /**
+     * Retrieves the manifest file
+     *
+     * @return the manifest file
+     */
+    public Path getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Loads the manifest again if modified
+     */
+    private synchronized void checkManifest() {
+        long now = System.nanoTime();
+        if (now - nextCheck < 0) {
+            return;
+        }
+        if (getManifestStamp() != stamp) {
+            reload();
+        } else {
+            nextCheck = now + refreshInterval;
+        }
+    }
+
+    /**
+     * Retrieves the stamp of the manifest
+     *
+     * @return the stamp
+     */
+    private long getManifestStamp() {
+        return MembershipFilter.getStamp(Collections.singleton(manifest));
+    }
+
+    /**
+     * Reads the aliases of the given manifest, either binary
+     * or in properties format.
+     *
+     * @param manifest the manifest file
+     * @return the aliases by name
+     * @throws IOException if the manifest cannot be read
+     */
+    private static Map<String, Alias> readManifest(Path manifest) throws IOException {
+        Map<String, Alias> aliases = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(manifest))) {
+            in.mark(Integer.BYTES);
+            DataInputStream data = new DataInputStream(in);
+            if (readMagic(in) == MAGIC) {
+                int version = data.readUnsignedShort();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported alias manifest version " + version);
+                }
+                int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    aliases.put(data.readUTF(), new Alias(data.readUTF()));
+                }
+            } else {
+                in.reset();
+                Properties properties = new Properties();
+                properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+                properties.stringPropertyNames().forEach(name -> aliases.put(name, new Alias(properties.getProperty(name))));
+            }
+        }
+        return aliases;
+    }
+
+    /**
+     * Reads the first four bytes of the manifest
+     *
+     * @param in the manifest input
+     * @return the magic number or -1 if too short
+     * @throws IOException if the manifest cannot be read
+     */
+    private static int readMagic(InputStream in) throws IOException {
+        int magic = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            int b = in.read();
+            if (b < 0) {
+                return -1;
+            }
+            magic = (magic << 8) | b;
+        }
+        return magic;
+    }
+
+    /**
+     * Writes the given aliases to a binary manifest
+     *
+     * @param aliases the target locations by alias
+     * @param manifest the manifest file
+     * @throws IOException if the manifest cannot be written
+     */
+    public static void writeManifest(Map<String, String> aliases, Path manifest) throws IOException {
+        requireNonNull(aliases);
+        requireNonNull(manifest);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(manifest)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(aliases.size());
+            for (Map.Entry<String, String> alias : aliases.entrySet()) {
+                out.writeUTF(alias.getKey());
+                out.writeUTF(alias.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates a new alias loader with the given manifest
+     *
+     * @param loader the loader resolving the target locations
+     * @param manifest the path to the manifest file
+     * @return the alias loader
+     */
+    public static AliasLoader of(IResourceLoader loader, String manifest) {
+        requireNonNull(loader);
+        requireNonNull(manifest);
+        try {
+            return new AliasLoader(loader, Paths.get(manifest));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading alias manifest " + manifest, e);
+        }
+    }
+
+    /**
+     * An alias with its target location and resolved resource
+     */
+    private static final class Alias {
+
+        /** The target location */
+        private final String target;
+
+        /** The resolved resource (null until resolved) */
+        private volatile ResourceInfo resource;
+
+        /**
+         * Creates the alias
+         *
+         * @param target the target location
+         */
+        private Alias(String target) {
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.archive.ZipArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * <b>ArchiveClassPath</b>
+ * <p>
+ *  The class path of a class loader with its jar files opened once and their
+ *  central directories indexed (see {@link ZipArchive}), including the archives
+ *  nested in fat jars (<code>jar:file:/app.jar!/BOOT-INF/lib/lib.jar!/</code>),
+ *  so that resources are found without going through the class loaders.
+ * </p>
+ * <p>
+ *  The search order of the class loaders is kept : the ancestors not backed by a
+ *  class path (e.g. the platform class loader) are searched first, then the class path
+ *  roots from the topmost ancestor down to the class loader itself, the jar files referenced
+ *  in the manifest of a jar file being searched right after it.
+ * </p>
+ * <p>
+ *  Only class loaders known to delegate to their parent first are indexed, i.e. plain
+ *  {@link URLClassLoader} instances and the JDK class loaders of the system class path.
+ *  Any other class loader (e.g. a child-first subclass) is searched through
+ *  {@link ClassLoader#getResource(String)} along with its ancestors.
+ * </p>
+ */
+final class ArchiveClassPath {
+
+    /** The system property with the boot class path */
+    private static final String BOOT_CLASS_PATH = "sun.boot.class.path";
+
+    /** The ancestor searched before the class path roots (if any) */
+    private final ClassLoader parent;
+
+    /** The class path roots in search order */
+    private final List<Root> roots;
+
+    /** Whether the system class loader must be searched as last resort */
+    private final boolean systemFallback;
+
+    /**
+     * Creates the class path
+     *
+     * @param parent the ancestor searched before the class path roots (if any)
+     * @param roots the class path roots in search order
+     * @param systemFallback whether the system class loader must be searched as last resort
+     */
+    private ArchiveClassPath(ClassLoader parent, List<Root> roots, boolean systemFallback) {
+        this.parent = parent;
+        this.roots = roots;
+        this.systemFallback = systemFallback;
+    }
+
+    /**
+     * Indexes the class path of the given class loader and its
+     * ancestors up to the first one not known to delegate to its
+     * parent first.
+     *
+     * @param classLoader the class loader
+     * @return the class path
+     * @throws IOException if the class path cannot be indexed
+     */
+    static ArchiveClassPath of(ClassLoader classLoader) throws IOException {
+        ClassLoader systemLoader = ClassLoader.getSystemClassLoader();
+        Deque<URLClassLoader> indexed = new ArrayDeque<>();
+        ClassLoader parent = null;
+        boolean systemFallback = true;
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            systemFallback &= (current != systemLoader);
+            if (!isParentFirst(current, systemLoader)) {
+                parent = current;
+                break;
+            }
+            indexed.push((URLClassLoader) current);
+        }
+        for (ClassLoader current = parent; current != null; current = current.getParent()) {
+            systemFallback &= (current != systemLoader);
+        }
+
+        Map<Path, ZipArchive> archives = new HashMap<>();
+        List<Root> roots = new ArrayList<>();
+        if (parent == null) {
+            String bootClassPath = System.getProperty(BOOT_CLASS_PATH);
+            if (bootClassPath == null) {
+                throw new IOException("The boot class path is not available");
+            }
+            List<URL> bootURLs = new ArrayList<>();
+            for (String entry : bootClassPath.split(File.pathSeparator)) {
+                if (!entry.isEmpty()) {
+                    bootURLs.add(Paths.get(entry).toUri().toURL());
+                }
+            }
+            addRoots(roots, bootURLs, archives);
+        }
+        for (URLClassLoader loader : indexed) {
+            addRoots(roots, Arrays.asList(loader.getURLs()), archives);
+        }
+        return new ArchiveClassPath(parent, roots, systemFallback);
+    }
+
+    /**
+     * Checks whether the given class loader is a {@link URLClassLoader}
+     * known to delegate to its parent first, i.e. a plain {@link URLClassLoader}
+     * or a JDK class loader of the system class path (e.g. the application
+     * and extension class loaders).
+     *
+     * @param loader the class loader
+     * @param systemLoader the system class loader
+     * @return true if parent first, false otherwise
+     */
+    private static boolean isParentFirst(ClassLoader loader, ClassLoader systemLoader) {
+        if (!(loader instanceof URLClassLoader)) {
+            return false;
+        }
+        if (loader.getClass() == URLClassLoader.class) {
+            return true;
+        }
+        if (loader.getClass().getClassLoader() != null) {
+            return false;
+        }
+        for (ClassLoader current = systemLoader; current != null; current = current.getParent()) {
+            if (current == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the resource in the class path roots
+     *
+     * @param searchPath the path that triggered the search
+     * @param name the name of the resource
+     * @param sourceName the name of the loader reported as source entity
+     * @return the resource information or null if not found
+     */
+    ResourceInfo find(String searchPath, String name, String sourceName) {
+        for (Root root : roots) {
+            ResourceInfo resourceInfo = root.find(searchPath, name, sourceName);
+            if (resourceInfo != null) {
+                return resourceInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the ancestor searched before the class path roots
+     *
+     * @return the ancestor or null if none
+     */
+    ClassLoader getParent() {
+        return parent;
+    }
+
+    /**
+     * Checks whether the system class loader must be searched as last
+     * resort, i.e. it is not an ancestor of the class loader.
+     *
+     * @return true if the system class loader must be searched, false otherwise
+     */
+    boolean isSystemFallback() {
+        return systemFallback;
+    }
+
+    /**
+     * Retrieves the class path roots in search order
+     *
+     * @return the roots
+     */
+    List<Root> getRoots() {
+        return roots;
+    }
+
+    /**
+     * Opens the class path root referenced by the given URL, which can
+     * be a local jar file or directory, or a jar URL referencing an archive
+     * or a directory nested in a local jar file.
+     *
+     * @param url the URL
+     * @param archives the archives already opened by file
+     * @return the root or null if the jar file or directory does not exist
+     * @throws IOException if the URL cannot be indexed
+     */
+    static Root openRoot(URL url, Map<Path, ZipArchive> archives) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            return openRoot(toPath(url), archives);
+        }
+        if (!ZipArchive.PROTOCOL.equals(url.getProtocol())) {
+            throw new IOException("The class path entry cannot be indexed : " + url);
+        }
+
+        String[] segments = url.getFile().split(ZipArchive.URL_SEPARATOR);
+        URL fileURL = new URL(segments[0]);
+        if (!"file".equals(fileURL.getProtocol())) {
+            throw new IOException("The class path entry cannot be indexed : " + url);
+        }
+        Path file = toPath(fileURL);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        ZipArchive archive = openArchive(file, archives);
+        String prefix = "";
+        for (int i = 1; i < segments.length; i++) {
+            if (segments[i].isEmpty()) {
+                continue;
+            }
+            String name = prefix + segments[i];
+            ZipArchive.Entry entry = archive.get(name);
+            if ((entry != null) && !entry.isDirectory()) {
+                archive = archive.openNested(entry);
+                prefix = "";
+            } else {
+                prefix = name.endsWith("/") ? name : name + "/";
+            }
+        }
+        return new ArchiveRoot(archive, prefix, false);
+    }
+
+    /**
+     * Opens the class path root at the given local path
+     *
+     * @param path the jar file or directory
+     * @param archives the archives already opened by file
+     * @return the root or null if the path does not exist
+     * @throws IOException if the jar file cannot be opened
+     */
+    private static Root openRoot(Path path, Map<Path, ZipArchive> archives) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryRoot(path);
+        }
+        if (Files.isRegularFile(path)) {
+            return new ArchiveRoot(openArchive(path, archives), "", true);
+        }
+        return null;
+    }
+
+    /**
+     * Opens the archive at the given path reusing it if already opened
+     *
+     * @param file the archive file
+     * @param archives the archives already opened by file
+     * @return the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    private static ZipArchive openArchive(Path file, Map<Path, ZipArchive> archives) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        ZipArchive archive = archives.get(key);
+        if (archive == null) {
+            archive = ZipArchive.open(key);
+            archives.put(key, archive);
+        }
+        return archive;
+    }
+
+    /**
+     * Opens the roots of the given URLs adding them in search order, the jar files
+     * referenced in the manifest of a jar file being added right after it.
+     *
+     * @param roots the roots
+     * @param urls the URLs of a class loader
+     * @param archives the archives already opened by file
+     * @throws IOException if an URL cannot be indexed
+     */
+    private static void addRoots(List<Root> roots, List<URL> urls, Map<Path, ZipArchive> archives) throws IOException {
+        Deque<URL> pending = new ArrayDeque<>(urls);
+        Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            URL url = pending.poll();
+            if (!visited.add(url.toExternalForm())) {
+                continue;
+            }
+            Root root = openRoot(url, archives);
+            if (root == null) {
+                continue;
+            }
+            roots.add(root);
+            List<URL> referenced = root.getClassPath();
+            for (int i = referenced.size() - 1; i >= 0; i--) {
+                pending.push(referenced.get(i));
+            }
+        }
+    }
+
+    /**
+     * Converts a file URL to a local path
+     *
+     * @param url the URL
+     * @return the path
+     * @throws IOException if the URL is not valid
+     */
+    private static Path toPath(URL url) throws IOException {
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Invalid class path entry : " + url);
+        }
+    }
+
+    /**
+     * A root of the class path
+     */
+    interface Root {
+
+        /**
+         * Finds the resource in the root
+         *
+         * @param searchPath the path that triggered the search
+         * @param name the name of the resource
+         * @param sourceName the name of the loader reported as source entity
+         * @return the resource information or null if not found
+         */
+        ResourceInfo find(String searchPath, String name, String sourceName);
+
+        /**
+         * Passes the names of the resources in the root to the given consumer
+         *
+         * @param sink the consumer of the names
+         * @throws IOException if the root cannot be scanned
+         */
+        void scan(Consumer<String> sink) throws IOException;
+
+        /**
+         * Retrieves the local file or directory containing the root
+         *
+         * @return the file
+         */
+        Path getFile();
+
+        /**
+         * Retrieves the files whose modification time changes whenever
+         * the resources of the root change (e.g. the jar file or every
+         * directory found in the last scan).
+         *
+         * @return the files
+         */
+        default Collection<Path> getStampedFiles() {
+            return Collections.singleton(getFile());
+        }
+
+        /**
+         * Retrieves the class path referenced in the manifest of a jar file
+         *
+         * @return the referenced URLs
+         * @throws IOException if the manifest cannot be read
+         */
+        default List<URL> getClassPath() throws IOException {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * A class path root inside an archive
+     */
+    private static final class ArchiveRoot implements Root {
+
+        /** The archive */
+        private final ZipArchive archive;
+
+        /** The prefix of the root entries in the archive */
+        private final String prefix;
+
+        /** Whether the archive is a local jar file (i.e. not nested) */
+        private final boolean local;
+
+        /**
+         * Creates the root
+         *
+         * @param archive the archive
+         * @param prefix the prefix of the root entries in the archive
+         * @param local whether the archive is a local jar file
+         */
+        private ArchiveRoot(ZipArchive archive, String prefix, boolean local) {
+            this.archive = archive;
+            this.prefix = prefix;
+            this.local = local;
+        }
+
+        @Override
+        public ResourceInfo find(String searchPath, String name, String sourceName) {
+            ZipArchive.Entry entry = archive.get(prefix.isEmpty() ? name : prefix + name);
+            if (entry == null) {
+                return null;
+            }
+            ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, archive.getURL(entry), sourceName);
+            resourceInfo.setSize(entry.getSize());
+            resourceInfo.setLastModified(entry.getLastModified());
+            return resourceInfo;
+        }
+
+        @Override
+        public void scan(Consumer<String> sink) {
+            archive.forEachName(name -> {
+                if ((name.length() > prefix.length()) && name.startsWith(prefix)) {
+                    String relative = name.substring(prefix.length());
+                    sink.accept(relative);
+                    if (relative.endsWith("/")) {
+                        sink.accept(relative.substring(0, relative.length() - 1));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public Path getFile() {
+            return archive.getFile();
+        }
+
+        @Override
+        public List<URL> getClassPath() throws IOException {
+            ZipArchive.Entry entry = archive.get(JarFile.MANIFEST_NAME);
+            if (!local || (entry == null)) {
+                return Collections.emptyList();
+            }
+            Manifest manifest;
+            try (InputStream in = archive.getInputStream(entry)) {
+                manifest = new Manifest(in);
+            }
+            String classPath = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath == null) {
+                return Collections.emptyList();
+            }
+            List<URL> referenced = new ArrayList<>();
+            URL base = archive.getFile().toUri().toURL();
+            for (String entryPath : classPath.trim().split("\\s+")) {
+                if (!entryPath.isEmpty()) {
+                    referenced.add(new URL(base, entryPath));
+                }
+            }
+            return referenced;
+        }
+    }
+
+    /**
+     * A class path root in a local directory
+     */
+    private static final class DirectoryRoot implements Root {
+
+        /** The directory */
+        private final Path directory;
+
+        /** The directory and its subdirectories found in the last scan */
+        private volatile Collection<Path> directories;
+
+        /**
+         * Creates the root
+         *
+         * @param directory the directory
+         */
+        private DirectoryRoot(Path directory) {
+            this.directory = directory.toAbsolutePath().normalize();
+            this.directories = Collections.singleton(this.directory);
+        }
+
+        @Override
+        public ResourceInfo find(String searchPath, String name, String sourceName) {
+            try {
+                Path path = directory.resolve(name).normalize();
+                if (!path.startsWith(directory)) {
+                    return null;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, path, sourceName);
+                resourceInfo.setSize(attributes.size());
+                resourceInfo.setLastModified(attributes.lastModifiedTime().toMillis());
+                return resourceInfo;
+            } catch (IOException | InvalidPathException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void scan(Consumer<String> sink) throws IOException {
+            List<Path> scanned = new ArrayList<>();
+            scanned.add(directory);
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.filter(p -> !p.equals(directory)).forEach(p -> {
+                    String name = directory.relativize(p).toString().replace(File.separatorChar, '/');
+                    sink.accept(name);
+                    if (Files.isDirectory(p)) {
+                        sink.accept(name + "/");
+                        scanned.add(p);
+                    }
+                });
+            }
+            directories = scanned;
+        }
+
+        @Override
+        public Path getFile() {
+            return directory;
+        }
+
+        @Override
+        public Collection<Path> getStampedFiles() {
+            return directories;
+        }
+    }
+}
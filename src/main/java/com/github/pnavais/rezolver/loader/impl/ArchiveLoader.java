@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.archive.ZipArchive;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ArchiveLoader</b>
+ * <p>
+ *  Resolves resources stored in zip or jar files given their location
+ *  as <code>[zip:|jar:]archive!/entry</code>, e.g. <code>zip:/data/assets.zip!/images/logo.png</code>
+ *  or <code>jar:file:/opt/app/lib.jar!/META-INF/app.properties</code>. Archives nested
+ *  in other archives are supported as well (<code>/data/app.jar!/lib/lib.jar!/entry</code>).
+ * </p>
+ * <p>
+ *  Every archive is opened once, its central directory memory mapped and indexed
+ *  (see {@link ZipArchive}), so lookups do not reopen the archive nor touch the
+ *  file system. Stored entries can be retrieved as slices of the mapped archive
+ *  without copying. Archives are expected not to change once opened, otherwise
+ *  they must be closed (see {@link #closeArchive(String)}) to be opened again.
+ * </p>
+ * <p>
+ *  In order to resolve locations relative to an archive, wrap the loader in a
+ *  {@link FallbackLoader} or a {@link DirLoader} with the archive as root path
+ *  (e.g. <code>/data/assets.zip!/images</code>).
+ * </p>
+ */
+@Log
+public class ArchiveLoader extends UrlLoader implements Closeable {
+
+    /** The URL scheme of zip locations */
+    public static final String ZIP_SCHEME = "zip";
+
+    /** The opened archives by normalized path */
+    private final Map<Path, ZipArchive> archives = new ConcurrentHashMap<>();
+
+    /** The opened archives by location as given, to skip the path conversions */
+    private final Map<String, ZipArchive> archivesByLocation = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves the location if it has no scheme or the zip
+     * or jar ones. The context is ignored.
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        String scheme = extractScheme(location);
+        // Single letter schemes are drive letters
+        if ((scheme.length() > 1) && !ZIP_SCHEME.equals(scheme) && !ZipArchive.PROTOCOL.equals(scheme)) {
+            return ResourceInfo.UNRESOLVED;
+        }
+        return tracedFind(location, location);
+    }
+
+    /**
+     * Finds the entry in the archive building its
+     * resource information from the index.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location) {
+        Located located = locate(location);
+        if (located == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+        ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, located.archive.getURL(located.entry), sourceName);
+        resourceInfo.setSize(located.entry.getSize());
+        resourceInfo.setLastModified(located.entry.getLastModified());
+        return resourceInfo;
+    }
+
+    /**
+     * Retrieves the URL of the archive entry in the given location
+     *
+     * @param location the location of the resource
+     * @return the URL or null if not found
+     */
+    @Override
+    public URL lookup(String location) {
+        Located located = locate(location);
+        return (located != null) ? located.archive.getURL(located.entry) : null;
+    }
+
+    /**
+     * Retrieves the content of the archive entry in the given location.
+     * Stored entries are returned as read-only slices of the mapped
+     * archive, deflated ones are inflated in memory.
+     *
+     * @param location the location of the resource
+     * @return the content or null if not found
+     * @throws IOException if the content cannot be read
+     */
+    public ByteBuffer getContent(String location) throws IOException {
+        Located located = locate(location);
+        return (located != null) ? located.archive.getContent(located.entry) : null;
+    }
+
+    /**
+     * Retrieves the URL scheme associated to the loader
+     *
+     * @return the URL scheme
+     */
+    @Override
+    public String getUrlScheme() {
+        return ZIP_SCHEME;
+    }
+
+    /**
+     * Retrieves the number of opened archives (nested ones included)
+     *
+     * @return the number of opened archives
+     */
+    public int getOpenArchiveCount() {
+        return archives.size();
+    }
+
+    /**
+     * Closes the given archive (and the archives nested in it) so that
+     * it is opened again on next use, e.g. after being replaced.
+     *
+     * @param archiveFile the path to the archive file
+     */
+    public void closeArchive(String archiveFile) {
+        requireNonNull(archiveFile);
+        Path file = normalize(Paths.get(archiveFile));
+        archivesByLocation.clear();
+        archives.entrySet().removeIf(e -> {
+            if (e.getKey().startsWith(file)) {
+                closeQuietly(e.getValue());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Closes all the opened archives
+     */
+    @Override
+    public void close() {
+        archivesByLocation.clear();
+        archives.values().forEach(ArchiveLoader::closeQuietly);
+        archives.clear();
+    }
+
+    /**
+     * Locates the archive entry in the given location
+     *
+     * @param location the location
+     * @return the archive and entry or null if not found
+     */
+    private Located locate(String location) {
+        String scheme = extractScheme(location);
+        String spec = (ZIP_SCHEME.equals(scheme) || ZipArchive.PROTOCOL.equals(scheme)) ? location.substring(scheme.length() + 1) : location;
+        int separator = spec.lastIndexOf(ZipArchive.URL_SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        String archiveLocation = spec.substring(0, separator);
+        String name = toName(spec.substring(separator + ZipArchive.URL_SEPARATOR.length()));
+        ZipArchive opened = archivesByLocation.get(archiveLocation);
+        if (opened != null) {
+            ZipArchive.Entry entry = opened.get(name);
+            return (entry != null) ? new Located(opened, entry) : null;
+        }
+
+        String[] segments = archiveLocation.split(ZipArchive.URL_SEPARATOR);
+        try {
+            Path file = toPath(segments[0]);
+            if (file == null) {
+                return null;
+            }
+            ZipArchive archive = getArchive(file);
+            if (archive == null) {
+                return null;
+            }
+            for (int i = 1; i < segments.length; i++) {
+                file = file.resolve(segments[i]);
+                archive = getNestedArchive(archive, file, segments[i]);
+                if (archive == null) {
+                    return null;
+                }
+            }
+            archivesByLocation.put(archiveLocation, archive);
+            ZipArchive.Entry entry = archive.get(name);
+            return (entry != null) ? new Located(archive, entry) : null;
+        } catch (IOException | InvalidPathException e) {
+            log.log(Level.FINE, "Error opening archive of " + location, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the archive at the given path opening it on first use
+     *
+     * @param file the archive file
+     * @return the archive or null if not a regular file
+     * @throws IOException if the archive cannot be opened
+     */
+    private ZipArchive getArchive(Path file) throws IOException {
+        ZipArchive archive = archives.get(file);
+        if (archive == null) {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            archive = ZipArchive.open(file);
+            ZipArchive current = archives.putIfAbsent(file, archive);
+            if (current != null) {
+                closeQuietly(archive);
+                archive = current;
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Retrieves the archive nested in the given one opening it on first use
+     *
+     * @param parent the enclosing archive
+     * @param key the key of the nested archive (i.e. the path to the enclosing archive and the entry)
+     * @param name the name of the entry
+     * @return the nested archive or null if the entry does not exist
+     * @throws IOException if the nested archive cannot be opened
+     */
+    private ZipArchive getNestedArchive(ZipArchive parent, Path key, String name) throws IOException {
+        ZipArchive archive = archives.get(key);
+        if (archive == null) {
+            ZipArchive.Entry entry = parent.get(toName(name));
+            if ((entry == null) || entry.isDirectory()) {
+                return null;
+            }
+            archive = parent.openNested(entry);
+            ZipArchive current = archives.putIfAbsent(key, archive);
+            archive = (current != null) ? current : archive;
+        }
+        return archive;
+    }
+
+    /**
+     * Converts the archive part of the location to a normalized path
+     *
+     * @param archiveLocation the archive location (a path or a file URL)
+     * @return the path or null if not a local file
+     */
+    private Path toPath(String archiveLocation) {
+        if (archiveLocation.isEmpty()) {
+            return null;
+        }
+        if (archiveLocation.regionMatches(true, 0, "file:", 0, 5)) {
+            try {
+                return normalize(Paths.get(URI.create(archiveLocation)));
+            } catch (IllegalArgumentException e) {
+                archiveLocation = archiveLocation.substring(5);
+            }
+        } else if (extractScheme(archiveLocation).length() > 1) {
+            return null;
+        }
+        return normalize(Paths.get(archiveLocation));
+    }
+
+    /**
+     * Normalizes the path to use it as key of the opened archives
+     *
+     * @param path the path
+     * @return the absolute normalized path
+     */
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Converts the entry part of the location to the name of the entry
+     *
+     * @param entryLocation the entry location
+     * @return the entry name
+     */
+    private static String toName(String entryLocation) {
+        int start = 0;
+        while ((start < entryLocation.length()) && (entryLocation.charAt(start) == '/')) {
+            start++;
+        }
+        String name = (start > 0) ? entryLocation.substring(start) : entryLocation;
+        return (name.indexOf('\\') >= 0) ? name.replace('\\', '/') : name;
+    }
+
+    /**
+     * Closes the archive logging any error
+     *
+     * @param archive the archive
+     */
+    private static void closeQuietly(ZipArchive archive) {
+        try {
+            archive.close();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Error closing archive " + archive.getUrlPrefix(), e);
+        }
+    }
+
+    /**
+     * An archive entry found in a location
+     */
+    private static final class Located {
+
+        /** The archive */
+        private final ZipArchive archive;
+
+        /** The entry */
+        private final ZipArchive.Entry entry;
+
+        /**
+         * Creates the located entry
+         *
+         * @param archive the archive
+         * @param entry the entry
+         */
+        private Located(ZipArchive archive, ZipArchive.Entry entry) {
+            this.archive = archive;
+            this.entry = entry;
+        }
+    }
+}
@@ -16,7 +16,25 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
-import java.net.URL;
+import com.github.pnavais.rezolver.ResolutionCache;
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.IIndexedLoader;
+import com.github.pnavais.rezolver.loader.IUrlLoader;
+import com.github.pnavais.rezolver.util.MembershipFilter;
+import com.github.pnavais.rezolver.util.WeakIdentityMap;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.logging.Level;
 
 import static java.util.Objects.requireNonNull;
 
@@ -27,12 +45,51 @@ import static java.util.Objects.requireNonNull;
  *  In case no schema is specified, this loader will append a valid one to the
  *  specified resource location string and try to resolve it as last resort.
  * </p>
+ * <p>
+ *  A membership filter of the resources available in the jar files and directories
+ *  of the class path can be enabled to rule out missing resources without any lookup.
+ *  This requires every class loader involved to be a {@link URLClassLoader}, otherwise
+ *  the filter reports every resource as possibly available. The filter is built again
+ *  once a jar file or any directory of the class path (including subdirectories) changes.
+ * </p>
+ * <p>
+ *  The jar files of the class path, including the ones nested in fat jars, can also be
+ *  indexed (see {@link #enableArchiveIndex()}) so that resources are found in the index
+ *  instead of going through the class loaders and their jar URL handlers.
+ * </p>
+ * <p>
+ *  In containers running several applications with their own class loaders, the
+ *  resolution can be scoped to the context class loader of the calling thread
+ *  (see {@link #enableClassLoaderScopes(int)}). Every class loader gets its own
+ *  cache and index, held weakly so that they are dropped once the class loader
+ *  is collected (e.g. when the application is redeployed). The class loader
+ *  can also be set per resolution using a {@link ResolutionContext}.
+ * </p>
  */
-public class ClasspathLoader extends UrlLoader {
+@Log
+public class ClasspathLoader extends UrlLoader implements IIndexedLoader {
 
     /** The classloader for classpath lookup */
     private ClassLoader classLoader;
 
+    /** The filter of the resources in the class path (if enabled) */
+    private volatile MembershipFilter membershipFilter;
+
+    /** Whether the archives of the class path are indexed */
+    private volatile boolean archiveIndexEnabled;
+
+    /** The indexed class path, built on first use (null if not available) */
+    private volatile ArchiveClassPath archiveClassPath;
+
+    /** Whether the indexed class path is built */
+    private volatile boolean classPathIndexed;
+
+    /** The caches and indexes by context class loader (if scoped) */
+    private volatile WeakIdentityMap<ClassLoader, Scope> scopes;
+
+    /** The maximum number of resources cached per class loader */
+    private volatile int scopeMaxEntries;
+
     /**
      * Default Constructor
      */
@@ -49,11 +106,33 @@ public class ClasspathLoader extends UrlLoader {
      */
     @Override
     public URL lookup(String resourcePath) {
+        if (scopes != null) {
+            ResourceInfo resourceInfo = find(resourcePath, resourcePath);
+            return resourceInfo.isResolved() ? resourceInfo.getURL() : null;
+        }
+        return lookup(classLoader, getArchiveClassPath(), resourcePath);
+    }
+
+    /**
+     * Retrieves the URL from the given resource path
+     * in the class path of the given class loader.
+     *
+     * @param loader the class loader
+     * @param index the indexed class path of the class loader (if any)
+     * @param resourcePath the path to the resource in the classpath
+     * @return the URL of the resource
+     */
+    private URL lookup(ClassLoader loader, ArchiveClassPath index, String resourcePath) {
+        if (index != null) {
+            ResourceInfo resourceInfo = findIndexed(index, resourcePath, resourcePath);
+            return resourceInfo.isResolved() ? resourceInfo.getURL() : null;
+        }
+
         URL resourceURL;
 
         // Check the resource in the same class loader
         try {
-            resourceURL = classLoader.getResource(resourcePath);
+            resourceURL = loader.getResource(resourcePath);
         } catch (Exception e) {
             resourceURL = null;
         }
@@ -66,6 +145,190 @@ public class ClasspathLoader extends UrlLoader {
         return resourceURL;
     }
 
+    /**
+     * Finds the resource in the classpath filling in the
+     * resource attributes from the jar entry or the file
+     * containing the resource.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location) {
+        return find(searchPath, location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Finds the resource in the class path of the class loader of the
+     * context (if set). Without scopes, only the loader's class loader
+     * uses the index of the class path archives.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location, ResolutionContext context) {
+        ClassLoader contextClassLoader = context.getClassLoader();
+        WeakIdentityMap<ClassLoader, Scope> currentScopes = scopes;
+        if (currentScopes == null) {
+            return ((contextClassLoader == null) || (contextClassLoader == classLoader))
+                    ? find(classLoader, getArchiveClassPath(), searchPath, location)
+                    : find(contextClassLoader, null, searchPath, location);
+        }
+
+        ClassLoader loader = (contextClassLoader != null) ? contextClassLoader : getScopeClassLoader();
+        int maxEntries = scopeMaxEntries;
+        Scope scope = currentScopes.computeIfAbsent(loader, l -> new Scope(maxEntries));
+        // The cache hands out and stores its own copies, so callers never share the cached entries
+        ResourceInfo cached = scope.cache.get(location);
+        if (cached != null) {
+            cached.setSearchPath(searchPath);
+            return cached;
+        }
+        long generation = scope.cache.getGeneration();
+        ResourceInfo resourceInfo = find(loader, archiveIndexEnabled ? scope.getArchiveClassPath(loader) : null, searchPath, location);
+        scope.cache.put(location, resourceInfo, generation);
+        return resourceInfo;
+    }
+
+    /**
+     * Finds the resource in the class path of the given class loader
+     *
+     * @param loader the class loader
+     * @param index the indexed class path of the class loader (if any)
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    private ResourceInfo find(ClassLoader loader, ArchiveClassPath index, String searchPath, String location) {
+        if (index != null) {
+            return findIndexed(index, searchPath, location);
+        }
+
+        URL resourceURL = lookup(loader, null, location);
+        if (resourceURL == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, resourceURL, sourceName);
+        readAttributes(resourceURL, resourceInfo);
+        return resourceInfo;
+    }
+
+    /**
+     * Finds the resource in the indexed class path, searching first
+     * the ancestor class loaders not backed by a class path (if any)
+     * and the system class loader as last resort.
+     *
+     * @param index the indexed class path
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    private ResourceInfo findIndexed(ArchiveClassPath index, String searchPath, String location) {
+        ClassLoader parent = index.getParent();
+        URL resourceURL = (parent != null) ? parent.getResource(location) : null;
+        if (resourceURL == null) {
+            ResourceInfo resourceInfo = index.find(searchPath, location, sourceName);
+            if (resourceInfo != null) {
+                return resourceInfo;
+            }
+            resourceURL = index.isSystemFallback() ? ClassLoader.getSystemResource(location) : null;
+        }
+        if (resourceURL == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, resourceURL, sourceName);
+        readAttributes(resourceURL, resourceInfo);
+        return resourceInfo;
+    }
+
+    /**
+     * Retrieves the indexed class path building it on first use
+     *
+     * @return the indexed class path or null if disabled or not available
+     */
+    private ArchiveClassPath getArchiveClassPath() {
+        if (!archiveIndexEnabled) {
+            return null;
+        }
+        if (!classPathIndexed) {
+            synchronized (this) {
+                if (!classPathIndexed) {
+                    archiveClassPath = index(classLoader);
+                    classPathIndexed = true;
+                }
+            }
+        }
+        return archiveClassPath;
+    }
+
+    /**
+     * Discards the indexed class path so that it is built again on next use
+     */
+    private synchronized void resetArchiveClassPath() {
+        classPathIndexed = false;
+        archiveClassPath = null;
+    }
+
+    /**
+     * Indexes the class path of the given class loader
+     *
+     * @param loader the class loader
+     * @return the indexed class path or null if not available
+     */
+    private static ArchiveClassPath index(ClassLoader loader) {
+        try {
+            return ArchiveClassPath.of(loader);
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.FINE, "The class path cannot be indexed, using the class loader", e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the class loader of the current scope, i.e. the context
+     * class loader of the calling thread or the loader's class loader if none.
+     *
+     * @return the class loader
+     */
+    private ClassLoader getScopeClassLoader() {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        return (contextClassLoader != null) ? contextClassLoader : classLoader;
+    }
+
+    /**
+     * Reads the size and last modification time of the resource
+     * from its jar entry or from the file system.
+     *
+     * @param resourceURL the resource URL
+     * @param resourceInfo the resource information
+     */
+    private void readAttributes(URL resourceURL, ResourceInfo resourceInfo) {
+        try {
+            if ("jar".equals(resourceURL.getProtocol())) {
+                URLConnection connection = resourceURL.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+                    if (entry != null) {
+                        resourceInfo.setSize(entry.getSize());
+                        resourceInfo.setLastModified(entry.getTime());
+                    }
+                }
+            } else if ("file".equals(resourceURL.getProtocol())) {
+                BasicFileAttributes attributes = Files.readAttributes(Paths.get(resourceURL.toURI()), BasicFileAttributes.class);
+                resourceInfo.setSize(attributes.size());
+                resourceInfo.setLastModified(attributes.lastModifiedTime().toMillis());
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.throwing(getClass().getSimpleName(), "readAttributes", e);
+        }
+    }
+
     /**
      * Retrieves the URL scheme associated to the loader
      *
@@ -85,6 +348,295 @@ public class ClasspathLoader extends UrlLoader {
     public void setClassLoader(ClassLoader classLoader) {
         requireNonNull(classLoader);
         this.classLoader = classLoader;
+        resetArchiveClassPath();
+        MembershipFilter filter = membershipFilter;
+        if (filter != null) {
+            filter.refresh();
+        }
+    }
+
+    /**
+     * Checks whether the resource might be available in the class path.
+     * Locations with a URL scheme other than the classpath one are not checked.
+     *
+     * @param location the resource location
+     * @return false if the resource is definitely not in the class path, true otherwise
+     */
+    @Override
+    public boolean mightContain(String location) {
+        MembershipFilter filter = membershipFilter;
+        if ((filter == null) || ((scopes != null) && (getScopeClassLoader() != classLoader))) {
+            return true;
+        }
+        int schemeLength = IUrlLoader.schemeLength(location);
+        if (schemeLength > 1) {
+            if (!location.regionMatches(true, 0, getUrlScheme(), 0, schemeLength)) {
+                return true;
+            }
+            location = location.substring(schemeLength + 1);
+        }
+        return location.startsWith("/") || filter.mightContain(location);
+    }
+
+    /**
+     * Checks whether the resource might be available in the class path
+     * of the class loader of the context. Only the loader's class loader
+     * is filtered.
+     *
+     * @param location the resource location
+     * @param context the resolution context
+     * @return false if the resource is definitely not in the class path, true otherwise
+     */
+    @Override
+    public boolean mightContain(String location, ResolutionContext context) {
+        ClassLoader contextClassLoader = context.getClassLoader();
+        return ((contextClassLoader != null) && (contextClassLoader != classLoader)) || mightContain(location);
+    }
+
+    /**
+     * Enables the membership filter of the class path resources with
+     * the default false positive rate and no memory limit.
+     *
+     * @return the classpath loader
+     */
+    public ClasspathLoader enableMembershipFilter() {
+        return enableMembershipFilter(MembershipFilter.DEFAULT_FALSE_POSITIVE_RATE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Enables the membership filter of the class path resources. The class path
+     * is scanned again when the modification time of any of its jar files or
+     * directories changes (nested directories are not checked, see
+     * {@link MembershipFilter#refresh()}).
+     *
+     * @param falsePositiveRate the expected false positive rate
+     * @param maxMemory the maximum memory used by the filter in bytes
+     * @return the classpath loader
+     */
+    public ClasspathLoader enableMembershipFilter(double falsePositiveRate, long maxMemory) {
+        membershipFilter = new MembershipFilter(new ClassPathSource(), falsePositiveRate, maxMemory);
+        return this;
+    }
+
+    /**
+     * Disables the membership filter
+     */
+    public void disableMembershipFilter() {
+        membershipFilter = null;
+    }
+
+    /**
+     * Retrieves the membership filter
+     *
+     * @return the membership filter or null if not enabled
+     */
+    @Override
+    public MembershipFilter getMembershipFilter() {
+        return membershipFilter;
+    }
+
+    /**
+     * Enables the index of the class path archives. The jar files of the class
+     * loaders (including the ones nested in fat jars, e.g. <code>jar:file:/app.jar!/BOOT-INF/lib/lib.jar!/</code>)
+     * are opened once, their central directories indexed and the resources served from
+     * the index. If the class path cannot be indexed the class loader is used instead.
+     * The index is built on first use and is not refreshed, so it suits class paths not
+     * changing at runtime.
+     *
+     * @return the classpath loader
+     */
+    public ClasspathLoader enableArchiveIndex() {
+        resetArchiveClassPath();
+        archiveIndexEnabled = true;
+        return this;
+    }
+
+    /**
+     * Disables the index of the class path archives
+     */
+    public void disableArchiveIndex() {
+        archiveIndexEnabled = false;
+        resetArchiveClassPath();
+    }
+
+    /**
+     * Checks whether the class path archives are indexed
+     *
+     * @return true if the index is enabled and available, false otherwise
+     */
+    public boolean isArchiveIndexed() {
+        return getArchiveClassPath() != null;
+    }
+
+    /**
+     * Scopes the resolution to the context class loader of the calling thread
+     * (or the loader's class loader if none). Every class loader gets its own cache
+     * of resolved resources and its own index of the class path archives (if enabled),
+     * built on first use. Both are held weakly and dropped once the class loader
+     * is garbage collected. The membership filter (if enabled) is only applied
+     * to the loader's class loader.
+     *
+     * @param maxEntries the maximum number of resources cached per class loader
+     * @return the classpath loader
+     */
+    public ClasspathLoader enableClassLoaderScopes(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of entries must be positive");
+        }
+        scopeMaxEntries = maxEntries;
+        scopes = new WeakIdentityMap<>();
+        return this;
+    }
+
+    /**
+     * Disables the scoping to the context class loader
+     * discarding the caches and indexes.
+     */
+    public void disableClassLoaderScopes() {
+        scopes = null;
+    }
+
+    /**
+     * Discards the resolutions of the given resource
+     * cached by every class loader scope.
+     *
+     * @param resource the resource
+     */
+    @Override
+    public void invalidate(ResourceInfo resource) {
+        requireNonNull(resource);
+        WeakIdentityMap<ClassLoader, Scope> currentScopes = scopes;
+        if ((currentScopes != null) && resource.isResolved()) {
+            // Match by URL only, the same location resolves other resources in other scopes
+            ResourceInfo target = resource.copy(null);
+            currentScopes.values().forEach(scope -> scope.cache.invalidate(target));
+        }
+    }
+
+    /**
+     * Retrieves the number of class loaders with their own
+     * cache and index not collected yet.
+     *
+     * @return the number of class loaders or 0 if not scoped
+     */
+    public int getScopeCount() {
+        WeakIdentityMap<ClassLoader, Scope> currentScopes = scopes;
+        return (currentScopes != null) ? currentScopes.size() : 0;
+    }
+
+    /**
+     * Retrieves the cache of the resources resolved
+     * with the given class loader.
+     *
+     * @param loader the class loader
+     * @return the cache or null if not scoped or not used yet
+     */
+    public ResolutionCache getScopeCache(ClassLoader loader) {
+        requireNonNull(loader);
+        WeakIdentityMap<ClassLoader, Scope> currentScopes = scopes;
+        Scope scope = (currentScopes != null) ? currentScopes.get(loader) : null;
+        return (scope != null) ? scope.cache : null;
+    }
+
+    /**
+     * The cache and index of a class loader. It must not
+     * reference the class loader so that it can be collected.
+     */
+    private static final class Scope {
+
+        /** The resolved resources by location */
+        private final ResolutionCache cache;
+
+        /** The indexed class path, built on first use (null if not available) */
+        private volatile ArchiveClassPath archiveClassPath;
+
+        /** Whether the indexed class path is built */
+        private volatile boolean classPathIndexed;
+
+        /**
+         * Creates the scope
+         *
+         * @param maxEntries the maximum number of cached resources
+         */
+        private Scope(int maxEntries) {
+            this.cache = new ResolutionCache(maxEntries);
+        }
+
+        /**
+         * Retrieves the indexed class path of the given class loader
+         * building it on first use. Class paths whose ancestors must be searched
+         * through the class loader itself are not kept, as they would reference it.
+         *
+         * @param loader the class loader of the scope
+         * @return the indexed class path or null if not available
+         */
+        private ArchiveClassPath getArchiveClassPath(ClassLoader loader) {
+            if (!classPathIndexed) {
+                synchronized (this) {
+                    if (!classPathIndexed) {
+                        ArchiveClassPath classPath = index(loader);
+                        archiveClassPath = ((classPath != null) && (classPath.getParent() != loader)) ? classPath : null;
+                        classPathIndexed = true;
+                    }
+                }
+            }
+            return archiveClassPath;
+        }
+    }
+
+    /**
+     * The jar files and directories searched by the class loaders
+     */
+    private final class ClassPathSource implements MembershipFilter.Source {
+
+        /** The jar files and directories (including subdirectories) found in the last scan */
+        private volatile Collection<Path> roots = Collections.emptyList();
+
+        @Override
+        public void scan(Consumer<String> sink) throws IOException {
+            Set<Path> scanned = new LinkedHashSet<>();
+            ArchiveClassPath classPath = index(classLoader);
+            scan(classPath, sink, scanned);
+            if (classPath.isSystemFallback()) {
+                scan(index(ClassLoader.getSystemClassLoader()), sink, scanned);
+            }
+            roots = scanned;
+        }
+
+        @Override
+        public long getStamp() {
+            return MembershipFilter.getStamp(roots);
+        }
+
+        /**
+         * Indexes the class path of the given class loader
+         *
+         * @param loader the class loader
+         * @return the class path
+         * @throws IOException if a class loader cannot be indexed
+         */
+        private ArchiveClassPath index(ClassLoader loader) throws IOException {
+            ArchiveClassPath classPath = ArchiveClassPath.of(loader);
+            if (classPath.getParent() != null) {
+                throw new IOException("The class loader cannot be indexed : " + classPath.getParent());
+            }
+            return classPath;
+        }
+
+        /**
+         * Scans the resources of the class path roots
+         *
+         * @param classPath the class path
+         * @param sink the consumer of the resource names
+         * @param scanned the files stamping the roots already scanned
+         * @throws IOException if a root cannot be scanned
+         */
+        private void scan(ArchiveClassPath classPath, Consumer<String> sink, Set<Path> scanned) throws IOException {
+            for (ArchiveClassPath.Root root : classPath.getRoots()) {
+                root.scan(sink);
+                scanned.addAll(root.getStampedFiles());
+            }
+        }
     }
 
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.util.SingleFlight;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>CoalescingLoader</b>
+ * <p>
+ *     A loader allowing to decorate a given resource loader so that
+ *     concurrent resolutions of the same location share a single lookup.
+ *     Specially useful for remote loaders where each lookup opens a connection.
+ * </p>
+ */
+public class CoalescingLoader implements IResourceLoader {
+
+    /** The default maximum time in milliseconds waiting for a concurrent lookup */
+    public static final long DEFAULT_MAX_WAIT = TimeUnit.SECONDS.toMillis(10);
+
+    /** The target loader */
+    protected final IResourceLoader loader;
+
+    /** The lookups in flight */
+    private final SingleFlight<String, ResourceInfo> singleFlight;
+
+    /**
+     * Creates a {@link CoalescingLoader} wrapping
+     * a given resource loader.
+     *
+     * @param loader the resource loader to wrap
+     * @param maxWait the maximum time waiting for a concurrent lookup
+     * @param unit the time unit
+     */
+    public CoalescingLoader(IResourceLoader loader, long maxWait, TimeUnit unit) {
+        requireNonNull(loader);
+        this.loader = loader;
+        this.singleFlight = new SingleFlight<>(maxWait, unit, SingleFlight.DEFAULT_MAX_IN_FLIGHT, ResourceInfo::copy);
+    }
+
+    /**
+     * Resolves the location with the wrapped loader unless
+     * the same location is already being resolved, in that case
+     * the result of the lookup in flight is used.
+     *
+     * @param location the location of the resource
+     * @return the resource information
+     */
+    @Override
+    public ResourceInfo resolve(String location) {
+        return singleFlight.execute(location, () -> loader.resolve(location));
+    }
+
+    /**
+     * Resolves the location in the given context. Resolutions in contexts
+     * other than the default one are not shared.
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resource information
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        return context.isDefault() ? resolve(location) : loader.resolve(location, context);
+    }
+
+    /**
+     * Retrieves the cost class of the wrapped loader
+     *
+     * @return the cost class
+     */
+    @Override
+    public CostClass getCostClass() {
+        return loader.getCostClass();
+    }
+
+    /**
+     * Forwards the invalidation to the wrapped loader
+     *
+     * @param resource the resource
+     */
+    @Override
+    public void invalidate(ResourceInfo resource) {
+        loader.invalidate(resource);
+    }
+
+    /**
+     * Retrieves the lookups in flight
+     *
+     * @return the single flight group
+     */
+    public SingleFlight<String, ResourceInfo> getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Creates a new coalescing loader with the default
+     * maximum waiting time.
+     *
+     * @param loader the resource loader to wrap
+     * @return the coalescing loader of the given resource loader
+     */
+    public static CoalescingLoader of(IResourceLoader loader) {
+        return new CoalescingLoader(loader, DEFAULT_MAX_WAIT, TimeUnit.MILLISECONDS);
+    }
+}
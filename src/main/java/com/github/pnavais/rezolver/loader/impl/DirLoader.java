@@ -16,13 +16,21 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResolutionTrace;
 import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.archive.ZipArchive;
+import com.github.pnavais.rezolver.loader.IIndexedLoader;
 import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.IUrlLoader;
+import com.github.pnavais.rezolver.util.MembershipFilter;
 
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Optional;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 
@@ -35,12 +43,32 @@ import static java.util.Objects.requireNonNull;
  *     is located outside the fixed location it will be silently
  *     discarded.
  * </p>
+ * <p>
+ *     When wrapping a {@link LocalLoader} a membership filter of the files
+ *     in the root directory can be enabled to rule out missing files without
+ *     accessing the file system.
+ * </p>
  */
-public class DirLoader extends AbstractLocationLoader {
+public class DirLoader extends AbstractLocationLoader implements IIndexedLoader {
 
     /** The location info to append in case resolution failed */
     private String rootPath;
 
+    /** The normalized root path (computed lazily) */
+    private volatile String normRootPath;
+
+    /** The file system used to normalize the root path */
+    private volatile FileSystem normRootFileSystem;
+
+    /** The prefix applied to relative locations (cached) */
+    private volatile String rootPrefix;
+
+    /** The separator used to build the cached prefix */
+    private volatile String rootPrefixSeparator;
+
+    /** The filter of the files in the root directory (if enabled) */
+    private volatile MembershipFilter membershipFilter;
+
     /**
      * Creates a @{@link DirLoader} wrapping
      * a given resource loader.
@@ -76,57 +104,244 @@ public class DirLoader extends AbstractLocationLoader {
      */
     @Override
     public ResourceInfo resolve(String location) {
-        ResourceInfo resource;
+        return resolve(location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Tries to resolve the file in the given context using the supplied
+     * loader's resolution algorithm. A relative root path is resolved
+     * against the base directory of the context (if set).
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resource of null if not resolved
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        String root = getRootPath(context);
 
         // Obtain a path to the location
-        Optional<Path> locationPath = getPath(location);
+        Path locationPath = getPath(location);
 
         // Check if path is absolute to avoid prefixing
-        Boolean isAbsolute = locationPath.map(Path::isAbsolute).orElse(false);
-
-        // Check if path belongs to the root path
-        boolean hasSameRoot = hasSameRoot(locationPath.orElse(null));
-
-        if (Boolean.FALSE.equals(isAbsolute) || hasSameRoot) {
-            // Resolve with the loader
-            resource = this.loader.resolve(Boolean.TRUE.equals(isAbsolute) ? location: applyRootPath(rootPath, location));
-            // Check if relative path is inside root path
-            if ((!isAbsolute && (resource.isResolved())) &&
-                (!hasSameRoot(getPath(resource.getURL().getPath()).orElse(null)))) {
-                    resource = ResourceInfo.builder().build();
-                }
-        } else {
+        if ((locationPath != null) && locationPath.isAbsolute()) {
             // Absolute paths outside the root path are silently discarded
-            resource = ResourceInfo.builder().build();
+            return hasSameRoot(locationPath, root) ? this.loader.resolve(location, context) : reject(location);
+        }
+
+        // Resolve with the loader
+        ResourceInfo resource = this.loader.resolve(applyRootPrefix(getRootPrefix(), location), context);
+
+        // Check if relative path is inside root path
+        if (resource.isResolved() && !hasSameRoot(getResolvedPath(resource), root)) {
+            resource = reject(location);
         }
 
         return resource;
     }
 
     /**
-     * Check if the path has the same root than the loader
+     * Retrieves the normalized root path in the given context
+     *
+     * @param context the resolution context
+     * @return the root path
+     */
+    private String getRootPath(ResolutionContext context) {
+        String root = getNormalizedRootPath();
+        Path baseDirectory = context.getBaseDirectory();
+        if (baseDirectory != null) {
+            Path rootPath = getPath(root);
+            if ((rootPath != null) && !rootPath.isAbsolute()) {
+                return baseDirectory.resolve(root).normalize().toString();
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Discards a location outside the root path recording
+     * it in the trace of the current resolution (if any).
+     *
+     * @param location the location of the resource
+     * @return the unresolved resource
+     */
+    private ResourceInfo reject(String location) {
+        ResolutionTrace trace = ResolutionTrace.current();
+        if (trace != null) {
+            trace.record(getClass().getSimpleName(), location, ResolutionTrace.Outcome.NOT_FOUND, 0L);
+        }
+        return ResourceInfo.UNRESOLVED;
+    }
+
+    /**
+     * Checks whether the location might be a file in the root directory.
+     * Locations with a URL scheme are not checked.
+     *
+     * @param location the resource location
+     * @return false if the file is definitely not in the root directory, true otherwise
+     */
+    @Override
+    public boolean mightContain(String location) {
+        MembershipFilter filter = membershipFilter;
+        if ((filter == null) || (IUrlLoader.schemeLength(location) > 1)) {
+            return true;
+        }
+
+        Path locationPath = getPath(location);
+        if ((locationPath != null) && !locationPath.isAbsolute()) {
+            locationPath = getPath(getNormalizedRootPath() + getSeparator() + location);
+        }
+        if (locationPath == null) {
+            return true;
+        }
+
+        // Locations outside the root path are discarded by the resolution anyway
+        Path fileName = locationPath.getFileName();
+        return hasSameRoot(locationPath, getNormalizedRootPath()) && (fileName != null) && filter.mightContain(fileName.toString());
+    }
+
+    /**
+     * Checks whether the location might be a file in the root directory
+     * in the given context. Contexts with their own file system or base
+     * directory are not checked.
+     *
+     * @param location the resource location
+     * @param context the resolution context
+     * @return false if the file is definitely not in the root directory, true otherwise
+     */
+    @Override
+    public boolean mightContain(String location, ResolutionContext context) {
+        return (context.getFileSystem() != null) || (context.getBaseDirectory() != null) || mightContain(location);
+    }
+
+    /**
+     * Enables the membership filter of the files in the root directory
+     * with the default false positive rate and no memory limit.
+     *
+     * @return the dir loader
+     */
+    public DirLoader enableMembershipFilter() {
+        return enableMembershipFilter(MembershipFilter.DEFAULT_FALSE_POSITIVE_RATE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Enables the membership filter of the files in the root directory.
+     * The directory is listed again when its modification time changes.
+     *
+     * @param falsePositiveRate the expected false positive rate
+     * @param maxMemory the maximum memory used by the filter in bytes
+     * @return the dir loader
+     */
+    public DirLoader enableMembershipFilter(double falsePositiveRate, long maxMemory) {
+        if (!(loader instanceof LocalLoader)) {
+            throw new IllegalStateException("Only directories of local file systems can be indexed");
+        }
+        membershipFilter = new MembershipFilter(new RootSource(), falsePositiveRate, maxMemory);
+        return this;
+    }
+
+    /**
+     * Disables the membership filter
+     */
+    public void disableMembershipFilter() {
+        membershipFilter = null;
+    }
+
+    /**
+     * Retrieves the membership filter
+     *
+     * @return the membership filter or null if not enabled
+     */
+    @Override
+    public MembershipFilter getMembershipFilter() {
+        return membershipFilter;
+    }
+
+    /**
+     * Check if the path has the given root
      *
      * @param locationPath the location path
+     * @param root the normalized root path
      * @return true if same root, false otherwise
      */
-    private boolean hasSameRoot(Path locationPath) {
-        String normRootPath = getPath(rootPath).map(Path::toString).orElse(rootPath);
-        return Optional.ofNullable(locationPath).filter(t -> t.getParent() != null)
-                .map(t-> t.getParent().toString().equals(normRootPath))
-                .orElse(false);
+    private static boolean hasSameRoot(Path locationPath, String root) {
+        Path parent = (locationPath != null) ? locationPath.getParent() : null;
+        return (parent != null) && parent.toString().equals(root);
+    }
+
+    /**
+     * Retrieves the normalized path of a resolved resource avoiding
+     * the URL conversion when the resource carries its own path.
+     *
+     * @param resource the resolved resource
+     * @return the normalized path
+     */
+    private Path getResolvedPath(ResourceInfo resource) {
+        Path resolvedPath = resource.getPath();
+        if (resolvedPath != null) {
+            return resolvedPath.normalize();
+        }
+        URL url = resource.getURL();
+        String path = url.getPath();
+        // Archive entries (jar:file:/archive!/entry) are checked against the archive path
+        if (ZipArchive.PROTOCOL.equals(url.getProtocol()) && path.startsWith("file:")) {
+            try {
+                path = URI.create(path).getPath();
+            } catch (IllegalArgumentException e) {
+                path = path.substring(5);
+            }
+        }
+        return getPath(path);
+    }
+
+    /**
+     * Retrieves the prefix applied to relative locations, building
+     * it again only if the root path or the separator changed.
+     *
+     * @return the root prefix
+     */
+    private String getRootPrefix() {
+        String separator = getSeparator();
+        String prefix = rootPrefix;
+        if ((prefix == null) || !separator.equals(rootPrefixSeparator)) {
+            prefix = buildRootPrefix(rootPath, separator);
+            rootPrefixSeparator = separator;
+            rootPrefix = prefix;
+        }
+        return prefix;
+    }
+
+    /**
+     * Retrieves the normalized root path, computing it
+     * again only if the root path or the underlying file system
+     * changed since the last computation.
+     *
+     * @return the normalized root path
+     */
+    private String getNormalizedRootPath() {
+        FileSystem currentFileSystem = (loader instanceof LocalLoader) ? ((LocalLoader) loader).fileSystem : null;
+        String normalized = normRootPath;
+        if ((normalized == null) || (currentFileSystem != normRootFileSystem)) {
+            Path normPath = getPath(rootPath);
+            normalized = (normPath != null) ? normPath.toString() : rootPath;
+            normRootFileSystem = currentFileSystem;
+            normRootPath = normalized;
+        }
+        return normalized;
     }
 
     /**
      * Retrieves the path of the given location
      *
      * @param location the location
-     * @return the actual path
+     * @return the actual path or null if not available
      */
-    private Optional<Path> getPath(String location) {
-        Optional<Path> locationPath = Optional.empty();
+    private Path getPath(String location) {
+        Path locationPath = null;
         if (loader instanceof LocalLoader) {
+            FileSystem fileSystem = ((LocalLoader)loader).fileSystem;
             try {
-                locationPath = Optional.of(((LocalLoader)loader).fileSystem.getPath(location).normalize());
+                locationPath = fileSystem.getPath(LocalLoader.stripDriveLetterSlashes(location, fileSystem.getSeparator())).normalize();
             } catch (InvalidPathException e) {
                 // Last resort
                 String newLocation = location.replaceFirst("^[\\\\|/]+", "");
@@ -135,7 +350,7 @@ public class DirLoader extends AbstractLocationLoader {
                 }
             }
         } else {
-            locationPath = Optional.ofNullable(Paths.get(location).normalize());
+            locationPath = Paths.get(location).normalize();
         }
 
         return locationPath;
@@ -150,6 +365,12 @@ public class DirLoader extends AbstractLocationLoader {
     public void setRootPath(String rootPath) {
         requireNonNull(rootPath);
         this.rootPath = rootPath;
+        this.normRootPath = null;
+        this.rootPrefix = null;
+        MembershipFilter filter = membershipFilter;
+        if (filter != null) {
+            filter.refresh();
+        }
     }
 
     /**
@@ -167,4 +388,25 @@ public class DirLoader extends AbstractLocationLoader {
         return new DirLoader(loader, rootPath);
     }
 
+
+    /**
+     * The files in the root directory
+     */
+    private final class RootSource implements MembershipFilter.Source {
+
+        @Override
+        public void scan(Consumer<String> sink) throws IOException {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(getPath(getNormalizedRootPath()))) {
+                for (Path file : files) {
+                    sink.accept(file.getFileName().toString());
+                }
+            }
+        }
+
+        @Override
+        public long getStamp() {
+            Path root = getPath(getNormalizedRootPath());
+            return (root != null) ? MembershipFilter.getStamp(Collections.singleton(root)) : 0L;
+        }
+    }
 }
@@ -16,10 +16,16 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.ResolutionContext;
 import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IIndexedLoader;
 import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.IUrlLoader;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Objects.requireNonNull;
@@ -31,12 +37,25 @@ import static java.util.Objects.requireNonNull;
  *     and use a fallback location as prefix
  *     in case the resolution failed.
  * </p>
+ * <p>
+ *     The resolution is compiled into a list of steps with the prefixes
+ *     already built, compiled again only when the fallback paths or the separator change.
+ * </p>
  */
 public class FallbackLoader extends AbstractLocationLoader {
 
     /** The location alternatives to append in case resolution failed */
     protected List<String> fallbackPaths;
 
+    /** The separator overriding the one of the wrapped loader or null if not overridden */
+    private volatile String separator;
+
+    /** Incremented on every change of the fallback paths */
+    private volatile int version;
+
+    /** The compiled resolution steps */
+    private volatile Steps steps;
+
     /**
      * Creates a @{@link FallbackLoader} wrapping
      * a given resource loader.
@@ -58,32 +77,112 @@ public class FallbackLoader extends AbstractLocationLoader {
      */
     @Override
     public ResourceInfo resolve(String location) {
-        ResourceInfo resource;
+        return resolve(location, ResolutionContext.DEFAULT);
+    }
 
-        // Resolve it using the base resolution
-        resource = this.loader.resolve(location);
+    /**
+     * Tries to resolve the file in the given context using the supplied
+     * loader's resolution algorithm but use the fallback location
+     * in case resolution failed.
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resource of null if not resolved
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        ResourceInfo resource = ResourceInfo.UNRESOLVED;
+        IResourceLoader[] loaders = compile().loaders;
+        for (int i=0; i<loaders.length && !resource.isResolved(); i++) {
+            if (!IIndexedLoader.excludes(loaders[i], location, context)) {
+                resource = loaders[i].resolve(location, context);
+            }
+        }
+        return resource;
+    }
 
-        // Last resort, try to resolve it using the fallback paths
-        for (int i=0; i<fallbackPaths.size() && !resource.isResolved(); i++) {
-            String fallbackPath = fallbackPaths.get(i);
-            if (!location.startsWith(fallbackPath+getSeparator())) {
-                resource = this.loader.resolve(applyRootPath(fallbackPath, location));
+    /**
+     * Compiles the resolution into a list of steps, i.e. the
+     * wrapped loader followed by the resolution in every fallback path
+     * with its prefix already built. The steps are reused until the fallback
+     * paths or the separator change.
+     *
+     * @return the compiled steps
+     */
+    public Steps compile() {
+        Steps current = steps;
+        if (!isCurrent(current)) {
+            int currentVersion = version;
+            String currentSeparator = getSeparator();
+            List<String> paths = fallbackPaths;
+            IUrlLoader urlLoader = (this.loader instanceof IUrlLoader) ? (IUrlLoader) this.loader : null;
+            IResourceLoader[] loaders = new IResourceLoader[paths.size() + 1];
+            loaders[0] = this.loader;
+            for (int i = 0; i < paths.size(); i++) {
+                String rootPath = paths.get(i) + currentSeparator;
+                String rootPrefix = buildRootPrefix(paths.get(i), currentSeparator);
+                loaders[i + 1] = new PrefixedStep(rootPath, rootPrefix, urlLoader);
             }
+            current = new Steps(loaders, currentVersion, currentSeparator);
+            steps = current;
         }
+        return current;
+    }
 
-        return resource;
+    /**
+     * Checks whether the given steps are up to date with
+     * the current fallback paths and separator.
+     *
+     * @param compiled the compiled steps
+     * @return true if up to date, false otherwise
+     */
+    public boolean isCurrent(Steps compiled) {
+        return (compiled != null) && (compiled.version == version)
+                && (compiled.loaders.length == fallbackPaths.size() + 1)
+                && compiled.separator.equals(getSeparator());
     }
 
+    /**
+     * Retrieves the separator appended to the fallback paths, i.e.
+     * the one overridden or the one of the wrapped loader otherwise.
+     *
+     * @return the separator
+     */
+    @Override
+    protected String getSeparator() {
+        String current = separator;
+        return (current != null) ? current : super.getSeparator();
+    }
+
+    /**
+     * Overrides the separator of the wrapped loader
+     * appended to the fallback paths.
+     *
+     * @param separator the separator or null to use the one of the wrapped loader
+     */
+    public void setSeparator(String separator) {
+        this.separator = separator;
+    }
 
     /**
      * Sets the fallback path to apply to a location as last resort for
-     * resource resolution
+     * resource resolution. The list is copied.
      *
      * @param fallbackPaths the fallback locations
      */
     public void setFallbackPaths(List<String> fallbackPaths) {
         requireNonNull(fallbackPaths);
-        this.fallbackPaths = fallbackPaths;
+        this.fallbackPaths = new ArrayList<>(fallbackPaths);
+        this.version++;
+    }
+
+    /**
+     * Retrieves the fallback paths
+     *
+     * @return the fallback paths
+     */
+    public List<String> getFallbackPaths() {
+        return Collections.unmodifiableList(fallbackPaths);
     }
 
     /**
@@ -95,6 +194,7 @@ public class FallbackLoader extends AbstractLocationLoader {
     public FallbackLoader addFallbackPath(String fallbackPath) {
         requireNonNull(fallbackPath);
         this.fallbackPaths.add(fallbackPath);
+        this.version++;
         return this;
     }
 
@@ -134,4 +234,95 @@ public class FallbackLoader extends AbstractLocationLoader {
         return fbl;
     }
 
+    /**
+     * The resolution in a fallback path with its prefix already built
+     */
+    private final class PrefixedStep implements IResourceLoader {
+
+        /** The fallback path followed by the separator */
+        private final String rootPath;
+
+        /** The prefix applied to the locations */
+        private final String rootPrefix;
+
+        /** The wrapped loader stripping the URL scheme of the locations or null if not an URL loader */
+        private final IUrlLoader urlLoader;
+
+        /**
+         * Creates the step
+         *
+         * @param rootPath the fallback path followed by the separator
+         * @param rootPrefix the prefix applied to the locations
+         * @param urlLoader the wrapped loader if URL loader, null otherwise
+         */
+        private PrefixedStep(String rootPath, String rootPrefix, IUrlLoader urlLoader) {
+            this.rootPath = rootPath;
+            this.rootPrefix = rootPrefix;
+            this.urlLoader = urlLoader;
+        }
+
+        /**
+         * Resolves the location with the fallback prefix applied unless
+         * already inside the fallback path or the wrapped loader definitely
+         * does not have it.
+         *
+         * @param location the location of the resource
+         * @return the resource information
+         */
+        @Override
+        public ResourceInfo resolve(String location) {
+            return resolve(location, ResolutionContext.DEFAULT);
+        }
+
+        @Override
+        public ResourceInfo resolve(String location, ResolutionContext context) {
+            if (location.startsWith(rootPath)) {
+                return ResourceInfo.UNRESOLVED;
+            }
+            String prefixed = rootPrefix + ((urlLoader != null) ? urlLoader.stripScheme(location) : location);
+            return IIndexedLoader.excludes(loader, prefixed, context) ? ResourceInfo.UNRESOLVED : loader.resolve(prefixed, context);
+        }
+
+        @Override
+        public CostClass getCostClass() {
+            return loader.getCostClass();
+        }
+    }
+
+    /**
+     * The compiled resolution steps of a fallback loader
+     */
+    public static final class Steps {
+
+        /** The loaders to try in order */
+        private final IResourceLoader[] loaders;
+
+        /** The version of the fallback paths compiled */
+        private final int version;
+
+        /** The separator compiled */
+        private final String separator;
+
+        /**
+         * Creates the compiled steps
+         *
+         * @param loaders the loaders to try in order
+         * @param version the version of the fallback paths compiled
+         * @param separator the separator compiled
+         */
+        private Steps(IResourceLoader[] loaders, int version, String separator) {
+            this.loaders = loaders;
+            this.version = version;
+            this.separator = separator;
+        }
+
+        /**
+         * Retrieves the loaders to try in order
+         *
+         * @return the loaders
+         */
+        public List<IResourceLoader> getLoaders() {
+            return Collections.unmodifiableList(Arrays.asList(loaders));
+        }
+    }
 }
@@ -16,12 +16,17 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
 import com.github.pnavais.rezolver.loader.IFileSystemLoader;
+import com.github.pnavais.rezolver.loader.IUrlLoader;
 import lombok.extern.java.Log;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.regex.Matcher;
 
 import static java.util.Objects.requireNonNull;
@@ -34,6 +39,10 @@ import static java.util.Objects.requireNonNull;
  *  in the given path, this loader will append a valid local one to the
  *  specified resource location string and try to resolve it as last resort.
  * </p>
+ * <p>
+ *  The file system and the directory of relative paths can be set per resolution
+ *  using a {@link ResolutionContext}.
+ * </p>
  */
 @Log
 public class LocalLoader extends UrlLoader implements IFileSystemLoader {
@@ -58,25 +67,140 @@ public class LocalLoader extends UrlLoader implements IFileSystemLoader {
     @Override
     public URL lookup(String location) {
         URL resourceURL = null;
+        Path path = lookupPath(location);
         try {
-            if (location != null) {
-                Path path = fileSystem.getPath(location);
-                if (Files.exists(path)) {
-                    resourceURL = path.toUri().toURL();
-                }
-            }
-        } catch (MalformedURLException|InvalidPathException e) {
-            // Last resort, remove trailing slashes
-            String newLocation = location.replaceFirst("^[\\\\|/]+", "");
-            if (!newLocation.equals(location)) {
-                return lookup(newLocation);
+            if (path != null) {
+                resourceURL = path.toUri().toURL();
             }
+        } catch (MalformedURLException e) {
             log.throwing(getClass().getSimpleName(), "lookup", e);
         }
 
         return resourceURL;
     }
 
+    /**
+     * Retrieves the path of the given resource location
+     * in the filesystem if the resource exists.
+     *
+     * @param location the path to the resource in the filesystem
+     * @return the path to the resource or null if not found
+     */
+    public Path lookupPath(String location) {
+        Path path = toPath(fileSystem, location);
+        return ((path != null) && (readAttributes(path) != null)) ? path : null;
+    }
+
+    /**
+     * Finds the resource in the file system keeping its
+     * path, the URL will be only built if requested. The file
+     * attributes are read in the same operation used to check
+     * the existence of the resource.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location) {
+        return find(searchPath, location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Finds the resource in the file system of the context (if set),
+     * relative paths being resolved against the base directory of the
+     * context (if set).
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location, ResolutionContext context) {
+        FileSystem contextFileSystem = context.getFileSystem();
+        Path path = toPath((contextFileSystem != null) ? contextFileSystem : fileSystem, location);
+        Path baseDirectory = context.getBaseDirectory();
+        if ((path != null) && (baseDirectory != null) && !path.isAbsolute()) {
+            path = baseDirectory.resolve(path.toString());
+        }
+        BasicFileAttributes attributes = (path != null) ? readAttributes(path) : null;
+        if (attributes == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, path, sourceName);
+        resourceInfo.setSize(attributes.size());
+        resourceInfo.setLastModified(attributes.lastModifiedTime().toMillis());
+        return resourceInfo;
+    }
+
+    /**
+     * Converts the given location to a path in the
+     * given file system.
+     *
+     * @param fileSystem the file system
+     * @param location the location
+     * @return the path or null if the location is not a valid path
+     */
+    private Path toPath(FileSystem fileSystem, String location) {
+        if (location == null) {
+            return null;
+        }
+        String pathLocation = stripDriveLetterSlashes(location, fileSystem.getSeparator());
+        try {
+            return fileSystem.getPath(pathLocation);
+        } catch (InvalidPathException e) {
+            // Last resort, remove leading slashes
+            String newLocation = pathLocation.replaceFirst("^[\\\\|/]+", "");
+            if (!newLocation.equals(pathLocation)) {
+                return toPath(fileSystem, newLocation);
+            }
+            log.throwing(getClass().getSimpleName(), "toPath", e);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the leading slashes preceding a drive letter
+     * (e.g. /C:/dir) in file systems using backslash as separator
+     * where such locations are not valid paths.
+     *
+     * @param location the location
+     * @param separator the file system separator
+     * @return the location without the leading slashes if applicable
+     */
+    static String stripDriveLetterSlashes(String location, String separator) {
+        if (!"\\".equals(separator)) {
+            return location;
+        }
+        int start = 0;
+        while ((start < location.length()) && ((location.charAt(start) == '/') || (location.charAt(start) == '\\'))) {
+            start++;
+        }
+        boolean driveLetter = (start > 0) && (location.length() > start + 1)
+                && IUrlLoader.isAsciiLetter(location.charAt(start)) && (location.charAt(start + 1) == ':');
+        return driveLetter ? location.substring(start) : location;
+    }
+
+    /**
+     * Reads the basic attributes of the given path
+     *
+     * @param path the path
+     * @return the attributes or null if the file does not exist
+     */
+    private static BasicFileAttributes readAttributes(Path path) {
+        // Avoid the exception thrown for missing files in the default file system
+        if ((path.getFileSystem() == FileSystems.getDefault()) && !path.toFile().exists()) {
+            return null;
+        }
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
     /**
      * Strips the scheme from the given URL location.
      * Applies a last fallback location cleanup if
@@ -88,6 +212,11 @@ public class LocalLoader extends UrlLoader implements IFileSystemLoader {
      */
     @Override
     public String stripScheme(String location) {
+        // Locations without scheme (or with a drive letter) are not URLs
+        if (IUrlLoader.schemeLength(location) <= 1) {
+            return normalizePath(location);
+        }
+
         String newLocation;
         try {
             location = normalizePath(location);
@@ -111,19 +240,25 @@ public class LocalLoader extends UrlLoader implements IFileSystemLoader {
 
     /**
      * Extracts the scheme from the given location.
-     * Initially check if the location represents a valid path,
-     * otherwise try to check the URL by calling the base implementation.
+     * Locations with an URL scheme use the base implementation,
+     * otherwise check if the location represents a valid path.
      *
      * @param location the location
      * @return the extracted scheme
      */
     @Override
     public String extractScheme(String location) {
-        String scheme = "";
+        // Locations with an URL scheme (other than a drive letter) are not paths
+        if (IUrlLoader.schemeLength(location) > 1) {
+            return super.extractScheme(location);
+        }
+
+        String scheme;
         try {
-            Path p = Paths.get(location);
-            scheme = p.toUri().toURL().getProtocol();
-        } catch (InvalidPathException | MalformedURLException ipe) {
+            // Any valid path is converted to a "file" URI
+            Paths.get(location);
+            scheme = getUrlScheme();
+        } catch (InvalidPathException ipe) {
             scheme = super.extractScheme(location);
         }
         return scheme;
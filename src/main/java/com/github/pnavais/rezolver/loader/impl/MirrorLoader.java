@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.util.CircuitBreaker;
+import com.github.pnavais.rezolver.util.LatencyStats;
+import lombok.extern.java.Log;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>MirrorLoader</b>
+ * <p>
+ *  Resolves relative locations against a list of remote mirrors hosting the
+ *  same resources. The request is sent to the preferred mirror and, if no answer
+ *  arrives within the observed 95th percentile latency of that mirror, it is hedged
+ *  to the next one taking the first successful answer. Misses and failures move on
+ *  to the next mirror immediately.
+ * </p>
+ * <p>
+ *  The latency of every mirror is tracked so that the fastest mirrors are preferred.
+ *  Mirrors not measured yet are tried first and mirrors with an open circuit last.
+ *  Absolute URLs are resolved as a plain remote loader would.
+ * </p>
+ */
+@Log
+public class MirrorLoader extends RemoteLoader {
+
+    /** The default hedge delay in milliseconds used until a mirror has enough samples */
+    public static final long DEFAULT_HEDGE_DELAY = 200;
+
+    /** The percentile of the mirror latency used as hedge delay */
+    public static final double HEDGE_PERCENTILE = 0.95;
+
+    /** The minimum number of samples to rely on the observed latency */
+    public static final int MIN_SAMPLES = 10;
+
+    /** The mirror base URLs */
+    private final List<String> mirrors;
+
+    /** The latency stats by mirror */
+    private final Map<String, LatencyStats> stats;
+
+    /** The host keys by mirror */
+    private final Map<String, String> hosts;
+
+    /** The URL scheme of the mirrors */
+    private final String urlScheme;
+
+    /** The hedge delay in nanoseconds used until a mirror has enough samples */
+    private long defaultHedgeDelay = TimeUnit.MILLISECONDS.toNanos(DEFAULT_HEDGE_DELAY);
+
+    /** The executor performing the lookups */
+    private volatile ExecutorService executor;
+
+    /**
+     * Creates a {@link MirrorLoader} using the given mirrors
+     * in order of preference until latencies are known.
+     *
+     * @param mirrors the mirror base URLs
+     */
+    public MirrorLoader(List<String> mirrors) {
+        requireNonNull(mirrors);
+        if (mirrors.isEmpty()) {
+            throw new IllegalArgumentException("At least one mirror is required");
+        }
+        this.mirrors = new ArrayList<>(mirrors.size());
+        this.stats = new ConcurrentHashMap<>();
+        this.hosts = new HashMap<>();
+        String scheme = null;
+        for (String mirror : mirrors) {
+            requireNonNull(mirror);
+            String baseUrl = mirror.endsWith("/") ? mirror : mirror + "/";
+            try {
+                URL url = new URL(baseUrl);
+                scheme = (scheme != null) ? scheme : url.getProtocol();
+                this.hosts.put(baseUrl, getHostKey(url));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid mirror URL " + mirror, e);
+            }
+            this.mirrors.add(baseUrl);
+            this.stats.put(baseUrl, new LatencyStats());
+        }
+        this.urlScheme = scheme;
+    }
+
+    /**
+     * Retrieves the URL scheme associated to the loader
+     * (i.e. the scheme of the first mirror)
+     *
+     * @return the URL scheme
+     */
+    @Override
+    public String getUrlScheme() {
+        return urlScheme;
+    }
+
+    /**
+     * Finds the resource in the mirrors hedging the request
+     * to the next mirror when the current one is too slow.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location) {
+        if (location.indexOf("://") > 0) {
+            return super.find(searchPath, location);
+        }
+
+        String relativeLocation = location.startsWith("/") ? location.substring(1) : location;
+        List<String> candidates = getPreferredMirrors();
+        CompletionService<ResourceInfo> completionService = new ExecutorCompletionService<>(getExecutor());
+        List<Future<ResourceInfo>> attempts = new ArrayList<>(candidates.size());
+
+        try {
+            int next = 0;
+            int pending = 0;
+            long hedgeDelay = 0;
+            do {
+                if (next < candidates.size()) {
+                    // Send the request to the next mirror
+                    String mirror = candidates.get(next++);
+                    attempts.add(completionService.submit(() -> findInMirror(searchPath, mirror, relativeLocation)));
+                    hedgeDelay = getHedgeDelay(mirror);
+                    pending++;
+                }
+
+                // Wait for an answer hedging the request if it takes too long
+                Future<ResourceInfo> answer = (next < candidates.size())
+                        ? completionService.poll(hedgeDelay, TimeUnit.NANOSECONDS)
+                        : completionService.take();
+
+                if (answer != null) {
+                    pending--;
+                    ResourceInfo resourceInfo = getAnswer(answer);
+                    if (resourceInfo.isResolved()) {
+                        return resourceInfo;
+                    }
+                }
+            } while (pending > 0 || (next < candidates.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<ResourceInfo> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+
+        return ResourceInfo.UNRESOLVED;
+    }
+
+    /**
+     * Finds the resource in the given mirror recording
+     * the latency of the answer.
+     *
+     * @param searchPath the path that triggered the search
+     * @param mirror the mirror base URL
+     * @param location the location relative to the mirror
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    private ResourceInfo findInMirror(String searchPath, String mirror, String location) {
+        LatencyStats latencyStats = stats.get(mirror);
+        long start = System.nanoTime();
+        ResourceInfo resourceInfo = super.find(searchPath, mirror + location);
+        if (resourceInfo.isResolved() || !isFailing(mirror)) {
+            latencyStats.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            latencyStats.recordFailure();
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Retrieves the outcome of a lookup
+     *
+     * @param answer the completed lookup
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} on error
+     */
+    private ResourceInfo getAnswer(Future<ResourceInfo> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.log(Level.FINE, "Error resolving resource in mirror", e.getCause());
+        }
+        return ResourceInfo.UNRESOLVED;
+    }
+
+    /**
+     * Checks whether the last lookups of the mirror's host failed
+     *
+     * @param mirror the mirror base URL
+     * @return true if failing, false otherwise
+     */
+    private boolean isFailing(String mirror) {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(hosts.get(mirror));
+        return (circuitBreaker.getFailureCount() > 0) || (circuitBreaker.getState() != CircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * Retrieves the delay before hedging a request sent to the given mirror
+     *
+     * @param mirror the mirror base URL
+     * @return the hedge delay in nanoseconds
+     */
+    private long getHedgeDelay(String mirror) {
+        LatencyStats latencyStats = stats.get(mirror);
+        if (latencyStats.getSampleCount() < MIN_SAMPLES) {
+            return defaultHedgeDelay;
+        }
+        return Math.max(1, latencyStats.getPercentile(HEDGE_PERCENTILE, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Retrieves the mirrors sorted by preference, i.e. mirrors
+     * without measurements first, then by average latency
+     * penalizing failures and finally mirrors with an open circuit.
+     *
+     * @return the mirrors in order of preference
+     */
+    public List<String> getPreferredMirrors() {
+        Map<String, Double> scores = new HashMap<>();
+        for (String mirror : mirrors) {
+            scores.put(mirror, getScore(mirror));
+        }
+        List<String> preferred = new ArrayList<>(mirrors);
+        preferred.sort(Comparator.comparingDouble(scores::get));
+        return preferred;
+    }
+
+    /**
+     * Computes the score of the given mirror, lower is better
+     *
+     * @param mirror the mirror base URL
+     * @return the score
+     */
+    private double getScore(String mirror) {
+        if (getCircuitState(hosts.get(mirror)) == CircuitBreaker.State.OPEN) {
+            return Double.MAX_VALUE;
+        }
+        LatencyStats latencyStats = stats.get(mirror);
+        if (latencyStats.getSampleCount() == 0) {
+            return 0;
+        }
+        return latencyStats.getAverage(TimeUnit.NANOSECONDS) * (1 + latencyStats.getConsecutiveFailures());
+    }
+
+    /**
+     * Retrieves the mirror base URLs
+     *
+     * @return the mirrors
+     */
+    public List<String> getMirrors() {
+        return Collections.unmodifiableList(mirrors);
+    }
+
+    /**
+     * Retrieves the latency stats of the given mirror
+     *
+     * @param mirror the mirror base URL
+     * @return the latency stats or null if not a mirror
+     */
+    public LatencyStats getLatencyStats(String mirror) {
+        return stats.get(mirror.endsWith("/") ? mirror : mirror + "/");
+    }
+
+    /**
+     * Sets the hedge delay used until a mirror has enough samples
+     *
+     * @param hedgeDelay the hedge delay
+     * @param unit the time unit
+     */
+    public void setDefaultHedgeDelay(long hedgeDelay, TimeUnit unit) {
+        if (hedgeDelay < 0) {
+            throw new IllegalArgumentException("The hedge delay cannot be negative");
+        }
+        this.defaultHedgeDelay = unit.toNanos(hedgeDelay);
+    }
+
+    /**
+     * Sets the executor performing the lookups
+     *
+     * @param executor the executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        requireNonNull(executor);
+        this.executor = executor;
+    }
+
+    /**
+     * Retrieves the executor performing the lookups creating
+     * a pool of daemon threads if not set.
+     *
+     * @return the executor
+     */
+    private ExecutorService getExecutor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    current = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "rezolver-mirror-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Creates a new mirror loader with the given mirrors
+     *
+     * @param mirror the preferred mirror
+     * @param additionalMirrors the additional mirrors
+     * @return the mirror loader
+     */
+    public static MirrorLoader of(String mirror, String... additionalMirrors) {
+        requireNonNull(mirror);
+        List<String> mirrors = new ArrayList<>();
+        mirrors.add(mirror);
+        mirrors.addAll(Arrays.asList(additionalMirrors));
+        return new MirrorLoader(mirrors);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>MountLoader</b>
+ * <p>
+ *     A loader routing every location to the loader mounted at its longest
+ *     matching virtual path prefix (e.g. /tenants/acme). The rest of the location
+ *     is resolved by the mounted loader, so mounting {@link DirLoader}s keeps them
+ *     confined to their roots.
+ * </p>
+ * <p>
+ *     Mounts are kept in a prefix trie of path segments, so the routing cost
+ *     depends on the depth of the location and not on the number of mounts.
+ *     Locations not matching any mount are not resolved.
+ * </p>
+ */
+public class MountLoader implements IResourceLoader {
+
+    /** The root of the mount trie */
+    private final Node root = new Node();
+
+    /**
+     * Routes the location to its mount and resolves
+     * the rest of the location with the mounted loader.
+     *
+     * @param location the location of the resource
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not resolved
+     */
+    @Override
+    public ResourceInfo resolve(String location) {
+        return resolve(location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Routes the location to its mount and resolves the rest
+     * of the location with the mounted loader in the given context.
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not resolved
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
+        IResourceLoader mountedLoader = root.loader;
+        int mountEnd = 0;
+
+        Node node = root;
+        int length = location.length();
+        int start = 0;
+        while ((node != null) && !node.children.isEmpty() && (start < length)) {
+            int end = nextSeparator(location, start);
+            if (end > start) {
+                String segment = location.substring(start, end);
+                if (segment.equals("..")) {
+                    break;
+                }
+                if (!segment.equals(".")) {
+                    node = node.children.get(segment);
+                    if ((node != null) && (node.loader != null)) {
+                        mountedLoader = node.loader;
+                        mountEnd = end;
+                    }
+                }
+            }
+            start = end + 1;
+        }
+
+        if (mountedLoader == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        // Resolve the location relative to the mount point
+        while ((mountEnd < length) && isSeparator(location.charAt(mountEnd))) {
+            mountEnd++;
+        }
+        ResourceInfo resourceInfo = mountedLoader.resolve(location.substring(mountEnd), context);
+        if (resourceInfo.isResolved()) {
+            resourceInfo.setSearchPath(location);
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Mounts the loader at the given virtual path prefix
+     * replacing any loader previously mounted there.
+     *
+     * @param prefix the virtual path prefix ("/" mounts the default loader)
+     * @param loader the loader
+     * @return the mount loader
+     */
+    public synchronized MountLoader mount(String prefix, IResourceLoader loader) {
+        requireNonNull(prefix);
+        requireNonNull(loader);
+        Node node = root;
+        for (String segment : toSegments(prefix)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        node.loader = loader;
+        return this;
+    }
+
+    /**
+     * Removes the loader mounted at the given virtual path prefix
+     *
+     * @param prefix the virtual path prefix
+     * @return true if a loader was mounted, false otherwise
+     */
+    public synchronized boolean unmount(String prefix) {
+        requireNonNull(prefix);
+        Node node = root;
+        for (String segment : toSegments(prefix)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return false;
+            }
+        }
+        boolean mounted = (node.loader != null);
+        node.loader = null;
+        return mounted;
+    }
+
+    /**
+     * Retrieves the highest cost class of the mounted loaders
+     *
+     * @return the cost class
+     */
+    @Override
+    public CostClass getCostClass() {
+        return getMounts().values().stream().anyMatch(l -> l.getCostClass() == CostClass.REMOTE) ? CostClass.REMOTE
+                                                                                                 : CostClass.LOCAL;
+    }
+
+    /**
+     * Forwards the invalidation to every mounted loader
+     *
+     * @param resource the resource
+     */
+    @Override
+    public void invalidate(ResourceInfo resource) {
+        getMounts().values().forEach(loader -> loader.invalidate(resource));
+    }
+
+    /**
+     * Retrieves the mounted loaders by virtual path prefix
+     *
+     * @return the mounts
+     */
+    public Map<String, IResourceLoader> getMounts() {
+        Map<String, IResourceLoader> mounts = new TreeMap<>();
+        collectMounts(root, "", mounts);
+        return mounts;
+    }
+
+    /**
+     * Collects the mounts below the given node
+     *
+     * @param node the node
+     * @param prefix the prefix of the node
+     * @param mounts the mounts found
+     */
+    private static void collectMounts(Node node, String prefix, Map<String, IResourceLoader> mounts) {
+        IResourceLoader loader = node.loader;
+        if (loader != null) {
+            mounts.put(prefix.isEmpty() ? "/" : prefix, loader);
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            collectMounts(child.getValue(), prefix + "/" + child.getKey(), mounts);
+        }
+    }
+
+    /**
+     * Splits the prefix in path segments
+     *
+     * @param prefix the prefix
+     * @return the segments
+     */
+    private static List<String> toSegments(String prefix) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : prefix.split("[/\\\\]")) {
+            if (segment.equals("..")) {
+                throw new IllegalArgumentException("Invalid mount prefix " + prefix);
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the next path separator
+     *
+     * @param location the location
+     * @param start the start position
+     * @return the position of the separator or the length of the location if not found
+     */
+    private static int nextSeparator(String location, int start) {
+        int i = start;
+        while ((i < location.length()) && !isSeparator(location.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Checks whether the character is a path separator
+     *
+     * @param c the character
+     * @return true if separator, false otherwise
+     */
+    private static boolean isSeparator(char c) {
+        return (c == '/') || (c == '\\');
+    }
+
+    /**
+     * Creates a new mount loader with a single mount
+     *
+     * @param prefix the virtual path prefix
+     * @param loader the loader
+     * @return the mount loader
+     */
+    public static MountLoader of(String prefix, IResourceLoader loader) {
+        return new MountLoader().mount(prefix, loader);
+    }
+
+    /**
+     * A node of the mount trie
+     */
+    private static final class Node {
+
+        /** The children by path segment */
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        /** The loader mounted at this node if any */
+        private volatile IResourceLoader loader;
+    }
+}
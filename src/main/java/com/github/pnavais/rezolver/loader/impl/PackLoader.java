@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.loader.impl;
+
+import com.github.pnavais.rezolver.ResolutionTrace;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.pack.ResourcePack;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>PackLoader</b>
+ * <p>
+ *     Resolves resources stored in a {@link ResourcePack}. Lookups are answered
+ *     from the in-memory index of the pack without touching the file system and
+ *     contents can be retrieved as slices of the mapped pack without copying.
+ * </p>
+ */
+public class PackLoader implements IResourceLoader {
+
+    /** The name of the loader reported as source entity */
+    protected final String sourceName = getClass().getSimpleName();
+
+    /** The resource pack */
+    protected final ResourcePack pack;
+
+    /**
+     * Creates a {@link PackLoader} for the
+     * given resource pack.
+     *
+     * @param pack the resource pack
+     */
+    public PackLoader(ResourcePack pack) {
+        requireNonNull(pack);
+        this.pack = pack;
+    }
+
+    /**
+     * Resolves the location using the index of the pack
+     *
+     * @param location the location of the resource
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not packed
+     */
+    @Override
+    public ResourceInfo resolve(String location) {
+        ResolutionTrace trace = ResolutionTrace.current();
+        long start = (trace != null) ? System.nanoTime() : 0L;
+        ResourceInfo resourceInfo = find(location);
+        if (trace != null) {
+            trace.record(sourceName, location, resourceInfo, start);
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * Finds the resource in the pack
+     *
+     * @param location the location of the resource
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not packed
+     */
+    private ResourceInfo find(String location) {
+        ResourcePack.Entry entry = pack.get(toName(location));
+        if (entry == null) {
+            return ResourceInfo.UNRESOLVED;
+        }
+        ResourceInfo resourceInfo = ResourceInfo.resolved(location, pack.getURL(entry), sourceName);
+        resourceInfo.setSize(entry.getLength());
+        resourceInfo.setLastModified(entry.getLastModified());
+        return resourceInfo;
+    }
+
+    /**
+     * Retrieves the content of the resource as a read-only
+     * slice of the mapped pack.
+     *
+     * @param location the location of the resource
+     * @return the content or null if not packed
+     */
+    public ByteBuffer getContent(String location) {
+        ResourcePack.Entry entry = pack.get(toName(location));
+        return (entry != null) ? pack.getContent(entry) : null;
+    }
+
+    /**
+     * Retrieves the resource pack
+     *
+     * @return the resource pack
+     */
+    public ResourcePack getPack() {
+        return pack;
+    }
+
+    /**
+     * Converts the location to the name of the
+     * resource in the pack.
+     *
+     * @param location the location
+     * @return the resource name
+     */
+    private static String toName(String location) {
+        int start = 0;
+        while ((start < location.length()) && (location.charAt(start) == '/')) {
+            start++;
+        }
+        String name = (start > 0) ? location.substring(start) : location;
+        return (name.indexOf('\\') >= 0) ? name.replace('\\', '/') : name;
+    }
+
+    /**
+     * Creates a new pack loader opening the given pack file
+     *
+     * @param packFile the path to the pack file
+     * @return the pack loader
+     */
+    public static PackLoader of(String packFile) {
+        requireNonNull(packFile);
+        try {
+            return new PackLoader(ResourcePack.open(Paths.get(packFile)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening resource pack " + packFile, e);
+        }
+    }
+}
@@ -16,10 +16,32 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.DiskCache;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IUrlLoader;
+import com.github.pnavais.rezolver.util.CircuitBreaker;
+import lombok.extern.java.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.Proxy;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * <b>RemoteLoader</b>
@@ -27,12 +49,66 @@ import java.net.URLConnection;
  *  Resolves the location of a given resource URL if not specified in relative,
  *  local or classpath formats.The URL shall contain a valid remote schema (e.g. http, ftp, etc...)
  * </p>
+ * <p>
+ *  Lookups are guarded per host by a circuit breaker, opened after a number of
+ *  consecutive host failures (connection errors, timeouts and 5xx responses), and by
+ *  a bulkhead limiting the concurrent lookups. Lookups rejected by any of them fail
+ *  fast as not resolved.
+ * </p>
+ * <p>
+ *  If a {@link DiskCache} is set, the contents of the resolved resources are stored
+ *  locally and resolutions return the URL of the local copy. Cached copies are revalidated
+ *  with conditional requests and served as they are when the host is not available.
+ * </p>
  */
+@Log
 public abstract class RemoteLoader extends UrlLoader {
 
+    /** The default number of consecutive failures opening the circuit of a host */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** The default time in milliseconds the circuit of a host stays open */
+    public static final long DEFAULT_OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    /** The default maximum number of concurrent lookups per host */
+    public static final int DEFAULT_MAX_CONCURRENT_LOOKUPS = 64;
+
+    /** The default connect timeout in milliseconds */
+    public static final int DEFAULT_CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+
+    /** The default read timeout in milliseconds */
+    public static final int DEFAULT_READ_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /** The number of hosts tracked above which the idle hosts are evicted */
+    private static final int MAX_TRACKED_HOSTS = 256;
+
     /** The proxy */
     protected Proxy proxy = Proxy.NO_PROXY;
 
+    /** The connect timeout in milliseconds (0 waits indefinitely) */
+    protected volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /** The read timeout in milliseconds (0 waits indefinitely) */
+    protected volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    /** The number of consecutive failures opening the circuit of a host */
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    /** The time in milliseconds the circuit of a host stays open */
+    private volatile long openDuration = DEFAULT_OPEN_DURATION;
+
+    /** The maximum number of concurrent lookups per host */
+    private volatile int maxConcurrentLookups = DEFAULT_MAX_CONCURRENT_LOOKUPS;
+
+    /** The circuit breakers by host */
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /** The bulkheads by host */
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /** The disk cache of the contents (optional) */
+    private volatile DiskCache diskCache;
+
     /**
      * Retrieves the URL from the given resource path
      * in the filesystem.
@@ -42,19 +118,233 @@ public abstract class RemoteLoader extends UrlLoader {
      */
     @Override
     public URL lookup(String location) {
-        URL resURL = null;
+        ResourceInfo resourceInfo = find(location, location);
+        return resourceInfo.isResolved() ? resourceInfo.getURL() : null;
+    }
+
+    /**
+     * Retrieves the cost class of remote lookups
+     *
+     * @return the remote cost class
+     */
+    @Override
+    public CostClass getCostClass() {
+        return CostClass.REMOTE;
+    }
+
+    /**
+     * Connects to the given location and builds the resource
+     * information using the response headers to fill in the
+     * resource attributes. The lookup fails fast if the circuit
+     * of the host is open or the host has too many lookups in progress.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    @Override
+    protected ResourceInfo find(String searchPath, String location) {
+        // Locations without scheme are not remote URLs
+        if (IUrlLoader.schemeLength(location) == 0) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        URL url;
+        try {
+            url = new URL(location);
+        } catch (MalformedURLException e) {
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        String host = getHostKey(url);
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        if (circuitBreaker == null) {
+            circuitBreaker = getCircuitBreaker(host);
+            evictIdleHosts(host);
+        }
+        DiskCache cache = this.diskCache;
+        if (!circuitBreaker.tryAcquire()) {
+            log.fine(() -> "Circuit open for host [" + host + "], skipping " + location);
+            return fromCache(searchPath, (cache != null) ? cache.get(url.toExternalForm()) : null);
+        }
+
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(host, h -> new Bulkhead(maxConcurrentLookups));
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.onIgnored();
+            log.fine(() -> "Too many concurrent lookups for host [" + host + "], skipping " + location);
+            return ResourceInfo.UNRESOLVED;
+        }
+
+        boolean reported = false;
         try {
-            URL url = new URL(location);
-            URLConnection yc = url.openConnection(this.proxy);
+            ResourceInfo resourceInfo = (cache != null) ? connect(searchPath, url, circuitBreaker, cache) : connect(searchPath, url, circuitBreaker);
+            reported = true;
+            return resourceInfo;
+        } finally {
+            bulkhead.release();
+            // Release the probe slot if the outcome could not be reported (e.g. an Error was thrown)
+            if (!reported) {
+                circuitBreaker.onIgnored();
+            }
+        }
+    }
+
+    /**
+     * Opens the connection to the URL reporting the
+     * outcome to the circuit breaker of the host.
+     *
+     * @param searchPath the path that triggered the search
+     * @param url the URL
+     * @param circuitBreaker the circuit breaker of the host
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    private ResourceInfo connect(String searchPath, URL url, CircuitBreaker circuitBreaker) {
+        ResourceInfo resourceInfo = ResourceInfo.UNRESOLVED;
+        URLConnection yc = null;
+        try {
+            yc = url.openConnection(this.proxy);
+            yc.setConnectTimeout(connectTimeout);
+            yc.setReadTimeout(readTimeout);
             try (InputStream inputStream = yc.getInputStream()) {
                 if (inputStream != null) {
-                    resURL = yc.getURL();
+                    resourceInfo = ResourceInfo.resolved(searchPath, yc.getURL(), sourceName);
+                    readAttributes(yc, resourceInfo);
+                }
+            }
+            circuitBreaker.onSuccess();
+        } catch (FileNotFoundException e) {
+            // The host is available but the resource does not exist
+            circuitBreaker.onSuccess();
+        } catch (IOException | RuntimeException e) {
+            report(circuitBreaker, yc, e);
+            log.log(Level.FINE, "Error connecting to " + url, e);
+        }
+
+        return resourceInfo;
+    }
+
+    /**
+     * Opens the connection to the URL storing the content in the disk cache.
+     * A cached copy is revalidated using its validators and served if not modified
+     * or if the host is not available.
+     *
+     * @param searchPath the path that triggered the search
+     * @param url the URL
+     * @param circuitBreaker the circuit breaker of the host
+     * @param cache the disk cache
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    private ResourceInfo connect(String searchPath, URL url, CircuitBreaker circuitBreaker, DiskCache cache) {
+        String key = url.toExternalForm();
+        DiskCache.Entry cached = cache.get(key);
+        ResourceInfo resourceInfo = ResourceInfo.UNRESOLVED;
+        URLConnection yc = null;
+        try {
+            yc = url.openConnection(this.proxy);
+            yc.setConnectTimeout(connectTimeout);
+            yc.setReadTimeout(readTimeout);
+            if ((cached != null) && (yc instanceof HttpURLConnection)) {
+                HttpURLConnection httpConnection = (HttpURLConnection) yc;
+                if (cached.getETag() != null) {
+                    httpConnection.setRequestProperty("If-None-Match", cached.getETag());
+                }
+                if (cached.getLastModified() > 0) {
+                    httpConnection.setIfModifiedSince(cached.getLastModified());
+                }
+                if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    httpConnection.disconnect();
+                    circuitBreaker.onSuccess();
+                    return fromCache(searchPath, cached);
                 }
             }
-        } catch (Exception o) {
+            try (InputStream inputStream = yc.getInputStream()) {
+                if (inputStream != null) {
+                    long lastModified = yc.getLastModified();
+                    DiskCache.Entry entry = cache.store(key, inputStream, yc.getHeaderField("ETag"),
+                            (lastModified > 0) ? lastModified : ResourceInfo.UNKNOWN_ATTRIBUTE, yc.getContentType());
+                    resourceInfo = fromCache(searchPath, entry);
+                }
+            }
+            circuitBreaker.onSuccess();
+        } catch (FileNotFoundException e) {
+            // The host is available but the resource no longer exists
+            cache.remove(key);
+            circuitBreaker.onSuccess();
+        } catch (IOException | RuntimeException e) {
+            report(circuitBreaker, yc, e);
+            log.log(Level.FINE, "Error connecting to " + url, e);
+            resourceInfo = fromCache(searchPath, cached);
+        }
+
+        return resourceInfo;
+    }
+
+    /**
+     * Reports a failed lookup to the circuit breaker of the host. Only connection
+     * errors, timeouts and server errors (5xx) are host failures, other errors
+     * (e.g. 401 or 403 responses) show that the host is available.
+     *
+     * @param circuitBreaker the circuit breaker of the host
+     * @param connection the connection (null if not opened)
+     * @param e the error
+     */
+    private static void report(CircuitBreaker circuitBreaker, URLConnection connection, Exception e) {
+        if ((e instanceof SocketException) || (e instanceof SocketTimeoutException) || (e instanceof UnknownHostException)) {
+            circuitBreaker.onFailure();
+            return;
+        }
+
+        int responseCode = -1;
+        if ((e instanceof IOException) && (connection instanceof HttpURLConnection)) {
+            try {
+                responseCode = ((HttpURLConnection) connection).getResponseCode();
+            } catch (IOException ex) {
+                responseCode = -1;
+            }
+        }
+
+        if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            circuitBreaker.onFailure();
+        } else if (responseCode > 0) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onIgnored();
+        }
+    }
+
+    /**
+     * Builds the resource information of the cached copy
+     *
+     * @param searchPath the path that triggered the search
+     * @param entry the cache entry
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not cached
+     */
+    private ResourceInfo fromCache(String searchPath, DiskCache.Entry entry) {
+        if (entry == null) {
+            return ResourceInfo.UNRESOLVED;
         }
+        ResourceInfo resourceInfo = ResourceInfo.resolved(searchPath, entry.getContentPath(), sourceName);
+        resourceInfo.setSize(entry.getSize());
+        resourceInfo.setLastModified(entry.getLastModified());
+        resourceInfo.setContentType(entry.getContentType());
+        resourceInfo.setETag(entry.getETag());
+        return resourceInfo;
+    }
 
-        return resURL;
+    /**
+     * Fills in the resource attributes using the
+     * connection's response headers.
+     *
+     * @param connection the connection
+     * @param resourceInfo the resource information
+     */
+    protected void readAttributes(URLConnection connection, ResourceInfo resourceInfo) {
+        long contentLength = connection.getContentLengthLong();
+        long lastModified = connection.getLastModified();
+        resourceInfo.setSize((contentLength >= 0) ? contentLength : ResourceInfo.UNKNOWN_ATTRIBUTE);
+        resourceInfo.setLastModified((lastModified > 0) ? lastModified : ResourceInfo.UNKNOWN_ATTRIBUTE);
+        resourceInfo.setContentType(connection.getContentType());
+        resourceInfo.setETag(connection.getHeaderField("ETag"));
     }
 
     /**
@@ -66,5 +356,180 @@ public abstract class RemoteLoader extends UrlLoader {
         this.proxy = (proxy != null) ? proxy : Proxy.NO_PROXY;
     }
 
+    /**
+     * Sets the disk cache storing the contents of
+     * the resolved resources.
+     *
+     * @param diskCache the disk cache or null to disable it
+     */
+    public void setDiskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Retrieves the disk cache
+     *
+     * @return the disk cache or null if not set
+     */
+    public DiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Sets the connection timeouts
+     *
+     * @param connectTimeout the connect timeout (0 waits indefinitely)
+     * @param readTimeout the read timeout (0 waits indefinitely)
+     * @param unit the time unit
+     */
+    public void setTimeouts(long connectTimeout, long readTimeout, TimeUnit unit) {
+        this.connectTimeout = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(connectTimeout));
+        this.readTimeout = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(readTimeout));
+    }
+
+    /**
+     * Retrieves the connect timeout
+     *
+     * @return the connect timeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Retrieves the read timeout
+     *
+     * @return the read timeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Configures the circuit breakers of the hosts discarding
+     * the current state of the circuits.
+     *
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openDuration the time the circuit stays open
+     * @param unit the time unit
+     */
+    public void setCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if ((failureThreshold <= 0) || (openDuration < 0)) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDuration = unit.toMillis(openDuration);
+        this.circuitBreakers.clear();
+    }
+
+    /**
+     * Sets the maximum number of concurrent lookups per host.
+     * Lookups exceeding the limit are rejected.
+     *
+     * @param maxConcurrentLookups the maximum number of concurrent lookups
+     */
+    public void setMaxConcurrentLookups(int maxConcurrentLookups) {
+        if (maxConcurrentLookups <= 0) {
+            throw new IllegalArgumentException("The maximum number of concurrent lookups must be positive");
+        }
+        this.maxConcurrentLookups = maxConcurrentLookups;
+        this.bulkheads.clear();
+    }
+
+    /**
+     * Evicts the hosts without lookups in progress nor failures
+     * once the number of hosts tracked exceeds the limit, so that resolving
+     * arbitrary URLs does not keep the state of every host ever contacted.
+     * A lookup racing with the eviction at worst starts again with a fresh state.
+     *
+     * @param current the host being looked up (never evicted)
+     */
+    private void evictIdleHosts(String current) {
+        if (circuitBreakers.size() <= MAX_TRACKED_HOSTS) {
+            return;
+        }
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            if (!entry.getKey().equals(current) && entry.getValue().isIdle()) {
+                bulkheads.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+            if (!entry.getKey().equals(current) && !bulkheads.containsKey(entry.getKey()) && entry.getValue().isIdle()) {
+                circuitBreakers.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the circuit breaker of the given host
+     * (i.e. the authority of the URL, host and port if specified).
+     *
+     * @param host the host
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(String host) {
+        requireNonNull(host);
+        return circuitBreakers.computeIfAbsent(host, h -> new CircuitBreaker(failureThreshold, openDuration, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Retrieves the state of the circuit of the given host
+     *
+     * @param host the host
+     * @return the state of the circuit
+     */
+    public CircuitBreaker.State getCircuitState(String host) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        return (circuitBreaker != null) ? circuitBreaker.getState() : CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Retrieves the circuit breakers of the hosts contacted so far
+     *
+     * @return the circuit breakers by host
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    /**
+     * Retrieves the key identifying the host of the URL
+     *
+     * @param url the URL
+     * @return the host key
+     */
+    protected static String getHostKey(URL url) {
+        String authority = url.getAuthority();
+        return (authority != null) ? authority : "";
+    }
+
+    /**
+     * Limits the concurrent lookups of a host
+     */
+    private static final class Bulkhead extends Semaphore {
+
+        /** The maximum number of concurrent lookups */
+        private final int permits;
+
+        /**
+         * Creates the bulkhead
+         *
+         * @param permits the maximum number of concurrent lookups
+         */
+        private Bulkhead(int permits) {
+            super(permits);
+            this.permits = permits;
+        }
+
+        /**
+         * Checks whether there are no lookups in progress
+         *
+         * @return true if idle, false otherwise
+         */
+        private boolean isIdle() {
+            return availablePermits() == permits;
+        }
+    }
+
 
 }
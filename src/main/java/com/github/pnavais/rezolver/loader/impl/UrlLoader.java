@@ -16,6 +16,8 @@
 
 package com.github.pnavais.rezolver.loader.impl;
 
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResolutionTrace;
 import com.github.pnavais.rezolver.ResourceInfo;
 import com.github.pnavais.rezolver.loader.IUrlLoader;
 
@@ -30,31 +32,115 @@ import java.net.URL;
  */
 public abstract class UrlLoader implements IUrlLoader {
 
+    /** The name of the loader reported as source entity */
+    protected final String sourceName = getClass().getSimpleName();
+
     /**
      * Use the default loader resolution algorithm and
-     * sets the resolved URL.
+     * sets the resolved URL. Misses return the shared
+     * {@link ResourceInfo#UNRESOLVED} instance.
      *
      * @param location the location of the resource
      * @return the resolved URL or null if not resolved
      */
     @Override
     public ResourceInfo resolve(String location) {
+        return resolve(location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Use the default loader resolution algorithm in the
+     * given context. Misses return the shared
+     * {@link ResourceInfo#UNRESOLVED} instance.
+     *
+     * @param location the location of the resource
+     * @param context the resolution context
+     * @return the resolved URL or null if not resolved
+     */
+    @Override
+    public ResourceInfo resolve(String location, ResolutionContext context) {
 
-        URL resourceURL = null;
+        ResourceInfo resourceInfo = ResourceInfo.UNRESOLVED;
 
         String scheme = extractScheme(location);
         // Check that if a scheme was set, corresponds to the one currently handled
         if (scheme.isEmpty() || scheme.equals(getUrlScheme())) {
             // Try direct resolution
-            resourceURL = lookup(location);
+            resourceInfo = tracedFind(location, location, context);
 
             // Try to resolve without schema prefix
-            if ((resourceURL==null) && (location.startsWith(getUrlScheme()))) {
-                resourceURL = lookup(stripScheme(location));
+            if ((!resourceInfo.isResolved()) && (location.startsWith(getUrlScheme()))) {
+                resourceInfo = tracedFind(location, stripScheme(location), context);
             }
         }
 
-        return ResourceInfo.builder().with(location).as(resourceURL).from(getClass().getSimpleName()).build();
+        return resourceInfo;
+    }
+
+    /**
+     * Finds the resource recording the attempt in the trace
+     * of the current resolution (if any).
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    protected ResourceInfo tracedFind(String searchPath, String location) {
+        return tracedFind(searchPath, location, ResolutionContext.DEFAULT);
+    }
+
+    /**
+     * Finds the resource in the given context recording the attempt
+     * in the trace of the current resolution (if any).
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    protected ResourceInfo tracedFind(String searchPath, String location, ResolutionContext context) {
+        ResolutionTrace trace = ResolutionTrace.current();
+        if (trace == null) {
+            return find(searchPath, location, context);
+        }
+
+        long start = System.nanoTime();
+        try {
+            ResourceInfo resourceInfo = find(searchPath, location, context);
+            trace.record(sourceName, location, resourceInfo, start);
+            return resourceInfo;
+        } catch (RuntimeException e) {
+            trace.record(sourceName, location, ResolutionTrace.Outcome.FAILED, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the resource in the given location and builds its
+     * resource information. By default the URL is looked up eagerly,
+     * loaders able to provide a cheaper native handle should override it.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    protected ResourceInfo find(String searchPath, String location) {
+        URL resourceURL = lookup(location);
+        return (resourceURL != null) ? ResourceInfo.resolved(searchPath, resourceURL, sourceName) : ResourceInfo.UNRESOLVED;
+    }
+
+    /**
+     * Finds the resource in the given location and context. By default
+     * the context is ignored, loaders using any of its settings must
+     * override it.
+     *
+     * @param searchPath the path that triggered the search
+     * @param location the resource's location
+     * @param context the resolution context
+     * @return the resource information or {@link ResourceInfo#UNRESOLVED} if not found
+     */
+    protected ResourceInfo find(String searchPath, String location, ResolutionContext context) {
+        return find(searchPath, location);
     }
 
     /**
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.pack;
+
+import com.github.pnavais.rezolver.util.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ResourcePack</b>
+ * <p>
+ *  A single file containing many resources. The pack is memory mapped and its index loaded
+ *  on open, so lookups do not touch the file system and contents are returned as slices
+ *  of the mapped file without copying.
+ * </p>
+ * <p>
+ *  The format (all numbers big-endian) is :
+ * </p>
+ * <pre>
+ *  header : magic "RZPK" (int), version (int), alignment (int), entry count (int), index offset (long)
+ *  blobs  : the contents of the resources, each one starting at a multiple of the alignment
+ *  index  : for each entry, name length (int), UTF-8 name, offset (long), length (long), last modified (long)
+ * </pre>
+ * <p>
+ *  Packs are created using the {@link ResourcePackBuilder}.
+ * </p>
+ */
+public class ResourcePack {
+
+    /** The magic number ("RZPK") */
+    public static final int MAGIC = 0x525A504B;
+
+    /** The version of the format */
+    public static final int VERSION = 1;
+
+    /** The size of the header */
+    public static final int HEADER_SIZE = 24;
+
+    /** The minimum size of an index entry (empty name) */
+    private static final int MIN_ENTRY_SIZE = 28;
+
+    /** The URL protocol of the packed resources */
+    public static final String PROTOCOL = "pack";
+
+    /** The separator between the pack file and the resource name in the URLs */
+    private static final String URL_SEPARATOR = "!/";
+
+    /** The pack file */
+    private final Path file;
+
+    /** The mapped pack */
+    private final ByteBuffer buffer;
+
+    /** The alignment of the blobs */
+    private final int alignment;
+
+    /** The entries by name */
+    private final Map<String, Entry> entries;
+
+    /** The handler of the packed resources URLs */
+    private final URLStreamHandler handler = new PackURLStreamHandler();
+
+    /**
+     * Creates the resource pack
+     *
+     * @param file the pack file
+     * @param buffer the mapped pack
+     * @param alignment the alignment of the blobs
+     * @param entries the entries by name
+     */
+    private ResourcePack(Path file, ByteBuffer buffer, int alignment, Map<String, Entry> entries) {
+        this.file = file;
+        this.buffer = buffer;
+        this.alignment = alignment;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the given pack file mapping it in memory
+     * and loading its index.
+     *
+     * @param file the pack file
+     * @return the resource pack
+     * @throws IOException if the pack cannot be read or is not valid
+     */
+    public static ResourcePack open(Path file) throws IOException {
+        requireNonNull(file);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Resource pack too large " + file);
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("Invalid resource pack " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if ((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)) {
+            throw new IOException("Invalid resource pack " + file);
+        }
+        int alignment = buffer.getInt(8);
+        int entryCount = buffer.getInt(12);
+        long indexOffset = buffer.getLong(16);
+        if ((entryCount < 0) || (indexOffset < HEADER_SIZE) || (indexOffset > buffer.limit())
+                || (entryCount > (buffer.limit() - indexOffset) / MIN_ENTRY_SIZE)) {
+            throw new IOException("Corrupted resource pack " + file);
+        }
+
+        Map<String, Entry> entries = new HashMap<>(Math.max(16, (int) (entryCount / 0.75f) + 1));
+        try {
+            ByteBuffer index = buffer.duplicate();
+            index.position((int) indexOffset);
+            for (int i = 0; i < entryCount; i++) {
+                int nameLength = index.getInt();
+                if ((nameLength < 0) || (nameLength > index.remaining() - (MIN_ENTRY_SIZE - 4))) {
+                    throw new IOException("Corrupted resource pack " + file);
+                }
+                byte[] name = new byte[nameLength];
+                index.get(name);
+                long offset = index.getLong();
+                long length = index.getLong();
+                long lastModified = index.getLong();
+                if ((offset < HEADER_SIZE) || (length < 0) || ((offset + length) > indexOffset)) {
+                    throw new IOException("Corrupted resource pack " + file);
+                }
+                Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), offset, length, lastModified);
+                entries.put(entry.getName(), entry);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted resource pack " + file, e);
+        }
+
+        return new ResourcePack(file, buffer, alignment, entries);
+    }
+
+    /**
+     * Retrieves the entry with the given name
+     *
+     * @param name the name of the resource
+     * @return the entry or null if not packed
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Retrieves the content of the given entry as a read-only
+     * slice of the mapped pack.
+     *
+     * @param entry the entry
+     * @return the content
+     */
+    public ByteBuffer getContent(Entry entry) {
+        requireNonNull(entry);
+        ByteBuffer content = buffer.duplicate();
+        content.limit((int) (entry.getOffset() + entry.getLength()));
+        content.position((int) entry.getOffset());
+        return content.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Retrieves the URL of the given entry. The URL is handled by
+     * the pack itself and cannot be parsed back from its external form.
+     *
+     * @param entry the entry
+     * @return the URL
+     */
+    public URL getURL(Entry entry) {
+        requireNonNull(entry);
+        URL url = entry.url;
+        if (url == null) {
+            try {
+                url = new URL(PROTOCOL, "", -1, file.toUri().getPath() + URL_SEPARATOR + entry.getName(), handler);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException("Error building the URL of " + entry.getName(), e);
+            }
+            entry.url = url;
+        }
+        return url;
+    }
+
+    /**
+     * Retrieves the names of the packed resources
+     *
+     * @return the names
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Retrieves the number of packed resources
+     *
+     * @return the number of resources
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the alignment of the blobs
+     *
+     * @return the alignment
+     */
+    public int getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Retrieves the pack file
+     *
+     * @return the pack file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Creates a new builder of resource packs
+     *
+     * @return the builder
+     */
+    public static ResourcePackBuilder builder() {
+        return new ResourcePackBuilder();
+    }
+
+    /**
+     * An entry of the pack index
+     */
+    public static final class Entry {
+
+        /** The name of the resource */
+        private final String name;
+
+        /** The offset of the content */
+        private final long offset;
+
+        /** The length of the content */
+        private final long length;
+
+        /** The last modification time */
+        private final long lastModified;
+
+        /** The URL, built on demand */
+        private volatile URL url;
+
+        /**
+         * Creates the entry
+         *
+         * @param name the name of the resource
+         * @param offset the offset of the content
+         * @param length the length of the content
+         * @param lastModified the last modification time
+         */
+        private Entry(String name, long offset, long length, long lastModified) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Retrieves the name of the resource
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieves the offset of the content in the pack
+         *
+         * @return the offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Retrieves the length of the content
+         *
+         * @return the length
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Retrieves the last modification time
+         *
+         * @return the last modification time
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Opens the connections to the packed resources
+     */
+    private final class PackURLStreamHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            String spec = url.getFile();
+            int separator = spec.indexOf(URL_SEPARATOR);
+            Entry entry = (separator >= 0) ? get(spec.substring(separator + URL_SEPARATOR.length())) : null;
+            if (entry == null) {
+                throw new IOException("Resource not found in pack " + url);
+            }
+            return new PackURLConnection(url, entry);
+        }
+    }
+
+    /**
+     * A connection to a packed resource
+     */
+    private final class PackURLConnection extends URLConnection {
+
+        /** The entry */
+        private final Entry entry;
+
+        /**
+         * Creates the connection
+         *
+         * @param url the URL
+         * @param entry the entry
+         */
+        private PackURLConnection(URL url, Entry entry) {
+            super(url);
+            this.entry = entry;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteBufferInputStream(ResourcePack.this.getContent(entry));
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return entry.getLength();
+        }
+
+        @Override
+        public long getLastModified() {
+            return entry.getLastModified();
+        }
+
+        @Override
+        public String getContentType() {
+            return guessContentTypeFromName(entry.getName());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ResourcePackBuilder</b>
+ * <p>
+ *  Builds {@link ResourcePack} files from individual files or whole directories,
+ *  intended to be run at build time. It can be used from the command line :
+ * </p>
+ * <pre>
+ *  java com.github.pnavais.rezolver.pack.ResourcePackBuilder [-a alignment] &lt;output&gt; &lt;directory&gt;...
+ * </pre>
+ */
+public class ResourcePackBuilder {
+
+    /** The default alignment of the blobs */
+    public static final int DEFAULT_ALIGNMENT = 8;
+
+    /** The maximum alignment of the blobs */
+    public static final int MAX_ALIGNMENT = 65536;
+
+    /** The files to pack by resource name */
+    private final Map<String, Path> resources = new TreeMap<>();
+
+    /** The alignment of the blobs */
+    private int alignment = DEFAULT_ALIGNMENT;
+
+    /**
+     * Sets the alignment of the blobs in the pack
+     *
+     * @param alignment the alignment (a power of two)
+     * @return the builder
+     */
+    public ResourcePackBuilder alignment(int alignment) {
+        if ((alignment <= 0) || (alignment > MAX_ALIGNMENT) || (Integer.bitCount(alignment) != 1)) {
+            throw new IllegalArgumentException("The alignment must be a power of two up to " + MAX_ALIGNMENT);
+        }
+        this.alignment = alignment;
+        return this;
+    }
+
+    /**
+     * Adds a file to the pack with the given resource name
+     *
+     * @param name the resource name
+     * @param file the file
+     * @return the builder
+     */
+    public ResourcePackBuilder add(String name, Path file) {
+        requireNonNull(name);
+        requireNonNull(file);
+        resources.put(name.startsWith("/") ? name.substring(1) : name, file);
+        return this;
+    }
+
+    /**
+     * Adds all the files in the given directory using its
+     * path relative to the directory as resource name.
+     *
+     * @param directory the directory
+     * @return the builder
+     * @throws IOException if the directory cannot be read
+     */
+    public ResourcePackBuilder addDirectory(Path directory) throws IOException {
+        requireNonNull(directory);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    String name = directory.relativize(file).toString();
+                    add(name.replace(file.getFileSystem().getSeparator(), "/"), file);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes the pack to the given file. The pack is written to
+     * a temporary file and then moved to its final location.
+     *
+     * @param output the pack file
+     * @return the pack file
+     * @throws IOException if the pack cannot be written
+     */
+    public Path build(Path output) throws IOException {
+        requireNonNull(output);
+        Path parent = output.toAbsolutePath().getParent();
+        Path tmpFile = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try {
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Reserve the header, written once the index is known
+                long position = pad(channel, 0, ResourcePack.HEADER_SIZE);
+                for (Map.Entry<String, Path> resource : resources.entrySet()) {
+                    position = pad(channel, position, align(position));
+                    long length;
+                    try (FileChannel source = FileChannel.open(resource.getValue(), StandardOpenOption.READ)) {
+                        length = source.size();
+                        long transferred = 0;
+                        while (transferred < length) {
+                            transferred += channel.transferFrom(source, position + transferred, length - transferred);
+                        }
+                    }
+
+                    byte[] name = resource.getKey().getBytes(StandardCharsets.UTF_8);
+                    index.writeInt(name.length);
+                    index.write(name);
+                    index.writeLong(position);
+                    index.writeLong(length);
+                    index.writeLong(Files.getLastModifiedTime(resource.getValue()).toMillis());
+                    position += length;
+                }
+
+                long indexOffset = pad(channel, position, align(position));
+                if (indexOffset + indexBytes.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Resource pack too large " + output);
+                }
+                writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()), indexOffset);
+
+                ByteBuffer header = ByteBuffer.allocate(ResourcePack.HEADER_SIZE);
+                header.putInt(ResourcePack.MAGIC)
+                      .putInt(ResourcePack.VERSION)
+                      .putInt(alignment)
+                      .putInt(resources.size())
+                      .putLong(indexOffset)
+                      .flip();
+                writeFully(channel, header, 0);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tmpFile, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+
+        return output;
+    }
+
+    /**
+     * Aligns the position to the next multiple of the alignment
+     *
+     * @param position the position
+     * @return the aligned position
+     */
+    private long align(long position) {
+        return (position + alignment - 1) & -((long) alignment);
+    }
+
+    /**
+     * Fills with zeros the channel between the given positions
+     *
+     * @param channel the channel
+     * @param from the start position
+     * @param to the end position
+     * @return the end position
+     * @throws IOException if the padding cannot be written
+     */
+    private static long pad(FileChannel channel, long from, long to) throws IOException {
+        writeFully(channel, ByteBuffer.allocate((int) (to - from)), from);
+        return to;
+    }
+
+    /**
+     * Writes the whole buffer at the given position
+     *
+     * @param channel the channel
+     * @param buffer the buffer
+     * @param position the position
+     * @throws IOException if the buffer cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+
+    /**
+     * Builds a pack from the command line
+     *
+     * @param args [-a alignment] output directory...
+     * @throws IOException if the pack cannot be built
+     */
+    public static void main(String[] args) throws IOException {
+        ResourcePackBuilder builder = new ResourcePackBuilder();
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-a".equals(args[i]) && (i + 1 < args.length)) {
+                builder.alignment(Integer.parseInt(args[++i]));
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+
+        if (arguments.size() < 2) {
+            System.err.println("Usage: ResourcePackBuilder [-a alignment] <output> <directory>...");
+            System.exit(1);
+        }
+
+        for (String directory : arguments.subList(1, arguments.size())) {
+            builder.addDirectory(Paths.get(directory));
+        }
+        Path output = builder.build(Paths.get(arguments.get(0)));
+        System.out.println("Packed " + builder.resources.size() + " resources into " + output);
+    }
+}
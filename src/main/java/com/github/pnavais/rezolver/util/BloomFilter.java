@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>BloomFilter</b>
+ * <p>
+ *  A thread-safe Bloom filter of strings. Lookups never return false for
+ *  an inserted string, but may return true for strings never inserted with
+ *  a probability depending on the number of bits per insertion.
+ *  Hashing works directly on the characters so neither insertions nor lookups allocate.
+ * </p>
+ */
+public class BloomFilter {
+
+    /** The maximum number of hash functions */
+    private static final int MAX_HASH_COUNT = 16;
+
+    /** The bits of the filter */
+    private final AtomicLongArray bits;
+
+    /** The number of bits of the filter */
+    private final long bitCount;
+
+    /** The number of hash functions */
+    private final int hashCount;
+
+    /** The number of insertions */
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * Creates a filter with the optimal size for the expected number
+     * of insertions and false positive rate.
+     *
+     * @param expectedInsertions the expected number of insertions
+     * @param falsePositiveRate the expected false positive rate (between 0 and 1 exclusive)
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        this(expectedInsertions, falsePositiveRate, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a filter with the optimal size for the expected number
+     * of insertions and false positive rate without exceeding the given
+     * memory (the actual false positive rate will be higher in that case).
+     *
+     * @param expectedInsertions the expected number of insertions
+     * @param falsePositiveRate the expected false positive rate (between 0 and 1 exclusive)
+     * @param maxMemory the maximum memory used by the bits in bytes
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate, long maxMemory) {
+        if (expectedInsertions < 0) {
+            throw new IllegalArgumentException("The expected insertions cannot be negative");
+        }
+        if ((falsePositiveRate <= 0) || (falsePositiveRate >= 1)) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1");
+        }
+        if (maxMemory < Long.BYTES) {
+            throw new IllegalArgumentException("The maximum memory must be at least " + Long.BYTES + " bytes");
+        }
+        long n = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long maxWords = Math.min(maxMemory / Long.BYTES, Integer.MAX_VALUE);
+        int words = (int) Math.min(Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE), maxWords);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * Long.SIZE;
+        int optimalHashes = (int) Math.round(((double) bitCount / n) * Math.log(2));
+        this.hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, optimalHashes));
+    }
+
+    /**
+     * Inserts the given string
+     *
+     * @param value the string
+     */
+    public void put(CharSequence value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = indexOf(h1 + (i * h2));
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+            } while (((current & mask) == 0) && !bits.compareAndSet(word, current, current | mask));
+        }
+        insertions.increment();
+    }
+
+    /**
+     * Checks whether the given string might have been inserted
+     *
+     * @param value the string
+     * @return false if definitely not inserted, true otherwise
+     */
+    public boolean mightContain(CharSequence value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = indexOf(h1 + (i * h2));
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of bits of the filter
+     *
+     * @return the number of bits
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Retrieves the memory used by the bits of the filter
+     *
+     * @return the memory in bytes
+     */
+    public long getMemoryUsage() {
+        return bitCount / Byte.SIZE;
+    }
+
+    /**
+     * Retrieves the number of hash functions
+     *
+     * @return the number of hash functions
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Retrieves the number of insertions
+     *
+     * @return the number of insertions
+     */
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * Estimates the current false positive rate from the
+     * number of insertions.
+     *
+     * @return the estimated false positive rate
+     */
+    public double getFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * getInsertions() / bitCount), hashCount);
+    }
+
+    /**
+     * Maps a hash to a bit index
+     *
+     * @param hash the hash
+     * @return the bit index
+     */
+    private long indexOf(int hash) {
+        return (hash & 0xFFFFFFFFL) % bitCount;
+    }
+
+    /**
+     * Computes a 64 bits hash (FNV-1a followed by a
+     * murmur3 finalizer) of the characters.
+     *
+     * @param value the string
+     * @return the hash
+     */
+    private static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe1a85ec5L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
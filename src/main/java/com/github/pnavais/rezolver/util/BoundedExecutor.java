@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>BoundedExecutor</b>
+ * <p>
+ *  Runs every task on its own thread (a virtual thread when supported)
+ *  limiting the number of tasks running at the same time through a semaphore
+ *  instead of a fixed pool size. Tasks exceeding the limit wait in a queue,
+ *  costing only a queue node, and once the maximum number of waiting tasks is
+ *  reached further tasks are rejected right away (load shedding).
+ * </p>
+ * <p>
+ *  On Java 21 or later this allows tens of thousands of blocking lookups in flight
+ *  with a small memory footprint. On earlier versions it falls back to a cached
+ *  pool of platform threads, which never grows beyond the concurrency limit.
+ * </p>
+ */
+public class BoundedExecutor implements Executor {
+
+    /** The executor starting the threads */
+    private final ExecutorService executor;
+
+    /** The permits of the running tasks */
+    private final Semaphore permits;
+
+    /** The maximum number of tasks running at the same time */
+    private final int maxConcurrency;
+
+    /** The maximum number of tasks waiting for a permit */
+    private final int maxWaiting;
+
+    /** The tasks waiting for a permit */
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /** The number of tasks waiting for a permit */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** Whether virtual threads are used */
+    private final boolean virtual;
+
+    /** Set once shut down to reject further tasks */
+    private volatile boolean shutdown;
+
+    /**
+     * Creates the executor using virtual threads if supported, or
+     * platform daemon threads otherwise.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @param maxConcurrency the maximum number of tasks running at the same time
+     * @param maxWaiting the maximum number of tasks waiting to run
+     */
+    public BoundedExecutor(String namePrefix, int maxConcurrency, int maxWaiting) {
+        this(newThreadPerTaskExecutor(namePrefix), maxConcurrency, maxWaiting, VirtualThreads.isSupported());
+    }
+
+    /**
+     * Creates the executor
+     *
+     * @param executor the executor starting the threads
+     * @param maxConcurrency the maximum number of tasks running at the same time
+     * @param maxWaiting the maximum number of tasks waiting to run
+     * @param virtual whether the executor starts virtual threads
+     */
+    private BoundedExecutor(ExecutorService executor, int maxConcurrency, int maxWaiting, boolean virtual) {
+        if ((maxConcurrency <= 0) || (maxWaiting < 0)) {
+            throw new IllegalArgumentException("The concurrency must be positive and the waiting tasks not negative");
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.maxWaiting = maxWaiting;
+        this.permits = new Semaphore(maxConcurrency);
+        this.virtual = virtual;
+    }
+
+    /**
+     * Runs the task as soon as a permit is available
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if shut down or too many tasks are waiting
+     */
+    @Override
+    public void execute(Runnable task) {
+        requireNonNull(task);
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        // Tasks taking a free permit right away do not count as waiting
+        if (waiting.incrementAndGet() > (long) maxWaiting + permits.availablePermits()) {
+            waiting.decrementAndGet();
+            throw new RejectedExecutionException("Too many tasks waiting (" + maxWaiting + ")");
+        }
+        pending.offer(task);
+        dispatch();
+    }
+
+    /**
+     * Starts waiting tasks while permits are available. Called on
+     * every submission and every completion so no task is left behind.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            waiting.decrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                    dispatch();
+                }
+            });
+        }
+    }
+
+    /**
+     * Rejects further tasks letting the submitted ones complete
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Retrieves the number of tasks waiting for a permit
+     *
+     * @return the number of waiting tasks
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * Retrieves the number of tasks currently running
+     *
+     * @return the number of running tasks
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Retrieves the maximum number of tasks running at the same time
+     *
+     * @return the maximum concurrency
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Retrieves the maximum number of tasks waiting to run
+     *
+     * @return the maximum number of waiting tasks
+     */
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /**
+     * Checks whether the tasks run on virtual threads
+     *
+     * @return true if using virtual threads, false otherwise
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Creates the executor starting a thread per task, falling back to
+     * a cached pool of platform daemon threads if virtual threads are not
+     * supported.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     */
+    private static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        requireNonNull(namePrefix);
+        if (VirtualThreads.isSupported()) {
+            return VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ByteBufferInputStream</b>
+ * <p>
+ *  An input stream reading the remaining bytes of a buffer (e.g. a slice
+ *  of a memory mapped file) without copying them beforehand.
+ * </p>
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    /** The buffer */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates the stream
+     *
+     * @param buffer the buffer
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        requireNonNull(buffer);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
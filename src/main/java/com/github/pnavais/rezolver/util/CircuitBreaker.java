@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>CircuitBreaker</b>
+ * <p>
+ *  Stops calls to a failing dependency. The circuit opens after a number of
+ *  consecutive failures rejecting any call. Once the open period elapses a
+ *  single probe is allowed (half-open state), closing the circuit on success or
+ *  opening it again on failure.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of the circuit
+     */
+    public enum State {
+        /** Calls are allowed */
+        CLOSED,
+        /** Calls are rejected */
+        OPEN,
+        /** A single probe call is allowed */
+        HALF_OPEN
+    }
+
+    /** The number of consecutive failures opening the circuit */
+    private final int failureThreshold;
+
+    /** The time in nanoseconds the circuit stays open */
+    private final long openDurationNanos;
+
+    /** The current state */
+    private State state = State.CLOSED;
+
+    /** The number of consecutive failures */
+    private int failureCount;
+
+    /** The time the circuit was opened */
+    private long openedAt;
+
+    /** Whether a probe is in progress in half-open state */
+    private boolean probing;
+
+    /**
+     * Creates the circuit breaker
+     *
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openDuration the time the circuit stays open
+     * @param unit the time unit
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if ((failureThreshold <= 0) || (openDuration < 0)) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Checks whether a call is allowed. In half-open state only
+     * one caller is allowed to probe the dependency and it must
+     * report the outcome.
+     *
+     * @return true if the call is allowed, false otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if ((System.nanoTime() - openedAt) < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * Reports a successful call closing the circuit
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failureCount = 0;
+        probing = false;
+    }
+
+    /**
+     * Reports a failed call opening the circuit if
+     * the threshold is reached or the probe failed.
+     */
+    public synchronized void onFailure() {
+        failureCount++;
+        if ((state == State.HALF_OPEN) || (failureCount >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+        probing = false;
+    }
+
+    /**
+     * Reports a call that neither succeeded nor failed (e.g. cancelled)
+     * releasing the probe slot if acquired.
+     */
+    public synchronized void onIgnored() {
+        probing = false;
+    }
+
+    /**
+     * Closes the circuit discarding previous failures
+     */
+    public synchronized void reset() {
+        onSuccess();
+    }
+
+    /**
+     * Checks whether the circuit is closed without failures, i.e.
+     * in the same state as a new circuit breaker
+     *
+     * @return true if idle, false otherwise
+     */
+    public synchronized boolean isIdle() {
+        return (state == State.CLOSED) && (failureCount == 0) && !probing;
+    }
+
+    /**
+     * Retrieves the current state
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        if ((state == State.OPEN) && ((System.nanoTime() - openedAt) >= openDurationNanos)) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Retrieves the number of consecutive failures
+     *
+     * @return the number of failures
+     */
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>LatencyStats</b>
+ * <p>
+ *  Keeps track of the latency of the calls to a dependency using an
+ *  exponentially weighted moving average and a window with the most
+ *  recent samples to estimate percentiles.
+ * </p>
+ */
+public class LatencyStats {
+
+    /** The default number of samples kept to estimate percentiles */
+    public static final int DEFAULT_WINDOW_SIZE = 128;
+
+    /** The weight of a new sample in the moving average */
+    private static final double ALPHA = 0.2;
+
+    /** The most recent samples in nanoseconds */
+    private final long[] samples;
+
+    /** The total number of samples recorded */
+    private long sampleCount;
+
+    /** The moving average in nanoseconds */
+    private double average;
+
+    /** The number of consecutive failures */
+    private int consecutiveFailures;
+
+    /**
+     * Creates the latency stats with the default window size
+     */
+    public LatencyStats() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates the latency stats
+     *
+     * @param windowSize the number of samples kept to estimate percentiles
+     */
+    public LatencyStats(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("The window size must be positive");
+        }
+        this.samples = new long[windowSize];
+    }
+
+    /**
+     * Records the latency of a successful call
+     *
+     * @param latency the latency
+     * @param unit the time unit
+     */
+    public synchronized void record(long latency, TimeUnit unit) {
+        long nanos = unit.toNanos(latency);
+        samples[(int) (sampleCount % samples.length)] = nanos;
+        average = (sampleCount == 0) ? nanos : (ALPHA * nanos) + ((1 - ALPHA) * average);
+        sampleCount++;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failed call
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+    }
+
+    /**
+     * Retrieves the moving average of the latency
+     *
+     * @param unit the time unit
+     * @return the average latency or 0 if no samples
+     */
+    public synchronized double getAverage(TimeUnit unit) {
+        return average / unit.toNanos(1);
+    }
+
+    /**
+     * Estimates the given percentile of the latency
+     * using the samples in the window.
+     *
+     * @param percentile the percentile (between 0 and 1)
+     * @param unit the time unit
+     * @return the percentile or 0 if no samples
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if ((percentile < 0) || (percentile > 1)) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 1");
+        }
+        long[] window;
+        synchronized (this) {
+            window = Arrays.copyOf(samples, (int) Math.min(sampleCount, samples.length));
+        }
+        if (window.length == 0) {
+            return 0;
+        }
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile * window.length) - 1;
+        return unit.convert(window[Math.max(0, index)], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the total number of samples recorded
+     *
+     * @return the number of samples
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Retrieves the number of consecutive failures
+     *
+     * @return the number of consecutive failures
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
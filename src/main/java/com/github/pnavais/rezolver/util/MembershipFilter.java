@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>MembershipFilter</b>
+ * <p>
+ *  Keeps a {@link BloomFilter} of the names available in a source (e.g. a directory
+ *  or the classpath) allowing to rule out missing resources without any I/O.
+ *  The filter is built from a scan of the source and built again once the stamp of
+ *  the source (e.g. the modification time of a directory) changes, which is checked
+ *  at most once per refresh interval. Names added to the source during that interval may
+ *  be reported as missing. If the source cannot be scanned, every name is reported
+ *  as possibly available.
+ * </p>
+ */
+@Log
+public class MembershipFilter {
+
+    /** The default false positive rate */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /** The default interval between checks of the source stamp in milliseconds */
+    public static final long DEFAULT_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /** Modifications more recent than this are not trusted due to the timestamp granularity */
+    private static final long RACY_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * The source of the names
+     */
+    public interface Source {
+
+        /**
+         * Scans all the names available in the source
+         *
+         * @param sink the consumer of the names
+         * @throws IOException if the source cannot be scanned
+         */
+        void scan(Consumer<String> sink) throws IOException;
+
+        /**
+         * Retrieves a stamp changing whenever the names available
+         * in the source change (e.g. a modification time).
+         *
+         * @return the stamp
+         */
+        long getStamp();
+    }
+
+    /** The source of the names */
+    private final Source source;
+
+    /** The expected false positive rate */
+    private final double falsePositiveRate;
+
+    /** The maximum memory used by the filter in bytes */
+    private final long maxMemory;
+
+    /** The interval between checks of the source stamp in nanoseconds */
+    private volatile long refreshInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REFRESH_INTERVAL);
+
+    /** The current filter (null if the source cannot be scanned) */
+    private volatile BloomFilter filter;
+
+    /** The stamp of the source when the filter was built */
+    private volatile long stamp;
+
+    /** The time of the next check of the source stamp */
+    private volatile long nextCheck;
+
+    /**
+     * Creates the filter with the default false positive rate
+     * and no memory limit.
+     *
+     * @param source the source of the names
+     */
+    public MembershipFilter(Source source) {
+        this(source, DEFAULT_FALSE_POSITIVE_RATE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the filter scanning the source
+     *
+     * @param source the source of the names
+     * @param falsePositiveRate the expected false positive rate
+     * @param maxMemory the maximum memory used by the filter in bytes
+     */
+    public MembershipFilter(Source source, double falsePositiveRate, long maxMemory) {
+        requireNonNull(source);
+        // Fail fast on invalid settings
+        new BloomFilter(0, falsePositiveRate, maxMemory);
+        this.source = source;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxMemory = maxMemory;
+        refresh();
+    }
+
+    /**
+     * Checks whether the given name might be available in the source
+     *
+     * @param name the name
+     * @return false if definitely not available, true otherwise
+     */
+    public boolean mightContain(CharSequence name) {
+        if (System.nanoTime() - nextCheck >= 0) {
+            checkStamp();
+        }
+        BloomFilter current = filter;
+        return (current == null) || current.mightContain(name);
+    }
+
+    /**
+     * Scans the source building the filter again
+     */
+    public synchronized void refresh() {
+        List<String> names = new ArrayList<>();
+        BloomFilter built;
+        try {
+            source.scan(names::add);
+            built = new BloomFilter(names.size(), falsePositiveRate, maxMemory);
+            names.forEach(built::put);
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.FINE, "Error scanning the membership filter source", e);
+            built = null;
+        }
+        filter = built;
+        // Read after the scan as the source may only know its files once scanned,
+        // changes during the scan are caught as too recent (see getStamp)
+        stamp = source.getStamp();
+        nextCheck = System.nanoTime() + refreshInterval;
+    }
+
+    /**
+     * Sets the interval between checks of the source stamp
+     *
+     * @param interval the interval
+     * @param unit the time unit
+     */
+    public void setRefreshInterval(long interval, TimeUnit unit) {
+        requireNonNull(unit);
+        if (interval < 0) {
+            throw new IllegalArgumentException("The interval cannot be negative");
+        }
+        this.refreshInterval = unit.toNanos(interval);
+        this.nextCheck = System.nanoTime() + refreshInterval;
+    }
+
+    /**
+     * Retrieves the current Bloom filter (e.g. to report its
+     * memory usage and false positive rate).
+     *
+     * @return the Bloom filter or null if the source could not be scanned
+     */
+    public BloomFilter getBloomFilter() {
+        return filter;
+    }
+
+    /**
+     * Computes a stamp of the given files from their modification times.
+     * While any of them was modified too recently to rule out further changes
+     * within the same timestamp, a different stamp is returned on every call
+     * so that the filter keeps being built again.
+     *
+     * @param files the files
+     * @return the stamp
+     */
+    public static long getStamp(Collection<Path> files) {
+        requireNonNull(files);
+        long now = System.currentTimeMillis();
+        long stamp = 1;
+        for (Path file : files) {
+            long lastModified;
+            try {
+                lastModified = Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                lastModified = -1;
+            }
+            if (now - lastModified < RACY_INTERVAL) {
+                return System.nanoTime();
+            }
+            stamp = (31 * stamp) + lastModified;
+        }
+        return stamp;
+    }
+
+    /**
+     * Builds the filter again if the stamp of the source changed
+     */
+    private synchronized void checkStamp() {
+        long now = System.nanoTime();
+        if (now - nextCheck < 0) {
+            return;
+        }
+        if (source.getStamp() != stamp) {
+            refresh();
+        } else {
+            nextCheck = now + refreshInterval;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>SingleFlight</b>
+ * <p>
+ *  Coalesces concurrent computations of the same key so that only
+ *  the first caller (the leader) performs the computation while the
+ *  rest (the followers) wait for its result.
+ * </p>
+ * <ul>
+ *  <li>Followers wait at most the configured time, after that they perform
+ *      the computation on their own so a slow leader never blocks them.</li>
+ *  <li>A failure of the leader is propagated to the followers waiting for it.</li>
+ *  <li>Mutable results can be copied for every follower so that callers
+ *      never share the same instance.</li>
+ *  <li>Keys are only kept while in flight, and once the maximum number of keys
+ *      in flight is reached, new keys are computed without coalescing.</li>
+ * </ul>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    /** The default maximum number of keys in flight */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10_000;
+
+    /** The computations in flight by key */
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /** The maximum time in nanoseconds a follower waits for the leader */
+    private final long maxWaitNanos;
+
+    /** The maximum number of keys in flight */
+    private final int maxInFlight;
+
+    /** Copies the result of the leader for each follower */
+    private final UnaryOperator<V> copier;
+
+    /** The number of computations shared with a leader */
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /** The number of followers giving up on a slow leader */
+    private final LongAdder timeoutCount = new LongAdder();
+
+    /**
+     * Creates the single flight group
+     *
+     * @param maxWait the maximum time a follower waits for the leader
+     * @param unit the time unit
+     */
+    public SingleFlight(long maxWait, TimeUnit unit) {
+        this(maxWait, unit, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates the single flight group
+     *
+     * @param maxWait the maximum time a follower waits for the leader
+     * @param unit the time unit
+     * @param maxInFlight the maximum number of keys in flight
+     */
+    public SingleFlight(long maxWait, TimeUnit unit, int maxInFlight) {
+        this(maxWait, unit, maxInFlight, UnaryOperator.identity());
+    }
+
+    /**
+     * Creates the single flight group handing a copy of the
+     * leader's result to each follower.
+     *
+     * @param maxWait the maximum time a follower waits for the leader
+     * @param unit the time unit
+     * @param maxInFlight the maximum number of keys in flight
+     * @param copier copies the result of the leader for each follower
+     */
+    public SingleFlight(long maxWait, TimeUnit unit, int maxInFlight, UnaryOperator<V> copier) {
+        requireNonNull(unit);
+        requireNonNull(copier);
+        if ((maxWait < 0) || (maxInFlight <= 0)) {
+            throw new IllegalArgumentException("Invalid single flight limits");
+        }
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.maxInFlight = maxInFlight;
+        this.copier = copier;
+    }
+
+    /**
+     * Computes the result for the given key, sharing the computation
+     * with any concurrent caller using the same key.
+     *
+     * @param key the key
+     * @param computation the computation
+     * @return the result
+     */
+    public V execute(K key, Supplier<V> computation) {
+        requireNonNull(key);
+        requireNonNull(computation);
+
+        CompletableFuture<V> existing = inFlight.get(key);
+        if (existing == null) {
+            if (inFlight.size() >= maxInFlight) {
+                return computation.get();
+            }
+            CompletableFuture<V> leader = new CompletableFuture<>();
+            existing = inFlight.putIfAbsent(key, leader);
+            if (existing == null) {
+                return lead(key, leader, computation);
+            }
+        }
+
+        return follow(existing, computation);
+    }
+
+    /**
+     * Retrieves the number of keys currently in flight
+     *
+     * @return the number of keys in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Retrieves the number of computations served by a leader
+     *
+     * @return the number of coalesced computations
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Retrieves the number of followers that stopped waiting
+     * for a slow leader.
+     *
+     * @return the number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Performs the computation publishing the outcome to the followers
+     *
+     * @param key the key
+     * @param leader the future of the leader
+     * @param computation the computation
+     * @return the result
+     */
+    private V lead(K key, CompletableFuture<V> leader, Supplier<V> computation) {
+        try {
+            V result = computation.get();
+            leader.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            leader.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * Waits for the leader's outcome or performs the
+     * computation if the leader is too slow.
+     *
+     * @param leader the future of the leader
+     * @param computation the computation
+     * @return the result
+     */
+    private V follow(CompletableFuture<V> leader, Supplier<V> computation) {
+        try {
+            V result = leader.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+            coalescedCount.increment();
+            return (result != null) ? copier.apply(result) : null;
+        } catch (TimeoutException e) {
+            timeoutCount.increment();
+            return computation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return computation.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
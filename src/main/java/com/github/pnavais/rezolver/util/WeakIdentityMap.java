@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A concurrent map holding its keys through weak references and
+ * comparing them by identity (e.g. to keep data per class loader).
+ * The entries are dropped once their keys are garbage collected,
+ * stale entries being purged on every access.
+ * <p>
+ * Values must not reference their keys, otherwise the keys will
+ * never be collected.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class WeakIdentityMap<K, V> {
+
+    /** The entries by key */
+    private final Map<Key<K>, V> entries = new ConcurrentHashMap<>();
+
+    /** The queue of the collected keys */
+    private final ReferenceQueue<K> collected = new ReferenceQueue<>();
+
+    /**
+     * Retrieves the value of the given key
+     *
+     * @param key the key
+     * @return the value or null if not available
+     */
+    public V get(K key) {
+        requireNonNull(key);
+        purge();
+        return entries.get(new StrongKey<>(key));
+    }
+
+    /**
+     * Retrieves the value of the given key computing it
+     * if not available.
+     *
+     * @param key the key
+     * @param mappingFunction the function computing the value
+     * @return the value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        requireNonNull(mappingFunction);
+        V value = get(key);
+        if (value == null) {
+            value = entries.computeIfAbsent(new WeakKey<>(key, collected), k -> mappingFunction.apply(key));
+        }
+        return value;
+    }
+
+    /**
+     * Removes the value of the given key
+     *
+     * @param key the key
+     * @return the removed value or null if not available
+     */
+    public V remove(K key) {
+        requireNonNull(key);
+        purge();
+        return entries.remove(new StrongKey<>(key));
+    }
+
+    /**
+     * Retrieves a view of the values whose keys have not been collected yet
+     *
+     * @return the values
+     */
+    public Collection<V> values() {
+        purge();
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Retrieves the number of entries whose keys have not been collected yet
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        purge();
+        return entries.size();
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        entries.clear();
+        purge();
+    }
+
+    /**
+     * Removes the entries whose keys have been collected
+     */
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Reference<? extends K> reference;
+        while ((reference = collected.poll()) != null) {
+            entries.remove((Key<K>) reference);
+        }
+    }
+
+    /**
+     * A key compared by the identity of its referent
+     *
+     * @param <K> the type of the referent
+     */
+    private interface Key<K> {
+
+        /**
+         * Retrieves the referent
+         *
+         * @return the referent or null if collected
+         */
+        K get();
+
+        /**
+         * Checks whether both keys refer to the same referent
+         *
+         * @param key the key
+         * @param other the other object
+         * @return true if same referent, false otherwise
+         */
+        static boolean sameReferent(Key<?> key, Object other) {
+            if (key == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object referent = key.get();
+            return (referent != null) && (referent == ((Key<?>) other).get());
+        }
+    }
+
+    /**
+     * A key stored in the map referring weakly to its referent
+     *
+     * @param <K> the type of the referent
+     */
+    private static final class WeakKey<K> extends WeakReference<K> implements Key<K> {
+
+        /** The identity hash of the referent */
+        private final int hash;
+
+        /**
+         * Creates the key
+         *
+         * @param referent the referent
+         * @param queue the queue notified once collected
+         */
+        private WeakKey(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return Key.sameReferent(this, other);
+        }
+    }
+
+    /**
+     * A key used for lookups referring strongly to its referent
+     *
+     * @param <K> the type of the referent
+     */
+    private static final class StrongKey<K> implements Key<K> {
+
+        /** The referent */
+        private final K referent;
+
+        /**
+         * Creates the key
+         *
+         * @param referent the referent
+         */
+        private StrongKey(K referent) {
+            this.referent = referent;
+        }
+
+        @Override
+        public K get() {
+            return referent;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return Key.sameReferent(this, other);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.watch;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import lombok.ToString;
+
+/**
+ * A {@link ResourceChangeEvent} describes a change detected
+ * in a watched resource.
+ */
+@ToString
+public class ResourceChangeEvent {
+
+    /**
+     * The kind of change
+     */
+    public enum Kind {
+        /** The resource was not resolved before and it is now */
+        CREATED,
+        /** The resource changed */
+        MODIFIED,
+        /** The resource is not resolved anymore */
+        DELETED
+    }
+
+    /** The kind of change */
+    private final Kind kind;
+
+    /** The watched search path */
+    private final String searchPath;
+
+    /** The resource resolved after the change */
+    private final ResourceInfo resource;
+
+    /**
+     * Creates the change event
+     *
+     * @param kind the kind of change
+     * @param searchPath the watched search path
+     * @param resource the resource resolved after the change
+     */
+    public ResourceChangeEvent(Kind kind, String searchPath, ResourceInfo resource) {
+        this.kind = kind;
+        this.searchPath = searchPath;
+        this.resource = resource;
+    }
+
+    /**
+     * Retrieves the kind of change
+     *
+     * @return the kind of change
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Retrieves the watched search path
+     *
+     * @return the search path
+     */
+    public String getSearchPath() {
+        return searchPath;
+    }
+
+    /**
+     * Retrieves the resource resolved after the change
+     *
+     * @return the resource information
+     */
+    public ResourceInfo getResource() {
+        return resource;
+    }
+}
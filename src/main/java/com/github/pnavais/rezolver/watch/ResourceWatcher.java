@@ -0,0 +1,643 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.watch;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>ResourceWatcher</b>
+ * <p>
+ *  Notifies the changes of resolved resources to the subscribed listeners
+ *  invalidating any cached resolution of the resource. Depending on the
+ *  resolved resource the changes are detected :
+ * </p>
+ * <ul>
+ *  <li>Using a {@link WatchService} on the parent directory for file system resources.</li>
+ *  <li>Polling the timestamp of the jar file for resources inside jar files.</li>
+ *  <li>Polling with conditional requests (ETag / Last-Modified) for remote resources.
+ *      The polling interval is doubled while the resource is unchanged
+ *      up to a maximum.</li>
+ * </ul>
+ */
+@Log
+public class ResourceWatcher implements AutoCloseable {
+
+    /** The default initial polling interval in milliseconds */
+    public static final long DEFAULT_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    /** The default maximum polling interval in milliseconds */
+    public static final long DEFAULT_MAX_POLL_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /** The rezolver used to resolve the resources again after a change */
+    private final Rezolver rezolver;
+
+    /** The directory watchers by file system */
+    private final Map<FileSystem, DirectoryWatcher> directoryWatchers = new ConcurrentHashMap<>();
+
+    /** The scheduler of the polling tasks */
+    private final ScheduledExecutorService scheduler;
+
+    /** The initial polling interval in milliseconds */
+    private volatile long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    /** The maximum polling interval in milliseconds */
+    private volatile long maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+
+    /** Flag set when the watcher is closed */
+    private volatile boolean closed;
+
+    /**
+     * Creates a watcher for resources resolved
+     * with the given rezolver.
+     *
+     * @param rezolver the rezolver
+     */
+    public ResourceWatcher(Rezolver rezolver) {
+        requireNonNull(rezolver);
+        this.rezolver = rezolver;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rezolver-watcher-poll");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Subscribes the listener to the changes of the resource
+     * resolved for the given search path.
+     *
+     * @param searchPath the path to the resource
+     * @param listener the listener
+     * @return the handle of the subscription
+     * @throws IllegalArgumentException if the resource cannot be resolved
+     * @throws UnsupportedOperationException if the resource cannot be watched
+     */
+    public WatchHandle watch(String searchPath, ResourceListener listener) {
+        requireNonNull(searchPath);
+        requireNonNull(listener);
+        if (closed) {
+            throw new IllegalStateException("The watcher is closed");
+        }
+
+        ResourceInfo resource = rezolver.resolve(searchPath);
+        if (!resource.isResolved()) {
+            throw new IllegalArgumentException("Cannot watch unresolved resource [" + searchPath + "]");
+        }
+
+        Subscription subscription = new Subscription(searchPath, listener, resource);
+        try {
+            Path localPath = getLocalPath(resource);
+            Path jarPath = (localPath == null) ? getJarPath(resource.getURL()) : null;
+            if (localPath != null) {
+                getDirectoryWatcher(localPath.getFileSystem()).register(localPath.toAbsolutePath().normalize(), subscription);
+            } else if (jarPath != null) {
+                schedule(subscription, new JarCheck(jarPath));
+            } else if (isRemote(resource.getURL())) {
+                schedule(subscription, new RemoteCheck(subscription));
+            } else {
+                throw new UnsupportedOperationException("Cannot watch resource [" + resource.getURL() + "]");
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new IllegalArgumentException("Cannot watch resource [" + searchPath + "]", e);
+        }
+
+        return subscription;
+    }
+
+    /**
+     * Sets the polling intervals for jar and remote resources. The
+     * interval starts at the initial value and doubles while the
+     * resource remains unchanged up to the maximum.
+     *
+     * @param initial the initial interval
+     * @param max the maximum interval
+     * @param unit the time unit of the intervals
+     */
+    public void setPollInterval(long initial, long max, TimeUnit unit) {
+        if ((initial <= 0) || (max < initial)) {
+            throw new IllegalArgumentException("Invalid polling intervals");
+        }
+        this.pollInterval = unit.toMillis(initial);
+        this.maxPollInterval = unit.toMillis(max);
+    }
+
+    /**
+     * Stops watching all resources
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        directoryWatchers.values().forEach(DirectoryWatcher::close);
+        directoryWatchers.clear();
+    }
+
+    /**
+     * Resolves again the resource of the subscription invalidating
+     * its previous resolution and notifies the listener.
+     *
+     * @param subscription the subscription
+     */
+    private void refresh(Subscription subscription) {
+        if (!subscription.active) {
+            return;
+        }
+
+        ResourceInfo previous = subscription.resource;
+        rezolver.invalidate(previous);
+        ResourceInfo current = rezolver.resolve(subscription.searchPath);
+        subscription.resource = current;
+
+        ResourceChangeEvent.Kind kind = !current.isResolved() ? ResourceChangeEvent.Kind.DELETED
+                : (previous.isResolved() ? ResourceChangeEvent.Kind.MODIFIED : ResourceChangeEvent.Kind.CREATED);
+        try {
+            subscription.listener.onChange(new ResourceChangeEvent(kind, subscription.searchPath, current));
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Error notifying change of resource [" + subscription.searchPath + "]", e);
+        }
+    }
+
+    /**
+     * Schedules the polling of a resource
+     *
+     * @param subscription the subscription
+     * @param check the change check
+     */
+    private void schedule(Subscription subscription, Callable<Boolean> check) {
+        PollingTask task = new PollingTask(subscription, check);
+        subscription.onCancel = task::cancel;
+        task.schedule(pollInterval);
+    }
+
+    /**
+     * Retrieves the directory watcher for the given file system
+     *
+     * @param fileSystem the file system
+     * @return the directory watcher
+     * @throws IOException if the watch service cannot be created
+     */
+    private DirectoryWatcher getDirectoryWatcher(FileSystem fileSystem) throws IOException {
+        DirectoryWatcher watcher = directoryWatchers.get(fileSystem);
+        if (watcher == null) {
+            synchronized (directoryWatchers) {
+                watcher = directoryWatchers.get(fileSystem);
+                if (watcher == null) {
+                    watcher = new DirectoryWatcher(fileSystem.newWatchService());
+                    directoryWatchers.put(fileSystem, watcher);
+                }
+            }
+        }
+        return watcher;
+    }
+
+    /**
+     * Retrieves the file system path of the resource if available
+     *
+     * @param resource the resource
+     * @return the path or null if the resource is not in a file system
+     * @throws URISyntaxException if the URL cannot be converted
+     */
+    private static Path getLocalPath(ResourceInfo resource) throws URISyntaxException {
+        if (resource.getPath() != null) {
+            return resource.getPath();
+        }
+        URL url = resource.getURL();
+        return "file".equals(url.getProtocol()) ? Paths.get(url.toURI()) : null;
+    }
+
+    /**
+     * Retrieves the path of the local jar file containing the resource
+     *
+     * @param url the resource URL
+     * @return the path to the jar file or null if not inside a local jar
+     * @throws IOException if the jar URL is malformed
+     * @throws URISyntaxException if the jar URL cannot be converted
+     */
+    static Path getJarPath(URL url) throws IOException, URISyntaxException {
+        if (!"jar".equals(url.getProtocol())) {
+            return null;
+        }
+        String spec = url.getPath();
+        int separator = spec.indexOf("!/");
+        if (separator < 0) {
+            return null;
+        }
+        URL jarURL = new URL(spec.substring(0, separator));
+        return "file".equals(jarURL.getProtocol()) ? Paths.get(jarURL.toURI()) : null;
+    }
+
+    /**
+     * Checks whether the URL refers to a remote HTTP resource
+     *
+     * @param url the URL
+     * @return true if remote, false otherwise
+     */
+    private static boolean isRemote(URL url) {
+        return "http".equals(url.getProtocol()) || "https".equals(url.getProtocol());
+    }
+
+    /**
+     * A subscription to the changes of a resource
+     */
+    private static final class Subscription implements WatchHandle {
+
+        /** The watched search path */
+        private final String searchPath;
+
+        /** The listener */
+        private final ResourceListener listener;
+
+        /** The last resolution of the resource */
+        private volatile ResourceInfo resource;
+
+        /** The subscription status */
+        private volatile boolean active = true;
+
+        /** The action releasing the watching resources */
+        private volatile Runnable onCancel;
+
+        /**
+         * Creates the subscription
+         *
+         * @param searchPath the search path
+         * @param listener the listener
+         * @param resource the current resolution of the resource
+         */
+        private Subscription(String searchPath, ResourceListener listener, ResourceInfo resource) {
+            this.searchPath = searchPath;
+            this.listener = listener;
+            this.resource = resource;
+        }
+
+        @Override
+        public String getSearchPath() {
+            return searchPath;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void cancel() {
+            active = false;
+            Runnable action = onCancel;
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Watches the directories of file system resources
+     * using the file system's watch service.
+     */
+    private final class DirectoryWatcher implements Runnable {
+
+        /** The watch service */
+        private final WatchService service;
+
+        /** The watched directories by key */
+        private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+        /** The keys by watched directory */
+        private final Map<Path, WatchKey> keys = new HashMap<>();
+
+        /** The subscriptions by watched file */
+        private final Map<Path, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+        /**
+         * Creates the directory watcher and starts
+         * processing the events.
+         *
+         * @param service the watch service
+         */
+        private DirectoryWatcher(WatchService service) {
+            this.service = service;
+            Thread thread = new Thread(this, "rezolver-watcher-fs");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Registers the subscription for the given file
+         *
+         * @param file the absolute normalized path of the file
+         * @param subscription the subscription
+         * @throws IOException if the directory cannot be watched
+         */
+        private synchronized void register(Path file, Subscription subscription) throws IOException {
+            Path dir = file.getParent();
+            if (!keys.containsKey(dir)) {
+                WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                keys.put(dir, key);
+                directories.put(key, dir);
+            }
+            subscriptions.computeIfAbsent(file, f -> new CopyOnWriteArrayList<>()).add(subscription);
+            subscription.onCancel = () -> unregister(file, subscription);
+        }
+
+        /**
+         * Unregisters the subscription for the given file, the directory
+         * is no longer watched if no subscriptions remain.
+         *
+         * @param file the absolute normalized path of the file
+         * @param subscription the subscription
+         */
+        private synchronized void unregister(Path file, Subscription subscription) {
+            List<Subscription> fileSubscriptions = subscriptions.get(file);
+            if (fileSubscriptions != null) {
+                fileSubscriptions.remove(subscription);
+                if (fileSubscriptions.isEmpty()) {
+                    subscriptions.remove(file);
+                }
+            }
+
+            Path dir = file.getParent();
+            boolean inUse = subscriptions.keySet().stream().anyMatch(f -> dir.equals(f.getParent()));
+            if (!inUse) {
+                WatchKey key = keys.remove(dir);
+                if (key != null) {
+                    directories.remove(key);
+                    key.cancel();
+                }
+            }
+        }
+
+        /**
+         * Processes the watch service events
+         */
+        @Override
+        public void run() {
+            while (!closed) {
+                WatchKey key;
+                try {
+                    key = service.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                }
+
+                Path dir = directories.get(key);
+                if (dir != null) {
+                    Set<Subscription> changed = new LinkedHashSet<>();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            subscriptions.forEach((f, s) -> {
+                                if (dir.equals(f.getParent())) {
+                                    changed.addAll(s);
+                                }
+                            });
+                        } else {
+                            List<Subscription> fileSubscriptions = subscriptions.get(dir.resolve((Path) event.context()));
+                            if (fileSubscriptions != null) {
+                                changed.addAll(fileSubscriptions);
+                            }
+                        }
+                    }
+                    changed.forEach(ResourceWatcher.this::refresh);
+                }
+                key.reset();
+            }
+        }
+
+        /**
+         * Closes the watch service
+         */
+        private void close() {
+            try {
+                service.close();
+            } catch (IOException e) {
+                log.throwing(getClass().getSimpleName(), "close", e);
+            }
+        }
+    }
+
+    /**
+     * Periodically checks a resource for changes
+     * doubling the interval while unchanged.
+     */
+    private final class PollingTask implements Runnable {
+
+        /** The subscription */
+        private final Subscription subscription;
+
+        /** The change check */
+        private final Callable<Boolean> check;
+
+        /** The current delay in milliseconds */
+        private long delay;
+
+        /** The scheduled execution */
+        private volatile Future<?> future;
+
+        /**
+         * Creates the polling task
+         *
+         * @param subscription the subscription
+         * @param check the change check
+         */
+        private PollingTask(Subscription subscription, Callable<Boolean> check) {
+            this.subscription = subscription;
+            this.check = check;
+        }
+
+        /**
+         * Schedules the next check
+         *
+         * @param delay the delay in milliseconds
+         */
+        private void schedule(long delay) {
+            this.delay = delay;
+            if (subscription.active && !closed) {
+                try {
+                    future = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    log.throwing(getClass().getSimpleName(), "schedule", e);
+                }
+            }
+        }
+
+        /**
+         * Cancels the next check
+         */
+        private void cancel() {
+            Future<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!subscription.active) {
+                return;
+            }
+
+            boolean changed;
+            try {
+                changed = check.call();
+            } catch (Exception e) {
+                log.throwing(getClass().getSimpleName(), "run", e);
+                changed = false;
+            }
+
+            if (changed) {
+                refresh(subscription);
+                schedule(pollInterval);
+            } else {
+                schedule(Math.min(delay * 2, maxPollInterval));
+            }
+        }
+    }
+
+    /**
+     * Detects changes in the jar file containing a resource
+     * using its timestamp and size.
+     */
+    private static final class JarCheck implements Callable<Boolean> {
+
+        /** The jar file */
+        private final Path jarPath;
+
+        /** The last known modification time */
+        private long lastModified;
+
+        /** The last known size */
+        private long size;
+
+        /**
+         * Creates the check reading the current attributes
+         * of the jar file.
+         *
+         * @param jarPath the jar file
+         * @throws IOException if the attributes cannot be read
+         */
+        private JarCheck(Path jarPath) throws IOException {
+            this.jarPath = jarPath;
+            BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.size = attributes.size();
+        }
+
+        @Override
+        public Boolean call() {
+            long currentModified = -1;
+            long currentSize = -1;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+                currentModified = attributes.lastModifiedTime().toMillis();
+                currentSize = attributes.size();
+            } catch (IOException e) {
+                // The jar file is no longer available
+            }
+            boolean changed = (currentModified != lastModified) || (currentSize != size);
+            lastModified = currentModified;
+            size = currentSize;
+            return changed;
+        }
+    }
+
+    /**
+     * Detects changes in remote resources using
+     * conditional requests.
+     */
+    private static final class RemoteCheck implements Callable<Boolean> {
+
+        /** The subscription holding the last known validators */
+        private final Subscription subscription;
+
+        /**
+         * Creates the check
+         *
+         * @param subscription the subscription
+         */
+        private RemoteCheck(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            ResourceInfo resource = subscription.resource;
+            if (!resource.isResolved()) {
+                return false;
+            }
+
+            URLConnection connection = resource.getURL().openConnection();
+            if (!(connection instanceof HttpURLConnection)) {
+                return false;
+            }
+
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            if (resource.getETag() != null) {
+                httpConnection.setRequestProperty("If-None-Match", resource.getETag());
+            }
+            if (resource.getLastModified() > 0) {
+                httpConnection.setIfModifiedSince(resource.getLastModified());
+            }
+
+            int responseCode = httpConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return false;
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+                return true;
+            }
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Transient failures are handled as unchanged to back off
+                return false;
+            }
+
+            // The validators are read from the headers, the body is only released
+            InputStream body = httpConnection.getInputStream();
+            try {
+                String etag = httpConnection.getHeaderField("ETag");
+                long lastModified = httpConnection.getLastModified();
+                long length = httpConnection.getContentLengthLong();
+                if ((etag != null) || (resource.getETag() != null)) {
+                    return !Objects.equals(etag, resource.getETag());
+                }
+                if ((lastModified > 0) || (resource.getLastModified() > 0)) {
+                    return lastModified != resource.getLastModified();
+                }
+                return (length >= 0) && (length != resource.getSize());
+            } finally {
+                body.close();
+            }
+        }
+    }
+}
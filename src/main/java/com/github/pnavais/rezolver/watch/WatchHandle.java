@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.watch;
+
+/**
+ * A handle to a resource subscription allowing
+ * to stop receiving notifications.
+ */
+public interface WatchHandle extends AutoCloseable {
+
+    /**
+     * Retrieves the watched search path
+     *
+     * @return the search path
+     */
+    String getSearchPath();
+
+    /**
+     * Checks whether the subscription is still active
+     *
+     * @return true if active, false otherwise
+     */
+    boolean isActive();
+
+    /**
+     * Cancels the subscription
+     */
+    void cancel();
+
+    /**
+     * Cancels the subscription
+     */
+    @Override
+    default void close() {
+        cancel();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <b>VirtualThreads</b>
+ * <p>
+ *  Gives access to virtual threads when running on Java 21 or later.
+ *  This is the version loaded from <code>META-INF/versions/21</code>
+ *  of the multi-release JAR.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    /**
+     * Private constructor to avoid instantiation
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks whether virtual threads are available in the running JVM
+     *
+     * @return true if supported, false otherwise
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     * The threads are named using the given prefix followed by a counter.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        requireNonNull(namePrefix);
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.benchmark;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ArchiveLoader;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import com.github.pnavais.rezolver.loader.impl.HttpLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.loader.impl.MountLoader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures the cost (time and allocation) of the core
+ * resolution path for hits and misses.
+ *
+ * Run it with the GC profiler to check the allocation rate :
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=com.github.pnavais.rezolver.benchmark.ResolutionBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolutionBenchmark {
+
+    /** The temporal directory containing the test resources */
+    private Path tmpDir;
+
+    /** The path of an existing resource */
+    private String hitPath;
+
+    /** The path of a missing resource */
+    private String missPath;
+
+    /** The path of a resource outside the directory loader root */
+    private String outsideRootPath;
+
+    /** Rezolver using only the local loader */
+    private Rezolver localRezolver;
+
+    /** Rezolver using a local and a classpath loader with fallback */
+    private Rezolver chainRezolver;
+
+    /** Rezolver using a local and an indexed classpath loader with fallback */
+    private Rezolver filteredChainRezolver;
+
+    /** Rezolver using the same loaders than the default chain */
+    private Rezolver defaultRezolver;
+
+    /** Rezolver using only the remote loader */
+    private Rezolver remoteRezolver;
+
+    /** Rezolver confined to the temporal directory */
+    private Rezolver dirRezolver;
+
+    /** Rezolver routing to one of many mounted directories */
+    private Rezolver mountRezolver;
+
+    /** Rezolver using an indexed classpath loader on a fat jar */
+    private Rezolver fatJarRezolver;
+
+    /** Rezolver using an archive loader rooted in the fat jar */
+    private Rezolver archiveRezolver;
+
+    /** Rezolver resolving aliases before the default chain */
+    private Rezolver aliasRezolver;
+
+    /** Rezolver using a classpath loader scoped to the context class loader */
+    private Rezolver scopedClasspathRezolver;
+
+    /** Decodes the resource reading its content */
+    private final Function<ResourceInfo, String> decoder = resource -> {
+        try {
+            return new String(Files.readAllBytes(resource.getPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        tmpDir = Files.createTempDirectory("rezolver-bench");
+        Path hit = Files.write(tmpDir.resolve("bench_resource.nfo"), "Dummy Data".getBytes());
+        hitPath = hit.toString();
+        missPath = tmpDir.resolve("missing_resource.nfo").toString();
+        outsideRootPath = tmpDir.getParent().resolve("missing_resource.nfo").toString();
+
+        localRezolver = Rezolver.builder().add(new LocalLoader()).build();
+        chainRezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader(), "META-INF"))
+                .build();
+        filteredChainRezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader().enableMembershipFilter(), "META-INF"))
+                .build();
+        defaultRezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader(), "META-INF"))
+                .add(new HttpLoader())
+                .build();
+        remoteRezolver = Rezolver.builder().add(new HttpLoader()).build();
+        dirRezolver = Rezolver.builder().add(DirLoader.of(new LocalLoader(), tmpDir.toString())).build();
+
+        MountLoader mountLoader = new MountLoader();
+        for (int i = 0; i < 100; i++) {
+            mountLoader.mount("/tenants/tenant" + i, DirLoader.of(new LocalLoader(), tmpDir.resolve("tenant" + i).toString()));
+        }
+        mountLoader.mount("/tenants/bench", DirLoader.of(new LocalLoader(), tmpDir.toString()));
+        mountRezolver = Rezolver.builder().add(mountLoader).build();
+
+        // Fat jar with the resource in a stored nested jar behind 20 other libraries
+        Path fatJar = tmpDir.resolve("app.jar");
+        URL[] urls = new URL[21];
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(fatJar)))) {
+            for (int i = 0; i < urls.length; i++) {
+                String name = "BOOT-INF/lib/lib" + i + ".jar";
+                putStored(out, name, (i == urls.length - 1) ? jar("META-INF/bench_resource.nfo") : jar("META-INF/other" + i + ".nfo"));
+                urls[i] = new URL("jar:" + fatJar.toUri() + "!/" + name + "!/");
+            }
+        }
+        ClasspathLoader fatJarLoader = new ClasspathLoader();
+        fatJarLoader.setClassLoader(new URLClassLoader(urls, new ClassLoader(null) { }));
+        fatJarRezolver = Rezolver.builder().add(FallbackLoader.of(fatJarLoader.enableArchiveIndex(), "META-INF")).build();
+        archiveRezolver = Rezolver.builder().add(FallbackLoader.of(new ArchiveLoader(), fatJar + "!/BOOT-INF/lib")).build();
+
+        Path aliases = Files.write(tmpDir.resolve("aliases.properties"), ("bench=" + hit.toUri().getPath()).getBytes());
+        scopedClasspathRezolver = Rezolver.builder()
+                .add(FallbackLoader.of(new ClasspathLoader().enableClassLoaderScopes(1000), "META-INF"))
+                .build();
+        aliasRezolver = Rezolver.builder().withDefaults().withAliases(aliases.toString()).build();
+    }
+
+    /**
+     * Creates a jar in memory with the given entry
+     *
+     * @param name the name of the entry
+     * @return the jar
+     * @throws IOException if the jar cannot be written
+     */
+    private static byte[] jar(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write("Dummy Data".getBytes());
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a stored entry to the zip
+     *
+     * @param out the zip output
+     * @param name the name of the entry
+     * @param content the content
+     * @throws IOException if the entry cannot be written
+     */
+    private static void putStored(ZipOutputStream out, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(tmpDir.resolve("bench_resource.nfo"));
+        Files.deleteIfExists(tmpDir.resolve("app.jar"));
+        Files.deleteIfExists(tmpDir.resolve("aliases.properties"));
+        Files.deleteIfExists(tmpDir);
+    }
+
+    @Benchmark
+    public ResourceInfo localHit() {
+        return localRezolver.resolve(hitPath);
+    }
+
+    @Benchmark
+    public ResourceInfo localHitTraced() {
+        return localRezolver.resolveTraced(hitPath);
+    }
+
+    @Benchmark
+    public URL localHitWithURL() {
+        return localRezolver.resolve(hitPath).getURL();
+    }
+
+    @Benchmark
+    public ResourceInfo localMiss() {
+        return localRezolver.resolve(missPath);
+    }
+
+    @Benchmark
+    public ResourceInfo chainMiss() {
+        return chainRezolver.resolve("missing_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo filteredChainMiss() {
+        return filteredChainRezolver.resolve("missing_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo defaultChainSchemeLessMiss() {
+        return defaultRezolver.resolve("missing_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo remoteSchemeLessMiss() {
+        return remoteRezolver.resolve("missing_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo dirLoaderRelativeMiss() {
+        return dirRezolver.resolve("missing_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo dirLoaderOutsideRootMiss() {
+        return dirRezolver.resolve(outsideRootPath);
+    }
+
+    @Benchmark
+    public ResourceInfo mountedDirHit() {
+        return mountRezolver.resolve("/tenants/bench/bench_resource.nfo");
+    }
+
+    @Benchmark
+    public ResourceInfo classpathHit() {
+        return chainRezolver.resolve("META-INF/MANIFEST.MF");
+    }
+
+    @Benchmark
+    public ResourceInfo scopedClasspathHit() {
+        return scopedClasspathRezolver.resolve("META-INF/MANIFEST.MF");
+    }
+
+    @Benchmark
+    public ResourceInfo archiveHit() {
+        return archiveRezolver.resolve("lib20.jar");
+    }
+
+    @Benchmark
+    public ResourceInfo aliasHit() {
+        return aliasRezolver.resolve("bench");
+    }
+
+    @Benchmark
+    public String decodedHit() {
+        return localRezolver.resolveAs(hitPath, decoder);
+    }
+
+    @Benchmark
+    public String resolveAndDecode() {
+        return decoder.apply(localRezolver.resolve(hitPath));
+    }
+
+    @Benchmark
+    public ResourceInfo fatJarIndexedHit() {
+        return fatJarRezolver.resolve("META-INF/bench_resource.nfo");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ResolutionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
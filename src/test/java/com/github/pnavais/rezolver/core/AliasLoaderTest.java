@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.impl.AliasLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.watch.ResourceChangeEvent;
+import com.github.pnavais.rezolver.watch.WatchHandle;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Alias loader tests
+ */
+public class AliasLoaderTest extends TempDirTestBase {
+
+    /** The number of lookups performed by the counting loader */
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    /** A local loader counting its lookups */
+    private final IResourceLoader countingLoader = location -> {
+        lookups.incrementAndGet();
+        return new LocalLoader().resolve(location);
+    };
+
+    /**
+     * Creates the test with the temporal directory on disk (real paths in the alias manifests)
+     */
+    public AliasLoaderTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tmpDir.resolve("logo.png"), "Logo".getBytes(StandardCharsets.UTF_8));
+        Files.write(tmpDir.resolve("orders-v3.json"), "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void propertiesManifestTest() throws IOException {
+        Path manifest = writeProperties("logo=" + tmpDir.resolve("logo.png").toUri().getPath(),
+                "missing=" + tmpDir.resolve("missing.png").toUri().getPath());
+        AliasLoader aliasLoader = new AliasLoader(countingLoader, manifest);
+        assertEquals(2, aliasLoader.size(), "Aliases not loaded");
+
+        ResourceInfo logo = aliasLoader.resolve("logo");
+        assertTrue(logo.isResolved(), "Alias not resolved");
+        assertEquals("logo", logo.getSearchPath(), "Search path mismatch");
+        assertEquals(tmpDir.resolve("logo.png").toRealPath(), logo.getPath().toRealPath(), "Target mismatch");
+
+        // The resolved target is kept with the alias
+        for (int i = 0; i < 10; i++) {
+            assertTrue(aliasLoader.resolve("logo").isResolved(), "Alias not resolved");
+        }
+        assertEquals(1, lookups.get(), "Target resolved more than once");
+        assertNotSame(logo, aliasLoader.resolve("logo"), "Kept resource exposed");
+
+        aliasLoader.invalidate("logo");
+        assertTrue(aliasLoader.resolve("logo").isResolved(), "Alias not resolved");
+        assertEquals(2, lookups.get(), "Invalidated target not resolved again");
+
+        assertFalse(aliasLoader.resolve("missing").isResolved(), "Missing target resolved");
+        assertFalse(aliasLoader.resolve("unknown").isResolved(), "Unknown alias resolved");
+        assertEquals(3, lookups.get(), "Unknown alias delegated");
+    }
+
+    @Test
+    void binaryManifestReloadTest() throws IOException {
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put("schema.orders.v3", tmpDir.resolve("orders-v3.json").toString());
+        Path manifest = tmpDir.resolve("aliases.bin");
+        AliasLoader.writeManifest(aliases, manifest);
+
+        AliasLoader aliasLoader = AliasLoader.of(countingLoader, manifest.toString());
+        aliasLoader.setRefreshInterval(0, TimeUnit.MILLISECONDS);
+        assertEquals(tmpDir.resolve("orders-v3.json").toString(), aliasLoader.getTarget("schema.orders.v3"), "Target mismatch");
+        assertTrue(aliasLoader.resolve("schema.orders.v3").isResolved(), "Alias not resolved");
+        assertFalse(aliasLoader.resolve("logo").isResolved(), "Unknown alias resolved");
+
+        // Modifications of the manifest are picked up
+        aliases.put("logo", tmpDir.resolve("logo.png").toString());
+        AliasLoader.writeManifest(aliases, manifest);
+        Files.setLastModifiedTime(manifest, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        assertTrue(aliasLoader.resolve("logo").isResolved(), "New alias not resolved");
+        assertEquals(2, aliasLoader.getAliases().size(), "Aliases not reloaded");
+
+        // Broken manifests keep the current aliases
+        Files.write(manifest, new byte[] { 0x52, 0x5A, 0x41, 0x4C, 0, 9 });
+        aliasLoader.reload();
+        assertTrue(aliasLoader.resolve("logo").isResolved(), "Aliases discarded");
+    }
+
+    @Test
+    void builderAliasesTest() throws IOException {
+        Path manifest = writeProperties("logo=" + tmpDir.resolve("logo.png").toUri().getPath());
+        Rezolver rezolver = Rezolver.builder()
+                .add(countingLoader)
+                .withAliases(manifest.toString())
+                .build();
+
+        assertTrue(rezolver.resolve("logo").isResolved(), "Alias not resolved");
+        assertTrue(rezolver.resolve("logo").isResolved(), "Alias not resolved");
+        assertEquals(1, lookups.get(), "Chain walked for a resolved alias");
+
+        assertTrue(rezolver.resolve(tmpDir.resolve("logo.png").toString()).isResolved(), "Location not resolved");
+        assertEquals(2, lookups.get(), "Chain not walked for a location");
+    }
+
+    @Test
+    void deletedTargetTest() throws Exception {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        Path logo = Files.write(Files.createDirectory(fs.getPath("/static")).resolve("logo.png"), "Logo".getBytes(StandardCharsets.UTF_8));
+        Path manifest = Files.write(fs.getPath("/aliases.properties"), "logo=/static/logo.png".getBytes(StandardCharsets.UTF_8));
+        LocalLoader localLoader = new LocalLoader();
+        localLoader.setFileSystem(fs);
+        Rezolver rezolver = Rezolver.builder()
+                .add(new AliasLoader(localLoader, manifest))
+                .add(localLoader)
+                .withCache(10)
+                .build();
+
+        ResourceInfo resolved = rezolver.resolve("logo");
+        assertTrue(resolved.isResolved(), "Alias not resolved");
+
+        BlockingQueue<ResourceChangeEvent> events = new LinkedBlockingQueue<>();
+        try (WatchHandle handle = rezolver.watch("logo", events::add)) {
+            assertTrue(handle.isActive(), "Subscription not active");
+            Files.delete(logo);
+            ResourceChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "Deletion not notified");
+            assertEquals(ResourceChangeEvent.Kind.DELETED, event.getKind(), "Deleted target kept with the alias");
+        }
+        assertFalse(rezolver.resolve("logo").isResolved(), "Deleted target resolved");
+
+        // Invalidating the target location also discards the aliases resolved to it
+        Files.write(logo, "Logo".getBytes(StandardCharsets.UTF_8));
+        assertTrue(rezolver.resolve("logo").isResolved(), "Alias not resolved");
+        ResourceInfo target = localLoader.resolve("/static/logo.png");
+        Files.delete(logo);
+        rezolver.invalidate(target);
+        assertFalse(rezolver.resolve("logo").isResolved(), "Deleted target resolved");
+        rezolver.getWatcher().close();
+    }
+
+    /**
+     * Writes a properties manifest with the given lines
+     *
+     * @param lines the lines
+     * @return the manifest file
+     * @throws IOException if the manifest cannot be written
+     */
+    private Path writeProperties(String... lines) throws IOException {
+        return Files.write(tmpDir.resolve("aliases.properties"), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
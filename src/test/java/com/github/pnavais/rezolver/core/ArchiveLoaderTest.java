@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ArchiveLoader;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Archive loader tests
+ */
+public class ArchiveLoaderTest extends TempDirTestBase {
+
+    /** The archive */
+    private Path archive;
+
+    /** The archive loader */
+    private ArchiveLoader loader;
+
+    /**
+     * Creates the test with the temporal directory on disk (mapped archives)
+     */
+    public ArchiveLoaderTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(nested)) {
+            put(out, "nested.txt", "Nested", false);
+        }
+
+        archive = tmpDir.resolve("assets.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            put(out, "images/logo.png", "Logo", true);
+            put(out, "docs/readme.txt", "Read me", false);
+            putBytes(out, "lib/nested.jar", nested.toByteArray(), true);
+        }
+        loader = new ArchiveLoader();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        loader.close();
+    }
+
+    @Test
+    void resolveEntriesTest() throws IOException {
+        Rezolver rezolver = Rezolver.builder().add(loader).build();
+
+        ResourceInfo logo = rezolver.resolve("zip:" + archive + "!/images/logo.png");
+        assertTrue(logo.isResolved(), "Error resolving stored entry");
+        assertEquals("Logo", read(logo.getURL()), "Content mismatch");
+        assertEquals(4, logo.getSize(), "Size mismatch");
+
+        ResourceInfo readme = rezolver.resolve("jar:" + archive.toUri() + "!/docs/readme.txt");
+        assertTrue(readme.isResolved(), "Error resolving deflated entry");
+        assertEquals("Read me", read(readme.getURL()), "Content mismatch");
+
+        ResourceInfo nested = rezolver.resolve(archive + "!/lib/nested.jar!/nested.txt");
+        assertTrue(nested.isResolved(), "Error resolving nested entry");
+        assertEquals("Nested", read(nested.getURL()), "Content mismatch");
+
+        assertFalse(rezolver.resolve(archive + "!/images/missing.png").isResolved(), "Missing entry resolved");
+        assertFalse(rezolver.resolve(tmpDir.resolve("missing.zip") + "!/images/logo.png").isResolved(), "Missing archive resolved");
+        assertFalse(rezolver.resolve("http://localhost/assets.zip!/images/logo.png").isResolved(), "Remote archive resolved");
+
+        // The archive is opened only once
+        assertEquals(2, loader.getOpenArchiveCount(), "Archive reopened");
+        loader.closeArchive(archive.toString());
+        assertEquals(0, loader.getOpenArchiveCount(), "Archive not closed");
+    }
+
+    @Test
+    void zeroCopyContentTest() throws IOException {
+        ByteBuffer stored = loader.getContent(archive + "!/images/logo.png");
+        assertTrue(stored.isDirect() && stored.isReadOnly(), "Stored entry copied");
+        byte[] bytes = new byte[stored.remaining()];
+        stored.get(bytes);
+        assertEquals("Logo", new String(bytes, StandardCharsets.UTF_8), "Content mismatch");
+
+        ByteBuffer deflated = loader.getContent(archive + "!/docs/readme.txt");
+        assertEquals(7, deflated.remaining(), "Size mismatch");
+        assertNull(loader.getContent(archive + "!/missing.txt"), "Missing entry found");
+    }
+
+    @Test
+    void relativeLocationsTest() {
+        Rezolver fallback = Rezolver.builder().add(FallbackLoader.of(new ArchiveLoader(), archive + "!/images")).build();
+        assertTrue(fallback.resolve("logo.png").isResolved(), "Error resolving relative entry");
+
+        Rezolver confined = Rezolver.builder().add(DirLoader.of(loader, archive + "!/images")).build();
+        assertTrue(confined.resolve("logo.png").isResolved(), "Error resolving entry in root");
+        assertFalse(confined.resolve("../docs/readme.txt").isResolved(), "Entry outside root resolved");
+    }
+
+    /**
+     * Writes a text entry to the zip
+     *
+     * @param out the zip output
+     * @param name the name of the entry
+     * @param content the content
+     * @param stored whether the entry is stored
+     * @throws IOException if the entry cannot be written
+     */
+    private static void put(ZipOutputStream out, String name, String content, boolean stored) throws IOException {
+        putBytes(out, name, content.getBytes(StandardCharsets.UTF_8), stored);
+    }
+
+    /**
+     * Writes an entry to the zip
+     *
+     * @param out the zip output
+     * @param name the name of the entry
+     * @param content the content
+     * @param stored whether the entry is stored
+     * @throws IOException if the entry cannot be written
+     */
+    private static void putBytes(ZipOutputStream out, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /**
+     * Reads the content of the URL
+     *
+     * @param url the URL
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.util.WeakIdentityMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class loader scopes tests
+ */
+public class ClassLoaderScopeTest extends TempDirTestBase {
+
+    /**
+     * Creates the test with the temporal directory on disk (class loaders)
+     */
+    public ClassLoaderScopeTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (String app : new String[] { "app1", "app2" }) {
+            Files.createDirectories(tmpDir.resolve(app).resolve("META-INF"));
+            Files.write(tmpDir.resolve(app).resolve("META-INF").resolve("app.nfo"), app.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void scopedResolutionTest() throws Exception {
+        ClasspathLoader classpathLoader = new ClasspathLoader().enableClassLoaderScopes(100);
+        ClassLoader app1 = newAppClassLoader("app1");
+        ClassLoader app2 = newAppClassLoader("app2");
+
+        ResourceInfo app1Info = withContext(app1, () -> classpathLoader.resolve("META-INF/app.nfo"));
+        ResourceInfo app2Info = withContext(app2, () -> classpathLoader.resolve("META-INF/app.nfo"));
+        assertTrue(app1Info.isResolved(), "Error resolving resource");
+        assertTrue(app2Info.isResolved(), "Error resolving resource");
+        assertTrue(app1Info.getURL().getPath().contains("app1"), "Results mixed between class loaders");
+        assertTrue(app2Info.getURL().getPath().contains("app2"), "Results mixed between class loaders");
+        assertEquals(2, classpathLoader.getScopeCount(), "Scopes mismatch");
+
+        // Further lookups are served by the class loader cache
+        ResourceInfo cached = withContext(app1, () -> classpathLoader.resolve("classpath:META-INF/app.nfo"));
+        assertEquals(app1Info.getURL(), cached.getURL(), "Cached resource mismatch");
+        assertEquals("classpath:META-INF/app.nfo", cached.getSearchPath(), "Search path mismatch");
+        assertEquals(1, classpathLoader.getScopeCache(app1).getHitCount(), "Lookup not cached");
+        assertFalse(withContext(app1, () -> classpathLoader.resolve("META-INF/missing.nfo")).isResolved(), "Missing resource resolved");
+
+        // Neither the first resolution nor the hits expose the cached entry
+        app1Info.setSize(-1);
+        cached.setSize(-1);
+        assertEquals(4, withContext(app1, () -> classpathLoader.resolve("META-INF/app.nfo")).getSize(), "Cached entry modified");
+
+        // Invalidations reach the cache of the scope resolving the resource
+        Rezolver.builder().add(classpathLoader).build().invalidate(app1Info);
+        assertEquals(0, classpathLoader.getScopeCache(app1).size(), "Scope cache not invalidated");
+        assertEquals(1, classpathLoader.getScopeCache(app2).size(), "Other scopes invalidated");
+    }
+
+    @Test
+    void indexedScopeTest() throws Exception {
+        ClasspathLoader classpathLoader = new ClasspathLoader().enableArchiveIndex().enableClassLoaderScopes(100);
+        ClassLoader app1 = newAppClassLoader("app1");
+        ResourceInfo info = withContext(app1, () -> classpathLoader.resolve("META-INF/app.nfo"));
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertTrue(info.getURL().getPath().contains("app1"), "Wrong class loader used");
+        assertEquals(4, info.getSize(), "Size not read from the index");
+    }
+
+    @Test
+    void collectedClassLoaderTest() throws Exception {
+        ClasspathLoader classpathLoader = new ClasspathLoader().enableClassLoaderScopes(100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(withContext(newAppClassLoader("app1"), () -> classpathLoader.resolve("META-INF/app.nfo")).isResolved(),
+                    "Error resolving resource");
+        }
+        assertTrue(awaitCollection(classpathLoader::getScopeCount), "Class loaders leaked");
+
+        WeakIdentityMap<Object, String> map = new WeakIdentityMap<>();
+        String key = new String("key");
+        map.computeIfAbsent(key, k -> "value");
+        assertEquals("value", map.get(key), "Value mismatch");
+        assertNull(map.get(new String("key")), "Keys not compared by identity");
+        assertEquals("value", map.remove(key), "Value not removed");
+        assertEquals(0, map.size(), "Map not empty");
+    }
+
+    /**
+     * Creates the class loader of an application
+     *
+     * @param app the application directory
+     * @return the class loader
+     * @throws IOException if the directory URL cannot be built
+     */
+    private ClassLoader newAppClassLoader(String app) throws IOException {
+        return new URLClassLoader(new URL[] { tmpDir.resolve(app).toUri().toURL() }, null);
+    }
+
+    /**
+     * Runs the given action with the context class loader
+     *
+     * @param loader the context class loader
+     * @param action the action
+     * @param <T> the result type
+     * @return the action result
+     * @throws Exception if the action fails
+     */
+    private static <T> T withContext(ClassLoader loader, Callable<T> action) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            return action.call();
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * Requests garbage collections until no scope is left
+     *
+     * @param scopeCount the number of scopes
+     * @return true if every scope was dropped, false otherwise
+     * @throws InterruptedException if interrupted
+     */
+    private static boolean awaitCollection(Callable<Integer> scopeCount) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            if (scopeCount.call() == 0) {
+                return true;
+            }
+            System.gc();
+            Thread.sleep(20);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.CoAccessPrefetcher;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Co-access prefetch tests
+ */
+public class CoAccessPrefetcherTest extends TempDirTestBase {
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (String name : Arrays.asList("page.html", "style.css", "messages.properties", "other.nfo")) {
+            Files.write(tmpDir.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void prefetchFollowersTest() throws Exception {
+        Rezolver rezolver = Rezolver.builder()
+                .add(DirLoader.of(newLocalLoader(), tmpDir.toString()))
+                .withCache(100)
+                .withCoAccessPrefetch(10, TimeUnit.SECONDS)
+                .build();
+        CoAccessPrefetcher prefetcher = rezolver.getCoAccessPrefetcher();
+
+        for (int i = 0; i < 3; i++) {
+            rezolver.resolve("page.html");
+            rezolver.resolve("style.css");
+            rezolver.resolve("messages.properties");
+        }
+        assertTrue(prefetcher.getFollowers("page.html").containsAll(Arrays.asList("style.css", "messages.properties")),
+                "Followers not learnt");
+        assertFalse(prefetcher.getFollowers("page.html").contains("other.nfo"), "Unrelated follower learnt");
+
+        rezolver.getCache().clear();
+        assertTrue(rezolver.resolve("page.html").isResolved(), "Error resolving resource");
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((!rezolver.getCache().contains("style.css") || !rezolver.getCache().contains("messages.properties"))
+                && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertTrue(rezolver.getCache().contains("style.css"), "Follower not prefetched");
+        assertTrue(rezolver.getCache().contains("messages.properties"), "Follower not prefetched");
+        assertEquals(2, prefetcher.getIssuedCount(), "Prefetches mismatch");
+
+        rezolver.resolve("style.css");
+        assertEquals(1, prefetcher.getHitCount(), "Prefetch hit not counted");
+        assertEquals(0.5, prefetcher.getHitRate(), 0.001, "Hit rate mismatch");
+    }
+
+    @Test
+    void boundedMemoryTest() {
+        CoAccessPrefetcher prefetcher = new CoAccessPrefetcher(p -> ResourceInfo.unresolved(p), p -> true, 10, TimeUnit.SECONDS);
+        prefetcher.setLimits(4, 2);
+        for (int i = 0; i < 100; i++) {
+            prefetcher.accessed("leader" + i, resolved("leader" + i));
+            prefetcher.accessed("follower" + i, resolved("follower" + i));
+        }
+        assertTrue(prefetcher.size() <= 4, "Leaders not bounded : " + prefetcher.size());
+        assertThrows(IllegalArgumentException.class, () -> prefetcher.setLimits(0, 1));
+    }
+
+    @Test
+    void poorHitRateTest() {
+        CoAccessPrefetcher prefetcher = new CoAccessPrefetcher(CoAccessPrefetcherTest::resolved, p -> false, 10, TimeUnit.SECONDS);
+        prefetcher.setThresholds(1, 0);
+        prefetcher.setMinHitRate(0.5);
+        for (int i = 0; (i < 1000) && prefetcher.isEnabled(); i++) {
+            prefetcher.accessed("leader", resolved("leader"));
+            prefetcher.accessed("follower" + i, resolved("follower" + i));
+        }
+        assertFalse(prefetcher.isEnabled(), "Prefetch not disabled");
+        assertTrue(prefetcher.getHitRate() < 0.5, "Hit rate mismatch");
+
+        prefetcher.setEnabled(true);
+        assertTrue(prefetcher.isEnabled(), "Prefetch not enabled");
+        assertEquals(0, prefetcher.getIssuedCount(), "Statistics not reset");
+    }
+
+    @Test
+    void unrequestedPrefetchesExpireTest() throws InterruptedException {
+        CoAccessPrefetcher prefetcher = new CoAccessPrefetcher(CoAccessPrefetcherTest::resolved, p -> false, 50, TimeUnit.MILLISECONDS);
+        prefetcher.setThresholds(1, 0);
+        prefetcher.setLimits(2, 8);
+        for (int i = 0; i < 4; i++) {
+            prefetcher.accessed("leader", resolved("leader"));
+            prefetcher.accessed("follower" + i, resolved("follower" + i));
+            Thread.sleep(60);
+        }
+
+        // Followers are never requested, expired prefetches must not block new ones
+        for (int i = 0; i < 5; i++) {
+            long issued = prefetcher.getIssuedCount();
+            prefetcher.accessed("leader", resolved("leader"));
+            assertTrue(prefetcher.getIssuedCount() > issued, "Prefetch stopped after " + issued + " prefetches");
+            Thread.sleep(60);
+        }
+        assertEquals(0, prefetcher.getHitCount(), "Expired prefetches counted as hits");
+    }
+
+    /**
+     * Creates a resolved resource for the given path
+     *
+     * @param path the path
+     * @return the resolved resource
+     */
+    private static ResourceInfo resolved(String path) {
+        return ResourceInfo.resolved(path, Paths.get(path), "TestLoader");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.DecodedCache;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Decoded resources cache tests
+ */
+public class DecodedCacheTest extends TempDirTestBase {
+
+    /** The number of decodes performed */
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    /** Decodes the resource as a string counting the decodes */
+    private final Function<ResourceInfo, String> decoder = resource -> {
+        decodes.incrementAndGet();
+        try {
+            return new String(Files.readAllBytes(resource.getPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    };
+
+    @Test
+    void decodeOnceUntilModifiedTest() throws IOException {
+        Path file = Files.write(tmpDir.resolve("app.conf"), "v1".getBytes(StandardCharsets.UTF_8));
+        Rezolver rezolver = Rezolver.builder().add(newLocalLoader()).withCache(10).build();
+
+        assertEquals("v1", rezolver.resolveAs(file.toString(), decoder), "Wrong decoded object");
+        assertEquals("v1", rezolver.resolveAs(file.toString(), decoder), "Wrong decoded object");
+        assertEquals(1, decodes.get(), "Resource decoded again");
+        assertEquals(1, rezolver.getDecodedCache().getHitCount(), "Hit not counted");
+
+        // Same size, only the modification time changes (the resolution stays cached)
+        Files.write(file, "v2".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertEquals("v2", rezolver.resolveAs(file.toString(), decoder), "Change not detected");
+        assertEquals(2, decodes.get(), "Resource not decoded again");
+        assertEquals(1, rezolver.getDecodedCache().size(), "Stale entry kept");
+
+        assertNull(rezolver.resolveAs(tmpDir.resolve("missing.conf").toString(), decoder), "Missing resource decoded");
+
+        rezolver.invalidate(rezolver.resolve(file.toString()));
+        assertEquals(0, rezolver.getDecodedCache().size(), "Entry not invalidated");
+    }
+
+    @Test
+    void concurrentDecodesCoalescedTest() throws Exception {
+        Path file = Files.write(tmpDir.resolve("schema.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        Rezolver rezolver = Rezolver.builder().add(newLocalLoader()).build();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<ResourceInfo, String> slowDecoder = resource -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return decoder.apply(resource);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> rezolver.resolveAs(file.toString(), slowDecoder)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("{}", result.get(5, TimeUnit.SECONDS), "Wrong decoded object");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, decodes.get(), "Concurrent decodes not coalesced");
+
+        // Failed decodes are not cached
+        Function<ResourceInfo, String> failing = resource -> {
+            throw new IllegalStateException("Corrupt resource");
+        };
+        assertThrows(IllegalStateException.class, () -> rezolver.resolveAs(file.toString(), failing));
+        assertEquals(1, rezolver.getDecodedCache().size(), "Failure cached");
+    }
+
+    @Test
+    void capacityTest() throws IOException {
+        Function<ResourceInfo, Long> size = ResourceInfo::getSize;
+        DecodedCache cache = new DecodedCache(3, 100);
+        LocalLoader loader = newLocalLoader();
+        List<ResourceInfo> resources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Path file = Files.write(tmpDir.resolve("res" + i), new byte[10]);
+            resources.add(loader.resolve(file.toString()));
+        }
+        resources.forEach(resource -> cache.get(resource, size));
+        assertEquals(3, cache.size(), "Entries not evicted");
+        assertEquals(30, cache.getWeight(), "Wrong weight");
+
+        // Heavier than the whole cache, decoded but never stored
+        ResourceInfo large = loader.resolve(Files.write(tmpDir.resolve("large"), new byte[200]).toString());
+        assertEquals(Long.valueOf(200L), cache.get(large, size), "Wrong decoded object");
+        assertEquals(3, cache.size(), "Oversized entry stored");
+
+        DecodedCache weighted = new DecodedCache(10, 25);
+        resources.forEach(resource -> weighted.get(resource, size));
+        assertEquals(2, weighted.size(), "Entries not evicted by weight");
+        assertTrue(weighted.getWeight() <= 25, "Weight exceeded");
+
+        weighted.clear();
+        assertEquals(0, weighted.getWeight(), "Weight not cleared");
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.DiskCache;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.impl.HttpLoader;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Disk cache of remote resources tests
+ */
+public class DiskCacheTest extends TempDirTestBase {
+
+    /** The resource's content */
+    private static final String CONTENT = "Dummy Data";
+
+    /** The resource's ETag */
+    private static final String ETAG = "\"v1\"";
+
+    /** The local test server */
+    private HttpServer server;
+
+    /** The number of full downloads */
+    private AtomicInteger downloads;
+
+    /** Whether the resource exists in the server */
+    private volatile boolean available;
+
+    /**
+     * Creates the test with the temporal directory on disk (cached files served as file URLs)
+     */
+    public DiskCacheTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        downloads = new AtomicInteger();
+        available = true;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/resource.nfo", exchange -> {
+            if (!available) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                downloads.incrementAndGet();
+                byte[] body = CONTENT.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop(0);
+    }
+
+    @Test
+    void cachedRemoteResourceTest() throws Exception {
+        String location = "http://127.0.0.1:" + server.getAddress().getPort() + "/resource.nfo";
+
+        HttpLoader loader = new HttpLoader();
+        loader.setDiskCache(new DiskCache(tmpDir));
+        ResourceInfo info = loader.resolve(location);
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals("file", info.getURL().getProtocol(), "Resource must be served from the cache");
+        assertEquals(CONTENT, new String(Files.readAllBytes(Paths.get(info.getURL().toURI())), StandardCharsets.UTF_8), "Content mismatch");
+        assertEquals(CONTENT.length(), info.getSize(), "Size mismatch");
+        assertEquals(ETAG, info.getETag(), "ETag mismatch");
+        assertEquals("text/plain", info.getContentType(), "Content type mismatch");
+        assertEquals(1, downloads.get(), "Resource must be downloaded");
+
+        // A new loader sharing the cache directory only revalidates the resource
+        HttpLoader restartedLoader = new HttpLoader();
+        restartedLoader.setDiskCache(new DiskCache(tmpDir));
+        ResourceInfo revalidated = restartedLoader.resolve(location);
+        assertTrue(revalidated.isResolved(), "Error resolving resource");
+        assertEquals(info.getURL(), revalidated.getURL(), "Cached copy must be reused");
+        assertEquals(1, downloads.get(), "Resource must not be downloaded again");
+
+        // The cached copy is served while the host is down
+        server.stop(0);
+        ResourceInfo stale = restartedLoader.resolve(location);
+        assertTrue(stale.isResolved(), "Cached copy must be served");
+        assertEquals(info.getURL(), stale.getURL(), "Cached copy mismatch");
+    }
+
+    @Test
+    void removedRemoteResourceTest() throws IOException {
+        String location = "http://127.0.0.1:" + server.getAddress().getPort() + "/resource.nfo";
+        DiskCache diskCache = new DiskCache(tmpDir);
+        HttpLoader loader = new HttpLoader();
+        loader.setDiskCache(diskCache);
+
+        assertTrue(loader.resolve(location).isResolved(), "Error resolving resource");
+        assertNotNull(diskCache.get(location), "Resource must be cached");
+
+        available = false;
+        assertFalse(loader.resolve(location).isResolved(), "Resource must not be resolved");
+        assertNull(diskCache.get(location), "Entry must be removed");
+    }
+
+    @Test
+    void sizeCapEvictionTest() throws IOException, InterruptedException {
+        DiskCache diskCache = new DiskCache(tmpDir, 15);
+        DiskCache.Entry first = diskCache.store("http://host/first", content("0123456789"), null, -1, null);
+        DiskCache.Entry shared = diskCache.store("http://host/shared", content("0123456789"), null, -1, null);
+        assertEquals(first.getHash(), shared.getHash(), "Identical contents must be stored once");
+        assertEquals(10, diskCache.getSize(), "Size mismatch");
+
+        // Ensure distinct access times
+        Thread.sleep(50);
+
+        diskCache.store("http://host/second", content("abcdefghij"), "\"x\"", 1000, "text/plain");
+        assertTrue(diskCache.getSize() <= diskCache.getMaxSize(), "Size cap exceeded");
+        assertNull(diskCache.get("http://host/first"), "Least recently used entry must be evicted");
+        assertNull(diskCache.get("http://host/shared"), "Least recently used entry must be evicted");
+
+        DiskCache.Entry second = diskCache.get("http://host/second");
+        assertNotNull(second, "Recent entry must be kept");
+        assertEquals("\"x\"", second.getETag(), "ETag mismatch");
+        assertEquals(1000, second.getLastModified(), "Last modified mismatch");
+        assertEquals("text/plain", second.getContentType(), "Content type mismatch");
+    }
+
+    /**
+     * Creates a stream with the given content
+     *
+     * @param content the content
+     * @return the stream
+     */
+    private static ByteArrayInputStream content(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionTrace;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.util.BloomFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Membership filter tests
+ */
+public class MembershipFilterTest extends TempDirTestBase {
+
+    /**
+     * Creates the test with the temporal directory on disk (class loaders and indexed directories)
+     */
+    public MembershipFilterTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tmpDir.resolve("present.nfo"), "Present".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void bloomFilterTest() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("resource" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("resource" + i), "False negative");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("missing" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "Too many false positives : " + falsePositives);
+        assertEquals(1000, filter.getInsertions(), "Insertions mismatch");
+        assertTrue(filter.getFalsePositiveRate() < 0.02, "False positive rate mismatch");
+
+        BloomFilter capped = new BloomFilter(1000, 0.01, 64);
+        assertEquals(64, capped.getMemoryUsage(), "Memory limit not honored");
+        for (int i = 0; i < 1000; i++) {
+            capped.put("resource" + i);
+        }
+        assertTrue(capped.mightContain("resource500"), "False negative");
+        assertTrue(capped.getFalsePositiveRate() > filter.getFalsePositiveRate(), "False positive rate not reported");
+
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1.0));
+    }
+
+    @Test
+    void dirLoaderFilterTest() throws Exception {
+        DirLoader dirLoader = DirLoader.of(new LocalLoader(), tmpDir.toString()).enableMembershipFilter();
+        Rezolver rezolver = Rezolver.builder().add(dirLoader).build();
+
+        assertTrue(rezolver.resolve("present.nfo").isResolved(), "Error resolving resource");
+        assertTrue(rezolver.resolve(tmpDir.resolve("present.nfo").toString()).isResolved(), "Error resolving resource");
+        assertFalse(dirLoader.mightContain(tmpDir.getParent().resolve("present.nfo").toString()), "Outside root not ruled out");
+
+        ResourceInfo info = rezolver.resolveTraced("missing.nfo");
+        assertFalse(info.isResolved(), "Missing resource resolved");
+        assertEquals(ResolutionTrace.Outcome.SKIPPED, info.getTrace().getOutcome(0), "Loader not skipped");
+
+        // New files are found once the directory is scanned again
+        dirLoader.getMembershipFilter().setRefreshInterval(0, TimeUnit.MILLISECONDS);
+        Files.write(tmpDir.resolve("created.nfo"), "Created".getBytes(StandardCharsets.UTF_8));
+        assertTrue(rezolver.resolve("created.nfo").isResolved(), "New resource not resolved");
+        assertNotNull(dirLoader.getMembershipFilter().getBloomFilter(), "Filter not built");
+    }
+
+    @Test
+    void classpathLoaderFilterTest() {
+        assumeTrue(System.getProperty("sun.boot.class.path") != null, "Class path cannot be indexed");
+        ClasspathLoader classpathLoader = new ClasspathLoader().enableMembershipFilter();
+        BloomFilter filter = classpathLoader.getMembershipFilter().getBloomFilter();
+        assumeTrue(filter != null, "Class loaders cannot be indexed");
+        assertTrue(filter.getInsertions() > 0, "Empty class path filter");
+        assertTrue(filter.getMemoryUsage() > 0, "Memory usage not reported");
+
+        assertTrue(classpathLoader.mightContain("META-INF/cl_resource.nfo"), "False negative");
+        assertTrue(classpathLoader.mightContain("classpath:META-INF/cl_resource.nfo"), "False negative");
+        assertTrue(classpathLoader.mightContain("java/lang/Object.class"), "False negative");
+        assertTrue(classpathLoader.mightContain("http://localhost/missing.nfo"), "Foreign scheme ruled out");
+        assertFalse(classpathLoader.mightContain("missing/resource-a.nfo")
+                && classpathLoader.mightContain("missing/resource-b.nfo")
+                && classpathLoader.mightContain("missing/resource-c.nfo"), "Missing resources not ruled out");
+
+        Rezolver rezolver = Rezolver.builder().add(FallbackLoader.of(classpathLoader, "META-INF")).build();
+        assertTrue(rezolver.resolve("cl_resource.nfo").isResolved(), "Error resolving resource");
+        assertTrue(rezolver.resolve("classpath:META-INF/cl_resource.nfo").isResolved(), "Error resolving resource");
+        assertFalse(rezolver.resolve("missing.nfo").isResolved(), "Missing resource resolved");
+    }
+
+    @Test
+    void classpathDirectoryFilterTest() throws Exception {
+        assumeTrue(System.getProperty("sun.boot.class.path") != null, "Class path cannot be indexed");
+        Path classes = Files.createDirectories(tmpDir.resolve("classes").resolve("sub"));
+        Files.write(classes.resolve("present.nfo"), "Present".getBytes(StandardCharsets.UTF_8));
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        Files.setLastModifiedTime(classes, past);
+        Files.setLastModifiedTime(classes.getParent(), past);
+
+        ClasspathLoader classpathLoader = new ClasspathLoader();
+        classpathLoader.setClassLoader(new URLClassLoader(new URL[] { classes.getParent().toUri().toURL() }, null));
+        classpathLoader.enableMembershipFilter();
+        classpathLoader.getMembershipFilter().setRefreshInterval(0, TimeUnit.MILLISECONDS);
+        assertTrue(classpathLoader.mightContain("sub/present.nfo"), "False negative");
+        assertFalse(classpathLoader.mightContain("sub/created.nfo"), "Missing resource not ruled out");
+
+        // Changes in subdirectories are found once scanned again
+        Files.write(classes.resolve("created.nfo"), "Created".getBytes(StandardCharsets.UTF_8));
+        assertTrue(classpathLoader.mightContain("sub/created.nfo"), "New resource in a subdirectory ruled out");
+    }
+}
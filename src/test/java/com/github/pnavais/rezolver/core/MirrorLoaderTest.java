@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.MirrorLoader;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mirror loader tests
+ */
+public class MirrorLoaderTest {
+
+    /** A mirror answering slowly */
+    private HttpServer slowMirror;
+
+    /** A mirror answering fast */
+    private HttpServer fastMirror;
+
+    /** A mirror missing the resources */
+    private HttpServer emptyMirror;
+
+    /** Released to unblock the slow mirror */
+    private CountDownLatch release;
+
+    @BeforeEach
+    void startMirrors() throws IOException {
+        release = new CountDownLatch(1);
+        slowMirror = startMirror(true, 2000);
+        fastMirror = startMirror(true, 0);
+        emptyMirror = startMirror(false, 0);
+    }
+
+    @AfterEach
+    void stopMirrors() {
+        release.countDown();
+        slowMirror.stop(0);
+        fastMirror.stop(0);
+        emptyMirror.stop(0);
+    }
+
+    @Test
+    void hedgedRequestTest() {
+        MirrorLoader loader = MirrorLoader.of(getBaseUrl(slowMirror), getBaseUrl(fastMirror));
+        loader.setDefaultHedgeDelay(50, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        ResourceInfo info = Rezolver.builder().add(loader).build().resolve("data/resource.nfo");
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(getBaseUrl(fastMirror) + "/data/resource.nfo", info.getURL().toExternalForm(), "URL mismatch");
+        assertEquals("MirrorLoader", info.getSourceEntity(), "Source mismatch");
+        assertEquals("data/resource.nfo", info.getSearchPath(), "Search path mismatch");
+        assertTrue(elapsed < 1500, "Request must be hedged to the fast mirror");
+    }
+
+    @Test
+    void missingResourceMovesToNextMirrorTest() {
+        MirrorLoader loader = MirrorLoader.of(getBaseUrl(emptyMirror), getBaseUrl(fastMirror));
+        loader.setDefaultHedgeDelay(1, TimeUnit.HOURS);
+
+        ResourceInfo info = loader.resolve("/data/resource.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(getBaseUrl(fastMirror) + "/data/resource.nfo", info.getURL().toExternalForm(), "URL mismatch");
+
+        MirrorLoader emptyLoader = MirrorLoader.of(getBaseUrl(emptyMirror));
+        assertFalse(emptyLoader.resolve("data/resource.nfo").isResolved(), "Resource must not be resolved");
+    }
+
+    @Test
+    void fastestMirrorPreferredTest() throws InterruptedException {
+        MirrorLoader loader = MirrorLoader.of(getBaseUrl(slowMirror), getBaseUrl(fastMirror));
+        loader.setDefaultHedgeDelay(20, TimeUnit.MILLISECONDS);
+        release.countDown();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(loader.resolve("data/resource.nfo").isResolved(), "Error resolving resource");
+        }
+
+        // Wait for the hedged requests to the slow mirror to complete
+        for (int i = 0; (i < 100) && (loader.getLatencyStats(getBaseUrl(slowMirror)).getSampleCount() == 0); i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(getBaseUrl(fastMirror) + "/", loader.getPreferredMirrors().get(0), "Fast mirror must be preferred");
+        assertTrue(loader.getLatencyStats(getBaseUrl(fastMirror)).getSampleCount() > 0, "Latency must be tracked");
+    }
+
+    /**
+     * Starts a mirror serving the test resource
+     *
+     * @param hosting whether the mirror hosts the resource
+     * @param delay the delay in milliseconds before answering the first request
+     * @return the mirror server
+     * @throws IOException if the server cannot be started
+     */
+    private HttpServer startMirror(boolean hosting, long delay) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/data/resource.nfo", exchange -> {
+            try {
+                if (delay > 0) {
+                    release.await(delay, TimeUnit.MILLISECONDS);
+                    Thread.sleep(delay / 100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (hosting) {
+                byte[] body = "Dummy Data".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Retrieves the base URL of the mirror
+     *
+     * @param server the mirror server
+     * @return the base URL
+     */
+    private static String getBaseUrl(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
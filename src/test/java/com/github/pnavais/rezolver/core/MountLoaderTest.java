@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.loader.impl.MountLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mount loader tests
+ */
+public class MountLoaderTest extends TempDirTestBase {
+
+    /** The mount loader */
+    private MountLoader mountLoader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (String tenant : new String[] { "acme", "beta", "acme-special" }) {
+            Path dir = Files.createDirectories(tmpDir.resolve(tenant));
+            Files.write(dir.resolve("app.properties"), ("tenant=" + tenant).getBytes(StandardCharsets.UTF_8));
+        }
+
+        mountLoader = new MountLoader()
+                .mount("/tenants/acme", DirLoader.of(newLocalLoader(), tmpDir.resolve("acme").toString()))
+                .mount("/tenants/beta/", DirLoader.of(newLocalLoader(), tmpDir.resolve("beta").toString()))
+                .mount("tenants/acme/special", DirLoader.of(newLocalLoader(), tmpDir.resolve("acme-special").toString()));
+    }
+
+    @Test
+    void mountRoutingTest() throws Exception {
+        Rezolver rezolver = Rezolver.builder().add(mountLoader).build();
+
+        ResourceInfo info = rezolver.resolve("/tenants/acme/app.properties");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals("/tenants/acme/app.properties", info.getSearchPath(), "Search path mismatch");
+        assertEquals(tmpDir.resolve("acme/app.properties"), Paths.get(info.getURL().toURI()), "Wrong mount");
+
+        info = rezolver.resolve("tenants/beta/app.properties");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(tmpDir.resolve("beta/app.properties"), Paths.get(info.getURL().toURI()), "Wrong mount");
+
+        info = rezolver.resolve("/tenants/acme/special/app.properties");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(tmpDir.resolve("acme-special/app.properties"), Paths.get(info.getURL().toURI()), "Longest prefix must be used");
+
+        assertFalse(rezolver.resolve("/tenants/gamma/app.properties").isResolved(), "Unmounted prefix must not be resolved");
+        assertFalse(rezolver.resolve("/tenants/acme.properties").isResolved(), "Prefix must match whole segments");
+    }
+
+    @Test
+    void mountConfinementTest() {
+        assertFalse(mountLoader.resolve("/tenants/acme/../beta/app.properties").isResolved(),
+                "Resources outside the mount must not be resolved");
+        assertFalse(mountLoader.resolve("/tenants/acme/../../tenants/beta/app.properties").isResolved(),
+                "Resources outside the mount must not be resolved");
+        assertThrows(IllegalArgumentException.class, () -> mountLoader.mount("/tenants/../x", new LocalLoader()),
+                "Invalid prefix must be rejected");
+    }
+
+    @Test
+    void mountTableTest() {
+        assertEquals(3, mountLoader.getMounts().size(), "Mounts mismatch");
+        assertTrue(mountLoader.getMounts().containsKey("/tenants/acme/special"), "Mount not found");
+
+        assertTrue(mountLoader.unmount("/tenants/acme/special"), "Mount not removed");
+        assertFalse(mountLoader.unmount("/tenants/gamma"), "Unknown mount removed");
+        ResourceInfo info = mountLoader.resolve("/tenants/acme/special/app.properties");
+        assertFalse(info.isResolved(), "Parent mount must be used after unmounting");
+
+        mountLoader.mount("/", DirLoader.of(newLocalLoader(), tmpDir.resolve("beta").toString()));
+        assertTrue(mountLoader.resolve("app.properties").isResolved(), "Default mount must be used");
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.archive.ZipArchive;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Nested archives (fat jars) tests
+ */
+public class NestedArchiveTest extends TempDirTestBase {
+
+    /** The fat jar */
+    private Path fatJar;
+
+    /**
+     * Creates the test with the temporal directory on disk (mapped archives and class loaders)
+     */
+    public NestedArchiveTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        byte[] library = zip(false, "META-INF/lib.properties", "lib=true", "META-INF/shared.nfo", "Library");
+        byte[] compressedLibrary = zip(false, "META-INF/compressed.nfo", "Compressed");
+
+        fatJar = tmpDir.resolve("app.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(fatJar))) {
+            put(out, "BOOT-INF/classes/", new byte[0], true);
+            put(out, "BOOT-INF/classes/META-INF/shared.nfo", "Application".getBytes(StandardCharsets.UTF_8), false);
+            put(out, "BOOT-INF/lib/lib.jar", library, true);
+            put(out, "BOOT-INF/lib/compressed.jar", compressedLibrary, false);
+        }
+    }
+
+    @Test
+    void fatJarClassPathTest() throws IOException {
+        String base = "jar:" + fatJar.toUri() + "!/BOOT-INF/";
+        URLClassLoader fatJarLoader = new URLClassLoader(new URL[] {
+                new URL(base + "classes!/"), new URL(base + "lib/lib.jar!/"), new URL(base + "lib/compressed.jar!/") },
+                new ClassLoader(null) { });
+
+        ClasspathLoader loader = new ClasspathLoader();
+        loader.setClassLoader(fatJarLoader);
+        loader.enableArchiveIndex();
+        assertTrue(loader.isArchiveIndexed(), "Class path not indexed");
+
+        Rezolver rezolver = Rezolver.builder().add(FallbackLoader.of(loader, "META-INF")).build();
+
+        // The first root wins, as with the class loader
+        ResourceInfo shared = rezolver.resolve("shared.nfo");
+        assertTrue(shared.isResolved(), "Error resolving resource");
+        assertEquals("Application", read(shared.getURL()), "Content mismatch");
+
+        ResourceInfo nested = rezolver.resolve("lib.properties");
+        assertTrue(nested.isResolved(), "Error resolving nested resource");
+        assertEquals(base + "lib/lib.jar!/META-INF/lib.properties", nested.getURL().toExternalForm(), "URL mismatch");
+        assertEquals("lib=true", read(nested.getURL()), "Content mismatch");
+        assertEquals(8, nested.getSize(), "Size mismatch");
+        assertTrue(nested.getLastModified() > 0, "Last modification time not set");
+
+        ResourceInfo compressed = rezolver.resolve("compressed.nfo");
+        assertTrue(compressed.isResolved(), "Error resolving resource in deflated nested archive");
+        assertEquals("Compressed", read(compressed.getURL()), "Content mismatch");
+
+        assertFalse(rezolver.resolve("missing.nfo").isResolved(), "Missing resource resolved");
+
+    }
+
+    @Test
+    void snapshotTest() throws IOException {
+        String base = "jar:" + fatJar.toUri() + "!/BOOT-INF/";
+        URLClassLoader fatJarLoader = new URLClassLoader(new URL[] {
+                new URL(base + "classes!/"), new URL(base + "lib/lib.jar!/") }, new ClassLoader(null) { });
+        Path snapshotFile = tmpDir.resolve("cache.snapshot");
+
+        for (int i = 0; i < 2; i++) {
+            ClasspathLoader loader = new ClasspathLoader();
+            loader.setClassLoader(fatJarLoader);
+            loader.enableArchiveIndex();
+            Rezolver rezolver = Rezolver.builder().add(loader).withCache(10).withCacheSnapshot(snapshotFile).build();
+
+            // Entries of nested archives are resolved again after a restart
+            ResourceInfo nested = rezolver.resolve("META-INF/lib.properties");
+            assertTrue(nested.isResolved(), "Error resolving nested resource");
+            assertEquals("lib=true", read(nested.getURL()), "Content mismatch");
+
+            ResourceInfo shared = rezolver.resolve("META-INF/shared.nfo");
+            assertTrue(shared.isResolved(), "Error resolving resource");
+            assertEquals("Application", read(shared.getURL()), "Content mismatch");
+            rezolver.getCache().close();
+        }
+    }
+
+    @Test
+    void childFirstClassLoaderTest() throws IOException {
+        for (String name : new String[] { "app", "plugin" }) {
+            Path dir = Files.createDirectories(tmpDir.resolve(name).resolve("META-INF"));
+            Files.write(dir.resolve("shared.nfo"), name.getBytes(StandardCharsets.UTF_8));
+        }
+        URLClassLoader appLoader = new URLClassLoader(new URL[] { tmpDir.resolve("app").toUri().toURL() }, new ClassLoader(null) { });
+        URLClassLoader pluginLoader = new URLClassLoader(new URL[] { tmpDir.resolve("plugin").toUri().toURL() }, appLoader) {
+            @Override
+            public URL getResource(String name) {
+                URL url = findResource(name);
+                return (url != null) ? url : super.getResource(name);
+            }
+        };
+
+        ClasspathLoader loader = new ClasspathLoader();
+        loader.setClassLoader(pluginLoader);
+        loader.enableArchiveIndex();
+
+        // The search order of the child first class loader is kept
+        ResourceInfo shared = loader.resolve("META-INF/shared.nfo");
+        assertTrue(shared.isResolved(), "Error resolving resource");
+        assertEquals("plugin", read(shared.getURL()), "Content mismatch");
+    }
+
+    @Test
+    void fatJarMembershipFilterTest() throws IOException {
+        // Indexing the bootstrap class loader requires the boot class path (Java 8)
+        assumeTrue(System.getProperty("sun.boot.class.path") != null);
+        String base = "jar:" + fatJar.toUri() + "!/BOOT-INF/";
+        ClasspathLoader loader = new ClasspathLoader();
+        loader.setClassLoader(new URLClassLoader(new URL[] { new URL(base + "lib/lib.jar!/"), new URL(base + "lib/compressed.jar!/") }, null));
+        loader.enableMembershipFilter(0.0001, Long.MAX_VALUE);
+
+        assertTrue(loader.mightContain("META-INF/lib.properties"), "False negative");
+        assertTrue(loader.mightContain("META-INF/compressed.nfo"), "False negative");
+        assertFalse(loader.mightContain("META-INF/missing.nfo"), "Missing resource not ruled out");
+    }
+
+    @Test
+    void storedContentTest() throws IOException {
+        try (ZipArchive archive = ZipArchive.open(fatJar)) {
+            ZipArchive.Entry entry = archive.get("BOOT-INF/lib/lib.jar");
+            assertEquals(ZipArchive.STORED, entry.getMethod(), "Method mismatch");
+            ByteBuffer content = archive.getContent(entry);
+            assertTrue(content.isReadOnly(), "Content not read-only");
+            assertTrue(content.isDirect(), "Stored content copied");
+            assertEquals(entry.getSize(), content.remaining(), "Size mismatch");
+
+            ZipArchive nested = archive.openNested("BOOT-INF/lib/lib.jar");
+            assertEquals(2, nested.size(), "Entries mismatch");
+            assertNotNull(archive.get("BOOT-INF/classes"), "Directory not found");
+            assertThrows(IOException.class, () -> archive.openNested("BOOT-INF/lib/missing.jar"));
+        }
+    }
+
+    @Test
+    void zip64Test() throws IOException {
+        // More than 65535 entries forces the Zip64 end of central directory
+        Path large = tmpDir.resolve("large.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(large)))) {
+            out.setLevel(0);
+            for (int i = 0; i < 70_000; i++) {
+                out.putNextEntry(new ZipEntry("entry" + i));
+                out.write((byte) i);
+                out.closeEntry();
+            }
+        }
+
+        try (ZipArchive archive = ZipArchive.open(large)) {
+            assertEquals(70_000, archive.size(), "Entries mismatch");
+            ZipArchive.Entry entry = archive.get("entry69999");
+            assertNotNull(entry, "Entry not found");
+            try (InputStream in = archive.getInputStream(entry)) {
+                assertEquals(69999 & 0xFF, in.read(), "Content mismatch");
+            }
+        }
+    }
+
+    @Test
+    void largeArchiveTest() throws IOException {
+        // Archives over 2 GB are not mapped at once, the hole keeps the file small on disk
+        Path large = tmpDir.resolve("large.jar");
+        try (FileChannel channel = FileChannel.open(large, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.SPARSE)) {
+            channel.write(ByteBuffer.wrap(Files.readAllBytes(fatJar)), Integer.MAX_VALUE + 1L);
+        }
+
+        try (ZipArchive archive = ZipArchive.open(large)) {
+            ZipArchive.Entry entry = archive.get("BOOT-INF/lib/lib.jar");
+            assertNotNull(entry, "Entry not found");
+            ByteBuffer content = archive.getContent(entry);
+            assertTrue(content.isDirect(), "Stored content copied");
+            assertEquals(entry.getSize(), content.remaining(), "Size mismatch");
+
+            ZipArchive nested = archive.openNested(entry);
+            try (InputStream in = nested.getInputStream(nested.get("META-INF/lib.properties"))) {
+                assertEquals("lib=true", read(in), "Content mismatch");
+            }
+            try (InputStream in = archive.getInputStream(archive.get("BOOT-INF/classes/META-INF/shared.nfo"))) {
+                assertEquals("Application", read(in), "Content mismatch");
+            }
+        }
+    }
+
+    /**
+     * Creates a zip file in memory with the given names and contents
+     *
+     * @param stored whether the entries are stored
+     * @param namesAndContents the names and contents of the entries
+     * @return the zip file
+     * @throws IOException if the zip cannot be written
+     */
+    private static byte[] zip(boolean stored, String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                put(out, namesAndContents[i], namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8), stored);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an entry to the zip
+     *
+     * @param out the zip output
+     * @param name the name of the entry
+     * @param content the content
+     * @param stored whether the entry is stored
+     * @throws IOException if the entry cannot be written
+     */
+    private static void put(ZipOutputStream out, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /**
+     * Reads the content of the URL
+     *
+     * @param url the URL
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads the content of the stream
+     *
+     * @param in the stream
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    private static String read(InputStream in) throws IOException {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.loader.impl.PackLoader;
+import com.github.pnavais.rezolver.pack.ResourcePack;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resource pack and pack loader tests
+ */
+public class PackLoaderTest extends TempDirTestBase {
+
+    /** The pack file */
+    private Path packFile;
+
+    /**
+     * Creates the test with the temporal directory on disk (mapped resource packs)
+     */
+    public PackLoaderTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path resources = Files.createDirectories(tmpDir.resolve("resources/sub"));
+        Files.write(resources.getParent().resolve("resource.nfo"), "Dummy Data".getBytes(StandardCharsets.UTF_8));
+        Files.write(resources.resolve("app.properties"), "key=value".getBytes(StandardCharsets.UTF_8));
+        Files.write(resources.resolve("empty.txt"), new byte[0]);
+
+        packFile = ResourcePack.builder()
+                .alignment(16)
+                .addDirectory(tmpDir.resolve("resources"))
+                .build(tmpDir.resolve("resources.rzpk"));
+    }
+
+    @Test
+    void packedResourceTest() throws IOException {
+        ResourcePack pack = ResourcePack.open(packFile);
+        assertEquals(3, pack.size(), "Number of resources mismatch");
+        assertEquals(16, pack.getAlignment(), "Alignment mismatch");
+        for (String name : pack.getNames()) {
+            assertEquals(0, pack.get(name).getOffset() % 16, "Blob not aligned");
+        }
+
+        Rezolver rezolver = Rezolver.builder()
+                .add(new PackLoader(pack))
+                .add(new LocalLoader())
+                .build();
+
+        ResourceInfo info = rezolver.resolve("/sub/app.properties");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals("PackLoader", info.getSourceEntity(), "Source mismatch");
+        assertEquals(ResourcePack.PROTOCOL, info.getURL().getProtocol(), "Protocol mismatch");
+        assertEquals(9, info.getSize(), "Size mismatch");
+        assertEquals("key=value", read(info), "Content mismatch");
+
+        ResourceInfo empty = rezolver.resolve("sub/empty.txt");
+        assertTrue(empty.isResolved(), "Error resolving resource");
+        assertEquals("", read(empty), "Content mismatch");
+
+        assertFalse(rezolver.resolve("missing.nfo").isResolved(), "Resource must not be resolved");
+    }
+
+    @Test
+    void contentSliceTest() {
+        PackLoader loader = PackLoader.of(packFile.toString());
+        ByteBuffer content = loader.getContent("resource.nfo");
+        assertNotNull(content, "Content not found");
+        assertTrue(content.isReadOnly(), "Content must be read-only");
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        assertEquals("Dummy Data", new String(bytes, StandardCharsets.UTF_8), "Content mismatch");
+        assertNull(loader.getContent("missing.nfo"), "Content must not be found");
+    }
+
+    @Test
+    void invalidPackTest() throws IOException {
+        Path invalid = Files.write(tmpDir.resolve("invalid.rzpk"), "Not a resource pack at all".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> ResourcePack.open(invalid), "Invalid pack must be rejected");
+
+        // Entry count and name length larger than the index
+        byte[] pack = Files.readAllBytes(packFile);
+        ByteBuffer.wrap(pack).putInt(12, 100_000_000);
+        Path hugeCount = Files.write(tmpDir.resolve("count.rzpk"), pack);
+        assertThrows(IOException.class, () -> ResourcePack.open(hugeCount), "Entry count must be checked");
+
+        pack = Files.readAllBytes(packFile);
+        ByteBuffer header = ByteBuffer.wrap(pack);
+        header.putInt((int) header.getLong(16), Integer.MAX_VALUE - 8);
+        Path hugeName = Files.write(tmpDir.resolve("name.rzpk"), pack);
+        assertThrows(IOException.class, () -> ResourcePack.open(hugeName), "Name length must be checked");
+    }
+
+    /**
+     * Reads the content of the resource through its URL
+     *
+     * @param info the resource information
+     * @return the content
+     * @throws IOException if the content cannot be read
+     */
+    private static String read(ResourceInfo info) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = info.getURL().openStream()) {
+            byte[] buffer = new byte[4];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.Prefetcher;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prefetch tests
+ */
+public class PrefetcherTest extends TempDirTestBase {
+
+    /** The rezolver confined to the temporal directory */
+    private Rezolver rezolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            Files.write(tmpDir.resolve("res" + i + ".nfo"), ("Resource " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        rezolver = Rezolver.builder()
+                .add(DirLoader.of(newLocalLoader(), tmpDir.toString()))
+                .withCache(100)
+                .build();
+    }
+
+    @Test
+    void prefetchFillsCacheTest() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            paths.add("res" + i + ".nfo");
+        }
+        paths.add("missing.nfo");
+
+        Map<String, ResourceInfo> resources = rezolver.prefetch(paths).get(10, TimeUnit.SECONDS);
+        assertEquals(paths, new ArrayList<>(resources.keySet()), "Prefetched paths mismatch");
+        assertFalse(resources.get("missing.nfo").isResolved(), "Missing resource resolved");
+        assertTrue(resources.get("res7.nfo").isResolved(), "Error prefetching resource");
+        assertEquals(20, rezolver.getCache().size(), "Cache not filled");
+
+        long hits = rezolver.getCache().getHitCount();
+        assertTrue(rezolver.resolve("res3.nfo").isResolved(), "Error resolving resource");
+        assertEquals(hits + 1, rezolver.getCache().getHitCount(), "Prefetched resource not cached");
+    }
+
+    @Test
+    void prefetchManifestTest() throws Exception {
+        Path manifest = Files.write(tmpDir.resolve("prefetch.txt"),
+                Arrays.asList("# Startup resources", "", "  res1.nfo  ", "res2.nfo", "#res3.nfo"), StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("res1.nfo", "res2.nfo"), Prefetcher.readManifest(manifest), "Manifest mismatch");
+
+        Map<String, ResourceInfo> resources = new Prefetcher(rezolver)
+                .withParallelism(1)
+                .withContent(true)
+                .prefetch(manifest)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(2, resources.size(), "Prefetched resources mismatch");
+        assertTrue(resources.values().stream().allMatch(ResourceInfo::isResolved), "Error prefetching resources");
+    }
+
+    @Test
+    void prefetchEmptyTest() throws Exception {
+        assertTrue(rezolver.prefetch(Collections.emptyList()).isDone(), "Empty prefetch not completed");
+        assertThrows(NullPointerException.class, () -> rezolver.prefetch(Collections.singletonList((String) null)));
+        assertThrows(IllegalArgumentException.class, () -> new Prefetcher(rezolver).withParallelism(0));
+    }
+}
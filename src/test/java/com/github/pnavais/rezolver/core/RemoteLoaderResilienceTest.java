@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.loader.impl.HttpLoader;
+import com.github.pnavais.rezolver.util.CircuitBreaker;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Remote loader circuit breaker and bulkhead tests
+ */
+public class RemoteLoaderResilienceTest {
+
+    /** The local test server */
+    private HttpServer server;
+
+    /** Released to unblock the slow requests */
+    private CountDownLatch release;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/resource.nfo", exchange -> {
+            byte[] body = "Dummy Data".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/secret.nfo", exchange -> {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+        });
+        server.createContext("/error.nfo", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/slow.nfo", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void circuitOpensOnHostFailuresTest() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        String host = "127.0.0.1:" + port;
+        String location = "http://" + host + "/resource.nfo";
+
+        HttpLoader loader = new HttpLoader();
+        loader.setCircuitBreaker(2, 1, TimeUnit.HOURS);
+
+        assertFalse(loader.resolve(location).isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.CLOSED, loader.getCircuitState(host), "Circuit must remain closed");
+        assertFalse(loader.resolve(location).isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.OPEN, loader.getCircuitState(host), "Circuit must be open");
+        assertEquals(2, loader.getCircuitBreaker(host).getFailureCount(), "Failure count mismatch");
+
+        // Open circuit rejects without connecting
+        assertFalse(loader.resolve(location).isResolved(), "Resource must not be resolved");
+        assertEquals(2, loader.getCircuitBreaker(host).getFailureCount(), "Lookups must fail fast");
+    }
+
+    @Test
+    void missingResourceKeepsCircuitClosedTest() {
+        String host = "127.0.0.1:" + server.getAddress().getPort();
+        HttpLoader loader = new HttpLoader();
+        loader.setCircuitBreaker(1, 1, TimeUnit.HOURS);
+
+        assertFalse(loader.resolve("http://" + host + "/missing.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.CLOSED, loader.getCircuitState(host), "Missing resources are not host failures");
+
+        ResourceInfo info = loader.resolve("http://" + host + "/resource.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(10, info.getSize(), "Size mismatch");
+    }
+
+    @Test
+    void onlyHostFailuresOpenCircuitTest() {
+        String host = "127.0.0.1:" + server.getAddress().getPort();
+        HttpLoader loader = new HttpLoader();
+        assertTrue(loader.getConnectTimeout() > 0, "Connect timeout must be finite by default");
+        assertTrue(loader.getReadTimeout() > 0, "Read timeout must be finite by default");
+        loader.setCircuitBreaker(1, 1, TimeUnit.HOURS);
+
+        assertFalse(loader.resolve("http://" + host + "/secret.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.CLOSED, loader.getCircuitState(host), "Authorization errors are not host failures");
+
+        assertFalse(loader.resolve("http://" + host + "/error.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.OPEN, loader.getCircuitState(host), "Server errors are host failures");
+
+        HttpLoader timingOut = new HttpLoader();
+        timingOut.setCircuitBreaker(1, 1, TimeUnit.HOURS);
+        timingOut.setTimeouts(1000, 100, TimeUnit.MILLISECONDS);
+        assertFalse(timingOut.resolve("http://" + host + "/slow.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.OPEN, timingOut.getCircuitState(host), "Timeouts are host failures");
+    }
+
+    @Test
+    void idleHostsEvictedTest() {
+        String host = "127.0.0.1:" + server.getAddress().getPort();
+        HttpLoader loader = new HttpLoader();
+        loader.setCircuitBreaker(1, 1, TimeUnit.HOURS);
+
+        assertFalse(loader.resolve("http://failing@" + host + "/error.nfo").isResolved(), "Resource must not be resolved");
+        for (int i = 0; i < 300; i++) {
+            assertTrue(loader.resolve("http://user" + i + "@" + host + "/resource.nfo").isResolved(), "Error resolving resource");
+        }
+
+        // Only the hosts with failures are kept
+        assertTrue(loader.getCircuitBreakers().size() <= 257, "Idle hosts must be evicted");
+        assertEquals(CircuitBreaker.State.OPEN, loader.getCircuitState("failing@" + host), "Failing hosts must be kept");
+    }
+
+    @Test
+    void errorDuringProbeReleasesCircuitTest() throws InterruptedException {
+        String host = "127.0.0.1:" + server.getAddress().getPort();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        HttpLoader loader = new HttpLoader() {
+            @Override
+            protected void readAttributes(URLConnection connection, ResourceInfo resourceInfo) {
+                if (failing.get()) {
+                    throw new AssertionError("Unexpected error");
+                }
+                super.readAttributes(connection, resourceInfo);
+            }
+        };
+        loader.setCircuitBreaker(1, 20, TimeUnit.MILLISECONDS);
+        assertFalse(loader.resolve("http://" + host + "/error.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(CircuitBreaker.State.OPEN, loader.getCircuitState(host), "Circuit must be open");
+
+        Thread.sleep(40);
+        assertThrows(AssertionError.class, () -> loader.resolve("http://" + host + "/resource.nfo"));
+        failing.set(false);
+        assertTrue(loader.resolve("http://" + host + "/resource.nfo").isResolved(), "Probe slot must be released");
+        assertEquals(CircuitBreaker.State.CLOSED, loader.getCircuitState(host), "Circuit must be closed");
+    }
+
+    @Test
+    void bulkheadRejectsExcessLookupsTest() throws Exception {
+        String host = "127.0.0.1:" + server.getAddress().getPort();
+        HttpLoader loader = new HttpLoader();
+        loader.setMaxConcurrentLookups(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResourceInfo> slow = executor.submit(() -> loader.resolve("http://" + host + "/slow.nfo"));
+            Thread.sleep(200);
+
+            long start = System.nanoTime();
+            assertFalse(loader.resolve("http://" + host + "/resource.nfo").isResolved(), "Lookup must be rejected");
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "Rejection must be immediate");
+
+            release.countDown();
+            assertTrue(slow.get(5, TimeUnit.SECONDS).isResolved(), "Error resolving slow resource");
+            assertTrue(loader.resolve("http://" + host + "/resource.nfo").isResolved(), "Error resolving resource");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void halfOpenProbeTest() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20, TimeUnit.MILLISECONDS);
+        assertTrue(breaker.tryAcquire(), "Closed circuit must allow calls");
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(), "Circuit must be open");
+        assertFalse(breaker.tryAcquire(), "Open circuit must reject calls");
+
+        Thread.sleep(40);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(), "Circuit must be half-open");
+        assertTrue(breaker.tryAcquire(), "A probe must be allowed");
+        assertFalse(breaker.tryAcquire(), "A single probe must be allowed");
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(), "Failed probe must open the circuit");
+
+        Thread.sleep(40);
+        assertTrue(breaker.tryAcquire(), "A probe must be allowed");
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "Successful probe must close the circuit");
+    }
+}
@@ -64,6 +64,10 @@ public class RemoteLoaderTest extends RezolverTestBase {
         InputStream inputStream = PowerMockito.mock(InputStream.class);
         PowerMockito.when(huc.getInputStream()).thenReturn(inputStream);
         PowerMockito.when(huc.getURL()).thenReturn(u);
+        PowerMockito.when(huc.getContentLengthLong()).thenReturn(10L);
+        PowerMockito.when(huc.getLastModified()).thenReturn(1000L);
+        PowerMockito.when(huc.getContentType()).thenReturn("text/plain");
+        PowerMockito.when(huc.getHeaderField("ETag")).thenReturn("\"v1\"");
 
         ResourceInfo info = r.resolve(rezName);
         PowerMockito.verifyNew(URL.class).withArguments(rezName);
@@ -73,6 +77,10 @@ public class RemoteLoaderTest extends RezolverTestBase {
 
         assertNotNull("Error processing resource "+rezName, info);
         assertNotNull("Error resolving resource "+rezName, info.getURL());
+        assertEquals("Size mismatch", 10L, info.getSize());
+        assertEquals("Last modification time mismatch", 1000L, info.getLastModified());
+        assertEquals("Content type mismatch", "text/plain", info.getContentType());
+        assertEquals("ETag mismatch", "\"v1\"", info.getETag());
 
         URL expectedURL = remoteLoader.lookup(rezName);
         assertEquals("URL resolution mismatch", expectedURL, info.getURL());
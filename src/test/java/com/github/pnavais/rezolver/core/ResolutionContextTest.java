@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionContext;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolution context tests
+ */
+public class ResolutionContextTest extends TempDirTestBase {
+
+    /**
+     * Creates the test with the temporal directory on disk (class loaders)
+     */
+    public ResolutionContextTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (String tenant : new String[] { "tenant1", "tenant2" }) {
+            Path metaInf = Files.createDirectories(tmpDir.resolve(tenant).resolve("classes").resolve("META-INF"));
+            Files.write(metaInf.resolve("tenant.nfo"), tenant.getBytes(StandardCharsets.UTF_8));
+            Path conf = Files.createDirectories(tmpDir.resolve(tenant).resolve("conf"));
+            Files.write(conf.resolve("app.properties"), tenant.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void sharedRezolverTest() throws Exception {
+        Rezolver rezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader().enableMembershipFilter(), "META-INF"))
+                .withCache(100)
+                .withCoalescing(1, TimeUnit.SECONDS)
+                .build();
+
+        List<ResolutionContext> contexts = new ArrayList<>();
+        for (String tenant : new String[] { "tenant1", "tenant2" }) {
+            contexts.add(ResolutionContext.of(tenant)
+                    .withClassLoader(new URLClassLoader(new URL[] { tmpDir.resolve(tenant).resolve("classes").toUri().toURL() }, null))
+                    .withBaseDirectory(tmpDir.resolve(tenant)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ResolutionContext context = contexts.get(i % 2);
+                String tenant = context.getName();
+                results.add(executor.submit(() -> {
+                    ResourceInfo classpathInfo = rezolver.resolve("tenant.nfo", context);
+                    ResourceInfo localInfo = rezolver.resolve("conf/app.properties", context);
+                    return classpathInfo.isResolved() && classpathInfo.getURL().getPath().contains(tenant)
+                            && localInfo.isResolved() && localInfo.getPath().toString().contains(tenant);
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(), "Resolutions mixed between contexts");
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4, rezolver.getCache().size(), "Resolutions not cached per context");
+        assertFalse(rezolver.resolve("tenant.nfo").isResolved(), "Context leaked to default resolutions");
+
+        CompletableFuture<ResourceInfo> async = rezolver.resolveAsync("conf/app.properties", contexts.get(1));
+        assertTrue(async.get().getPath().toString().contains("tenant2"), "Asynchronous resolution not in context");
+
+        // Unnamed contexts are not cached
+        ResolutionContext unnamed = ResolutionContext.DEFAULT.withBaseDirectory(tmpDir.resolve("tenant1"));
+        assertTrue(rezolver.resolve("conf/app.properties", unnamed).isResolved(), "Error resolving resource");
+        assertEquals(4, rezolver.getCache().size(), "Unnamed context cached");
+        assertTrue(rezolver.resolveTraced("conf/app.properties", unnamed, 16).getTrace().size() > 0, "Trace not recorded");
+    }
+
+    @Test
+    void dirLoaderContextTest() {
+        DirLoader dirLoader = DirLoader.of(new LocalLoader(), "conf").enableMembershipFilter();
+        Rezolver rezolver = Rezolver.builder().add(dirLoader).build();
+        ResolutionContext context = ResolutionContext.DEFAULT.withBaseDirectory(tmpDir.resolve("tenant2"));
+
+        ResourceInfo info = rezolver.resolve("app.properties", context);
+        assertTrue(info.isResolved(), "Relative root not resolved against the base directory");
+        assertTrue(info.getPath().startsWith(tmpDir.resolve("tenant2")), "Wrong base directory");
+        assertFalse(rezolver.resolve("../../tenant1/conf/app.properties", context).isResolved(), "Location outside root resolved");
+    }
+
+    @Test
+    void fileSystemContextTest() throws IOException {
+        Path zip = tmpDir.resolve("fs.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("data/entry.nfo"));
+            out.write("Entry".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        Rezolver rezolver = Rezolver.builder().add(new LocalLoader()).build();
+        try (FileSystem fileSystem = FileSystems.newFileSystem(zip, (ClassLoader) null)) {
+            ResolutionContext context = ResolutionContext.DEFAULT.withFileSystem(fileSystem);
+            ResourceInfo info = rezolver.resolve("/data/entry.nfo", context);
+            assertTrue(info.isResolved(), "Error resolving resource in the context file system");
+            assertEquals(5, info.getSize(), "Size mismatch");
+            assertFalse(rezolver.resolve("/data/entry.nfo").isResolved(), "Context file system used by default");
+        }
+    }
+}
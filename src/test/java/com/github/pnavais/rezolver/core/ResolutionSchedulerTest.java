@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionScheduler;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.impl.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolution scheduler tests
+ */
+public class ResolutionSchedulerTest extends TempDirTestBase {
+
+    /** The scheduler */
+    private ResolutionScheduler scheduler;
+
+    /** Released to let the remote lookups finish */
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tmpDir.resolve("local.nfo"), "Local".getBytes(StandardCharsets.UTF_8));
+        scheduler = new ResolutionScheduler(2, 16, 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        scheduler.close();
+    }
+
+    @Test
+    void stageClassesTest() {
+        Rezolver rezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader(), "META-INF"))
+                .add(FallbackLoader.of(new HttpLoader(), "http://localhost"))
+                .add(new NullLoader())
+                .build();
+        assertEquals(Arrays.asList(CostClass.LOCAL, CostClass.REMOTE, CostClass.LOCAL),
+                     rezolver.getPlan().getStageClasses(), "Stages mismatch");
+        assertEquals(CostClass.REMOTE, DirLoader.of(new HttpLoader(), "http://localhost").getCostClass(), "Cost class mismatch");
+    }
+
+    @Test
+    void remoteSaturationTest() throws Exception {
+        Rezolver rezolver = Rezolver.builder()
+                .add(DirLoader.of(newLocalLoader(), tmpDir.toString()))
+                .add(new SlowRemoteLoader())
+                .withScheduler(scheduler)
+                .withCache(10)
+                .build();
+
+        // Saturate the remote tier : one lookup running, one queued and one shed
+        CompletableFuture<ResourceInfo> running = rezolver.resolveAsync("remote1.nfo");
+        waitUntil(() -> scheduler.getActiveCount(CostClass.REMOTE) == 1);
+        CompletableFuture<ResourceInfo> queued = rezolver.resolveAsync("remote2.nfo");
+        waitUntil(() -> scheduler.getQueueDepth(CostClass.REMOTE) == 1);
+        CompletableFuture<ResourceInfo> shed = rezolver.resolveAsync("remote3.nfo");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> shed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException, "Lookup not shed");
+        assertEquals(1, scheduler.getRejectedCount(CostClass.REMOTE), "Rejections mismatch");
+
+        // Local resolutions are not affected
+        ResourceInfo local = rezolver.resolveAsync("local.nfo").get(5, TimeUnit.SECONDS);
+        assertTrue(local.isResolved(), "Error resolving resource");
+        assertTrue(rezolver.getCache().contains("local.nfo"), "Resource not cached");
+        ResourceInfo cached = rezolver.resolveAsync("local.nfo").getNow(null);
+        assertNotNull(cached, "Cached resource not returned right away");
+        assertEquals(local.getURL(), cached.getURL(), "URL mismatch");
+        assertEquals(0, scheduler.getRejectedCount(CostClass.LOCAL), "Local lookups shed");
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS).isResolved(), "Error resolving remote resource");
+        assertTrue(queued.get(5, TimeUnit.SECONDS).isResolved(), "Error resolving remote resource");
+        assertTrue(scheduler.getWaitTime(CostClass.REMOTE).getSampleCount() >= 2, "Waiting time not reported");
+        assertTrue(scheduler.getWaitTime(CostClass.LOCAL).getAverage(TimeUnit.NANOSECONDS) >= 0, "Waiting time not reported");
+    }
+
+    /**
+     * Waits until the condition holds
+     *
+     * @param condition the condition
+     * @throws InterruptedException if interrupted
+     */
+    private static void waitUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.call(), "Condition not met");
+    }
+
+    /**
+     * A remote loader blocking until released
+     */
+    private class SlowRemoteLoader implements IResourceLoader {
+
+        @Override
+        public ResourceInfo resolve(String location) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ResourceInfo.resolved(location, tmpDir.resolve("local.nfo"), "SlowRemoteLoader");
+        }
+
+        @Override
+        public CostClass getCostClass() {
+            return CostClass.REMOTE;
+        }
+    }
+
+    /**
+     * A local loader never resolving anything
+     */
+    private static class NullLoader implements IResourceLoader {
+
+        @Override
+        public ResourceInfo resolve(String location) {
+            return ResourceInfo.UNRESOLVED;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionCache;
+import com.github.pnavais.rezolver.ResolutionSnapshot;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolution cache snapshot tests
+ */
+public class ResolutionSnapshotTest extends TempDirTestBase {
+
+    /** The snapshot file */
+    private Path snapshotFile;
+
+    /**
+     * Creates the test with the temporal directory on disk (mapped snapshots)
+     */
+    public ResolutionSnapshotTest() {
+        super(true);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snapshotFile = tmpDir.resolve("cache.snapshot");
+        for (String name : Arrays.asList("a.nfo", "b.nfo", "c.nfo")) {
+            Files.write(tmpDir.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void saveAndRestoreTest() throws Exception {
+        Rezolver rezolver = Rezolver.builder()
+                .add(DirLoader.of(new LocalLoader(), tmpDir.toString()))
+                .withCache(10)
+                .build();
+        for (String name : Arrays.asList("a.nfo", "b.nfo", "c.nfo")) {
+            assertTrue(rezolver.resolve(name).isResolved(), "Error resolving resource");
+        }
+        ResourceInfo remote = ResourceInfo.resolved("remote.nfo", new URL("http://localhost/remote.nfo"), "HttpLoader");
+        remote.setETag("\"v1\"");
+        rezolver.getCache().put("remote.nfo", remote);
+
+        assertEquals(4, rezolver.getCache().save(snapshotFile), "Saved entries mismatch");
+
+        // Change one file and remove another one before restarting
+        Files.write(tmpDir.resolve("b.nfo"), "modified content".getBytes(StandardCharsets.UTF_8));
+        Files.delete(tmpDir.resolve("c.nfo"));
+
+        ResolutionCache cache = new ResolutionCache(10);
+        cache.load(snapshotFile);
+        assertEquals(4, cache.getSnapshot().size(), "Pending entries mismatch");
+        assertEquals(0, cache.size(), "Entries restored eagerly");
+
+        ResourceInfo info = cache.get("a.nfo");
+        assertNotNull(info, "Entry not restored");
+        assertEquals(tmpDir.resolve("a.nfo").toAbsolutePath(), info.getPath(), "Path mismatch");
+        assertEquals("LocalLoader", info.getSourceEntity(), "Source entity mismatch");
+        assertEquals(5, info.getSize(), "Size mismatch");
+        assertEquals(1, cache.size(), "Restored entry not cached");
+
+        assertNull(cache.get("b.nfo"), "Modified resource restored");
+        assertNull(cache.get("c.nfo"), "Deleted resource restored");
+
+        info = cache.get("remote.nfo");
+        assertNotNull(info, "Remote entry not restored");
+        assertEquals("http://localhost/remote.nfo", info.getURL().toExternalForm(), "URL mismatch");
+        assertEquals("\"v1\"", info.getETag(), "Entity tag mismatch");
+        assertEquals(0, cache.getSnapshot().size(), "Entries still pending");
+    }
+
+    @Test
+    void backgroundRestoreTest() throws Exception {
+        ResolutionCache cache = new ResolutionCache(10);
+        for (String name : Arrays.asList("a.nfo", "b.nfo", "c.nfo")) {
+            cache.put(name, ResourceInfo.resolved(name, tmpDir.resolve(name), "LocalLoader"));
+        }
+        assertEquals(3, cache.save(snapshotFile), "Saved entries mismatch");
+
+        ResolutionCache restored = new ResolutionCache(10);
+        restored.load(snapshotFile);
+        restored.invalidate("c.nfo");
+        assertEquals(2, restored.restoreSnapshot(), "Restored entries mismatch");
+        assertEquals(2, restored.size(), "Cached entries mismatch");
+        assertNull(restored.get("c.nfo"), "Invalidated entry restored");
+
+        restored.load(snapshotFile);
+        restored.clear();
+        assertNull(restored.getSnapshot(), "Snapshot not cleared");
+        assertEquals(0, restored.restoreSnapshot(), "Entries restored after clear");
+    }
+
+    @Test
+    void fileUrlTest() throws Exception {
+        ResolutionCache cache = new ResolutionCache(10);
+        for (String name : Arrays.asList("a.nfo", "b.nfo", "c.nfo")) {
+            cache.put(name, ResourceInfo.resolved(name, tmpDir.resolve(name).toUri().toURL(), "ClasspathLoader"));
+        }
+        cache.put("alias.nfo", ResourceInfo.resolved("alias.nfo", tmpDir.resolve("c.nfo"), "LocalLoader"));
+        assertEquals(4, cache.save(snapshotFile), "Saved entries mismatch");
+        Files.write(tmpDir.resolve("b.nfo"), "modified content".getBytes(StandardCharsets.UTF_8));
+
+        ResolutionCache restored = new ResolutionCache(10);
+        restored.load(snapshotFile);
+        ResourceInfo info = restored.get("a.nfo");
+        assertNotNull(info, "Entry not restored");
+        assertEquals(tmpDir.resolve("a.nfo").toAbsolutePath(), info.getPath(), "Path mismatch");
+        assertNull(restored.get("b.nfo"), "Modified resource restored");
+
+        // Entries of the same file are discarded whatever their search path
+        restored.invalidate(ResourceInfo.resolved("other.nfo", tmpDir.resolve("c.nfo").toUri().toURL(), "UrlLoader"));
+        assertEquals(0, restored.getSnapshot().size(), "Entries of the invalidated resource still pending");
+        assertNull(restored.get("c.nfo"), "Invalidated entry restored");
+        assertNull(restored.get("alias.nfo"), "Invalidated entry restored");
+    }
+
+    @Test
+    void persistTest() throws Exception {
+        ResolutionCache cache = new ResolutionCache(10);
+        cache.persist(snapshotFile);
+        cache.persist(snapshotFile);
+        cache.put("a.nfo", ResourceInfo.resolved("a.nfo", tmpDir.resolve("a.nfo"), "LocalLoader"));
+        assertFalse(Files.exists(snapshotFile), "Snapshot saved before closing");
+
+        cache.close();
+        assertTrue(Files.exists(snapshotFile), "Snapshot not saved on close");
+        Files.delete(snapshotFile);
+        cache.close();
+        assertFalse(Files.exists(snapshotFile), "Snapshot saved again after closing");
+
+        ResolutionCache restored = new ResolutionCache(10);
+        restored.persist(snapshotFile);
+        restored.close();
+        assertEquals(0, restored.size(), "Entries restored from a missing snapshot");
+    }
+
+    @Test
+    void invalidSnapshotTest() throws Exception {
+        Files.write(snapshotFile, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThrows(IOException.class, () -> ResolutionSnapshot.open(snapshotFile));
+        assertThrows(IllegalStateException.class, () -> Rezolver.builder().withCacheSnapshot(snapshotFile));
+    }
+}
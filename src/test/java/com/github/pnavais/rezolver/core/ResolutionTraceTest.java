@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionTrace;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.DirLoader;
+import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolution trace tests
+ */
+public class ResolutionTraceTest {
+
+    @Test
+    void traceFallbackCandidatesTest() {
+        Rezolver rezolver = Rezolver.builder()
+                .add(new LocalLoader())
+                .add(FallbackLoader.of(new ClasspathLoader(), "META-INF"))
+                .withCache(10)
+                .build();
+
+        ResourceInfo info = rezolver.resolveTraced("cl_resource.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+
+        ResolutionTrace trace = info.getTrace();
+        assertNotNull(trace, "Missing trace");
+        assertEquals("cl_resource.nfo", trace.getSearchPath(), "Search path mismatch");
+        assertEquals(4, trace.size(), "Attempts mismatch : " + trace);
+        assertEquals("LocalLoader", trace.getLoader(0), "Loader mismatch");
+        assertEquals(ResolutionTrace.Outcome.NOT_FOUND, trace.getOutcome(0), "Outcome mismatch");
+        assertEquals("ClasspathLoader", trace.getLoader(1), "Loader mismatch");
+        assertEquals("cl_resource.nfo", trace.getLocation(1), "Location mismatch");
+        assertEquals("classpath:META-INF/cl_resource.nfo", trace.getLocation(2), "Location mismatch");
+        assertEquals("META-INF/cl_resource.nfo", trace.getLocation(3), "Location mismatch");
+        assertEquals(ResolutionTrace.Outcome.RESOLVED, trace.getOutcome(3), "Outcome mismatch");
+        assertTrue(trace.getElapsedNanos(3) >= 0, "Elapsed time not recorded");
+        assertTrue(trace.getTotalNanos() >= trace.getElapsedNanos(3), "Total time not recorded");
+        assertEquals(0, trace.getDroppedCount(), "Dropped attempts mismatch");
+
+        // Traced resolutions bypass the cache
+        assertEquals(0, rezolver.getCache().size(), "Traced resolution cached");
+        assertNull(rezolver.resolve("cl_resource.nfo").getTrace(), "Untraced resolution with trace");
+        assertNull(ResolutionTrace.current(), "Trace still active");
+    }
+
+    @Test
+    void traceMissTest() {
+        String outside = Paths.get(System.getProperty("java.io.tmpdir")).getParent().resolve("missing.nfo").toString();
+        Rezolver rezolver = Rezolver.builder()
+                .add(DirLoader.of(new LocalLoader(), System.getProperty("java.io.tmpdir")))
+                .add(new LocalLoader())
+                .build();
+
+        ResourceInfo info = rezolver.resolveTraced(outside, 1);
+        assertFalse(info.isResolved(), "Resource unexpectedly resolved");
+        assertNotSame(ResourceInfo.UNRESOLVED, info, "Shared unresolved instance returned");
+
+        ResolutionTrace trace = info.getTrace();
+        assertEquals(1, trace.size(), "Attempts mismatch");
+        assertEquals("DirLoader", trace.getLoader(0), "Loader mismatch");
+        assertEquals(ResolutionTrace.Outcome.NOT_FOUND, trace.getOutcome(0), "Outcome mismatch");
+        assertEquals(1, trace.getDroppedCount(), "Dropped attempts mismatch");
+        assertThrows(IndexOutOfBoundsException.class, () -> trace.getLocation(1));
+        assertThrows(UnsupportedOperationException.class, () -> ResourceInfo.UNRESOLVED.setTrace(trace));
+    }
+
+    @Test
+    void traceSamplingTest() {
+        Rezolver sampled = Rezolver.builder().add(new LocalLoader()).withTraceSampling(1.0).build();
+        assertNotNull(sampled.resolve("missing.nfo").getTrace(), "Sampled resolution without trace");
+
+        Rezolver unsampled = Rezolver.builder().add(new LocalLoader()).withTraceSampling(0).build();
+        assertNull(unsampled.resolve("missing.nfo").getTrace(), "Unsampled resolution with trace");
+
+        assertThrows(IllegalArgumentException.class, () -> Rezolver.builder().withTraceSampling(1.5));
+    }
+
+    @Test
+    void nestedTraceTest() {
+        ResolutionTrace outer = new ResolutionTrace("outer", 4).start();
+        try {
+            ResolutionTrace inner = new ResolutionTrace("inner", 4).start();
+            assertSame(inner, ResolutionTrace.current(), "Inner trace not active");
+            inner.stop();
+            assertSame(outer, ResolutionTrace.current(), "Outer trace not restored");
+        } finally {
+            outer.stop();
+        }
+        assertNull(ResolutionTrace.current(), "Trace still active");
+    }
+}
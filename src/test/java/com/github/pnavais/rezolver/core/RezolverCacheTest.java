@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResolutionCache;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rezolver resolution cache tests
+ */
+public class RezolverCacheTest extends RezolverTestBase {
+
+    @Test
+    void cachedResolutionTest() {
+        Rezolver r = Rezolver.builder().add(localLoader).withCache(100).build();
+        ResourceInfo info = r.resolve("/tmp/fs_resource_0.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        ResourceInfo cached = r.resolve("/tmp/fs_resource_0.nfo");
+        assertEquals(1, r.getCache().getHitCount(), "The resolution must be cached");
+        assertEquals(info.getURL(), cached.getURL(), "URL mismatch");
+
+        // Callers receive their own copy of the cached entry
+        assertNotSame(info, cached, "The cached entry must not be shared");
+        cached.setSize(-1);
+        assertEquals(info.getSize(), r.resolve("/tmp/fs_resource_0.nfo").getSize(), "The cached entry was modified");
+
+        // Misses are never cached
+        assertFalse(r.resolve("/tmp/fs_resource.nfo").isResolved(), "Resource must not be resolved");
+        assertEquals(1, r.getCache().size(), "Misses must not be cached");
+
+        r.invalidate(info);
+        assertEquals(0, r.getCache().size(), "The resource must be invalidated");
+        assertTrue(r.resolve("/tmp/fs_resource_0.nfo").isResolved(), "Error resolving resource");
+        assertEquals(2, r.getCache().getHitCount(), "The resource must be resolved again");
+    }
+
+    @Test
+    void cacheEvictionTest() {
+        Rezolver r = Rezolver.builder().add(localLoader).withCache(3).build();
+        resolveTestFiles(r, "/tmp/fs_resource_", ".nfo");
+        assertTrue(r.getCache().size() <= 3, "Cache capacity exceeded");
+    }
+
+    @Test
+    void staleInsertionDiscardedTest() {
+        ResolutionCache cache = new ResolutionCache(10);
+        ResourceInfo info = localLoader.resolve("/tmp/fs_resource_1.nfo");
+        long generation = cache.getGeneration();
+        cache.invalidate("/tmp/fs_resource_1.nfo");
+        cache.put("/tmp/fs_resource_1.nfo", info, generation);
+        assertNull(cache.get("/tmp/fs_resource_1.nfo"), "Stale resolution must be discarded");
+
+        IntStream.range(0, 5).forEach(i -> cache.put("path" + i, info));
+        assertEquals(5, cache.size(), "Size mismatch");
+        assertThrows(IllegalArgumentException.class, () -> new ResolutionCache(0));
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.loader.impl.CoalescingLoader;
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rezolver coalescing of concurrent resolutions tests
+ */
+public class RezolverCoalescingTest {
+
+    /** The number of concurrent callers */
+    private static final int CALLERS = 16;
+
+    @Test
+    void concurrentResolutionsCoalescedTest() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        IResourceLoader slowLoader = slowLoader(lookups, 300);
+        Rezolver r = Rezolver.builder().add(slowLoader).withCoalescing(5, TimeUnit.SECONDS).build();
+
+        List<ResourceInfo> results = resolveConcurrently(r, "remote/resource.nfo");
+        assertEquals(1, lookups.get(), "Concurrent resolutions must share the lookup");
+        results.forEach(info -> assertTrue(info.isResolved(), "Error resolving resource"));
+        assertEquals(CALLERS, results.stream().map(System::identityHashCode).distinct().count(),
+                "Every caller must receive its own instance");
+        assertEquals(CALLERS - 1, r.getSingleFlight().getCoalescedCount(), "Coalesced count mismatch");
+        assertEquals(0, r.getSingleFlight().getInFlightCount(), "No resolutions must remain in flight");
+    }
+
+    @Test
+    void slowLeaderTest() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        Rezolver r = Rezolver.builder().add(slowLoader(lookups, 500)).withCoalescing(10, TimeUnit.MILLISECONDS).build();
+
+        long start = System.nanoTime();
+        List<ResourceInfo> results = resolveConcurrently(r, "remote/resource.nfo");
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        results.forEach(info -> assertTrue(info.isResolved(), "Error resolving resource"));
+        assertTrue(r.getSingleFlight().getTimeoutCount() > 0, "Followers must stop waiting for a slow leader");
+        assertTrue(elapsed < 5000, "Followers must not hang");
+    }
+
+    @Test
+    void failingLeaderTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CoalescingLoader loader = CoalescingLoader.of(location -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Lookup failed");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResourceInfo> leader = executor.submit(() -> loader.resolve("remote/resource.nfo"));
+            while (loader.getSingleFlight().getInFlightCount() == 0) {
+                Thread.sleep(1);
+            }
+            Future<ResourceInfo> follower = executor.submit(() -> loader.resolve("remote/resource.nfo"));
+            Thread.sleep(50);
+            release.countDown();
+
+            ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertTrue(leaderError.getCause() instanceof IllegalStateException, "Leader error mismatch");
+            assertTrue(followerError.getCause() instanceof IllegalStateException, "Follower error mismatch");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a loader resolving any location after the given delay
+     *
+     * @param lookups the counter of lookups
+     * @param delay the delay in milliseconds
+     * @return the loader
+     */
+    private static IResourceLoader slowLoader(AtomicInteger lookups, long delay) {
+        return location -> {
+            lookups.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+                return ResourceInfo.resolved(location, new URL("http://mock/" + location), "SlowLoader");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResourceInfo.UNRESOLVED;
+            } catch (MalformedURLException e) {
+                return ResourceInfo.UNRESOLVED;
+            }
+        };
+    }
+
+    /**
+     * Resolves the same path from several threads at once
+     *
+     * @param r the rezolver
+     * @param path the path
+     * @return the results
+     * @throws Exception if the resolution fails
+     */
+    private static List<ResourceInfo> resolveConcurrently(Rezolver r, String path) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ResourceInfo>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return r.resolve(path);
+                }));
+            }
+            start.countDown();
+
+            List<ResourceInfo> results = new ArrayList<>();
+            for (Future<ResourceInfo> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -17,23 +17,30 @@
 package com.github.pnavais.rezolver.core;
 
 import com.github.pnavais.rezolver.LoadersChain;
+import com.github.pnavais.rezolver.ResolutionPlan;
 import com.github.pnavais.rezolver.ResourceInfo;
 import com.github.pnavais.rezolver.Rezolver;
 import com.github.pnavais.rezolver.loader.IResourceLoader;
 import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
 import com.github.pnavais.rezolver.loader.impl.FallbackLoader;
+import com.github.pnavais.rezolver.loader.impl.HttpLoader;
 import com.github.pnavais.rezolver.loader.impl.LocalLoader;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -172,6 +179,83 @@ public class RezolverLocalTest extends RezolverTestBase {
         removeDirectory("/aux/");
     }
 
+    @Test
+    void resolutionPlanTest() {
+        LoadersChain loadersChain = new LoadersChain();
+        FallbackLoader fallbackLoader = FallbackLoader.of(new ClasspathLoader(), "META-INF");
+        loadersChain.add(new LocalLoader()).add(fallbackLoader);
+
+        Rezolver r = Rezolver.builder().withChain(loadersChain).build();
+        ResolutionPlan plan = r.getPlan();
+        assertEquals(3, plan.getStepCount(), "Fallback loader must be flattened");
+        assertSame(plan, r.getPlan(), "Plan must be reused");
+
+        ResourceInfo info = r.resolve("cl_resource.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(ClasspathLoader.class.getSimpleName(), info.getSourceEntity(), "Resource resolution mismatch");
+        assertTrue(r.resolve("META-INF/cl_resource.nfo").isResolved(), "Error resolving resource");
+        assertFalse(r.resolve("META-INF/cl_resource_2.nfo").isResolved(), "Fallback must not be applied twice");
+
+        // Changes in the fallback paths and the chain are compiled again
+        fallbackLoader.addFallbackPath("META-INF/fallback");
+        assertEquals(4, r.getPlan().getStepCount(), "Plan must be compiled again");
+        assertTrue(r.resolve("cl_resource_2.nfo").isResolved(), "Error resolving resource");
+
+        plan = r.getPlan();
+        fallbackLoader.setSeparator("\\");
+        assertNotSame(plan, r.getPlan(), "Plan must be compiled again after a separator change");
+        assertFalse(r.resolve("cl_resource_2.nfo").isResolved(), "Separator not applied");
+        fallbackLoader.setSeparator("/");
+        assertTrue(r.resolve("cl_resource_2.nfo").isResolved(), "Error resolving resource");
+
+        loadersChain.remove(fallbackLoader);
+        assertEquals(1, r.getPlan().getStepCount(), "Plan must be compiled again");
+        assertFalse(r.resolve("cl_resource.nfo").isResolved(), "The resource shouldn't be loaded");
+    }
+
+    @Test
+    void fallbackSeparatorTest() throws IOException {
+        LocalLoader localLoader = new LocalLoader();
+        FallbackLoader fallbackLoader = FallbackLoader.of(localLoader, "fallback");
+        FallbackLoader.Steps steps = fallbackLoader.compile();
+        assertTrue(fallbackLoader.isCurrent(steps), "Steps must be reused");
+
+        // The separator of the wrapped loader is followed
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.windows())) {
+            localLoader.setFileSystem(fileSystem);
+            assertFalse(fallbackLoader.isCurrent(steps), "Steps must be compiled again after a separator change");
+            steps = fallbackLoader.compile();
+            assertTrue(fallbackLoader.isCurrent(steps), "Steps must be reused");
+
+            Path resource = Files.createDirectories(fileSystem.getPath("fallback")).resolve("fb_resource.nfo");
+            Files.write(resource, "fallback".getBytes());
+            ResourceInfo info = fallbackLoader.resolve("fb_resource.nfo");
+            assertTrue(info.isResolved(), "Error resolving resource");
+            assertTrue(info.getURL().getPath().endsWith("/fallback/fb_resource.nfo"), "Resource resolution mismatch");
+        }
+    }
+
+    @Test
+    void schemeParsingTest() {
+        HttpLoader httpLoader = new HttpLoader();
+        assertEquals("http", httpLoader.extractScheme("HTTP://localhost/resource.nfo"), "Scheme mismatch");
+        assertEquals("classpath", httpLoader.extractScheme("classpath:META-INF/cl_resource.nfo"), "Scheme mismatch");
+        assertEquals("svn+ssh", httpLoader.extractScheme("svn+ssh://host/repo"), "Scheme mismatch");
+        assertEquals("", httpLoader.extractScheme("cl_resource.nfo"), "Scheme mismatch");
+        assertEquals("", httpLoader.extractScheme("/tmp/dir:name/resource.nfo"), "Scheme mismatch");
+        assertEquals("", httpLoader.extractScheme("1http://localhost"), "Scheme mismatch");
+        assertEquals("localhost/resource.nfo", httpLoader.stripScheme("classpath:localhost/resource.nfo"), "Strip mismatch");
+        assertEquals("cl_resource.nfo", httpLoader.stripScheme("cl_resource.nfo"), "Strip mismatch");
+        assertFalse(httpLoader.resolve("cl_resource.nfo").isResolved(), "Scheme-less locations are not remote");
+
+        LocalLoader fileLoader = new LocalLoader();
+        assertEquals("file", fileLoader.extractScheme("/tmp/resource.nfo"), "Scheme mismatch");
+        assertEquals("file", fileLoader.extractScheme("resource.nfo"), "Scheme mismatch");
+        assertEquals("http", fileLoader.extractScheme("http://localhost/resource.nfo"), "Scheme mismatch");
+        assertEquals("/tmp/resource.nfo", fileLoader.stripScheme("/tmp/resource.nfo"), "Strip mismatch");
+        assertEquals("/tmp/resource.nfo", fileLoader.stripScheme("file:///tmp/resource.nfo"), "Strip mismatch");
+    }
+
     @Test
     void resolveFileWithFallBackOrderTest() {
         LocalLoader fileLoader = new LocalLoader();
@@ -264,6 +348,73 @@ public class RezolverLocalTest extends RezolverTestBase {
         assertEquals("Unknown", ctx.getSourceEntity(), "Source entity mismatch");
     }
 
+    @Test
+    void sharedUnresolvedResourceTest() {
+        ClasspathLoader loader = new ClasspathLoader();
+        ResourceInfo first = loader.resolve("classpath:cl_resource_3.nfo");
+        ResourceInfo second = loader.resolve("cl_resource_3.nfo");
+        assertSame(ResourceInfo.UNRESOLVED, first, "Misses must return the shared unresolved instance");
+        assertSame(first, second, "Misses must return the shared unresolved instance");
+        assertEquals(ResourceInfo.UNKNOWN_SOURCE, first.getSourceEntity(), "Source entity mismatch");
+        assertThrows(UnsupportedOperationException.class, () -> first.setResolved(true));
+        assertThrows(UnsupportedOperationException.class, () -> first.setSearchPath("cl_resource_3.nfo"));
+
+        ResourceInfo chainMiss = Rezolver.builder().add(loader).build().resolve("cl_resource_3.nfo");
+        assertNotSame(ResourceInfo.UNRESOLVED, chainMiss, "The chain must report the search path on misses");
+        assertEquals("cl_resource_3.nfo", chainMiss.getSearchPath(), "Search path mismatch");
+    }
+
+    @Test
+    void lazyUrlMaterializationTest() {
+        Rezolver r = Rezolver.builder().add(localLoader).build();
+        ResourceInfo info = r.resolve("/tmp/fs_resource_0.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertNotNull(info.getPath(), "Error retrieving the resource path");
+        assertEquals(fileSystem.getPath("/tmp/fs_resource_0.nfo"), info.getPath(), "Resource path mismatch");
+
+        URL url = info.getURL();
+        assertNotNull(url, "Error materializing the resource URL");
+        assertSame(url, info.getURL(), "The URL must be cached after the first call");
+        assertEquals(localLoader.lookup("/tmp/fs_resource_0.nfo").toExternalForm(), url.toExternalForm(), "URL mismatch");
+    }
+
+    @Test
+    void resourceAttributesTest() throws IOException, URISyntaxException {
+        Rezolver r = Rezolver.builder().add(localLoader).build();
+        ResourceInfo info = r.resolve("/tmp/fs_resource_0.nfo");
+        Path path = fileSystem.getPath("/tmp/fs_resource_0.nfo");
+        assertTrue(info.isResolved(), "Error resolving resource");
+        assertEquals(Files.size(path), info.getSize(), "Size mismatch");
+        assertEquals(Files.getLastModifiedTime(path).toMillis(), info.getLastModified(), "Last modification time mismatch");
+
+        ResourceInfo clInfo = Rezolver.fetch(CLASSPATH_META_INF_CL_RESOURCE_NFO);
+        assertTrue(clInfo.isResolved(), "Error resolving classpath resource");
+        assertTrue(clInfo.getSize() > 0, "Size not retrieved for classpath resource");
+        assertTrue(clInfo.getLastModified() > 0, "Last modification time not retrieved for classpath resource");
+
+        // Resource inside a jar
+        URL jarUrl = Rezolver.lookup("classpath:resources.jar");
+        URLClassLoader customClassLoader = URLClassLoader.newInstance(new URL[] { jarUrl });
+        ClasspathLoader loader = new ClasspathLoader();
+        loader.setClassLoader(customClassLoader);
+        ResourceInfo jarInfo = loader.resolve("cl_resource_3.nfo");
+        assertTrue(jarInfo.isResolved(), "Error resolving resource from jar");
+        try (JarFile jarFile = new JarFile(Paths.get(jarUrl.toURI()).toFile())) {
+            JarEntry entry = jarFile.getJarEntry("cl_resource_3.nfo");
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                int length = 0;
+                while (in.read() != -1) {
+                    length++;
+                }
+                assertEquals(length, jarInfo.getSize(), "Size mismatch for jar entry");
+            }
+        }
+
+        ResourceInfo missing = Rezolver.fetch("/tmp/fs_resource.nfo");
+        assertEquals(ResourceInfo.UNKNOWN_ATTRIBUTE, missing.getSize(), "Size must be unknown for missing resources");
+        assertNull(missing.getContentType(), "Content type must be unknown for missing resources");
+    }
+
     @Test
     public void checkWindowsPathFilesTest() {
         FileSystem winFileSystemFS = Jimfs.newFileSystem(Configuration.windows());
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.impl.ClasspathLoader;
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.github.pnavais.rezolver.watch.ResourceChangeEvent;
+import com.github.pnavais.rezolver.watch.WatchHandle;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rezolver resource change notification tests
+ */
+public class RezolverWatchTest {
+
+    @Test
+    void localResourceChangeTest() throws Exception {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        Path dir = Files.createDirectory(fs.getPath("/watched"));
+        Path file = Files.write(dir.resolve("config.nfo"), "v1".getBytes(StandardCharsets.UTF_8));
+
+        LocalLoader loader = new LocalLoader();
+        loader.setFileSystem(fs);
+        Rezolver r = Rezolver.builder().add(loader).withCache(10).build();
+
+        r.resolve("/watched/config.nfo");
+        r.resolve("/watched/config.nfo");
+        assertEquals(1, r.getCache().getHitCount(), "The resolution must be cached");
+
+        BlockingQueue<ResourceChangeEvent> events = new LinkedBlockingQueue<>();
+        try (WatchHandle handle = r.watch("/watched/config.nfo", events::add)) {
+            assertTrue(handle.isActive(), "Subscription not active");
+
+            Files.write(file, "version 2".getBytes(StandardCharsets.UTF_8));
+            ResourceChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "Change not notified");
+            assertEquals(ResourceChangeEvent.Kind.MODIFIED, event.getKind(), "Change kind mismatch");
+            assertEquals("/watched/config.nfo", event.getSearchPath(), "Search path mismatch");
+            assertEquals(9, event.getResource().getSize(), "The resource must be resolved again");
+            assertEquals(9, r.resolve("/watched/config.nfo").getSize(), "The cached resolution must be invalidated");
+
+            Files.delete(file);
+            event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "Deletion not notified");
+            assertEquals(ResourceChangeEvent.Kind.DELETED, event.getKind(), "Change kind mismatch");
+        }
+
+        r.getWatcher().close();
+    }
+
+    @Test
+    void jarResourceChangeTest() throws Exception {
+        Path jar = Files.createTempFile("rezolver-watch", ".jar");
+        try {
+            try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+                jarOut.putNextEntry(new JarEntry("watched_resource.nfo"));
+                jarOut.write("Dummy Data".getBytes(StandardCharsets.UTF_8));
+                jarOut.closeEntry();
+            }
+
+            ClasspathLoader loader = new ClasspathLoader();
+            loader.setClassLoader(URLClassLoader.newInstance(new URL[] { jar.toUri().toURL() }));
+            Rezolver r = Rezolver.builder().add(loader).build();
+            r.getWatcher().setPollInterval(10, 20, TimeUnit.MILLISECONDS);
+
+            BlockingQueue<ResourceChangeEvent> events = new LinkedBlockingQueue<>();
+            WatchHandle handle = r.watch("watched_resource.nfo", events::add);
+
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+            ResourceChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "Jar change not notified");
+            assertEquals(ResourceChangeEvent.Kind.MODIFIED, event.getKind(), "Change kind mismatch");
+
+            handle.cancel();
+            assertFalse(handle.isActive(), "Subscription still active");
+            r.getWatcher().close();
+        } finally {
+            Files.deleteIfExists(jar);
+        }
+    }
+
+    @Test
+    void unresolvedResourceWatchTest() {
+        Rezolver r = Rezolver.builder().add(new ClasspathLoader()).build();
+        assertThrows(IllegalArgumentException.class, () -> r.watch("cl_resource_3.nfo", e -> { }));
+        r.getWatcher().close();
+    }
+
+}
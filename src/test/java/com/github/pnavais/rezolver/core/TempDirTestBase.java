@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.loader.impl.LocalLoader;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Base class for the tests working with files. Creates a temporal
+ * directory before every test and removes it afterwards. The directory
+ * is created in an in-memory file system unless the tests require
+ * real files (e.g. to map them or to build class loaders).
+ */
+public abstract class TempDirTestBase {
+
+    /** The temporal directory */
+    protected Path tmpDir;
+
+    /** The in-memory file system (null if the directory is on disk) */
+    protected FileSystem fileSystem;
+
+    /** Whether the temporal directory is created on disk */
+    private final boolean onDisk;
+
+    /**
+     * Creates the test using a temporal directory
+     * in an in-memory file system.
+     */
+    protected TempDirTestBase() {
+        this(false);
+    }
+
+    /**
+     * Creates the test using a temporal directory on disk
+     * or in an in-memory file system.
+     *
+     * @param onDisk whether the directory is created on disk
+     */
+    protected TempDirTestBase(boolean onDisk) {
+        this.onDisk = onDisk;
+    }
+
+    @BeforeEach
+    void createTempDir() throws IOException {
+        if (onDisk) {
+            tmpDir = Files.createTempDirectory("rezolver-" + getClass().getSimpleName());
+        } else {
+            fileSystem = Jimfs.newFileSystem(Configuration.unix());
+            tmpDir = Files.createDirectories(fileSystem.getPath("/tmp"));
+        }
+    }
+
+    @AfterEach
+    void deleteTempDir() throws IOException {
+        if (fileSystem != null) {
+            fileSystem.close();
+            fileSystem = null;
+            return;
+        }
+        try (Stream<Path> files = Files.walk(tmpDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Creates a local loader using the file system
+     * of the temporal directory.
+     *
+     * @return the local loader
+     */
+    protected LocalLoader newLocalLoader() {
+        LocalLoader loader = new LocalLoader();
+        loader.setFileSystem(tmpDir.getFileSystem());
+        return loader;
+    }
+}
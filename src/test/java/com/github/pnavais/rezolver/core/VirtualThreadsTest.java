@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Pablo Navais
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.pnavais.rezolver.core;
+
+import com.github.pnavais.rezolver.Prefetcher;
+import com.github.pnavais.rezolver.ResolutionScheduler;
+import com.github.pnavais.rezolver.ResourceInfo;
+import com.github.pnavais.rezolver.Rezolver;
+import com.github.pnavais.rezolver.loader.CostClass;
+import com.github.pnavais.rezolver.loader.IResourceLoader;
+import com.github.pnavais.rezolver.util.BoundedExecutor;
+import com.github.pnavais.rezolver.util.VirtualThreads;
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Virtual threads execution mode tests
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    void concurrencyBoundTest() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("rezolver-test-", 4, 1000);
+        assertEquals(VirtualThreads.isSupported(), executor.isVirtual(), "Thread kind mismatch");
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Tasks not completed");
+        assertTrue(maxRunning.get() <= 4, "Concurrency limit exceeded");
+        assertEquals(0, executor.getWaitingCount(), "Tasks still waiting");
+
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    }
+
+    @Test
+    void remoteSheddingTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ResolutionScheduler scheduler = ResolutionScheduler.ofVirtualThreads(2, 1);
+        Rezolver rezolver = Rezolver.builder()
+                .add(new BlockingRemoteLoader(release))
+                .withScheduler(scheduler)
+                .build();
+        assertEquals(VirtualThreads.isSupported(), scheduler.isVirtual(CostClass.REMOTE), "Thread kind mismatch");
+        assertFalse(scheduler.isVirtual(CostClass.LOCAL), "Local lookups on virtual threads");
+
+        try {
+            // Two lookups in flight, one waiting for a permit and the last one shed
+            List<CompletableFuture<ResourceInfo>> accepted = new ArrayList<>();
+            accepted.add(rezolver.resolveAsync("remote1.nfo"));
+            accepted.add(rezolver.resolveAsync("remote2.nfo"));
+            waitUntil(() -> scheduler.getActiveCount(CostClass.REMOTE) == 2);
+            accepted.add(rezolver.resolveAsync("remote3.nfo"));
+            assertEquals(1, scheduler.getQueueDepth(CostClass.REMOTE), "Queue depth mismatch");
+
+            CompletableFuture<ResourceInfo> shed = rezolver.resolveAsync("remote4.nfo");
+            ExecutionException e = assertThrows(ExecutionException.class, () -> shed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException, "Lookup not shed");
+            assertEquals(1, scheduler.getRejectedCount(CostClass.REMOTE), "Rejections mismatch");
+
+            release.countDown();
+            for (CompletableFuture<ResourceInfo> future : accepted) {
+                assertTrue(future.get(5, TimeUnit.SECONDS).isResolved(), "Error resolving remote resource");
+            }
+            waitUntil(() -> scheduler.getActiveCount(CostClass.REMOTE) == 0);
+        } finally {
+            release.countDown();
+            scheduler.close();
+        }
+    }
+
+    @Test
+    void batchPrefetchTest() throws Exception {
+        BlockingRemoteLoader loader = new BlockingRemoteLoader(new CountDownLatch(0));
+        Rezolver rezolver = Rezolver.builder().add(loader).build();
+
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            paths.add("remote" + i + ".nfo");
+        }
+        Map<String, ResourceInfo> resources = new Prefetcher(rezolver)
+                .withVirtualThreads(true)
+                .withParallelism(16)
+                .prefetch(paths)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(paths, new ArrayList<>(resources.keySet()), "Resources mismatch");
+        assertTrue(resources.values().stream().allMatch(ResourceInfo::isResolved), "Error prefetching resources");
+        assertTrue(loader.maxRunning.get() <= 16, "Parallelism exceeded");
+    }
+
+    /**
+     * Waits until the condition holds
+     *
+     * @param condition the condition
+     * @throws Exception if interrupted or the condition fails
+     */
+    private static void waitUntil(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.call(), "Condition not met");
+    }
+
+    /**
+     * A remote loader blocking until released
+     */
+    private static class BlockingRemoteLoader implements IResourceLoader {
+
+        /** Released to let the lookups finish */
+        private final CountDownLatch release;
+
+        /** The number of lookups running */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /** The maximum number of lookups running at the same time */
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        private BlockingRemoteLoader(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public ResourceInfo resolve(String location) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            try {
+                return ResourceInfo.resolved(location, new URL("http://localhost/" + location), "BlockingRemoteLoader");
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public CostClass getCostClass() {
+            return CostClass.REMOTE;
+        }
+    }
+}